@@ -19,7 +19,7 @@ package org.elasticsoftware.elasticactors;
 /**
  * @author Joost van de Wijgerd
  */
-public final class MessageDeliveryException extends RuntimeException {
+public class MessageDeliveryException extends RuntimeException {
     private final boolean recoverable;
 
     public MessageDeliveryException(String message,boolean recoverable) {
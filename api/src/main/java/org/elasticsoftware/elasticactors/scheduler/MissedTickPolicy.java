@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.scheduler;
+
+/**
+ * What a recurring schedule does with the ticks that should have fired while the schedule wasn't running, for
+ * instance because the shard of the sender was moving to another node.
+ */
+public enum MissedTickPolicy {
+    /**
+     * The missed ticks are dropped, the schedule continues with the first tick that is not in the past
+     */
+    SKIP,
+    /**
+     * All missed ticks are fired right away. For a fixed delay schedule this means a single tick, as the next tick
+     * is only planned after the previous one has fired
+     */
+    CATCH_UP
+}
@@ -27,5 +27,8 @@ public interface ScheduledMessageRef {
 
     void cancel() throws Exception;
 
+    /**
+     * @return  the (first) time the message fires, in milliseconds since epoch
+     */
     public long getFireTime();
 }
@@ -35,4 +35,70 @@ public interface Scheduler {
      * @return
      */
     ScheduledMessageRef scheduleOnce(ActorRef sender,Object message,ActorRef receiver,long delay, TimeUnit timeUnit);
+
+    /**
+     * Schedules a particular message to be send every period, the ticks are planned relative to the first one
+     * (initialDelay). Ticks that are missed are skipped, see {@link MissedTickPolicy#SKIP}
+     *
+     * @param sender            the actor specified as the sender of the message
+     * @param message           the message to be send
+     * @param receiver          the receiver of the message
+     * @param initialDelay      the delay before sending the first message
+     * @param period            the period between two messages
+     * @param timeUnit          the {@link java.util.concurrent.TimeUnit} to interpret the initialDelay and period parameters
+     * @return                  a reference that cancels all future messages of this schedule
+     */
+    default ScheduledMessageRef scheduleAtFixedRate(ActorRef sender,Object message,ActorRef receiver,long initialDelay,long period,TimeUnit timeUnit) {
+        return scheduleAtFixedRate(sender, message, receiver, initialDelay, period, timeUnit, MissedTickPolicy.SKIP);
+    }
+
+    /**
+     * Schedules a particular message to be send every period, the ticks are planned relative to the first one
+     * (initialDelay). The message is serialized and stored once, the implementation fires the ticks from memory.
+     *
+     * @param sender            the actor specified as the sender of the message
+     * @param message           the message to be send
+     * @param receiver          the receiver of the message
+     * @param initialDelay      the delay before sending the first message
+     * @param period            the period between two messages
+     * @param timeUnit          the {@link java.util.concurrent.TimeUnit} to interpret the initialDelay and period parameters
+     * @param missedTickPolicy  what to do with the ticks that were missed
+     * @return                  a reference that cancels all future messages of this schedule
+     */
+    default ScheduledMessageRef scheduleAtFixedRate(ActorRef sender,Object message,ActorRef receiver,long initialDelay,long period,TimeUnit timeUnit,MissedTickPolicy missedTickPolicy) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support recurring schedules");
+    }
+
+    /**
+     * Schedules a particular message to be send with a fixed delay between sending one message and planning the
+     * next. Ticks that are missed are skipped, see {@link MissedTickPolicy#SKIP}
+     *
+     * @param sender            the actor specified as the sender of the message
+     * @param message           the message to be send
+     * @param receiver          the receiver of the message
+     * @param initialDelay      the delay before sending the first message
+     * @param delay             the delay between sending a message and sending the next one
+     * @param timeUnit          the {@link java.util.concurrent.TimeUnit} to interpret the initialDelay and delay parameters
+     * @return                  a reference that cancels all future messages of this schedule
+     */
+    default ScheduledMessageRef scheduleWithFixedDelay(ActorRef sender,Object message,ActorRef receiver,long initialDelay,long delay,TimeUnit timeUnit) {
+        return scheduleWithFixedDelay(sender, message, receiver, initialDelay, delay, timeUnit, MissedTickPolicy.SKIP);
+    }
+
+    /**
+     * Schedules a particular message to be send with a fixed delay between sending one message and planning the
+     * next. The message is serialized and stored once, the implementation fires the ticks from memory.
+     *
+     * @param sender            the actor specified as the sender of the message
+     * @param message           the message to be send
+     * @param receiver          the receiver of the message
+     * @param initialDelay      the delay before sending the first message
+     * @param delay             the delay between sending a message and sending the next one
+     * @param timeUnit          the {@link java.util.concurrent.TimeUnit} to interpret the initialDelay and delay parameters
+     * @param missedTickPolicy  what to do with the ticks that were missed
+     * @return                  a reference that cancels all future messages of this schedule
+     */
+    default ScheduledMessageRef scheduleWithFixedDelay(ActorRef sender,Object message,ActorRef receiver,long initialDelay,long delay,TimeUnit timeUnit,MissedTickPolicy missedTickPolicy) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support recurring schedules");
+    }
 }
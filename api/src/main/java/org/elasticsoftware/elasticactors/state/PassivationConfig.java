@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.state;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * By adding this annotation to an {@link org.elasticsoftware.elasticactors.ElasticActor} class the time an actor
+ * can stay idle in the actor cache can be configured. When an actor has not received any messages for the configured
+ * time it will be evicted from the cache and passivated (i.e.
+ * {@link org.elasticsoftware.elasticactors.ElasticActor#prePassivate()} will be called). Without this annotation the
+ * global setting of the runtime is used, which by default only evicts actors when the cache is full.
+ *
+ * This makes it possible to evict short-lived (i.e. session) actors within minutes, while long-lived actors stay in
+ * memory.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface PassivationConfig {
+    /**
+     * The time after which an idle actor will be passivated, a value of 0 or less means the actor will only be
+     * passivated when it is evicted because the cache is full
+     *
+     * @return
+     */
+    long idleTimeout();
+
+    /**
+     * The {@link TimeUnit} of {@link #idleTimeout()}
+     *
+     * @return
+     */
+    TimeUnit timeUnit() default TimeUnit.MINUTES;
+}
@@ -72,4 +72,31 @@ public @interface PersistenceConfig {
      * @return
      */
     ActorLifecycleStep[] persistOn() default {CREATE,ACTIVATE};
+
+    /**
+     * When set to true, consecutive messages for the same actor that are queued on the same worker thread will be
+     * handled as one batch: all messages are handled against the same state instance, after which the state is
+     * serialized and persisted only once and all messages are acknowledged together. This trades a slightly longer
+     * acknowledgement latency for a lot less serialization and store writes on actors that receive bursts of messages.
+     *
+     * The maximum size of a batch is determined by the {@code ea.actorExecutor.maxBatchSize} property. It defaults to 1,
+     * which means this has no effect until it is set to a larger value.
+     *
+     * @return
+     */
+    boolean batchMessages() default false;
+
+    /**
+     * When set to true, the state is not written after every message that changes it. Instead the actor is marked
+     * dirty and the state is serialized and written by the shard at most {@code ea.actorState.flushIntervalMillis}
+     * later, or as soon as {@code ea.actorState.flushThreshold} actors in the shard are dirty. The state of a dirty
+     * actor is also written when it is passivated or when the shard is released. Messages that changed the state are
+     * only acknowledged once the write that covers them has completed, so no state changes are lost when a node fails.
+     *
+     * This trades a bounded write delay for a lot less serialization and store writes on actors that handle many
+     * messages.
+     *
+     * @return
+     */
+    boolean deferStateUpdates() default false;
 }
@@ -16,12 +16,15 @@
 
 package org.elasticsoftware.elasticactors.cassandra.cluster.scheduler;
 
+import me.prettyprint.cassandra.model.HSlicePredicate;
+import me.prettyprint.cassandra.serializers.CompositeSerializer;
 import me.prettyprint.cassandra.serializers.LongSerializer;
 import me.prettyprint.cassandra.serializers.TimeUUIDSerializer;
 import me.prettyprint.cassandra.service.template.ColumnFamilyResult;
 import me.prettyprint.cassandra.service.template.ColumnFamilyRowMapper;
 import me.prettyprint.cassandra.service.template.ColumnFamilyTemplate;
 import me.prettyprint.cassandra.service.template.ColumnFamilyUpdater;
+import me.prettyprint.hector.api.beans.AbstractComposite.ComponentEquality;
 import me.prettyprint.hector.api.beans.Composite;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -73,6 +76,18 @@ public final class CassandraScheduledMessageRepository implements ScheduledMessa
         return columnFamilyTemplate.queryColumns(createKey(shardKey),resultMapper);
     }
 
+    @Override
+    public List<ScheduledMessage> getRange(ShardKey shardKey, long fromFireTime, long toFireTime) {
+        HSlicePredicate<Composite> predicate = new HSlicePredicate<>(CompositeSerializer.get());
+        predicate.setRange(createBound(fromFireTime),createBound(toFireTime),false,Integer.MAX_VALUE);
+        return columnFamilyTemplate.queryColumns(createKey(shardKey),predicate,resultMapper);
+    }
+
+    @Override
+    public long count(ShardKey shardKey, long fromFireTime) {
+        return columnFamilyTemplate.countColumns(createKey(shardKey),createBound(fromFireTime),createBound(Long.MAX_VALUE),Integer.MAX_VALUE);
+    }
+
     private Composite createKey(ShardKey shardKey) {
         Composite composite = new Composite();
         composite.add(clusterName);
@@ -80,6 +95,15 @@ public final class CassandraScheduledMessageRepository implements ScheduledMessa
         return composite;
     }
 
+    /**
+     * A column name with only the fire time, it sorts before all the columns with the same fire time
+     */
+    private Composite createBound(long fireTime) {
+        final Composite bound = new Composite();
+        bound.addComponent(fireTime, LongSerializer.get(), "LongType", ComponentEquality.LESS_THAN_EQUAL);
+        return bound;
+    }
+
     private Composite createColumnName(ScheduledMessage scheduledMessage) {
         final Composite columnName = new Composite();
         columnName.addComponent(scheduledMessage.getFireTime(TimeUnit.MILLISECONDS), LongSerializer.get());
@@ -23,8 +23,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
@@ -41,9 +44,11 @@ public final class PersistentActorUpdateEventProcessor implements ThreadBoundEve
     }
 
     @Override
-    public void process(List<PersistentActorUpdateEvent> events) {
+    public void process(List<PersistentActorUpdateEvent> allEvents) {
         Exception executionException = null;
         final long startTime = currentTimeMillis();
+        // only the latest state of each actor needs to be written, the listeners of all events are still called
+        final List<PersistentActorUpdateEvent> events = coalesce(allEvents);
         try {
             ColumnFamilyUpdater<Composite, String> updater = columnFamilyTemplate.createUpdater();
             for (PersistentActorUpdateEvent event : events) {
@@ -60,7 +65,7 @@ public final class PersistentActorUpdateEventProcessor implements ThreadBoundEve
         } catch(Exception e) {
             executionException = e;
         } finally {
-            for (PersistentActorUpdateEvent event : events) {
+            for (PersistentActorUpdateEvent event : allEvents) {
                 if(event.getEventListener() != null) {
                     if (executionException == null) {
                         event.getEventListener().onDone(event.getMessage());
@@ -72,11 +77,32 @@ public final class PersistentActorUpdateEventProcessor implements ThreadBoundEve
             // add some trace info
             if(logger.isTraceEnabled()) {
                 final long endTime = currentTimeMillis();
-                logger.trace(format("Updating %d Actor state entrie(s) took %d msecs",events.size(),endTime-startTime));
+                logger.trace(format("Updating %d Actor state entrie(s) (coalesced from %d events) took %d msecs",events.size(),allEvents.size(),endTime-startTime));
             }
         }
     }
 
+    /**
+     * Removes all but the last event for every (rowKey, persistentActorId) combination. When the same actor is
+     * updated multiple times within one batch only the latest state (or delete) needs to be written.
+     *
+     * @param events    the events as they were handed to this processor
+     * @return          the events that need to be written, in order of their last occurrence
+     */
+    static List<PersistentActorUpdateEvent> coalesce(List<PersistentActorUpdateEvent> events) {
+        if(events.size() <= 1) {
+            return events;
+        }
+        Map<List<Object>,PersistentActorUpdateEvent> latestEvents = new LinkedHashMap<>();
+        for (PersistentActorUpdateEvent event : events) {
+            List<Object> key = Arrays.asList(event.getRowKey(), event.getPersistentActorId());
+            // remove first to move the entry to the position of the latest event
+            latestEvents.remove(key);
+            latestEvents.put(key, event);
+        }
+        return latestEvents.size() == events.size() ? events : new ArrayList<>(latestEvents.values());
+    }
+
     @Override
     public void process(PersistentActorUpdateEvent... events) {
         process(Arrays.asList(events));
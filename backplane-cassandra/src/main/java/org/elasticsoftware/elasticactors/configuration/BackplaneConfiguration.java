@@ -36,12 +36,20 @@ import org.elasticsoftware.elasticactors.cluster.ActorRefFactory;
 import org.elasticsoftware.elasticactors.cluster.ActorSystemEventListenerRepository;
 import org.elasticsoftware.elasticactors.cluster.InternalActorSystems;
 import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageRepository;
+import org.elasticsoftware.elasticactors.serialization.compression.CompressionCodec;
+import org.elasticsoftware.elasticactors.serialization.compression.CompressionCodecs;
+import org.elasticsoftware.elasticactors.serialization.compression.Lz4CompressionCodec;
+import org.elasticsoftware.elasticactors.serialization.compression.ZstdCompressionCodec;
+import org.elasticsoftware.elasticactors.serialization.compression.ZstdDictionaryRegistry;
 import org.elasticsoftware.elasticactors.serialization.internal.ActorRefDeserializer;
 import org.elasticsoftware.elasticactors.serialization.internal.PersistentActorDeserializer;
 import org.elasticsoftware.elasticactors.serialization.internal.PersistentActorSerializer;
 import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageDeserializer;
+import org.elasticsoftware.elasticactors.state.OffHeapCachingPersistentActorRepository;
 import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
 import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.MpscBlockingQueue;
+import org.elasticsoftware.elasticactors.util.concurrent.OverflowPolicy;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutorImpl;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -50,6 +58,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.core.env.Environment;
 
 import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
 
 /**
  * @author Joost van de Wijgerd
@@ -105,16 +115,51 @@ public class BackplaneConfiguration {
     public ThreadBoundExecutor createAsyncUpdateExecutor() {
         final int workers = env.getProperty("ea.asyncUpdateExecutor.workerCount",Integer.class,Runtime.getRuntime().availableProcessors() * 3);
         final int batchSize = env.getProperty("ea.asyncUpdateExecutor.batchSize",Integer.class,20);
+        final boolean useMpscQueue = env.getProperty("ea.asyncUpdateExecutor.useMpscQueue", Boolean.TYPE, false);
+        if(useMpscQueue) {
+            return new ThreadBoundExecutorImpl(new PersistentActorUpdateEventProcessor(persistentActorsColumnFamilyTemplate),batchSize,new DaemonThreadFactory("UPDATE-EXECUTOR-WORKER"),workers,0,OverflowPolicy.BLOCK,MpscBlockingQueue::new);
+        }
         return new ThreadBoundExecutorImpl(new PersistentActorUpdateEventProcessor(persistentActorsColumnFamilyTemplate),batchSize,new DaemonThreadFactory("UPDATE-EXECUTOR-WORKER"),workers);
     }
 
+    @Bean(name = {"persistentActorZstdCompressionCodec"})
+    public ZstdCompressionCodec createPersistentActorZstdCompressionCodec() throws IOException {
+        // also used when compressing with lz4: state written with zstd stays readable after switching back
+        final int level = env.getProperty("ea.persistentActorRepository.compression.zstd.level",Integer.class,3);
+        // the dictionaries are needed to read the state back: the directory must be durable and shared by all nodes,
+        // without one no dictionaries are used
+        final String dictionaryDirectory = env.getProperty("ea.persistentActorRepository.compression.zstd.dictionaryDirectory");
+        // online training of the dictionaries from the persisted actors, disabled by default
+        final int trainingSampleSize = isZstdCompression() ? env.getProperty("ea.persistentActorRepository.compression.zstd.trainingSampleSize",Integer.class,0) : 0;
+        final int dictionarySize = env.getProperty("ea.persistentActorRepository.compression.zstd.dictionarySize",Integer.class,16 * 1024);
+        return new ZstdCompressionCodec(ZstdDictionaryRegistry.open(dictionaryDirectory != null ? new File(dictionaryDirectory) : null,
+                level, trainingSampleSize, dictionarySize), level);
+    }
+
+    private boolean isZstdCompression() {
+        return "zstd".equalsIgnoreCase(env.getProperty("ea.persistentActorRepository.compression.codec","lz4"));
+    }
+
     @Bean(name = {"persistentActorRepository"})
-    public PersistentActorRepository getPersistentActorRepository(@Qualifier("asyncUpdateExecutor") ThreadBoundExecutor asyncUpdateExecutor) {
+    public PersistentActorRepository getPersistentActorRepository(@Qualifier("asyncUpdateExecutor") ThreadBoundExecutor asyncUpdateExecutor,
+                                                                  @Qualifier("persistentActorZstdCompressionCodec") ZstdCompressionCodec zstdCompressionCodec) {
+        // zstd with a trained dictionary per actor class, lz4 by default
+        final CompressionCodec compressionCodec = isZstdCompression() ? zstdCompressionCodec : Lz4CompressionCodec.INSTANCE;
         CassandraPersistentActorRepository persistentActorRepository = new CassandraPersistentActorRepository(cluster.getClusterName(), asyncUpdateExecutor);
         persistentActorRepository.setColumnFamilyTemplate(persistentActorsColumnFamilyTemplate);
-        final Integer compressionThreshold = env.getProperty("ea.persistentActorRepository.compressionThreshold",Integer.class, 512);
-        persistentActorRepository.setSerializer(new CompressingSerializer<>(new PersistentActorSerializer(cluster),compressionThreshold));
-        persistentActorRepository.setDeserializer(new DecompressingDeserializer<>(new PersistentActorDeserializer(actorRefFactory,cluster)));
+        // dictionaries make small states compressible, so the default threshold is much lower for zstd
+        final Integer compressionThreshold = env.getProperty("ea.persistentActorRepository.compressionThreshold",Integer.class,
+                compressionCodec instanceof ZstdCompressionCodec ? 64 : 512);
+        persistentActorRepository.setSerializer(new CompressingSerializer<>(new PersistentActorSerializer(cluster),compressionThreshold,
+                compressionCodec, actor -> actor.getActorClass().getName()));
+        persistentActorRepository.setDeserializer(new DecompressingDeserializer<>(new PersistentActorDeserializer(actorRefFactory,cluster),
+                CompressionCodecs.decompressionCodecs(zstdCompressionCodec)));
+        // optional off-heap second level cache for the serialized actors, disabled by default
+        final Long offHeapCacheSize = env.getProperty("ea.persistentActorRepository.offHeapCache.maximumSize",Long.class,0L);
+        if(offHeapCacheSize > 0) {
+            return new OffHeapCachingPersistentActorRepository(persistentActorRepository,
+                    new PersistentActorSerializer(cluster), new PersistentActorDeserializer(actorRefFactory,cluster), offHeapCacheSize);
+        }
         return persistentActorRepository;
     }
 
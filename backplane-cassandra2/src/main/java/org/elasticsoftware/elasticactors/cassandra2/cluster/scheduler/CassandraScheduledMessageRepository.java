@@ -29,16 +29,24 @@ import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageKey;
 import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageRepository;
 import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageDeserializer;
 import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageSerializer;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 
 import static org.elasticsoftware.elasticactors.cassandra2.util.ExecutionUtils.executeWithRetry;
 
 /**
+ * When an asyncUpdateExecutor is given the creates and deletes are written in batches on the executor's threads.
+ * With waitForWrites the calling thread still waits until the write is done, otherwise it returns right away and
+ * failed writes are logged. The reads wait for the pending writes of the shard.
+ *
  * @author Joost van de Wijgerd
  */
 public final class CassandraScheduledMessageRepository implements ScheduledMessageRepository {
@@ -48,31 +56,112 @@ public final class CassandraScheduledMessageRepository implements ScheduledMessa
     private final PreparedStatement insertStatement;
     private final PreparedStatement deleteStatement;
     private final PreparedStatement selectStatement;
+    private final PreparedStatement selectRangeStatement;
+    private final PreparedStatement countStatement;
     private final ScheduledMessageDeserializer scheduledMessageDeserializer;
+    private final ThreadBoundExecutor<ScheduledMessageUpdateEvent> asyncUpdateExecutor;
+    private final boolean waitForWrites;
 
     public CassandraScheduledMessageRepository(String clusterName, Session cassandraSession, ScheduledMessageDeserializer scheduledMessageDeserializer) {
+        this(clusterName, cassandraSession, scheduledMessageDeserializer, null, true);
+    }
+
+    public CassandraScheduledMessageRepository(String clusterName,
+                                               Session cassandraSession,
+                                               ScheduledMessageDeserializer scheduledMessageDeserializer,
+                                               @Nullable ThreadBoundExecutor<ScheduledMessageUpdateEvent> asyncUpdateExecutor,
+                                               boolean waitForWrites) {
         this.clusterName = clusterName;
+        this.asyncUpdateExecutor = asyncUpdateExecutor;
+        this.waitForWrites = waitForWrites;
         this.cassandraSession = cassandraSession;
         this.scheduledMessageDeserializer = scheduledMessageDeserializer;
         this.insertStatement = cassandraSession.prepare("INSERT INTO \"ScheduledMessages\" (key, key2, column1, column2, value) VALUES (?, ?, ?, ?, ?)");
         this.deleteStatement = cassandraSession.prepare("DELETE FROM \"ScheduledMessages\" WHERE key = ? AND key2 = ? AND column1 = ? AND column2 = ?");
         this.selectStatement = cassandraSession.prepare("SELECT value from \"ScheduledMessages\" WHERE key = ? AND key2 = ?");
+        this.selectRangeStatement = cassandraSession.prepare("SELECT value from \"ScheduledMessages\" WHERE key = ? AND key2 = ? AND column1 >= ? AND column1 < ?");
+        this.countStatement = cassandraSession.prepare("SELECT count(*) from \"ScheduledMessages\" WHERE key = ? AND key2 = ? AND column1 >= ?");
     }
 
     @Override
     public void create(ShardKey shardKey, ScheduledMessage scheduledMessage) {
-        executeWithRetry(cassandraSession, insertStatement.bind(clusterName, shardKey.toString(), scheduledMessage.getFireTime(TimeUnit.MILLISECONDS), scheduledMessage.getId(), ByteBuffer.wrap(ScheduledMessageSerializer.get().serialize(scheduledMessage))), logger);
+        final ByteBuffer value = ByteBuffer.wrap(ScheduledMessageSerializer.get().serialize(scheduledMessage));
+        if(asyncUpdateExecutor != null) {
+            write(new ScheduledMessageUpdateEvent(createRowKey(shardKey), shardKey, scheduledMessage.getFireTime(TimeUnit.MILLISECONDS),
+                    scheduledMessage.getId(), value, waitForWrites ? new CompletableFuture<>() : null));
+        } else {
+            executeWithRetry(cassandraSession, insertStatement.bind(clusterName, shardKey.toString(), scheduledMessage.getFireTime(TimeUnit.MILLISECONDS), scheduledMessage.getId(), value), logger);
+        }
     }
 
     @Override
     public void delete(ShardKey shardKey, ScheduledMessageKey scheduledMessageKey) {
-        executeWithRetry(cassandraSession, deleteStatement.bind(clusterName, shardKey.toString(), scheduledMessageKey.getFireTime(), scheduledMessageKey.getId()), logger);
+        if(asyncUpdateExecutor != null) {
+            write(new ScheduledMessageUpdateEvent(createRowKey(shardKey), shardKey, scheduledMessageKey.getFireTime(),
+                    scheduledMessageKey.getId(), null, waitForWrites ? new CompletableFuture<>() : null));
+        } else {
+            executeWithRetry(cassandraSession, deleteStatement.bind(clusterName, shardKey.toString(), scheduledMessageKey.getFireTime(), scheduledMessageKey.getId()), logger);
+        }
     }
 
     @Override
     public List<ScheduledMessage> getAll(ShardKey shardKey) {
+        flush(shardKey);
         ResultSet resultSet = executeWithRetry(cassandraSession, selectStatement.bind(clusterName, shardKey.toString()).setFetchSize(Integer.MAX_VALUE), logger);
-        List<ScheduledMessage> resultList = new LinkedList<>();
+        return toScheduledMessages(resultSet);
+    }
+
+    @Override
+    public List<ScheduledMessage> getRange(ShardKey shardKey, long fromFireTime, long toFireTime) {
+        flush(shardKey);
+        // use the default fetch size, the driver will page through the result
+        ResultSet resultSet = executeWithRetry(cassandraSession, selectRangeStatement.bind(clusterName, shardKey.toString(), fromFireTime, toFireTime), logger);
+        return toScheduledMessages(resultSet);
+    }
+
+    @Override
+    public long count(ShardKey shardKey, long fromFireTime) {
+        flush(shardKey);
+        ResultSet resultSet = executeWithRetry(cassandraSession, countStatement.bind(clusterName, shardKey.toString(), fromFireTime), logger);
+        Row row = resultSet.one();
+        return row != null ? row.getLong(0) : 0L;
+    }
+
+    private String[] createRowKey(ShardKey shardKey) {
+        return new String[]{clusterName, shardKey.toString()};
+    }
+
+    private void write(ScheduledMessageUpdateEvent event) {
+        asyncUpdateExecutor.execute(event);
+        if(event.getFuture() != null) {
+            await(event.getFuture());
+        }
+    }
+
+    /**
+     * Waits until the writes of the shard that are queued on the asyncUpdateExecutor are done
+     */
+    private void flush(ShardKey shardKey) {
+        if(asyncUpdateExecutor != null) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            asyncUpdateExecutor.execute(new ScheduledMessageUpdateEvent(createRowKey(shardKey), shardKey, 0L, null, null, future));
+            await(future);
+        }
+    }
+
+    private static void await(CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch(CompletionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private List<ScheduledMessage> toScheduledMessages(ResultSet resultSet) {
+        List<ScheduledMessage> resultList = new ArrayList<>();
         for (Row resultRow : resultSet) {
             for (int i = 0; i < resultRow.getColumnDefinitions().size(); i++) {
                 ByteBuffer resultBuffer = resultRow.getBytes(i);
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cassandra2.cluster.scheduler;
+
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEvent;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A create (value != null) or delete (value == null) of a scheduled message. An event without an id doesn't write
+ * anything, its future completes when all the events of the shard that were queued before it have been written.
+ */
+public final class ScheduledMessageUpdateEvent implements ThreadBoundEvent<Integer> {
+    private final String[] rowKey;
+    private final ShardKey shardKey;
+    private final long fireTime;
+    private final UUID id;
+    private final ByteBuffer value;
+    private final CompletableFuture<Void> future;
+
+    public ScheduledMessageUpdateEvent(String[] rowKey,
+                                       ShardKey shardKey,
+                                       long fireTime,
+                                       @Nullable UUID id,
+                                       @Nullable ByteBuffer value,
+                                       @Nullable CompletableFuture<Void> future) {
+        this.rowKey = rowKey;
+        this.shardKey = shardKey;
+        this.fireTime = fireTime;
+        this.id = id;
+        this.value = value;
+        this.future = future;
+    }
+
+    @Override
+    public Integer getKey() {
+        return shardKey.getShardId();
+    }
+
+    public String[] getRowKey() {
+        return rowKey;
+    }
+
+    public ShardKey getShardKey() {
+        return shardKey;
+    }
+
+    public long getFireTime() {
+        return fireTime;
+    }
+
+    @Nullable
+    public UUID getId() {
+        return id;
+    }
+
+    @Nullable
+    public ByteBuffer getValue() {
+        return value;
+    }
+
+    public boolean isDelete() {
+        return value == null;
+    }
+
+    public boolean isFlush() {
+        return id == null;
+    }
+
+    @Nullable
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+}
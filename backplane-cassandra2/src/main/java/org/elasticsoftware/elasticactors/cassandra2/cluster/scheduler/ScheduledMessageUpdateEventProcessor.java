@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cassandra2.cluster.scheduler;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.datastax.driver.core.BatchStatement.Type.UNLOGGED;
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static org.elasticsoftware.elasticactors.cassandra2.util.ExecutionUtils.executeAsyncWithRetry;
+
+/**
+ * Writes the creates and deletes of scheduled messages as one (unlogged) batch per partition, the partitions are
+ * written concurrently. A batch is finished before the next one is processed, so creates and deletes of the same
+ * shard are applied in order.
+ */
+public final class ScheduledMessageUpdateEventProcessor implements ThreadBoundEventProcessor<ScheduledMessageUpdateEvent> {
+    private static final Logger logger = LogManager.getLogger(ScheduledMessageUpdateEventProcessor.class);
+    public static final String INSERT_QUERY = "INSERT INTO \"ScheduledMessages\" (key, key2, column1, column2, value) VALUES (?, ?, ?, ?, ?)";
+    public static final String DELETE_QUERY = "DELETE FROM \"ScheduledMessages\" WHERE key = ? AND key2 = ? AND column1 = ? AND column2 = ?";
+    private final Session cassandraSession;
+    private final PreparedStatement insertStatement;
+    private final PreparedStatement deleteStatement;
+
+    public ScheduledMessageUpdateEventProcessor(Session cassandraSession) {
+        this.cassandraSession = cassandraSession;
+        this.insertStatement = cassandraSession.prepare(INSERT_QUERY);
+        this.deleteStatement = cassandraSession.prepare(DELETE_QUERY);
+    }
+
+    @Override
+    public void process(ScheduledMessageUpdateEvent... events) {
+        process(Arrays.asList(events));
+    }
+
+    @Override
+    public void process(List<ScheduledMessageUpdateEvent> events) {
+        final long startTime = currentTimeMillis();
+        final Collection<List<ScheduledMessageUpdateEvent>> partitions = partition(events);
+        final List<CompletableFuture<ResultSet>> results = new ArrayList<>(partitions.size());
+        for (List<ScheduledMessageUpdateEvent> partitionEvents : partitions) {
+            results.add(executeAsyncWithRetry(cassandraSession, createStatement(coalesce(partitionEvents)), logger));
+        }
+        int i = 0;
+        for (List<ScheduledMessageUpdateEvent> partitionEvents : partitions) {
+            Throwable executionException = null;
+            try {
+                results.get(i++).join();
+            } catch(CompletionException e) {
+                executionException = e.getCause() != null ? e.getCause() : e;
+            } catch(Exception e) {
+                executionException = e;
+            }
+            complete(partitionEvents, executionException);
+        }
+        // all writes queued before the flush events are done now
+        for (ScheduledMessageUpdateEvent event : events) {
+            if(event.isFlush() && event.getFuture() != null) {
+                event.getFuture().complete(null);
+            }
+        }
+        if(logger.isTraceEnabled()) {
+            logger.trace(format("Updating %d scheduled message(s) in %d partition(s) took %d msecs",
+                    events.size(), partitions.size(), currentTimeMillis() - startTime));
+        }
+    }
+
+    private void complete(List<ScheduledMessageUpdateEvent> events, @Nullable Throwable executionException) {
+        for (ScheduledMessageUpdateEvent event : events) {
+            if(event.getFuture() != null) {
+                if(executionException == null) {
+                    event.getFuture().complete(null);
+                } else {
+                    event.getFuture().completeExceptionally(executionException);
+                }
+            } else if(executionException != null) {
+                // nobody is waiting for this write
+                logger.error(format("Failed to %s ScheduledMessage %s of shard %s", event.isDelete() ? "delete" : "create",
+                        event.getId(), event.getShardKey()), executionException);
+            }
+        }
+    }
+
+    /**
+     * Groups the (non flush) events by partition (rowKey), in order of the first occurrence of every partition.
+     */
+    static Collection<List<ScheduledMessageUpdateEvent>> partition(List<ScheduledMessageUpdateEvent> events) {
+        Map<List<String>,List<ScheduledMessageUpdateEvent>> partitions = new LinkedHashMap<>();
+        for (ScheduledMessageUpdateEvent event : events) {
+            if(!event.isFlush()) {
+                partitions.computeIfAbsent(Arrays.asList(event.getRowKey()), key -> new ArrayList<>()).add(event);
+            }
+        }
+        return partitions.values();
+    }
+
+    /**
+     * Removes all but the last event for every message. A message that is created and deleted (fired or cancelled)
+     * within the same batch only needs the delete: all mutations in a batch have the same timestamp and the
+     * delete would win anyway.
+     */
+    static List<ScheduledMessageUpdateEvent> coalesce(List<ScheduledMessageUpdateEvent> events) {
+        if(events.size() <= 1) {
+            return events;
+        }
+        Map<List<Object>,ScheduledMessageUpdateEvent> latestEvents = new LinkedHashMap<>();
+        for (ScheduledMessageUpdateEvent event : events) {
+            List<Object> key = Arrays.asList(event.getFireTime(), event.getId());
+            // remove first to move the entry to the position of the latest event
+            latestEvents.remove(key);
+            latestEvents.put(key, event);
+        }
+        return latestEvents.size() == events.size() ? events : new ArrayList<>(latestEvents.values());
+    }
+
+    private Statement createStatement(List<ScheduledMessageUpdateEvent> events) {
+        if(events.size() == 1) {
+            return createStatement(events.get(0));
+        }
+        BatchStatement batchStatement = new BatchStatement(UNLOGGED);
+        for (ScheduledMessageUpdateEvent event : events) {
+            batchStatement.add(createStatement(event));
+        }
+        return batchStatement;
+    }
+
+    private Statement createStatement(ScheduledMessageUpdateEvent event) {
+        if(event.isDelete()) {
+            return deleteStatement.bind(event.getRowKey()[0], event.getRowKey()[1], event.getFireTime(), event.getId());
+        } else {
+            return insertStatement.bind(event.getRowKey()[0], event.getRowKey()[1], event.getFireTime(), event.getId(), event.getValue());
+        }
+    }
+}
@@ -16,48 +16,40 @@
 
 package org.elasticsoftware.elasticactors.cassandra2.serialization;
 
-import com.google.common.io.ByteStreams;
-import net.jpountz.lz4.LZ4Factory;
-import net.jpountz.lz4.LZ4FastDecompressor;
 import org.elasticsoftware.elasticactors.serialization.Deserializer;
+import org.elasticsoftware.elasticactors.serialization.compression.CompressionCodec;
+import org.elasticsoftware.elasticactors.serialization.compression.CompressionCodecs;
+import org.elasticsoftware.elasticactors.serialization.compression.Lz4CompressionCodec;
 
-import java.io.DataInput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Joost van de Wijgerd
  */
 public final class DecompressingDeserializer<O> implements Deserializer<ByteBuffer,O> {
-    private static final LZ4FastDecompressor lz4Decompressor = LZ4Factory.fastestJavaInstance().fastDecompressor();
-    private static final byte[] MAGIC_HEADER = {0x18,0x4D,0x22,0x04};
     private final Deserializer<byte[],O> delegate;
+    private final List<CompressionCodec> codecs;
 
     public DecompressingDeserializer(Deserializer<byte[], O> delegate) {
+        this(delegate, Collections.singletonList(Lz4CompressionCodec.INSTANCE));
+    }
+
+    /**
+     * @param codecs    all codecs the data can have been compressed with, data written with a codec that is no longer
+     *                  used for compression must stay readable
+     */
+    public DecompressingDeserializer(Deserializer<byte[], O> delegate, List<CompressionCodec> codecs) {
         this.delegate = delegate;
+        this.codecs = codecs;
     }
 
     @Override
     public O deserialize(ByteBuffer serializedBuffer) throws IOException {
         byte[] serializedObject = new byte[serializedBuffer.remaining()];
         serializedBuffer.get(serializedObject);
-        if(isCompressed(serializedObject)) {
-            DataInput dataInput = ByteStreams.newDataInput(serializedObject);
-            // skip the header
-            dataInput.skipBytes(4);
-            int uncompressedLength = dataInput.readInt();
-            return delegate.deserialize(lz4Decompressor.decompress(serializedObject, 8, uncompressedLength));
-        } else {
-            return delegate.deserialize(serializedObject);
-        }
-    }
-
-    private boolean isCompressed(byte[] serializedObject) {
-        for (int i = 0; i < MAGIC_HEADER.length; i++) {
-            if(serializedObject[i] != MAGIC_HEADER[i]) {
-                return false;
-            }
-        }
-        return true;
+        return delegate.deserialize(CompressionCodecs.decompress(codecs, serializedObject));
     }
 }
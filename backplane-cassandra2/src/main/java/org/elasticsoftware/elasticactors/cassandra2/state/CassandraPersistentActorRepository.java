@@ -16,6 +16,7 @@
 
 package org.elasticsoftware.elasticactors.cassandra2.state;
 
+import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
@@ -29,14 +30,26 @@ import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
 import org.elasticsoftware.elasticactors.serialization.Deserializer;
 import org.elasticsoftware.elasticactors.serialization.Serializer;
 import org.elasticsoftware.elasticactors.state.PersistentActor;
+import org.elasticsoftware.elasticactors.state.PersistentActorDeltaEncoder;
 import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
+import static org.elasticsoftware.elasticactors.cassandra2.util.ExecutionUtils.executeAsyncWithRetry;
 import static org.elasticsoftware.elasticactors.cassandra2.util.ExecutionUtils.executeWithRetry;
 
 
@@ -45,26 +58,63 @@ import static org.elasticsoftware.elasticactors.cassandra2.util.ExecutionUtils.e
  */
 public final class CassandraPersistentActorRepository implements PersistentActorRepository {
     private static final Logger logger = LogManager.getLogger(CassandraPersistentActorRepository.class);
+    // keep the IN clause small enough to not put too much pressure on the coordinator (halved for delta encoded
+    // actors, as the snapshot and the delta are selected separately)
+    private static final int MAX_ACTORS_PER_QUERY = 100;
+    private static final int ACTOR_ID_FETCH_SIZE = 1000;
+    // the delta of a delta encoded actor is stored next to it, the suffix can't be part of a (sane) actor id
+    private static final String DELTA_SUFFIX = "\u0000delta";
     private final String clusterName;
     private final ThreadBoundExecutor asyncUpdateExecutor;
     private final long readExecutionThresholdMillis;
     private final Session cassandraSession;
     private final PreparedStatement selectStatement;
+    private final PreparedStatement selectAllStatement;
+    private final PreparedStatement selectActorIdsStatement;
     private final Deserializer<ByteBuffer,PersistentActor> deserializer;
     private final Serializer<PersistentActor,ByteBuffer> serializer;
+    private final PersistentActorDeltaEncoder deltaEncoder;
+    private final Serializer<byte[],ByteBuffer> compressor;
+    private final Deserializer<ByteBuffer,byte[]> decompressor;
 
     public CassandraPersistentActorRepository(Session cassandraSession, String clusterName, ThreadBoundExecutor asyncUpdateExecutor, Serializer serializer, Deserializer deserializer) {
         this(cassandraSession, clusterName,asyncUpdateExecutor,serializer, deserializer, 200);
     }
 
     public CassandraPersistentActorRepository(Session cassandraSession, String clusterName, ThreadBoundExecutor asyncUpdateExecutor, Serializer serializer, Deserializer deserializer, long readExecutionThresholdMillis) {
+        this(cassandraSession, clusterName, asyncUpdateExecutor, serializer, deserializer, null, null, null, readExecutionThresholdMillis);
+    }
+
+    /**
+     * Creates a repository that stores the actors delta encoded: a snapshot in the row of the actor and a delta
+     * against that snapshot in a second row. Both are (optionally) compressed by the compressor.
+     */
+    public CassandraPersistentActorRepository(Session cassandraSession, String clusterName, ThreadBoundExecutor asyncUpdateExecutor,
+                                              PersistentActorDeltaEncoder deltaEncoder, Serializer<byte[],ByteBuffer> compressor,
+                                              Deserializer<ByteBuffer,byte[]> decompressor, long readExecutionThresholdMillis) {
+        this(cassandraSession, clusterName, asyncUpdateExecutor, null, null, deltaEncoder, compressor, decompressor, readExecutionThresholdMillis);
+    }
+
+    private CassandraPersistentActorRepository(Session cassandraSession, String clusterName, ThreadBoundExecutor asyncUpdateExecutor,
+                                               Serializer serializer, Deserializer deserializer,
+                                               PersistentActorDeltaEncoder deltaEncoder, Serializer<byte[],ByteBuffer> compressor,
+                                               Deserializer<ByteBuffer,byte[]> decompressor, long readExecutionThresholdMillis) {
         this.cassandraSession = cassandraSession;
         this.selectStatement = cassandraSession.prepare("select value from \"PersistentActors\" where key = ? and key2 = ? AND column1 = ?");
+        this.selectAllStatement = cassandraSession.prepare("select column1, value from \"PersistentActors\" where key = ? and key2 = ? AND column1 IN ?");
+        this.selectActorIdsStatement = cassandraSession.prepare("select column1 from \"PersistentActors\" where key = ? and key2 = ?");
         this.clusterName = clusterName;
         this.asyncUpdateExecutor = asyncUpdateExecutor;
         this.readExecutionThresholdMillis = readExecutionThresholdMillis;
         this.serializer = serializer;
         this.deserializer = deserializer;
+        this.deltaEncoder = deltaEncoder;
+        this.compressor = compressor;
+        this.decompressor = decompressor;
+    }
+
+    static String deltaId(String actorId) {
+        return actorId + DELTA_SUFFIX;
     }
 
     @Override
@@ -75,29 +125,49 @@ public final class CassandraPersistentActorRepository implements PersistentActor
     @Override
     public void update(final ShardKey shard,final PersistentActor persistentActor) throws IOException {
         // serialize the data on the calling thread (to avoid thread visibility issues)
-        final ByteBuffer serializedActorBytes = serializer.serialize(persistentActor);
-        asyncUpdateExecutor.execute(new PersistentActorUpdateEvent(createKey(shard), shard,
-                                                                    persistentActor.getSelf().getActorId(),
-                                                                    serializedActorBytes, null, null));
+        asyncUpdateExecutor.execute(createUpdateEvent(shard, persistentActor, null, null));
     }
 
     @Override
     public void updateAsync(ShardKey shard, PersistentActor persistentActor, InternalMessage message, MessageHandlerEventListener messageHandlerEventListener) throws IOException {
         // serialize the data on the calling thread (to avoid thread visibility issues)
-        final ByteBuffer serializedActorBytes = serializer.serialize(persistentActor);
-        asyncUpdateExecutor.execute(new PersistentActorUpdateEvent(createKey(shard),shard,
-                                                                   persistentActor.getSelf().getActorId(),
-                                                                   serializedActorBytes, message,
-                                                                   messageHandlerEventListener));
+        asyncUpdateExecutor.execute(createUpdateEvent(shard, persistentActor, message, messageHandlerEventListener));
+    }
+
+    private PersistentActorUpdateEvent createUpdateEvent(ShardKey shard, PersistentActor persistentActor,
+                                                         InternalMessage message, MessageHandlerEventListener messageHandlerEventListener) throws IOException {
+        final String actorId = persistentActor.getSelf().getActorId();
+        if (deltaEncoder == null) {
+            return new PersistentActorUpdateEvent(createKey(shard), shard, actorId, serializer.serialize(persistentActor),
+                                                  message, messageHandlerEventListener);
+        }
+        PersistentActorDeltaEncoder.Update update = deltaEncoder.encode(shard, persistentActor);
+        // the encoder already uses the new snapshot as base, when the write fails the next update must be a snapshot
+        final MessageHandlerEventListener eventListener = new InvalidatingEventListener(shard, actorId, messageHandlerEventListener);
+        if (update.isSnapshot()) {
+            // an empty delta clears the previous one without creating a tombstone
+            return new PersistentActorUpdateEvent(createKey(shard), shard, actorId, compressor.serialize(update.getBytes()),
+                                                  true, ByteBuffer.allocate(0), message, eventListener);
+        } else {
+            return new PersistentActorUpdateEvent(createKey(shard), shard, actorId, null,
+                                                  true, compressor.serialize(update.getBytes()), message, eventListener);
+        }
     }
 
     @Override
     public void delete(final ShardKey shard,final String actorId) {
-        asyncUpdateExecutor.execute(new PersistentActorUpdateEvent(createKey(shard), shard, actorId, null, null, null));
+        if (deltaEncoder != null) {
+            deltaEncoder.invalidate(shard, actorId);
+        }
+        asyncUpdateExecutor.execute(new PersistentActorUpdateEvent(createKey(shard), shard, actorId, null, deltaEncoder != null, null, null, null));
     }
 
     @Override
     public PersistentActor<ShardKey> get(final ShardKey shard,final String actorId) throws IOException {
+        if (deltaEncoder != null) {
+            // the snapshot and the delta are read in one query
+            return getAll(shard, Collections.singletonList(actorId)).get(actorId);
+        }
         Row resultRow = internalGet(shard, actorId);
         if (resultRow == null || resultRow.getColumnDefinitions().size() == 0) {
             return null;
@@ -107,6 +177,147 @@ public final class CassandraPersistentActorRepository implements PersistentActor
         }
     }
 
+    @Override
+    public CompletableFuture<PersistentActor<ShardKey>> getAsync(final ShardKey shard, final String actorId) {
+        if (deltaEncoder != null) {
+            return getAllAsync(shard, Collections.singletonList(actorId)).thenApply(result -> result.get(actorId));
+        }
+        final long startTime = currentTimeMillis();
+        // the result is deserialized on the driver's I/O thread
+        return executeAsyncWithRetry(cassandraSession, selectStatement.bind(clusterName, shard.toString(), actorId), logger)
+                .thenApply(resultSet -> {
+                    final long endTime = currentTimeMillis();
+                    if((endTime - startTime) > readExecutionThresholdMillis) {
+                        logger.warn(format("Cassandra read operation took %d msecs for actorId [%s] on shard [%s]",(endTime - startTime), actorId, shard.toString()));
+                    }
+                    Row resultRow = resultSet.one();
+                    if (resultRow == null || resultRow.getColumnDefinitions().size() == 0) {
+                        return null;
+                    }
+                    try {
+                        return this.deserializer.deserialize(resultRow.getBytes(0));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public Map<String, PersistentActor<ShardKey>> getAll(final ShardKey shard, final Collection<String> actorIds) throws IOException {
+        final Map<String, PersistentActor<ShardKey>> result = new HashMap<>();
+        for (List<String> partition : partition(actorIds, deltaEncoder != null ? MAX_ACTORS_PER_QUERY / 2 : MAX_ACTORS_PER_QUERY)) {
+            final long startTime = currentTimeMillis();
+            ResultSet resultSet = executeWithRetry(cassandraSession, selectAllStatement.bind(clusterName, shard.toString(), withDeltaIds(partition)), logger);
+            logSlowRead(startTime, partition.size(), shard);
+            deserializeAll(shard, resultSet, result);
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, PersistentActor<ShardKey>>> getAllAsync(final ShardKey shard, final Collection<String> actorIds) {
+        // all actors live in the same partition, so every query is handled by a single replica set
+        final List<CompletableFuture<Map<String, PersistentActor<ShardKey>>>> futures = new ArrayList<>();
+        for (List<String> partition : partition(actorIds, deltaEncoder != null ? MAX_ACTORS_PER_QUERY / 2 : MAX_ACTORS_PER_QUERY)) {
+            final long startTime = currentTimeMillis();
+            futures.add(executeAsyncWithRetry(cassandraSession, selectAllStatement.bind(clusterName, shard.toString(), withDeltaIds(partition)), logger)
+                    .thenApply(resultSet -> {
+                        logSlowRead(startTime, partition.size(), shard);
+                        Map<String, PersistentActor<ShardKey>> result = new HashMap<>();
+                        try {
+                            deserializeAll(shard, resultSet, result);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return result;
+                    }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            Map<String, PersistentActor<ShardKey>> result = new HashMap<>();
+            futures.forEach(future -> result.putAll(future.join()));
+            return result;
+        });
+    }
+
+    @Override
+    public void forEachActorId(final ShardKey shard, final Consumer<String> consumer) {
+        // only the clustering column is selected, the result is paged by the driver
+        BoundStatement boundStatement = selectActorIdsStatement.bind(clusterName, shard.toString());
+        boundStatement.setFetchSize(ACTOR_ID_FETCH_SIZE);
+        for (Row row : executeWithRetry(cassandraSession, boundStatement, logger)) {
+            final String actorId = row.getString(0);
+            if (!actorId.endsWith(DELTA_SUFFIX)) {
+                consumer.accept(actorId);
+            }
+        }
+    }
+
+    @Override
+    public void release(ShardKey shard) {
+        if (deltaEncoder != null) {
+            deltaEncoder.release(shard);
+        }
+    }
+
+    private void deserializeAll(ShardKey shard, ResultSet resultSet, Map<String, PersistentActor<ShardKey>> result) throws IOException {
+        if (deltaEncoder == null) {
+            for (Row row : resultSet) {
+                result.put(row.getString(0), this.deserializer.deserialize(row.getBytes(1)));
+            }
+            return;
+        }
+        final Map<String, ByteBuffer> snapshots = new HashMap<>();
+        final Map<String, ByteBuffer> deltas = new HashMap<>();
+        for (Row row : resultSet) {
+            final String id = row.getString(0);
+            if (id.endsWith(DELTA_SUFFIX)) {
+                deltas.put(id.substring(0, id.length() - DELTA_SUFFIX.length()), row.getBytes(1));
+            } else {
+                snapshots.put(id, row.getBytes(1));
+            }
+        }
+        for (Map.Entry<String, ByteBuffer> entry : snapshots.entrySet()) {
+            final ByteBuffer delta = deltas.get(entry.getKey());
+            result.put(entry.getKey(), deltaEncoder.decode(shard, entry.getKey(), decompressor.deserialize(entry.getValue()),
+                    delta != null && delta.hasRemaining() ? decompressor.deserialize(delta) : null));
+        }
+    }
+
+    private List<String> withDeltaIds(List<String> actorIds) {
+        if (deltaEncoder == null) {
+            return actorIds;
+        }
+        List<String> ids = new ArrayList<>(actorIds.size() * 2);
+        for (String actorId : actorIds) {
+            ids.add(actorId);
+            ids.add(deltaId(actorId));
+        }
+        return ids;
+    }
+
+    private void logSlowRead(long startTime, int numberOfActors, ShardKey shard) {
+        final long endTime = currentTimeMillis();
+        if((endTime - startTime) > readExecutionThresholdMillis) {
+            logger.warn(format("Cassandra read operation took %d msecs for %d actors on shard [%s]",(endTime - startTime), numberOfActors, shard.toString()));
+        }
+    }
+
+    private static List<List<String>> partition(Collection<String> actorIds, int partitionSize) {
+        List<List<String>> partitions = new ArrayList<>();
+        List<String> current = new ArrayList<>(Math.min(actorIds.size(), partitionSize));
+        for (String actorId : actorIds) {
+            if (current.size() == partitionSize) {
+                partitions.add(current);
+                current = new ArrayList<>(partitionSize);
+            }
+            current.add(actorId);
+        }
+        if (!current.isEmpty()) {
+            partitions.add(current);
+        }
+        return partitions;
+    }
+
     private Row internalGet(final ShardKey shard,final String actorId) {
         // log a warning when we exceed the readExecutionThreshold
         final long startTime = currentTimeMillis();
@@ -128,4 +339,34 @@ public final class CassandraPersistentActorRepository implements PersistentActor
         return composite;
     }
 
+    /**
+     * Invalidates the snapshot the delta encoder keeps for the actor when the update could not be written, also
+     * for updates without a listener of their own.
+     */
+    private final class InvalidatingEventListener implements MessageHandlerEventListener {
+        private final ShardKey shard;
+        private final String actorId;
+        private final MessageHandlerEventListener delegate;
+
+        private InvalidatingEventListener(ShardKey shard, String actorId, @Nullable MessageHandlerEventListener delegate) {
+            this.shard = shard;
+            this.actorId = actorId;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onError(InternalMessage message, Throwable exception) {
+            deltaEncoder.invalidate(shard, actorId);
+            if (delegate != null) {
+                delegate.onError(message, exception);
+            }
+        }
+
+        @Override
+        public void onDone(InternalMessage message) {
+            if (delegate != null) {
+                delegate.onDone(message);
+            }
+        }
+    }
 }
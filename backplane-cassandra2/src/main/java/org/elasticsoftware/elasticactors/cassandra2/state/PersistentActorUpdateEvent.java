@@ -32,6 +32,8 @@ public final class PersistentActorUpdateEvent implements ThreadBoundEvent<Intege
     private final ShardKey shardKey;
     private final String persistentActorId;
     private final ByteBuffer persistentActorBytes;
+    private final boolean deltaEncoded;
+    private final ByteBuffer persistentActorDeltaBytes;
     private final InternalMessage message;
     private final MessageHandlerEventListener eventListener;
 
@@ -41,10 +43,27 @@ public final class PersistentActorUpdateEvent implements ThreadBoundEvent<Intege
                                       @Nullable ByteBuffer persistentActorBytes,
                                       @Nullable InternalMessage message,
                                       @Nullable MessageHandlerEventListener eventListener) {
+        this(rowKey, shardKey, persistentActorId, persistentActorBytes, false, null, message, eventListener);
+    }
+
+    /**
+     * Update of a delta encoded actor, either a snapshot (which also clears the delta) or only a delta. When both
+     * the bytes and the delta bytes are null the actor (and its delta) are deleted
+     */
+    public PersistentActorUpdateEvent(String[] rowKey,
+                                      ShardKey shardKey,
+                                      String persistentActorId,
+                                      @Nullable ByteBuffer persistentActorBytes,
+                                      boolean deltaEncoded,
+                                      @Nullable ByteBuffer persistentActorDeltaBytes,
+                                      @Nullable InternalMessage message,
+                                      @Nullable MessageHandlerEventListener eventListener) {
         this.rowKey = rowKey;
         this.shardKey = shardKey;
         this.persistentActorId = persistentActorId;
         this.persistentActorBytes = persistentActorBytes;
+        this.deltaEncoded = deltaEncoded;
+        this.persistentActorDeltaBytes = persistentActorDeltaBytes;
         this.message = message;
         this.eventListener = eventListener;
     }
@@ -71,6 +90,19 @@ public final class PersistentActorUpdateEvent implements ThreadBoundEvent<Intege
         return persistentActorBytes;
     }
 
+    public boolean isDeltaEncoded() {
+        return deltaEncoded;
+    }
+
+    @Nullable
+    public ByteBuffer getPersistentActorDeltaBytes() {
+        return persistentActorDeltaBytes;
+    }
+
+    public boolean isDelete() {
+        return persistentActorBytes == null && persistentActorDeltaBytes == null;
+    }
+
     @Nullable
     public InternalMessage getMessage() {
         return message;
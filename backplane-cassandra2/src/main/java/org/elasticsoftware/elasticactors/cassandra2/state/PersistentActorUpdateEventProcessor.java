@@ -21,11 +21,17 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
 
+import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static com.datastax.driver.core.BatchStatement.Type.UNLOGGED;
 import static java.lang.String.format;
 import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.elasticsoftware.elasticactors.cassandra2.util.ExecutionUtils.executeAsyncWithRetry;
 import static org.elasticsoftware.elasticactors.cassandra2.util.ExecutionUtils.executeWithRetry;
 
 /**
@@ -40,13 +46,22 @@ public final class PersistentActorUpdateEventProcessor implements ThreadBoundEve
     private final PreparedStatement deleteStatement;
     private final Map<Integer,PreparedStatement> batchStatements = new HashMap<>();
     private final boolean optimizedV1Batches;
+    private final PersistentActorUpdateStatistics statistics;
 
     public PersistentActorUpdateEventProcessor(Session cassandraSession, int maxBatchSize) {
         this(cassandraSession, maxBatchSize, true);
     }
 
     public PersistentActorUpdateEventProcessor(Session cassandraSession, int maxBatchSize, boolean optimizedV1Batches) {
+        this(cassandraSession, maxBatchSize, optimizedV1Batches, new PersistentActorUpdateStatistics());
+    }
+
+    public PersistentActorUpdateEventProcessor(Session cassandraSession,
+                                               int maxBatchSize,
+                                               boolean optimizedV1Batches,
+                                               PersistentActorUpdateStatistics statistics) {
         this.cassandraSession = cassandraSession;
+        this.statistics = statistics;
         this.insertStatement = cassandraSession.prepare(INSERT_QUERY);
         this.deleteStatement = cassandraSession.prepare(DELETE_QUERY);
         if(optimizedV1Batches) {
@@ -82,53 +97,145 @@ public final class PersistentActorUpdateEventProcessor implements ThreadBoundEve
     }
 
     @Override
-    public void process(List<PersistentActorUpdateEvent> events) {
-        Exception executionException = null;
+    public void process(List<PersistentActorUpdateEvent> allEvents) {
         final long startTime = currentTimeMillis();
-        try {
-            // optimized to use the prepared statement
-            if(events.size() == 1) {
-                PersistentActorUpdateEvent event = events.get(0);
-                BoundStatement boundStatement;
-                if(event.getPersistentActorBytes() != null) {
-                    boundStatement = insertStatement.bind(event.getRowKey()[0], event.getRowKey()[1], event.getPersistentActorId(), event.getPersistentActorBytes());
-                } else {
-                    // it's a delete
-                    boundStatement = deleteStatement.bind(event.getRowKey()[0], event.getRowKey()[1], event.getPersistentActorId());
-                }
-                // execute the statement
-                executeWithRetry(cassandraSession, boundStatement, logger);
+        // a worker serves multiple shards, but a batch should only contain updates of a single partition
+        final Collection<List<PersistentActorUpdateEvent>> partitions = partition(allEvents);
+        if(partitions.size() > 1 && !isProtocolV1()) {
+            executeConcurrently(partitions);
+        } else {
+            // only the latest state of each actor needs to be written, the listeners of all events are still called
+            final List<PersistentActorUpdateEvent> events = coalesce(allEvents);
+            Exception executionException = null;
+            final long batchStartTime = nanoTime();
+            try {
+                execute(events);
+            } catch(Exception e) {
+                executionException = e;
+            } finally {
+                statistics.record(events.size(), NANOSECONDS.toMicros(nanoTime() - batchStartTime));
+                notifyListeners(allEvents, executionException);
+            }
+        }
+        // add some trace info
+        if(logger.isTraceEnabled()) {
+            final long endTime = currentTimeMillis();
+            logger.trace(format("Updating %d event(s) in %d partition(s) took %d msecs",allEvents.size(),partitions.size(),endTime-startTime));
+        }
+    }
+
+    private void execute(List<PersistentActorUpdateEvent> events) {
+        // optimized to use the prepared statement
+        if(events.size() == 1 && !events.get(0).isDeltaEncoded()) {
+            executeWithRetry(cassandraSession, createStatement(events.get(0)), logger);
+        } else if(isProtocolV1() && events.stream().noneMatch(PersistentActorUpdateEvent::isDeltaEncoded)) {
+            // delta encoded actors write two cells per update, which needs a BatchStatement
+            if(this.optimizedV1Batches) {
+                executeBatchV1Optimized(events);
             } else {
-                // check the protocol to see if BatchStatements are supported
-                ProtocolVersion protocolVersion = cassandraSession.getCluster().getConfiguration().getProtocolOptions().getProtocolVersion();
-                if(ProtocolVersion.V1.equals(protocolVersion)) {
-                    if(this.optimizedV1Batches) {
-                        executeBatchV1Optimized(events);
-                    } else {
-                        executeBatchV1(events);
-                    }
-                } else {
-                    executeBatchV2AndUp(events);
-                }
+                executeBatchV1(events);
             }
-        } catch(Exception e) {
-            executionException = e;
-        } finally {
-            for (PersistentActorUpdateEvent event : events) {
-                if(event.getEventListener() != null) {
-                    if (executionException == null) {
-                        event.getEventListener().onDone(event.getMessage());
-                    } else {
-                        event.getEventListener().onError(event.getMessage(), executionException);
-                    }
+        } else {
+            executeWithRetry(cassandraSession, createBatchStatement(events), logger);
+        }
+    }
+
+    /**
+     * Writes every partition as a separate (single partition) batch, all partitions are written concurrently. The
+     * listeners are notified per partition, a failure of one partition doesn't fail the updates of the others. This
+     * method waits for all writes to finish: the next batch may contain newer updates of the same actors.
+     */
+    private void executeConcurrently(Collection<List<PersistentActorUpdateEvent>> partitions) {
+        final List<CompletableFuture<ResultSet>> results = new ArrayList<>(partitions.size());
+        for (List<PersistentActorUpdateEvent> partitionEvents : partitions) {
+            final List<PersistentActorUpdateEvent> events = coalesce(partitionEvents);
+            final Statement statement = events.size() == 1 && !events.get(0).isDeltaEncoded()
+                    ? createStatement(events.get(0))
+                    : createBatchStatement(events);
+            final long batchStartTime = nanoTime();
+            results.add(executeAsyncWithRetry(cassandraSession, statement, logger).whenComplete((resultSet, throwable) ->
+                    statistics.record(events.size(), NANOSECONDS.toMicros(nanoTime() - batchStartTime))));
+        }
+        int i = 0;
+        for (List<PersistentActorUpdateEvent> partitionEvents : partitions) {
+            Exception executionException = null;
+            try {
+                results.get(i++).join();
+            } catch(CompletionException e) {
+                executionException = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            } catch(Exception e) {
+                executionException = e;
+            }
+            notifyListeners(partitionEvents, executionException);
+        }
+    }
+
+    private void notifyListeners(List<PersistentActorUpdateEvent> events, @Nullable Exception executionException) {
+        for (PersistentActorUpdateEvent event : events) {
+            if(event.getEventListener() != null) {
+                if (executionException == null) {
+                    event.getEventListener().onDone(event.getMessage());
+                } else {
+                    event.getEventListener().onError(event.getMessage(), executionException);
                 }
             }
-            // add some trace info
-            if(logger.isTraceEnabled()) {
-                final long endTime = currentTimeMillis();
-                logger.trace(format("Updating %d Actor state entrie(s) took %d msecs",events.size(),endTime-startTime));
+        }
+    }
+
+    private boolean isProtocolV1() {
+        // check the protocol to see if BatchStatements are supported
+        ProtocolVersion protocolVersion = cassandraSession.getCluster().getConfiguration().getProtocolOptions().getProtocolVersion();
+        return ProtocolVersion.V1.equals(protocolVersion);
+    }
+
+    /**
+     * Groups the events by partition (rowKey), in order of the first occurrence of every partition.
+     */
+    static Collection<List<PersistentActorUpdateEvent>> partition(List<PersistentActorUpdateEvent> events) {
+        if(events.size() <= 1) {
+            return Collections.singletonList(events);
+        }
+        Map<List<String>,List<PersistentActorUpdateEvent>> partitions = new LinkedHashMap<>();
+        for (PersistentActorUpdateEvent event : events) {
+            partitions.computeIfAbsent(Arrays.asList(event.getRowKey()), key -> new ArrayList<>()).add(event);
+        }
+        return partitions.size() == 1 ? Collections.singletonList(events) : partitions.values();
+    }
+
+    /**
+     * Removes all but the last event for every (rowKey, persistentActorId) combination. When the same actor is
+     * updated multiple times within one batch only the latest state (or delete) needs to be written. This also avoids
+     * writing multiple mutations for the same cell with the same timestamp in one batch.
+     *
+     * A delta of a delta encoded actor is relative to the last snapshot, so when a snapshot is followed by a delta
+     * within the same batch both need to be written: the snapshot is merged into the event of the delta.
+     *
+     * @param events    the events as they were handed to this processor
+     * @return          the events that need to be written, in order of their last occurrence
+     */
+    static List<PersistentActorUpdateEvent> coalesce(List<PersistentActorUpdateEvent> events) {
+        if(events.size() <= 1) {
+            return events;
+        }
+        Map<List<String>,PersistentActorUpdateEvent> latestEvents = new LinkedHashMap<>();
+        boolean merged = false;
+        for (PersistentActorUpdateEvent event : events) {
+            List<String> key = Arrays.asList(event.getRowKey()[0], event.getRowKey()[1], event.getPersistentActorId());
+            // remove first to move the entry to the position of the latest event
+            PersistentActorUpdateEvent previous = latestEvents.remove(key);
+            if(previous != null && isDeltaOnly(event) && previous.getPersistentActorBytes() != null) {
+                event = new PersistentActorUpdateEvent(event.getRowKey(), event.getShardKey(), event.getPersistentActorId(),
+                        previous.getPersistentActorBytes(), true, event.getPersistentActorDeltaBytes(),
+                        event.getMessage(), event.getEventListener());
+                merged = true;
             }
+            latestEvents.put(key, event);
         }
+        return latestEvents.size() == events.size() && !merged ? events : new ArrayList<>(latestEvents.values());
+    }
+
+    private static boolean isDeltaOnly(PersistentActorUpdateEvent event) {
+        return event.isDeltaEncoded() && event.getPersistentActorBytes() == null && event.getPersistentActorDeltaBytes() != null;
     }
 
     private void executeBatchV1(List<PersistentActorUpdateEvent> events) {
@@ -189,19 +296,33 @@ public final class PersistentActorUpdateEventProcessor implements ThreadBoundEve
         }
     }
 
-    private void executeBatchV2AndUp(List<PersistentActorUpdateEvent> events) {
+    private BoundStatement createStatement(PersistentActorUpdateEvent event) {
+        if(event.getPersistentActorBytes() != null) {
+            return insertStatement.bind(event.getRowKey()[0], event.getRowKey()[1], event.getPersistentActorId(), event.getPersistentActorBytes());
+        } else {
+            // it's a delete
+            return deleteStatement.bind(event.getRowKey()[0], event.getRowKey()[1], event.getPersistentActorId());
+        }
+    }
+
+    private BatchStatement createBatchStatement(List<PersistentActorUpdateEvent> events) {
         BatchStatement batchStatement = new BatchStatement(UNLOGGED);
         for (PersistentActorUpdateEvent event : events) {
             if (event.getPersistentActorBytes() != null) {
                 batchStatement.add(insertStatement.bind(event.getRowKey()[0], event.getRowKey()[1], event.getPersistentActorId(), event.getPersistentActorBytes()));
-            } else {
-                // it's a delete
+            } else if (event.isDelete()) {
                 batchStatement.add(deleteStatement.bind(event.getRowKey()[0], event.getRowKey()[1], event.getPersistentActorId()));
             }
+            if (event.isDeltaEncoded()) {
+                // the delta lives in the same partition, so the snapshot and delta are updated atomically
+                final String deltaId = CassandraPersistentActorRepository.deltaId(event.getPersistentActorId());
+                if (event.getPersistentActorDeltaBytes() != null) {
+                    batchStatement.add(insertStatement.bind(event.getRowKey()[0], event.getRowKey()[1], deltaId, event.getPersistentActorDeltaBytes()));
+                } else if (event.isDelete()) {
+                    batchStatement.add(deleteStatement.bind(event.getRowKey()[0], event.getRowKey()[1], deltaId));
+                }
+            }
         }
-        executeWithRetry(cassandraSession, batchStatement, logger);
+        return batchStatement;
     }
-
-
-
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cassandra2.state;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.cassandra2.util.Histogram;
+
+import javax.annotation.Nullable;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static java.lang.String.format;
+
+/**
+ * Distributions of the single partition batches written by the {@link PersistentActorUpdateEventProcessor}: the
+ * number of actors per batch and the time it took to write the batch. Exposed through JMX by
+ * {@link #register(String)} as a standard MBean.
+ */
+public final class PersistentActorUpdateStatistics implements PersistentActorUpdateStatisticsMBean {
+    private static final Logger logger = LogManager.getLogger(PersistentActorUpdateStatistics.class);
+    private final Histogram batchSizes = new Histogram();
+    private final Histogram latencies = new Histogram();
+    @Nullable
+    private ObjectName objectName;
+
+    /**
+     * Registers the statistics with the platform MBeanServer as
+     * {@code org.elasticsoftware.elasticactors:type=PersistentActorUpdateStatistics,cluster=<clusterName>}. Failing
+     * to register only logs a warning, the statistics are still recorded.
+     */
+    public synchronized void register(String clusterName) {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(format("org.elasticsoftware.elasticactors:type=PersistentActorUpdateStatistics,cluster=%s",
+                    ObjectName.quote(clusterName)));
+            mBeanServer.registerMBean(this, name);
+            this.objectName = name;
+        } catch (JMException e) {
+            logger.warn(format("Unable to register the PersistentActorUpdateStatistics MBean for cluster %s", clusterName), e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.warn(format("Unable to unregister MBean %s", objectName), e);
+            } finally {
+                objectName = null;
+            }
+        }
+    }
+
+    public void record(int batchSize, long latencyInMicros) {
+        batchSizes.record(batchSize);
+        latencies.record(latencyInMicros);
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batchSizes.getCount();
+    }
+
+    @Override
+    public double getMeanBatchSize() {
+        return batchSizes.getMean();
+    }
+
+    @Override
+    public long getBatchSize99thPercentile() {
+        return batchSizes.getPercentile(0.99d);
+    }
+
+    @Override
+    public long getMaxBatchSize() {
+        return batchSizes.getMax();
+    }
+
+    @Override
+    public long[] getBatchSizeHistogram() {
+        return batchSizes.getBuckets();
+    }
+
+    @Override
+    public double getMeanLatencyInMicros() {
+        return latencies.getMean();
+    }
+
+    @Override
+    public long getLatency50thPercentileInMicros() {
+        return latencies.getPercentile(0.5d);
+    }
+
+    @Override
+    public long getLatency99thPercentileInMicros() {
+        return latencies.getPercentile(0.99d);
+    }
+
+    @Override
+    public long getMaxLatencyInMicros() {
+        return latencies.getMax();
+    }
+
+    @Override
+    public long[] getLatencyHistogramInMicros() {
+        return latencies.getBuckets();
+    }
+
+    @Override
+    public void reset() {
+        batchSizes.reset();
+        latencies.reset();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cassandra2.state;
+
+/**
+ * JMX view of the {@link PersistentActorUpdateStatistics}, histograms have power of two buckets (see
+ * {@link org.elasticsoftware.elasticactors.cassandra2.util.Histogram}).
+ */
+public interface PersistentActorUpdateStatisticsMBean {
+    long getBatchCount();
+
+    double getMeanBatchSize();
+
+    long getBatchSize99thPercentile();
+
+    long getMaxBatchSize();
+
+    long[] getBatchSizeHistogram();
+
+    double getMeanLatencyInMicros();
+
+    long getLatency50thPercentileInMicros();
+
+    long getLatency99thPercentileInMicros();
+
+    long getMaxLatencyInMicros();
+
+    long[] getLatencyHistogramInMicros();
+
+    void reset();
+}
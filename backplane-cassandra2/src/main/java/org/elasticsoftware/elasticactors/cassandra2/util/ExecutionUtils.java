@@ -17,12 +17,14 @@
 package org.elasticsoftware.elasticactors.cassandra2.util;
 
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.exceptions.*;
 import org.apache.logging.log4j.Logger;
 
 import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
 
 import static java.lang.String.format;
 
@@ -54,4 +56,50 @@ public final class ExecutionUtils {
         logger.error(format("Failed to execute Statement after %d attempts, throwing latest exception %s", attempts, latestException.getClass().getSimpleName()));
         throw latestException;
     }
+
+    /**
+     * Asynchronous version of {@link #executeWithRetry(Session, Statement, Logger)}, retries the same failures on
+     * the driver's I/O thread instead of blocking the calling thread.
+     *
+     * @param cassandraSession
+     * @param statement
+     * @param logger
+     * @return
+     */
+    public static CompletableFuture<ResultSet> executeAsyncWithRetry(Session cassandraSession, Statement statement, Logger logger) {
+        CompletableFuture<ResultSet> result = new CompletableFuture<>();
+        executeAsyncWithRetry(cassandraSession, statement, logger, 1, result);
+        return result;
+    }
+
+    private static void executeAsyncWithRetry(Session cassandraSession, Statement statement, Logger logger,
+                                              int attempts, CompletableFuture<ResultSet> result) {
+        final ResultSetFuture resultSetFuture;
+        try {
+            resultSetFuture = cassandraSession.executeAsync(statement);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        resultSetFuture.addListener(() -> {
+            try {
+                result.complete(resultSetFuture.getUninterruptibly());
+            } catch (ConnectionException | OverloadedException | QueryConsistencyException | BootstrappingException e) {
+                if (attempts <= 3) {
+                    logger.warn(format("%s on node %s while executing statement, retry attempt %d", e.getClass().getSimpleName(), e.getHost(), attempts));
+                    executeAsyncWithRetry(cassandraSession, statement, logger, attempts + 1, result);
+                } else {
+                    logger.error(format("Failed to execute Statement after %d attempts, throwing latest exception %s", attempts, e.getClass().getSimpleName()));
+                    result.completeExceptionally(e);
+                }
+            } catch (UnavailableException e) {
+                logger.error(format("node %s is reporting not enough replicas available, will not retry", e.getHost()));
+                result.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                InetAddress node = (e instanceof CoordinatorException) ? ((CoordinatorException) e).getHost() : null;
+                logger.error(format("%s on node %s while executing statement, will not retry", e.getClass().getSimpleName(), node));
+                result.completeExceptionally(e);
+            }
+        }, Runnable::run);
+    }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cassandra2.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of non negative values with power of two buckets: bucket {@code i} counts the values in
+ * {@code [2^(i-1), 2^i)} and bucket 0 counts zero. Percentiles are reported as the upper bound of their bucket.
+ */
+public final class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        long normalizedValue = Math.max(0L, value);
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(normalizedValue));
+        count.incrementAndGet();
+        sum.addAndGet(normalizedValue);
+        max.accumulateAndGet(normalizedValue, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMean() {
+        long currentCount = count.get();
+        return currentCount == 0 ? 0.0d : (double) sum.get() / currentCount;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile    between 0.0 and 1.0
+     * @return              the upper bound of the bucket that contains the percentile, 0 when nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = getBuckets();
+        long total = Arrays.stream(counts).sum();
+        long threshold = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= threshold && seen > 0) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * @return  the bucket counts, up to the highest non empty bucket
+     */
+    public long[] getBuckets() {
+        int length = buckets.length();
+        while (length > 0 && buckets.get(length - 1) == 0) {
+            length--;
+        }
+        long[] counts = new long[length];
+        for (int i = 0; i < length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == 0 ? 0L : bucket == 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
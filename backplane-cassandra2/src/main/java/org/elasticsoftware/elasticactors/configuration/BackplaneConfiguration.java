@@ -23,23 +23,34 @@ import com.datastax.driver.core.policies.LoggingRetryPolicy;
 import com.datastax.driver.core.policies.RoundRobinPolicy;
 import org.elasticsoftware.elasticactors.cassandra2.cluster.CassandraActorSystemEventListenerRepository;
 import org.elasticsoftware.elasticactors.cassandra2.cluster.scheduler.CassandraScheduledMessageRepository;
+import org.elasticsoftware.elasticactors.cassandra2.cluster.scheduler.ScheduledMessageUpdateEventProcessor;
 import org.elasticsoftware.elasticactors.cassandra2.health.CassandraHealthCheck;
 import org.elasticsoftware.elasticactors.cassandra2.serialization.CompressingSerializer;
 import org.elasticsoftware.elasticactors.cassandra2.serialization.DecompressingDeserializer;
 import org.elasticsoftware.elasticactors.cassandra2.state.CassandraPersistentActorRepository;
 import org.elasticsoftware.elasticactors.cassandra2.state.PersistentActorUpdateEventProcessor;
+import org.elasticsoftware.elasticactors.cassandra2.state.PersistentActorUpdateStatistics;
 import org.elasticsoftware.elasticactors.cluster.ActorRefFactory;
 import org.elasticsoftware.elasticactors.cluster.ActorSystemEventListenerRepository;
 import org.elasticsoftware.elasticactors.cluster.InternalActorSystems;
 import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageRepository;
 import org.elasticsoftware.elasticactors.serialization.Deserializer;
 import org.elasticsoftware.elasticactors.serialization.Serializer;
+import org.elasticsoftware.elasticactors.serialization.compression.CompressionCodec;
+import org.elasticsoftware.elasticactors.serialization.compression.CompressionCodecs;
+import org.elasticsoftware.elasticactors.serialization.compression.Lz4CompressionCodec;
+import org.elasticsoftware.elasticactors.serialization.compression.ZstdCompressionCodec;
+import org.elasticsoftware.elasticactors.serialization.compression.ZstdDictionaryRegistry;
 import org.elasticsoftware.elasticactors.serialization.internal.ActorRefDeserializer;
 import org.elasticsoftware.elasticactors.serialization.internal.PersistentActorDeserializer;
 import org.elasticsoftware.elasticactors.serialization.internal.PersistentActorSerializer;
 import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageDeserializer;
+import org.elasticsoftware.elasticactors.state.OffHeapCachingPersistentActorRepository;
+import org.elasticsoftware.elasticactors.state.PersistentActorDeltaEncoder;
 import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
 import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.MpscBlockingQueue;
+import org.elasticsoftware.elasticactors.util.concurrent.OverflowPolicy;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutorImpl;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -50,6 +61,8 @@ import org.springframework.util.StringUtils;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
 import java.util.Set;
 
 /**
@@ -111,25 +124,93 @@ public class BackplaneConfiguration {
         this.cassandraSession.getCluster().close();
     }
 
+    @Bean(name = {"persistentActorUpdateStatistics"}, destroyMethod = "unregister")
+    public PersistentActorUpdateStatistics createPersistentActorUpdateStatistics() {
+        PersistentActorUpdateStatistics statistics = new PersistentActorUpdateStatistics();
+        statistics.register(cluster.getClusterName());
+        return statistics;
+    }
+
     @Bean(name = {"asyncUpdateExecutor"}, destroyMethod = "shutdown")
-    public ThreadBoundExecutor createAsyncUpdateExecutor() {
+    public ThreadBoundExecutor createAsyncUpdateExecutor(PersistentActorUpdateStatistics statistics) {
         final int workers = env.getProperty("ea.asyncUpdateExecutor.workerCount",Integer.class,Runtime.getRuntime().availableProcessors() * 3);
         final int batchSize = env.getProperty("ea.asyncUpdateExecutor.batchSize",Integer.class,20);
         final boolean optimizedV1Batches = env.getProperty("ea.asyncUpdateExecutor.optimizedV1Batches", Boolean.TYPE, true);
-        return new ThreadBoundExecutorImpl(new PersistentActorUpdateEventProcessor(cassandraSession, batchSize, optimizedV1Batches),batchSize,new DaemonThreadFactory("UPDATE-EXECUTOR-WORKER"),workers);
+        final boolean useMpscQueue = env.getProperty("ea.asyncUpdateExecutor.useMpscQueue", Boolean.TYPE, false);
+        if(useMpscQueue) {
+            return new ThreadBoundExecutorImpl(new PersistentActorUpdateEventProcessor(cassandraSession, batchSize, optimizedV1Batches, statistics),batchSize,new DaemonThreadFactory("UPDATE-EXECUTOR-WORKER"),workers,0,OverflowPolicy.BLOCK,MpscBlockingQueue::new);
+        }
+        return new ThreadBoundExecutorImpl(new PersistentActorUpdateEventProcessor(cassandraSession, batchSize, optimizedV1Batches, statistics),batchSize,new DaemonThreadFactory("UPDATE-EXECUTOR-WORKER"),workers);
+    }
+
+    @Bean(name = {"persistentActorZstdCompressionCodec"})
+    public ZstdCompressionCodec createPersistentActorZstdCompressionCodec() throws IOException {
+        // also used when compressing with lz4: state written with zstd stays readable after switching back
+        final int level = env.getProperty("ea.persistentActorRepository.compression.zstd.level",Integer.class,3);
+        // the dictionaries are needed to read the state back: the directory must be durable and shared by all nodes,
+        // without one no dictionaries are used
+        final String dictionaryDirectory = env.getProperty("ea.persistentActorRepository.compression.zstd.dictionaryDirectory");
+        // online training of the dictionaries from the persisted actors, disabled by default
+        final int trainingSampleSize = isZstdCompression() ? env.getProperty("ea.persistentActorRepository.compression.zstd.trainingSampleSize",Integer.class,0) : 0;
+        final int dictionarySize = env.getProperty("ea.persistentActorRepository.compression.zstd.dictionarySize",Integer.class,16 * 1024);
+        return new ZstdCompressionCodec(ZstdDictionaryRegistry.open(dictionaryDirectory != null ? new File(dictionaryDirectory) : null,
+                level, trainingSampleSize, dictionarySize), level);
+    }
+
+    private boolean isZstdCompression() {
+        return "zstd".equalsIgnoreCase(env.getProperty("ea.persistentActorRepository.compression.codec","lz4"));
     }
 
     @Bean(name = {"persistentActorRepository"})
-    public PersistentActorRepository getPersistentActorRepository(@Qualifier("asyncUpdateExecutor") ThreadBoundExecutor asyncUpdateExecutor) {
-        final Integer compressionThreshold = env.getProperty("ea.persistentActorRepository.compressionThreshold",Integer.class, 512);
-        Serializer serializer = new CompressingSerializer<>(new PersistentActorSerializer(cluster),compressionThreshold);
-        Deserializer deserializer = new DecompressingDeserializer<>(new PersistentActorDeserializer(actorRefFactory,cluster));
-        return new CassandraPersistentActorRepository(cassandraSession, cluster.getClusterName(), asyncUpdateExecutor, serializer, deserializer);
+    public PersistentActorRepository getPersistentActorRepository(@Qualifier("asyncUpdateExecutor") ThreadBoundExecutor asyncUpdateExecutor,
+                                                                  @Qualifier("persistentActorZstdCompressionCodec") ZstdCompressionCodec zstdCompressionCodec) {
+        // zstd with a trained dictionary per actor class, lz4 by default
+        final CompressionCodec compressionCodec = isZstdCompression() ? zstdCompressionCodec : Lz4CompressionCodec.INSTANCE;
+        // dictionaries make small states compressible, so the default threshold is much lower for zstd
+        final Integer compressionThreshold = env.getProperty("ea.persistentActorRepository.compressionThreshold",Integer.class,
+                compressionCodec instanceof ZstdCompressionCodec ? 64 : 512);
+        final PersistentActorRepository persistentActorRepository;
+        // optional delta encoding: only a diff against the last snapshot is written for most updates, disabled by default
+        if(env.getProperty("ea.persistentActorRepository.delta.enabled",Boolean.class,Boolean.FALSE)) {
+            // setting maximumDeltas to 0 writes a snapshot on every update while existing deltas are still read
+            final int maximumDeltas = env.getProperty("ea.persistentActorRepository.delta.maximumDeltas",Integer.class,100);
+            final double maximumDeltaRatio = env.getProperty("ea.persistentActorRepository.delta.maximumDeltaRatio",Double.class,0.5d);
+            final long snapshotCacheSize = env.getProperty("ea.persistentActorRepository.delta.snapshotCacheSize",Long.class,64L * 1024 * 1024);
+            PersistentActorDeltaEncoder deltaEncoder = new PersistentActorDeltaEncoder(new PersistentActorSerializer(cluster),
+                    new PersistentActorDeserializer(actorRefFactory,cluster), maximumDeltas, maximumDeltaRatio, snapshotCacheSize);
+            // the actor class isn't known when compressing the snapshots and deltas, so zstd doesn't use a dictionary
+            persistentActorRepository = new CassandraPersistentActorRepository(cassandraSession, cluster.getClusterName(), asyncUpdateExecutor,
+                    deltaEncoder, new CompressingSerializer<>(bytes -> bytes, compressionThreshold, compressionCodec, bytes -> null),
+                    new DecompressingDeserializer<>(bytes -> bytes, CompressionCodecs.decompressionCodecs(zstdCompressionCodec)), 200);
+        } else {
+            Serializer serializer = new CompressingSerializer<>(new PersistentActorSerializer(cluster),compressionThreshold,
+                    compressionCodec, actor -> actor.getActorClass().getName());
+            Deserializer deserializer = new DecompressingDeserializer<>(new PersistentActorDeserializer(actorRefFactory,cluster),
+                    CompressionCodecs.decompressionCodecs(zstdCompressionCodec));
+            persistentActorRepository = new CassandraPersistentActorRepository(cassandraSession, cluster.getClusterName(), asyncUpdateExecutor, serializer, deserializer);
+        }
+        // optional off-heap second level cache for the serialized actors, disabled by default
+        final Long offHeapCacheSize = env.getProperty("ea.persistentActorRepository.offHeapCache.maximumSize",Long.class,0L);
+        if(offHeapCacheSize > 0) {
+            return new OffHeapCachingPersistentActorRepository(persistentActorRepository,
+                    new PersistentActorSerializer(cluster), new PersistentActorDeserializer(actorRefFactory,cluster), offHeapCacheSize);
+        }
+        return persistentActorRepository;
+    }
+
+    @Bean(name = {"scheduledMessageUpdateExecutor"}, destroyMethod = "shutdown")
+    public ThreadBoundExecutor createScheduledMessageUpdateExecutor() {
+        final int workers = env.getProperty("ea.scheduledMessageUpdateExecutor.workerCount",Integer.class,Runtime.getRuntime().availableProcessors());
+        final int batchSize = env.getProperty("ea.scheduledMessageUpdateExecutor.batchSize",Integer.class,20);
+        return new ThreadBoundExecutorImpl(new ScheduledMessageUpdateEventProcessor(cassandraSession),batchSize,new DaemonThreadFactory("SCHEDULED-MESSAGE-UPDATE-WORKER"),workers);
     }
 
     @Bean(name = {"scheduledMessageRepository"})
-    public ScheduledMessageRepository getScheduledMessageRepository() {
-        return new CassandraScheduledMessageRepository(cluster.getClusterName(), cassandraSession, new ScheduledMessageDeserializer(new ActorRefDeserializer(actorRefFactory)));
+    public ScheduledMessageRepository getScheduledMessageRepository(@Qualifier("scheduledMessageUpdateExecutor") ThreadBoundExecutor scheduledMessageUpdateExecutor) {
+        // creates and deletes are batched on the executor, set waitForWrites to only return once they are durable
+        final boolean waitForWrites = env.getProperty("ea.scheduledMessageRepository.waitForWrites",Boolean.class,Boolean.FALSE);
+        return new CassandraScheduledMessageRepository(cluster.getClusterName(), cassandraSession,
+                new ScheduledMessageDeserializer(new ActorRefDeserializer(actorRefFactory)), scheduledMessageUpdateExecutor, waitForWrites);
     }
 
     @Bean(name = {"actorSystemEventListenerRepository"})
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cassandra2.cluster.scheduler;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.elasticsoftware.elasticactors.cassandra2.cluster.scheduler.ScheduledMessageUpdateEventProcessor.DELETE_QUERY;
+import static org.elasticsoftware.elasticactors.cassandra2.cluster.scheduler.ScheduledMessageUpdateEventProcessor.INSERT_QUERY;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class ScheduledMessageUpdateEventProcessorTest {
+    private final ShardKey shardKey = new ShardKey("test", 0);
+    private final ShardKey otherShardKey = new ShardKey("test", 1);
+    private Session session;
+    private PreparedStatement insertStatement;
+    private PreparedStatement deleteStatement;
+
+    @BeforeMethod
+    public void setUp() {
+        session = mock(Session.class);
+        insertStatement = mock(PreparedStatement.class);
+        deleteStatement = mock(PreparedStatement.class);
+        BoundStatement boundStatement = mock(BoundStatement.class);
+        when(session.prepare(INSERT_QUERY)).thenReturn(insertStatement);
+        when(session.prepare(DELETE_QUERY)).thenReturn(deleteStatement);
+        when(insertStatement.bind(any())).thenReturn(boundStatement);
+        when(deleteStatement.bind(any())).thenReturn(boundStatement);
+    }
+
+    @Test
+    public void testOneBatchPerPartition() {
+        ResultSetFuture success = completedFuture(null);
+        when(session.executeAsync(any(Statement.class))).thenReturn(success);
+        ScheduledMessageUpdateEventProcessor processor = new ScheduledMessageUpdateEventProcessor(session);
+        ScheduledMessageUpdateEvent first = createEvent(shardKey, UUID.randomUUID(), true, new CompletableFuture<>());
+        ScheduledMessageUpdateEvent second = createEvent(otherShardKey, UUID.randomUUID(), true, new CompletableFuture<>());
+        ScheduledMessageUpdateEvent third = createEvent(shardKey, UUID.randomUUID(), false, new CompletableFuture<>());
+
+        processor.process(Arrays.asList(first, second, third));
+
+        ArgumentCaptor<Statement> statements = ArgumentCaptor.forClass(Statement.class);
+        verify(session, times(2)).executeAsync(statements.capture());
+        assertTrue(statements.getAllValues().get(0) instanceof BatchStatement);
+        assertEquals(((BatchStatement) statements.getAllValues().get(0)).size(), 2);
+        assertTrue(statements.getAllValues().get(1) instanceof BoundStatement);
+        assertTrue(first.getFuture().isDone() && !first.getFuture().isCompletedExceptionally());
+        assertTrue(second.getFuture().isDone() && !second.getFuture().isCompletedExceptionally());
+        assertTrue(third.getFuture().isDone() && !third.getFuture().isCompletedExceptionally());
+    }
+
+    @Test
+    public void testFailureOnlyFailsItsPartition() {
+        ResultSetFuture success = completedFuture(null);
+        ResultSetFuture failure = completedFuture(new RuntimeException("write failed"));
+        when(session.executeAsync(any(Statement.class))).thenReturn(failure, success);
+        ScheduledMessageUpdateEventProcessor processor = new ScheduledMessageUpdateEventProcessor(session);
+        ScheduledMessageUpdateEvent failed = createEvent(shardKey, UUID.randomUUID(), true, new CompletableFuture<>());
+        ScheduledMessageUpdateEvent succeeded = createEvent(otherShardKey, UUID.randomUUID(), true, new CompletableFuture<>());
+        ScheduledMessageUpdateEvent flush = new ScheduledMessageUpdateEvent(rowKey(shardKey), shardKey, 0L, null, null, new CompletableFuture<>());
+
+        processor.process(Arrays.asList(failed, succeeded, flush));
+
+        assertTrue(failed.getFuture().isCompletedExceptionally());
+        assertTrue(succeeded.getFuture().isDone() && !succeeded.getFuture().isCompletedExceptionally());
+        // the flush itself doesn't write anything
+        assertTrue(flush.getFuture().isDone());
+        verify(session, times(2)).executeAsync(any(Statement.class));
+    }
+
+    @Test
+    public void testCreateAndDeleteOfSameMessageOnlyDeletes() {
+        UUID id = UUID.randomUUID();
+        ScheduledMessageUpdateEvent create = createEvent(shardKey, id, true, null);
+        ScheduledMessageUpdateEvent other = createEvent(shardKey, UUID.randomUUID(), true, null);
+        ScheduledMessageUpdateEvent delete = createEvent(shardKey, id, false, null);
+
+        List<ScheduledMessageUpdateEvent> coalesced = ScheduledMessageUpdateEventProcessor.coalesce(Arrays.asList(create, other, delete));
+
+        assertEquals(coalesced.size(), 2);
+        assertSame(coalesced.get(0), other);
+        assertSame(coalesced.get(1), delete);
+    }
+
+    private ScheduledMessageUpdateEvent createEvent(ShardKey shardKey, UUID id, boolean create, CompletableFuture<Void> future) {
+        return new ScheduledMessageUpdateEvent(rowKey(shardKey), shardKey, 1000L, id,
+                create ? ByteBuffer.wrap(new byte[] {1, 2, 3}) : null, future);
+    }
+
+    private String[] rowKey(ShardKey shardKey) {
+        return new String[] {"test", shardKey.toString()};
+    }
+
+    private ResultSetFuture completedFuture(RuntimeException failure) {
+        ResultSetFuture future = mock(ResultSetFuture.class);
+        if (failure != null) {
+            when(future.getUninterruptibly()).thenThrow(failure);
+        } else {
+            when(future.getUninterruptibly()).thenReturn(mock(ResultSet.class));
+        }
+        doAnswer(invocation -> {
+            ((Executor) invocation.getArgument(1)).execute(invocation.getArgument(0));
+            return null;
+        }).when(future).addListener(any(Runnable.class), any(Executor.class));
+        return future;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cassandra2.state;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.serialization.Deserializer;
+import org.elasticsoftware.elasticactors.serialization.Serializer;
+import org.elasticsoftware.elasticactors.state.PersistentActor;
+import org.elasticsoftware.elasticactors.state.PersistentActorDeltaEncoder;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
+
+public class CassandraPersistentActorRepositoryTest {
+
+    @Test
+    public void testGetAllUsesInQueriesOfLimitedSize() throws Exception {
+        ShardKey shardKey = new ShardKey("test", 0);
+        Session session = mock(Session.class);
+        PreparedStatement selectAllStatement = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenReturn(mock(PreparedStatement.class));
+        when(session.prepare(startsWith("select column1, value"))).thenReturn(selectAllStatement);
+        when(selectAllStatement.bind(any())).thenReturn(mock(BoundStatement.class));
+        Row row = mock(Row.class);
+        ByteBuffer bytes = ByteBuffer.allocate(0);
+        when(row.getString(0)).thenReturn("actor-1");
+        when(row.getBytes(1)).thenReturn(bytes);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.iterator()).thenReturn(Collections.singletonList(row).iterator(), Collections.<Row>emptyIterator());
+        when(session.execute(any(BoundStatement.class))).thenReturn(resultSet);
+        Deserializer deserializer = mock(Deserializer.class);
+        PersistentActor persistentActor = new PersistentActor<>(shardKey, null, null, null, null, null);
+        when(deserializer.deserialize(bytes)).thenReturn(persistentActor);
+
+        CassandraPersistentActorRepository repository = new CassandraPersistentActorRepository(session, "test",
+                mock(ThreadBoundExecutor.class), mock(Serializer.class), deserializer);
+        List<String> actorIds = IntStream.range(0, 250).mapToObj(i -> "actor-" + i).collect(Collectors.toList());
+
+        Map<String, PersistentActor<ShardKey>> result = repository.getAll(shardKey, actorIds);
+
+        assertEquals(result.size(), 1);
+        assertSame(result.get("actor-1"), persistentActor);
+        verify(selectAllStatement).bind("test", shardKey.toString(), actorIds.subList(0, 100));
+        verify(selectAllStatement).bind("test", shardKey.toString(), actorIds.subList(100, 200));
+        verify(selectAllStatement).bind("test", shardKey.toString(), actorIds.subList(200, 250));
+        verify(session, times(3)).execute(any(BoundStatement.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedSnapshotWriteResultsInSnapshot() throws Exception {
+        ShardKey shardKey = new ShardKey("test", 0);
+        Session session = mock(Session.class);
+        when(session.prepare(anyString())).thenReturn(mock(PreparedStatement.class));
+        ThreadBoundExecutor asyncUpdateExecutor = mock(ThreadBoundExecutor.class);
+        Serializer<PersistentActor<ShardKey>, byte[]> serializer = mock(Serializer.class);
+        ActorRef ref = mock(ActorRef.class);
+        when(ref.getActorId()).thenReturn("actor");
+        PersistentActor<ShardKey> persistentActor = new PersistentActor<>(shardKey, null, null, ref, null, null);
+        when(serializer.serialize(persistentActor)).thenReturn(state(0), state(1));
+        PersistentActorDeltaEncoder deltaEncoder = new PersistentActorDeltaEncoder(serializer, mock(Deserializer.class), 100, 0.5d, 1024 * 1024);
+        CassandraPersistentActorRepository repository = new CassandraPersistentActorRepository(session, "test", asyncUpdateExecutor,
+                deltaEncoder, ByteBuffer::wrap, mock(Deserializer.class), 200);
+
+        repository.update(shardKey, persistentActor);
+        ArgumentCaptor<PersistentActorUpdateEvent> events = ArgumentCaptor.forClass(PersistentActorUpdateEvent.class);
+        verify(asyncUpdateExecutor).execute(events.capture());
+        PersistentActorUpdateEvent snapshot = events.getValue();
+        assertNotNull(snapshot.getPersistentActorBytes());
+        // the processor reports the failed write to the listener of the event
+        snapshot.getEventListener().onError(snapshot.getMessage(), new RuntimeException("write failed"));
+
+        repository.update(shardKey, persistentActor);
+        verify(asyncUpdateExecutor, times(2)).execute(events.capture());
+        // without the failed snapshot the next update can't be a delta
+        assertEquals(events.getValue().getPersistentActorBytes(), ByteBuffer.wrap(state(1)));
+    }
+
+    private static byte[] state(int version) {
+        StringBuilder document = new StringBuilder("{\"version\":").append(version);
+        for (int i = 0; i < 100; i++) {
+            document.append(",\"field").append(i).append("\":\"value").append(i).append('"');
+        }
+        return document.append('}').toString().getBytes();
+    }
+}
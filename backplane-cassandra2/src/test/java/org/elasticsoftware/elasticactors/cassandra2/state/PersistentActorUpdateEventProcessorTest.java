@@ -0,0 +1,251 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cassandra2.state;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ProtocolVersion;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.messaging.InternalMessage;
+import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.elasticsoftware.elasticactors.cassandra2.state.PersistentActorUpdateEventProcessor.DELETE_QUERY;
+import static org.elasticsoftware.elasticactors.cassandra2.state.PersistentActorUpdateEventProcessor.INSERT_QUERY;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class PersistentActorUpdateEventProcessorTest {
+    private final ShardKey shardKey = new ShardKey("test", 0);
+    private final String[] rowKey = {"test", shardKey.toString()};
+    private Session session;
+    private PreparedStatement insertStatement;
+    private PreparedStatement deleteStatement;
+    private BoundStatement boundStatement;
+
+    @BeforeMethod
+    public void setUp() {
+        session = mock(Session.class, RETURNS_DEEP_STUBS);
+        insertStatement = mock(PreparedStatement.class);
+        deleteStatement = mock(PreparedStatement.class);
+        boundStatement = mock(BoundStatement.class);
+        when(session.prepare(INSERT_QUERY)).thenReturn(insertStatement);
+        when(session.prepare(DELETE_QUERY)).thenReturn(deleteStatement);
+        when(session.getCluster().getConfiguration().getProtocolOptions().getProtocolVersion()).thenReturn(ProtocolVersion.V3);
+        when(insertStatement.bind(any())).thenReturn(boundStatement);
+        when(deleteStatement.bind(any())).thenReturn(boundStatement);
+    }
+
+    @Test
+    public void testOnlyLatestStateIsWritten() {
+        PersistentActorUpdateEventProcessor processor = new PersistentActorUpdateEventProcessor(session, 20, false);
+        MessageHandlerEventListener listener = mock(MessageHandlerEventListener.class);
+        InternalMessage first = mock(InternalMessage.class);
+        InternalMessage second = mock(InternalMessage.class);
+        InternalMessage third = mock(InternalMessage.class);
+
+        processor.process(Arrays.asList(
+                createEvent("actor", "state1", first, listener),
+                createEvent("actor", "state2", second, listener),
+                createEvent("actor", "state3", third, listener)));
+
+        verify(insertStatement, times(1)).bind(any());
+        verify(insertStatement).bind("test", shardKey.toString(), "actor", ByteBuffer.wrap("state3".getBytes(UTF_8)));
+        verify(session, times(1)).execute(boundStatement);
+        verify(listener).onDone(first);
+        verify(listener).onDone(second);
+        verify(listener).onDone(third);
+    }
+
+    @Test
+    public void testCoalesceKeepsOrderOfLastOccurrence() {
+        PersistentActorUpdateEvent a1 = createEvent("a", "state1", null, null);
+        PersistentActorUpdateEvent b1 = createEvent("b", "state1", null, null);
+        PersistentActorUpdateEvent a2 = createEvent("a", null, null, null);
+
+        List<PersistentActorUpdateEvent> coalesced = PersistentActorUpdateEventProcessor.coalesce(Arrays.asList(a1, b1, a2));
+
+        assertEquals(coalesced.size(), 2);
+        assertSame(coalesced.get(0), b1);
+        assertSame(coalesced.get(1), a2);
+    }
+
+    @Test
+    public void testAllListenersAreNotifiedOnError() {
+        PersistentActorUpdateEventProcessor processor = new PersistentActorUpdateEventProcessor(session, 20, false);
+        RuntimeException failure = new RuntimeException("write failed");
+        when(session.execute(boundStatement)).thenThrow(failure);
+        MessageHandlerEventListener listener = mock(MessageHandlerEventListener.class);
+        InternalMessage first = mock(InternalMessage.class);
+        InternalMessage second = mock(InternalMessage.class);
+
+        processor.process(Arrays.asList(
+                createEvent("actor", "state1", first, listener),
+                createEvent("actor", "state2", second, listener)));
+
+        verify(listener).onError(first, failure);
+        verify(listener).onError(second, failure);
+        verify(listener, never()).onDone(any());
+    }
+
+    @Test
+    public void testDeltaEncodedSnapshotAndDeltaAreWrittenTogether() {
+        PersistentActorUpdateEventProcessor processor = new PersistentActorUpdateEventProcessor(session, 20, false);
+        ByteBuffer snapshot = ByteBuffer.wrap("snapshot".getBytes(UTF_8));
+        ByteBuffer emptyDelta = ByteBuffer.allocate(0);
+
+        processor.process(new PersistentActorUpdateEvent(rowKey, shardKey, "actor", snapshot, true, emptyDelta, null, null));
+
+        verify(insertStatement).bind("test", shardKey.toString(), "actor", snapshot);
+        verify(insertStatement).bind("test", shardKey.toString(), CassandraPersistentActorRepository.deltaId("actor"), emptyDelta);
+        ArgumentCaptor<BatchStatement> batchStatement = ArgumentCaptor.forClass(BatchStatement.class);
+        verify(session).execute(batchStatement.capture());
+        assertEquals(batchStatement.getValue().size(), 2);
+    }
+
+    @Test
+    public void testSnapshotFollowedByDeltaKeepsTheSnapshot() {
+        PersistentActorUpdateEventProcessor processor = new PersistentActorUpdateEventProcessor(session, 20, false);
+        MessageHandlerEventListener listener = mock(MessageHandlerEventListener.class);
+        InternalMessage first = mock(InternalMessage.class);
+        InternalMessage second = mock(InternalMessage.class);
+        InternalMessage third = mock(InternalMessage.class);
+        ByteBuffer snapshot = ByteBuffer.wrap("snapshot".getBytes(UTF_8));
+        ByteBuffer delta1 = ByteBuffer.wrap("delta1".getBytes(UTF_8));
+        ByteBuffer delta2 = ByteBuffer.wrap("delta2".getBytes(UTF_8));
+
+        processor.process(Arrays.asList(
+                new PersistentActorUpdateEvent(rowKey, shardKey, "actor", snapshot, true, ByteBuffer.allocate(0), first, listener),
+                new PersistentActorUpdateEvent(rowKey, shardKey, "actor", null, true, delta1, second, listener),
+                new PersistentActorUpdateEvent(rowKey, shardKey, "actor", null, true, delta2, third, listener)));
+
+        // the deltas are relative to the snapshot, so it has to be written together with the latest delta
+        verify(insertStatement).bind("test", shardKey.toString(), "actor", snapshot);
+        verify(insertStatement).bind("test", shardKey.toString(), CassandraPersistentActorRepository.deltaId("actor"), delta2);
+        verify(insertStatement, times(2)).bind(any());
+        ArgumentCaptor<BatchStatement> batchStatement = ArgumentCaptor.forClass(BatchStatement.class);
+        verify(session).execute(batchStatement.capture());
+        assertEquals(batchStatement.getValue().size(), 2);
+        verify(listener).onDone(first);
+        verify(listener).onDone(second);
+        verify(listener).onDone(third);
+    }
+
+    @Test
+    public void testDeleteOfDeltaEncodedActorRemovesDelta() {
+        PersistentActorUpdateEventProcessor processor = new PersistentActorUpdateEventProcessor(session, 20, false);
+
+        processor.process(new PersistentActorUpdateEvent(rowKey, shardKey, "actor", null, true, null, null, null));
+
+        verify(deleteStatement).bind("test", shardKey.toString(), "actor");
+        verify(deleteStatement).bind("test", shardKey.toString(), CassandraPersistentActorRepository.deltaId("actor"));
+        verify(insertStatement, never()).bind(any());
+    }
+
+    @Test
+    public void testEveryPartitionIsWrittenAsSeparateBatch() {
+        PersistentActorUpdateStatistics statistics = new PersistentActorUpdateStatistics();
+        PersistentActorUpdateEventProcessor processor = new PersistentActorUpdateEventProcessor(session, 20, false, statistics);
+        ResultSetFuture success = completedFuture(null);
+        when(session.executeAsync(any(BatchStatement.class))).thenReturn(success);
+        when(session.executeAsync(boundStatement)).thenReturn(success);
+        ShardKey otherShardKey = new ShardKey("test", 1);
+        MessageHandlerEventListener listener = mock(MessageHandlerEventListener.class);
+        InternalMessage first = mock(InternalMessage.class);
+        InternalMessage second = mock(InternalMessage.class);
+        InternalMessage third = mock(InternalMessage.class);
+
+        processor.process(Arrays.asList(
+                createEvent("a", "state1", first, listener),
+                createEvent(otherShardKey, "b", "state1", second, listener),
+                createEvent("c", "state1", third, listener)));
+
+        ArgumentCaptor<Statement> statements = ArgumentCaptor.forClass(Statement.class);
+        verify(session, times(2)).executeAsync(statements.capture());
+        // shard 0 (actors a and c) first, then shard 1
+        assertEquals(((BatchStatement) statements.getAllValues().get(0)).size(), 2);
+        assertSame(statements.getAllValues().get(1), boundStatement);
+        verify(session, never()).execute(any(Statement.class));
+        verify(listener).onDone(first);
+        verify(listener).onDone(second);
+        verify(listener).onDone(third);
+        assertEquals(statistics.getBatchCount(), 2L);
+        assertEquals(statistics.getMaxBatchSize(), 2L);
+    }
+
+    @Test
+    public void testFailedPartitionOnlyFailsItsOwnListeners() {
+        PersistentActorUpdateEventProcessor processor = new PersistentActorUpdateEventProcessor(session, 20, false);
+        RuntimeException failure = new RuntimeException("write failed");
+        ResultSetFuture failed = completedFuture(failure);
+        ResultSetFuture success = completedFuture(null);
+        when(session.executeAsync(any(BatchStatement.class))).thenReturn(failed);
+        when(session.executeAsync(boundStatement)).thenReturn(success);
+        MessageHandlerEventListener listener = mock(MessageHandlerEventListener.class);
+        InternalMessage first = mock(InternalMessage.class);
+        InternalMessage second = mock(InternalMessage.class);
+        InternalMessage third = mock(InternalMessage.class);
+
+        processor.process(Arrays.asList(
+                createEvent("a", "state1", first, listener),
+                createEvent(new ShardKey("test", 1), "b", "state1", second, listener),
+                createEvent("c", "state1", third, listener)));
+
+        verify(listener).onError(first, failure);
+        verify(listener).onDone(second);
+        verify(listener).onError(third, failure);
+    }
+
+    private ResultSetFuture completedFuture(RuntimeException failure) {
+        ResultSetFuture future = mock(ResultSetFuture.class);
+        if (failure != null) {
+            when(future.getUninterruptibly()).thenThrow(failure);
+        } else {
+            when(future.getUninterruptibly()).thenReturn(mock(ResultSet.class));
+        }
+        doAnswer(invocation -> {
+            ((Executor) invocation.getArgument(1)).execute(invocation.getArgument(0));
+            return null;
+        }).when(future).addListener(any(Runnable.class), any(Executor.class));
+        return future;
+    }
+
+    private PersistentActorUpdateEvent createEvent(String actorId, String state, InternalMessage message, MessageHandlerEventListener listener) {
+        return createEvent(shardKey, actorId, state, message, listener);
+    }
+
+    private PersistentActorUpdateEvent createEvent(ShardKey shardKey, String actorId, String state, InternalMessage message, MessageHandlerEventListener listener) {
+        ByteBuffer bytes = state != null ? ByteBuffer.wrap(state.getBytes(UTF_8)) : null;
+        return new PersistentActorUpdateEvent(new String[] {"test", shardKey.toString()}, shardKey, actorId, bytes, message, listener);
+    }
+}
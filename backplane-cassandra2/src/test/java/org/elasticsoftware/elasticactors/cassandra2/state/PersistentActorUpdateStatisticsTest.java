@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cassandra2.state;
+
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class PersistentActorUpdateStatisticsTest {
+    @Test
+    public void testRegisteredWithPlatformMBeanServer() throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("org.elasticsoftware.elasticactors:type=PersistentActorUpdateStatistics,cluster=\"test\"");
+        PersistentActorUpdateStatistics statistics = new PersistentActorUpdateStatistics();
+        statistics.register("test");
+        try {
+            assertTrue(mBeanServer.isRegistered(objectName));
+            statistics.record(5, 100);
+            assertEquals(mBeanServer.getAttribute(objectName, "BatchCount"), 1L);
+            assertEquals(mBeanServer.getAttribute(objectName, "MaxBatchSize"), 5L);
+        } finally {
+            statistics.unregister();
+        }
+        assertFalse(mBeanServer.isRegistered(objectName));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.configuration;
+
+import org.elasticsoftware.elasticactors.cluster.ActorRefFactory;
+import org.elasticsoftware.elasticactors.cluster.ActorSystemEventListenerRepository;
+import org.elasticsoftware.elasticactors.cluster.InternalActorSystems;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageRepository;
+import org.elasticsoftware.elasticactors.local.cluster.LocalActorSystemEventListenerRepository;
+import org.elasticsoftware.elasticactors.local.cluster.scheduler.LocalScheduledMessageRepository;
+import org.elasticsoftware.elasticactors.local.state.LocalPersistentActorRepository;
+import org.elasticsoftware.elasticactors.local.state.PersistentActorUpdateEventProcessor;
+import org.elasticsoftware.elasticactors.local.store.ShardLogStores;
+import org.elasticsoftware.elasticactors.serialization.Deserializer;
+import org.elasticsoftware.elasticactors.serialization.Serializer;
+import org.elasticsoftware.elasticactors.serialization.internal.ActorRefDeserializer;
+import org.elasticsoftware.elasticactors.serialization.internal.PersistentActorDeserializer;
+import org.elasticsoftware.elasticactors.serialization.internal.PersistentActorSerializer;
+import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageDeserializer;
+import org.elasticsoftware.elasticactors.state.OffHeapCachingPersistentActorRepository;
+import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
+import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutorImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+
+public class BackplaneConfiguration {
+    @Autowired
+    private Environment env;
+    @Autowired
+    private InternalActorSystems cluster;
+    @Autowired
+    private ActorRefFactory actorRefFactory;
+
+    private ShardLogStores logStores;
+
+    @PostConstruct
+    public void initialize() {
+        String dataDirectory = env.getProperty("ea.logStore.dataDirectory", System.getProperty("java.io.tmpdir") + "/elasticactors");
+        int segmentSize = env.getProperty("ea.logStore.segmentSize", Integer.class, 64 * 1024 * 1024);
+        double compactionThreshold = env.getProperty("ea.logStore.compactionThreshold", Double.class, 0.5d);
+        long syncIntervalMillis = env.getProperty("ea.logStore.syncIntervalMillis", Long.class, 10L);
+        long compactionIntervalMillis = env.getProperty("ea.logStore.compactionIntervalMillis", Long.class, 60000L);
+        logStores = new ShardLogStores(new File(dataDirectory, cluster.getClusterName()), segmentSize,
+                compactionThreshold, syncIntervalMillis, compactionIntervalMillis);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.logStores.destroy();
+    }
+
+    @Bean(name = {"asyncUpdateExecutor"}, destroyMethod = "shutdown")
+    public ThreadBoundExecutor createAsyncUpdateExecutor() {
+        final int workers = env.getProperty("ea.asyncUpdateExecutor.workerCount",Integer.class,Runtime.getRuntime().availableProcessors());
+        final int batchSize = env.getProperty("ea.asyncUpdateExecutor.batchSize",Integer.class,20);
+        return new ThreadBoundExecutorImpl(new PersistentActorUpdateEventProcessor(logStores),batchSize,new DaemonThreadFactory("UPDATE-EXECUTOR-WORKER"),workers);
+    }
+
+    @Bean(name = {"persistentActorRepository"})
+    public PersistentActorRepository getPersistentActorRepository(@Qualifier("asyncUpdateExecutor") ThreadBoundExecutor asyncUpdateExecutor) {
+        Serializer serializer = new PersistentActorSerializer(cluster);
+        Deserializer deserializer = new PersistentActorDeserializer(actorRefFactory,cluster);
+        final PersistentActorRepository persistentActorRepository = new LocalPersistentActorRepository(logStores, asyncUpdateExecutor, deserializer, serializer);
+        // optional off-heap second level cache for the serialized actors, disabled by default
+        final Long offHeapCacheSize = env.getProperty("ea.persistentActorRepository.offHeapCache.maximumSize",Long.class,0L);
+        if(offHeapCacheSize > 0) {
+            return new OffHeapCachingPersistentActorRepository(persistentActorRepository,
+                    new PersistentActorSerializer(cluster), new PersistentActorDeserializer(actorRefFactory,cluster), offHeapCacheSize);
+        }
+        return persistentActorRepository;
+    }
+
+    @Bean(name = {"scheduledMessageRepository"})
+    public ScheduledMessageRepository getScheduledMessageRepository() {
+        return new LocalScheduledMessageRepository(logStores, new ScheduledMessageDeserializer(new ActorRefDeserializer(actorRefFactory)));
+    }
+
+    @Bean(name = {"actorSystemEventListenerRepository"})
+    public ActorSystemEventListenerRepository getActorSystemEventListenerRepository() {
+        return new LocalActorSystemEventListenerRepository(logStores);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.local.cluster;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.cluster.ActorSystemEvent;
+import org.elasticsoftware.elasticactors.cluster.ActorSystemEventListener;
+import org.elasticsoftware.elasticactors.cluster.ActorSystemEventListenerRepository;
+import org.elasticsoftware.elasticactors.local.store.ShardLogStores;
+import org.elasticsoftware.elasticactors.serialization.internal.ActorSystemEventListenerDeserializer;
+import org.elasticsoftware.elasticactors.serialization.internal.ActorSystemEventListenerSerializer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Stores the listeners of an {@link ActorSystemEvent} in the log of the shard, keyed on event and listener actor id
+ */
+public final class LocalActorSystemEventListenerRepository implements ActorSystemEventListenerRepository {
+    private static final Logger logger = LogManager.getLogger(LocalActorSystemEventListenerRepository.class);
+    private static final String KEY_PREFIX = "actorSystemEventListener/";
+    private final ShardLogStores logStores;
+
+    public LocalActorSystemEventListenerRepository(ShardLogStores logStores) {
+        this.logStores = logStores;
+    }
+
+    @Override
+    public void create(ShardKey shardKey, ActorSystemEvent event, ActorSystemEventListener listener) {
+        try {
+            logStores.get(shardKey).put(key(event, listener.getActorId()), ActorSystemEventListenerSerializer.get().serialize(listener));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void delete(ShardKey shardKey, ActorSystemEvent event, ActorRef listenerId) {
+        try {
+            logStores.get(shardKey).delete(key(event, listenerId.getActorId()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<ActorSystemEventListener> getAll(ShardKey shardKey, ActorSystemEvent event) {
+        List<ActorSystemEventListener> resultList = new LinkedList<>();
+        logStores.get(shardKey).forEach(KEY_PREFIX + event.name() + "/", (key, value) -> {
+            try {
+                resultList.add(ActorSystemEventListenerDeserializer.get().deserialize(value));
+            } catch (IOException e) {
+                logger.error("IOException while deserializing ActorSystemEventListener", e);
+            }
+        });
+        return resultList;
+    }
+
+    private static String key(ActorSystemEvent event, String actorId) {
+        return KEY_PREFIX + event.name() + "/" + actorId;
+    }
+}
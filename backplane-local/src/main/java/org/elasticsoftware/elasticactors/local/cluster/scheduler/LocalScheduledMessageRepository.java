@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.local.cluster.scheduler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessage;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageKey;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageRepository;
+import org.elasticsoftware.elasticactors.local.store.ShardLogStores;
+import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageDeserializer;
+import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageSerializer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores the scheduled messages of a shard in the log of that shard. The fire time is part of the key (zero padded)
+ * so the messages are returned in the order they need to be fired.
+ */
+public final class LocalScheduledMessageRepository implements ScheduledMessageRepository {
+    private static final Logger logger = LogManager.getLogger(LocalScheduledMessageRepository.class);
+    private static final String KEY_PREFIX = "scheduledMessage/";
+    private final ShardLogStores logStores;
+    private final ScheduledMessageDeserializer scheduledMessageDeserializer;
+
+    public LocalScheduledMessageRepository(ShardLogStores logStores, ScheduledMessageDeserializer scheduledMessageDeserializer) {
+        this.logStores = logStores;
+        this.scheduledMessageDeserializer = scheduledMessageDeserializer;
+    }
+
+    @Override
+    public void create(ShardKey shardKey, ScheduledMessage scheduledMessage) {
+        try {
+            logStores.get(shardKey).put(key(scheduledMessage.getFireTime(TimeUnit.MILLISECONDS), scheduledMessage.getId()),
+                    ScheduledMessageSerializer.get().serialize(scheduledMessage));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void delete(ShardKey shardKey, ScheduledMessageKey scheduledMessageKey) {
+        try {
+            logStores.get(shardKey).delete(key(scheduledMessageKey.getFireTime(), scheduledMessageKey.getId()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public List<ScheduledMessage> getAll(ShardKey shardKey) {
+        List<ScheduledMessage> resultList = new LinkedList<>();
+        logStores.get(shardKey).forEach(KEY_PREFIX, (key, value) -> {
+            try {
+                resultList.add(scheduledMessageDeserializer.deserialize(value));
+            } catch (IOException e) {
+                logger.error("IOException while deserializing ScheduledMessage", e);
+            }
+        });
+        return resultList;
+    }
+
+    @Override
+    public List<ScheduledMessage> getRange(ShardKey shardKey, long fromFireTime, long toFireTime) {
+        List<ScheduledMessage> resultList = new ArrayList<>();
+        logStores.get(shardKey).forEach(fireTimePrefix(fromFireTime), fireTimePrefix(toFireTime), (key, value) -> {
+            try {
+                resultList.add(scheduledMessageDeserializer.deserialize(value));
+            } catch (IOException e) {
+                logger.error("IOException while deserializing ScheduledMessage", e);
+            }
+        });
+        return resultList;
+    }
+
+    @Override
+    public long count(ShardKey shardKey, long fromFireTime) {
+        return logStores.get(shardKey).count(fireTimePrefix(fromFireTime), KEY_PREFIX + Character.MAX_VALUE);
+    }
+
+    private static String fireTimePrefix(long fireTime) {
+        return String.format("%s%020d/", KEY_PREFIX, fireTime);
+    }
+
+    private static String key(long fireTime, UUID id) {
+        return String.format("%s%020d/%s", KEY_PREFIX, fireTime, id);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.local.state;
+
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.local.store.ShardLogStores;
+import org.elasticsoftware.elasticactors.messaging.InternalMessage;
+import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
+import org.elasticsoftware.elasticactors.serialization.Deserializer;
+import org.elasticsoftware.elasticactors.serialization.Serializer;
+import org.elasticsoftware.elasticactors.state.PersistentActor;
+import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Stores the actors of a shard in the {@link org.elasticsoftware.elasticactors.local.store.LogStore} of that shard.
+ * Reads are served from the memory-mapped log directly, updates are handed to the {@link ThreadBoundExecutor} and
+ * appended in batches by the {@link PersistentActorUpdateEventProcessor}.
+ */
+public final class LocalPersistentActorRepository implements PersistentActorRepository {
+    private static final String KEY_PREFIX = "actor/";
+    private final ShardLogStores logStores;
+    private final ThreadBoundExecutor asyncUpdateExecutor;
+    private final Deserializer<byte[],PersistentActor> deserializer;
+    private final Serializer<PersistentActor,byte[]> serializer;
+
+    public LocalPersistentActorRepository(ShardLogStores logStores,
+                                          ThreadBoundExecutor asyncUpdateExecutor,
+                                          Deserializer<byte[], PersistentActor> deserializer,
+                                          Serializer<PersistentActor, byte[]> serializer) {
+        this.logStores = logStores;
+        this.asyncUpdateExecutor = asyncUpdateExecutor;
+        this.deserializer = deserializer;
+        this.serializer = serializer;
+    }
+
+    static String key(String actorId) {
+        return KEY_PREFIX + actorId;
+    }
+
+    @Override
+    public boolean contains(ShardKey shard, String actorId) {
+        return logStores.get(shard).contains(key(actorId));
+    }
+
+    @Override
+    public void update(ShardKey shard, PersistentActor persistentActor) throws IOException {
+        // serialize the data on the calling thread (to avoid thread visibility issues)
+        final byte[] serializedActorBytes = serializer.serialize(persistentActor);
+        asyncUpdateExecutor.execute(new PersistentActorUpdateEvent(shard, persistentActor.getSelf().getActorId(),
+                                                                   serializedActorBytes, null, null));
+    }
+
+    @Override
+    public void updateAsync(ShardKey shard, PersistentActor persistentActor, InternalMessage message, MessageHandlerEventListener messageHandlerEventListener) throws IOException {
+        // serialize the data on the calling thread (to avoid thread visibility issues)
+        final byte[] serializedActorBytes = serializer.serialize(persistentActor);
+        asyncUpdateExecutor.execute(new PersistentActorUpdateEvent(shard, persistentActor.getSelf().getActorId(),
+                                                                   serializedActorBytes, message,
+                                                                   messageHandlerEventListener));
+    }
+
+    @Override
+    public void delete(ShardKey shard, String actorId) {
+        asyncUpdateExecutor.execute(new PersistentActorUpdateEvent(shard, actorId, null, null, null));
+    }
+
+    @Override
+    public PersistentActor<ShardKey> get(ShardKey shard, String actorId) throws IOException {
+        byte[] serializedActor = logStores.get(shard).get(key(actorId));
+        return serializedActor != null ? deserializer.deserialize(serializedActor) : null;
+    }
+
+    @Override
+    public void forEachActorId(ShardKey shard, Consumer<String> consumer) {
+        logStores.get(shard).forEachKey(KEY_PREFIX, key -> consumer.accept(key.substring(KEY_PREFIX.length())));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.local.state;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.local.store.ShardLogStores;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Appends batches of actor state updates to the log of their shard. Only the latest state of an actor in a batch is
+ * written, the listeners of all events are called once the batch has been forced to disk by the group commit.
+ */
+public final class PersistentActorUpdateEventProcessor implements ThreadBoundEventProcessor<PersistentActorUpdateEvent> {
+    private static final Logger logger = LogManager.getLogger(PersistentActorUpdateEventProcessor.class);
+    private final ShardLogStores logStores;
+
+    public PersistentActorUpdateEventProcessor(ShardLogStores logStores) {
+        this.logStores = logStores;
+    }
+
+    @Override
+    public void process(PersistentActorUpdateEvent... events) {
+        process(Arrays.asList(events));
+    }
+
+    @Override
+    public void process(List<PersistentActorUpdateEvent> events) {
+        final long startTime = currentTimeMillis();
+        // the events are keyed on shard id, so a batch may contain events of shards of different actor systems
+        Map<ShardKey, List<PersistentActorUpdateEvent>> eventsPerShard = new LinkedHashMap<>();
+        for (PersistentActorUpdateEvent event : events) {
+            eventsPerShard.computeIfAbsent(event.getShardKey(), shardKey -> new ArrayList<>()).add(event);
+        }
+        eventsPerShard.forEach((shardKey, shardEvents) -> {
+            // a LinkedHashMap keeps the latest state of every actor
+            Map<String, byte[]> changes = new LinkedHashMap<>();
+            for (PersistentActorUpdateEvent event : shardEvents) {
+                changes.put(LocalPersistentActorRepository.key(event.getPersistentActorId()), event.getPersistentActorBytes());
+            }
+            try {
+                logStores.get(shardKey).write(changes).whenComplete((result, throwable) -> {
+                    Exception exception = throwable == null ? null :
+                            throwable instanceof Exception ? (Exception) throwable : new RuntimeException(throwable);
+                    notifyListeners(shardEvents, exception);
+                });
+            } catch (Exception e) {
+                notifyListeners(shardEvents, e);
+            }
+        });
+        // add some trace info
+        if(logger.isTraceEnabled()) {
+            final long endTime = currentTimeMillis();
+            logger.trace(format("Appending %d Actor state entrie(s) took %d msecs",events.size(),endTime-startTime));
+        }
+    }
+
+    private void notifyListeners(List<PersistentActorUpdateEvent> events, Exception exception) {
+        for (PersistentActorUpdateEvent event : events) {
+            if(event.getEventListener() != null) {
+                if (exception == null) {
+                    event.getEventListener().onDone(event.getMessage());
+                } else {
+                    event.getEventListener().onError(event.getMessage(), exception);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.local.store;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * An embedded key value store that appends every change to a log of memory-mapped segment files and keeps the
+ * location of the latest value of every key in an in-memory index. Reads are served straight from the mapped
+ * segments.
+ *
+ * <p>Writes are not forced to disk individually: {@link #sync()} forces all segments written since the previous
+ * call at once and then completes the futures of those writes (group commit). Space taken by overwritten and
+ * deleted values is reclaimed by {@link #compact()}, which copies the live records of the oldest segment to the
+ * head of the log and deletes it. Because only the oldest segment is ever removed, tombstones in it can be dropped
+ * safely.
+ *
+ * <p>Writes are serialized on the store, reads don't take any locks.
+ */
+public final class LogStore {
+    private static final Logger logger = LogManager.getLogger(LogStore.class);
+    private final File directory;
+    private final int segmentSize;
+    private final double compactionThreshold;
+    private final ConcurrentNavigableMap<String, Location> index = new ConcurrentSkipListMap<>();
+    // all segments, ordered by id (and thus by age), guarded by this
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+    private final Set<Segment> unsyncedSegments = new LinkedHashSet<>();
+    private List<CompletableFuture<Void>> pendingSyncs = new ArrayList<>();
+    private Segment activeSegment;
+    private boolean closed = false;
+
+    private LogStore(File directory, int segmentSize, double compactionThreshold) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Opens the store in the given directory, replaying the existing segments to rebuild the index
+     *
+     * @param directory             the directory that holds the segment files, created when it doesn't exist
+     * @param segmentSize           the size of a segment file in bytes (larger records get a segment of their own)
+     * @param compactionThreshold   the fraction of dead bytes in the sealed segments above which to compact
+     */
+    public static LogStore open(File directory, int segmentSize, double compactionThreshold) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        LogStore logStore = new LogStore(directory, segmentSize, compactionThreshold);
+        logStore.recover();
+        return logStore;
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> Segment.isSegmentFile(name));
+        if (files != null) {
+            for (File file : files) {
+                Segment segment = Segment.open(file);
+                segments.put(segment.getId(), segment);
+            }
+        }
+        for (Segment segment : segments.values()) {
+            final int size = segment.scan((type, key, offset, recordSize, valueOffset, valueLength) -> {
+                if (type == Segment.PUT) {
+                    replace(key, new Location(segment, offset, recordSize, valueOffset, valueLength));
+                } else {
+                    replace(key, null);
+                    segment.addDeadBytes(recordSize);
+                }
+            });
+            if (segment.truncate(size)) {
+                logger.warn(String.format("Segment %s in %s ends with an incomplete record, ignoring the remainder",
+                        Segment.fileName(segment.getId()), directory));
+            }
+        }
+        activeSegment = segments.isEmpty() ? newSegment(0L, segmentSize) : segments.lastEntry().getValue();
+    }
+
+    @Nullable
+    public byte[] get(String key) {
+        Location location = index.get(key);
+        return location != null ? location.segment.read(location.valueOffset, location.valueLength) : null;
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * Calls the consumer for every key (and its value) that starts with the given prefix, in key order
+     */
+    public void forEach(String prefix, BiConsumer<String, byte[]> consumer) {
+        for (Map.Entry<String, Location> entry : index.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+            Location location = entry.getValue();
+            consumer.accept(entry.getKey(), location.segment.read(location.valueOffset, location.valueLength));
+        }
+    }
+
+    /**
+     * Calls the consumer for every key (and its value) in the range [fromKey, toKey), in key order
+     */
+    public void forEach(String fromKey, String toKey, BiConsumer<String, byte[]> consumer) {
+        for (Map.Entry<String, Location> entry : index.subMap(fromKey, toKey).entrySet()) {
+            Location location = entry.getValue();
+            consumer.accept(entry.getKey(), location.segment.read(location.valueOffset, location.valueLength));
+        }
+    }
+
+    /**
+     * @return the number of keys in the range [fromKey, toKey)
+     */
+    public int count(String fromKey, String toKey) {
+        return index.subMap(fromKey, toKey).size();
+    }
+
+    /**
+     * Calls the consumer for every key that starts with the given prefix, in key order
+     */
+    public void forEachKey(String prefix, Consumer<String> consumer) {
+        index.subMap(prefix, prefix + Character.MAX_VALUE).keySet().forEach(consumer);
+    }
+
+    /**
+     * Writes the value, it is visible to readers when this method returns
+     *
+     * @return a future that completes when the write has been forced to disk
+     */
+    public CompletableFuture<Void> put(String key, byte[] value) throws IOException {
+        return write(Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Removes the key, the removal is visible to readers when this method returns
+     *
+     * @return a future that completes when the removal has been forced to disk
+     */
+    public CompletableFuture<Void> delete(String key) throws IOException {
+        return write(Collections.singletonMap(key, null));
+    }
+
+    /**
+     * Appends a batch of changes in one go, a null value removes the key. The changes are visible to readers when
+     * this method returns
+     *
+     * @return a future that completes when all changes have been forced to disk
+     */
+    public synchronized CompletableFuture<Void> write(Map<String, byte[]> changes) throws IOException {
+        if (closed) {
+            throw new IOException("LogStore " + directory + " is closed");
+        }
+        for (Map.Entry<String, byte[]> change : changes.entrySet()) {
+            final String key = change.getKey();
+            final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            if (keyBytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("Key too long: " + key);
+            }
+            if (change.getValue() != null) {
+                replace(key, append(Segment.PUT, keyBytes, change.getValue()));
+            } else if (index.containsKey(key)) {
+                Location tombstone = append(Segment.DELETE, keyBytes, null);
+                replace(key, null);
+                tombstone.segment.addDeadBytes(tombstone.recordSize);
+            }
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        pendingSyncs.add(future);
+        return future;
+    }
+
+    private Location append(byte type, byte[] key, @Nullable byte[] value) throws IOException {
+        final int recordSize = Segment.recordSize(key, value);
+        if (activeSegment.remaining() < recordSize) {
+            // sealed segments are forced with the next sync
+            unsyncedSegments.add(activeSegment);
+            activeSegment = newSegment(activeSegment.getId() + 1, Math.max(segmentSize, recordSize));
+        }
+        final int offset = activeSegment.append(type, key, value);
+        unsyncedSegments.add(activeSegment);
+        return new Location(activeSegment, offset, recordSize, offset + Segment.HEADER_SIZE + key.length, recordSize - Segment.HEADER_SIZE - key.length);
+    }
+
+    private Segment newSegment(long id, int capacity) throws IOException {
+        Segment segment = Segment.create(directory, id, capacity);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void replace(String key, @Nullable Location location) {
+        Location previous = location != null ? index.put(key, location) : index.remove(key);
+        if (previous != null) {
+            previous.segment.addDeadBytes(previous.recordSize);
+        }
+    }
+
+    /**
+     * Forces all segments written since the last call to disk and completes the futures of those writes
+     */
+    public void sync() {
+        final List<Segment> segmentsToSync;
+        final List<CompletableFuture<Void>> futures;
+        synchronized (this) {
+            if (unsyncedSegments.isEmpty() && pendingSyncs.isEmpty()) {
+                return;
+            }
+            segmentsToSync = new ArrayList<>(unsyncedSegments);
+            unsyncedSegments.clear();
+            futures = pendingSyncs;
+            pendingSyncs = new ArrayList<>();
+        }
+        try {
+            for (Segment segment : segmentsToSync) {
+                segment.force();
+            }
+            futures.forEach(future -> future.complete(null));
+        } catch (RuntimeException e) {
+            logger.error(String.format("Exception while syncing LogStore %s", directory), e);
+            futures.forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * @return true when the fraction of dead bytes in the sealed segments exceeds the compaction threshold
+     */
+    public synchronized boolean needsCompaction() {
+        long size = 0;
+        long deadBytes = 0;
+        for (Segment segment : segments.values()) {
+            if (segment != activeSegment) {
+                size += segment.getSize();
+                deadBytes += segment.getDeadBytes();
+            }
+        }
+        return size > 0 && deadBytes > size * compactionThreshold;
+    }
+
+    /**
+     * Compacts the oldest sealed segments until the fraction of dead bytes drops below the compaction threshold
+     */
+    public void compact() throws IOException {
+        while (needsCompaction()) {
+            final Segment oldest;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                oldest = segments.firstEntry().getValue();
+            }
+            compact(oldest);
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        final int[] copied = {0};
+        try {
+            segment.scan((type, key, offset, recordSize, valueOffset, valueLength) -> {
+                if (type == Segment.PUT) {
+                    synchronized (this) {
+                        Location location = index.get(key);
+                        if (location != null && location.segment == segment && location.offset == offset) {
+                            try {
+                                index.put(key, append(Segment.PUT, key.getBytes(StandardCharsets.UTF_8), segment.read(valueOffset, valueLength)));
+                                copied[0]++;
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                        }
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // the copies need to be on disk before the original can go
+        sync();
+        synchronized (this) {
+            segments.remove(segment.getId());
+            unsyncedSegments.remove(segment);
+        }
+        segment.delete();
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Compacted segment %s of %s, copied %d live records",
+                    Segment.fileName(segment.getId()), directory, copied[0]));
+        }
+    }
+
+    public void close() throws IOException {
+        sync();
+        synchronized (this) {
+            closed = true;
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        }
+    }
+
+    private static final class Location {
+        private final Segment segment;
+        private final int offset;
+        private final int recordSize;
+        private final int valueOffset;
+        private final int valueLength;
+
+        private Location(Segment segment, int offset, int recordSize, int valueOffset, int valueLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.recordSize = recordSize;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.local.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A memory-mapped, append-only segment file of a {@link LogStore}. Every record has the following layout:
+ *
+ * <pre>
+ * | length (int) | crc32 (int) | type (byte) | key length (short) | key (utf-8) | value |
+ * </pre>
+ *
+ * where length covers everything after the length field and the checksum covers everything after the checksum. A
+ * length of zero marks the end of the written data (new segment files are zero-filled).
+ */
+final class Segment {
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final int HEADER_SIZE = 4 + 4 + 1 + 2;
+
+    private final long id;
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+    private final AtomicLong deadBytes = new AtomicLong(0);
+    // only modified while holding the write lock of the LogStore
+    private int size;
+
+    private Segment(long id, File file, RandomAccessFile randomAccessFile, MappedByteBuffer buffer) {
+        this.id = id;
+        this.file = file;
+        this.randomAccessFile = randomAccessFile;
+        this.buffer = buffer;
+    }
+
+    static Segment create(File directory, long id, int capacity) throws IOException {
+        File file = new File(directory, fileName(id));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(capacity);
+        return new Segment(id, file, randomAccessFile, randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+    }
+
+    static Segment open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        return new Segment(parseId(file.getName()), file, randomAccessFile,
+                randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length()));
+    }
+
+    static String fileName(long id) {
+        return String.format("%020d.log", id);
+    }
+
+    static boolean isSegmentFile(String fileName) {
+        return fileName.length() == 24 && fileName.endsWith(".log");
+    }
+
+    static long parseId(String fileName) {
+        return Long.parseLong(fileName.substring(0, 20));
+    }
+
+    static int recordSize(byte[] key, byte[] value) {
+        return HEADER_SIZE + key.length + (value != null ? value.length : 0);
+    }
+
+    long getId() {
+        return id;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int remaining() {
+        return buffer.capacity() - size;
+    }
+
+    long getDeadBytes() {
+        return deadBytes.get();
+    }
+
+    void addDeadBytes(int bytes) {
+        deadBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Appends a record, the caller must hold the write lock of the {@link LogStore} and make sure it fits
+     *
+     * @return the offset of the record
+     */
+    int append(byte type, byte[] key, byte[] value) {
+        final int recordSize = recordSize(key, value);
+        ByteBuffer record = ByteBuffer.allocate(recordSize);
+        record.putInt(recordSize - 4);
+        record.putInt(0);
+        record.put(type);
+        record.putShort((short) key.length);
+        record.put(key);
+        if (value != null) {
+            record.put(value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, recordSize - 8);
+        record.putInt(4, (int) crc.getValue());
+        final int offset = size;
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset);
+        target.put(record.array());
+        size += recordSize;
+        return offset;
+    }
+
+    byte[] read(int offset, int length) {
+        byte[] value = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.get(value);
+        return value;
+    }
+
+    /**
+     * Visits the records of this segment from the start, stops at the end of the data or at the first record that
+     * is incomplete or corrupt (i.e. a write that was torn by a crash).
+     *
+     * @return the offset directly after the last valid record
+     */
+    int scan(RecordVisitor visitor) {
+        ByteBuffer source = buffer.duplicate();
+        int offset = 0;
+        while (source.capacity() - offset >= HEADER_SIZE) {
+            final int length = source.getInt(offset);
+            if (length < HEADER_SIZE - 4 || offset + 4 + length > source.capacity()) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            ByteBuffer checked = source.duplicate();
+            checked.position(offset + 8).limit(offset + 4 + length);
+            crc.update(checked);
+            final byte type = source.get(offset + 8);
+            final int keyLength = source.getShort(offset + 9) & 0xFFFF;
+            if ((int) crc.getValue() != source.getInt(offset + 4) || (type != PUT && type != DELETE)
+                    || HEADER_SIZE + keyLength > length + 4) {
+                break;
+            }
+            byte[] key = read(offset + HEADER_SIZE, keyLength);
+            final int valueOffset = offset + HEADER_SIZE + keyLength;
+            visitor.visit(type, new String(key, StandardCharsets.UTF_8), offset, length + 4, valueOffset, offset + 4 + length - valueOffset);
+            offset += length + 4;
+        }
+        return offset;
+    }
+
+    /**
+     * Sets the size after recovery. When there is anything after the last valid record it is zeroed, so that a torn
+     * write cannot be mistaken for data later on (pages of a mapped file can reach the disk in any order, so valid
+     * looking records may follow a torn one)
+     *
+     * @return true when there was a torn record to remove
+     */
+    boolean truncate(int size) {
+        this.size = size;
+        ByteBuffer target = buffer.duplicate();
+        if (target.capacity() - size < 4 || target.getInt(size) == 0) {
+            return false;
+        }
+        target.position(size);
+        byte[] zeroes = new byte[Math.min(target.remaining(), 64 * 1024)];
+        while (target.hasRemaining()) {
+            target.put(zeroes, 0, Math.min(zeroes.length, target.remaining()));
+        }
+        return true;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        if (!file.delete() && file.exists()) {
+            throw new IOException("Unable to delete segment file " + file);
+        }
+    }
+
+    interface RecordVisitor {
+        void visit(byte type, String key, int offset, int recordSize, int valueOffset, int valueLength);
+    }
+}
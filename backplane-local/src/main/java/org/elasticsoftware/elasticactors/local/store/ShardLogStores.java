@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.local.store;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages one {@link LogStore} per shard, all stored under a common data directory. The stores are synced (group
+ * commit) and compacted in the background.
+ */
+public final class ShardLogStores {
+    private static final Logger logger = LogManager.getLogger(ShardLogStores.class);
+    private final File dataDirectory;
+    private final int segmentSize;
+    private final double compactionThreshold;
+    private final ConcurrentMap<ShardKey, LogStore> logStores = new ConcurrentHashMap<>();
+    // one thread for syncing and one for compacting, so a long running compaction doesn't hold up the syncs
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, new DaemonThreadFactory("LOGSTORE-MAINTENANCE"));
+
+    public ShardLogStores(File dataDirectory,
+                          int segmentSize,
+                          double compactionThreshold,
+                          long syncIntervalMillis,
+                          long compactionIntervalMillis) {
+        this.dataDirectory = dataDirectory;
+        this.segmentSize = segmentSize;
+        this.compactionThreshold = compactionThreshold;
+        scheduler.scheduleWithFixedDelay(this::syncAll, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::compactAll, compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public LogStore get(ShardKey shardKey) {
+        return logStores.computeIfAbsent(shardKey, key -> {
+            try {
+                return LogStore.open(new File(dataDirectory, key.getActorSystemName() + "-" + key.getShardId()), segmentSize, compactionThreshold);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private void syncAll() {
+        for (LogStore logStore : logStores.values()) {
+            logStore.sync();
+        }
+    }
+
+    private void compactAll() {
+        for (LogStore logStore : logStores.values()) {
+            try {
+                logStore.compact();
+            } catch (Exception e) {
+                logger.error("Exception while compacting LogStore", e);
+            }
+        }
+    }
+
+    public void destroy() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (LogStore logStore : logStores.values()) {
+            try {
+                logStore.close();
+            } catch (IOException e) {
+                logger.error("Exception while closing LogStore", e);
+            }
+        }
+        logStores.clear();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.local.cluster.scheduler;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.cluster.ActorRefFactory;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessage;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageImpl;
+import org.elasticsoftware.elasticactors.local.store.ShardLogStores;
+import org.elasticsoftware.elasticactors.serialization.internal.ActorRefDeserializer;
+import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageDeserializer;
+import org.springframework.util.FileSystemUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class LocalScheduledMessageRepositoryTest {
+    private final ShardKey shardKey = new ShardKey("test", 0);
+    private File dataDirectory;
+    private ShardLogStores logStores;
+    private LocalScheduledMessageRepository repository;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        dataDirectory = Files.createTempDirectory("logstores").toFile();
+        logStores = new ShardLogStores(dataDirectory, 4096, 0.5d, 10L, 60000L);
+        ActorRefFactory actorRefFactory = mock(ActorRefFactory.class);
+        when(actorRefFactory.create(anyString())).thenReturn(mock(ActorRef.class));
+        repository = new LocalScheduledMessageRepository(logStores, new ScheduledMessageDeserializer(new ActorRefDeserializer(actorRefFactory)));
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        logStores.destroy();
+        FileSystemUtils.deleteRecursively(dataDirectory);
+    }
+
+    @Test
+    public void testMessagesAreReturnedInFireTimeOrder() {
+        repository.create(shardKey, createMessage(30000L));
+        repository.create(shardKey, createMessage(1000L));
+        repository.create(shardKey, createMessage(2000L));
+
+        assertEquals(fireTimes(repository.getAll(shardKey)), asList(1000L, 2000L, 30000L));
+        assertEquals(repository.getAll(new ShardKey("test", 1)).size(), 0);
+    }
+
+    @Test
+    public void testDeletedMessagesAreNotReturned() {
+        ScheduledMessage first = createMessage(1000L);
+        ScheduledMessage second = createMessage(2000L);
+        repository.create(shardKey, first);
+        repository.create(shardKey, second);
+
+        repository.delete(shardKey, first.getKey());
+
+        List<ScheduledMessage> messages = repository.getAll(shardKey);
+        assertEquals(messages.size(), 1);
+        assertEquals(messages.get(0).getId(), second.getId());
+    }
+
+    @Test
+    public void testRangeAndCount() {
+        repository.create(shardKey, createMessage(1000L));
+        repository.create(shardKey, createMessage(2000L));
+        repository.create(shardKey, createMessage(2000L));
+        repository.create(shardKey, createMessage(3000L));
+
+        // lower bound inclusive, upper bound exclusive
+        assertEquals(fireTimes(repository.getRange(shardKey, 1000L, 3000L)), asList(1000L, 2000L, 2000L));
+        assertEquals(fireTimes(repository.getRange(shardKey, 2001L, 10000L)), asList(3000L));
+        assertEquals(repository.count(shardKey, 2000L), 3L);
+        assertEquals(repository.count(shardKey, 3001L), 0L);
+    }
+
+    private ScheduledMessage createMessage(long fireTime) {
+        ActorRef ref = mock(ActorRef.class);
+        when(ref.toString()).thenReturn("actor://test/test/shards/0/actor");
+        return new ScheduledMessageImpl(fireTime, ref, ref, String.class, new byte[0]);
+    }
+
+    private List<Long> fireTimes(List<ScheduledMessage> messages) {
+        return messages.stream().map(message -> message.getFireTime(TimeUnit.MILLISECONDS)).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.local.store;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.*;
+
+public class LogStoreTest {
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("logstore").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testPutGetAndDelete() throws Exception {
+        LogStore logStore = LogStore.open(directory, 4096, 0.5d);
+        logStore.put("a/1", bytes("one"));
+        logStore.put("a/2", bytes("two"));
+        logStore.put("b/1", bytes("other"));
+        logStore.put("a/1", bytes("uno"));
+
+        assertEquals(string(logStore.get("a/1")), "uno");
+        assertTrue(logStore.contains("a/2"));
+        assertNull(logStore.get("a/3"));
+
+        logStore.delete("a/2");
+        assertFalse(logStore.contains("a/2"));
+
+        List<String> keys = new ArrayList<>();
+        logStore.forEachKey("a/", keys::add);
+        assertEquals(keys.size(), 1);
+        assertEquals(keys.get(0), "a/1");
+        logStore.close();
+    }
+
+    @Test
+    public void testStateIsRecoveredOnOpen() throws Exception {
+        LogStore logStore = LogStore.open(directory, 128, 0.5d);
+        for (int i = 0; i < 20; i++) {
+            logStore.put("key/" + (i % 5), bytes("value" + i));
+        }
+        logStore.delete("key/0");
+        logStore.close();
+
+        LogStore reopened = LogStore.open(directory, 128, 0.5d);
+        assertFalse(reopened.contains("key/0"));
+        for (int i = 1; i < 5; i++) {
+            assertEquals(string(reopened.get("key/" + i)), "value" + (15 + i));
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testTornRecordIsIgnored() throws Exception {
+        LogStore logStore = LogStore.open(directory, 4096, 0.5d);
+        logStore.put("key/1", bytes("value1"));
+        logStore.put("key/2", bytes("value2"));
+        logStore.close();
+        // corrupt the value of the second record
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, Segment.fileName(0)), "rw")) {
+            long offset = Segment.recordSize(bytes("key/1"), bytes("value1")) + Segment.HEADER_SIZE + 5;
+            file.seek(offset);
+            file.write('X');
+        }
+
+        LogStore reopened = LogStore.open(directory, 4096, 0.5d);
+        assertEquals(string(reopened.get("key/1")), "value1");
+        assertFalse(reopened.contains("key/2"));
+        // new writes go where the torn record was
+        reopened.put("key/3", bytes("value3"));
+        reopened.close();
+
+        reopened = LogStore.open(directory, 4096, 0.5d);
+        assertEquals(string(reopened.get("key/3")), "value3");
+        assertFalse(reopened.contains("key/2"));
+        reopened.close();
+    }
+
+    @Test
+    public void testWritesCompleteOnSync() throws Exception {
+        LogStore logStore = LogStore.open(directory, 4096, 0.5d);
+        Map<String, byte[]> changes = new LinkedHashMap<>();
+        changes.put("key/1", bytes("value1"));
+        changes.put("key/2", bytes("value2"));
+        CompletableFuture<Void> first = logStore.write(changes);
+        CompletableFuture<Void> second = logStore.delete("key/1");
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(string(logStore.get("key/2")), "value2");
+
+        logStore.sync();
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        logStore.close();
+    }
+
+    @Test
+    public void testCompactionRemovesOldSegments() throws Exception {
+        LogStore logStore = LogStore.open(directory, 256, 0.5d);
+        for (int i = 0; i < 200; i++) {
+            logStore.put("key/" + (i % 4), bytes("value" + i));
+        }
+        logStore.put("deleted", bytes("value"));
+        logStore.delete("deleted");
+        int segmentsBefore = directory.listFiles().length;
+        assertTrue(logStore.needsCompaction());
+
+        logStore.compact();
+
+        assertFalse(logStore.needsCompaction());
+        assertTrue(directory.listFiles().length < segmentsBefore);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(string(logStore.get("key/" + i)), "value" + (196 + i));
+        }
+        logStore.close();
+
+        LogStore reopened = LogStore.open(directory, 256, 0.5d);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(string(reopened.get("key/" + i)), "value" + (196 + i));
+        }
+        assertFalse(reopened.contains("deleted"));
+        reopened.close();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return new String(value, UTF_8);
+    }
+}
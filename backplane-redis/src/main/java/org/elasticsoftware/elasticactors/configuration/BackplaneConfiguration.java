@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.configuration;
+
+import org.elasticsoftware.elasticactors.cluster.ActorRefFactory;
+import org.elasticsoftware.elasticactors.cluster.ActorSystemEventListenerRepository;
+import org.elasticsoftware.elasticactors.cluster.InternalActorSystems;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageRepository;
+import org.elasticsoftware.elasticactors.redis.cluster.RedisActorSystemEventListenerRepository;
+import org.elasticsoftware.elasticactors.redis.cluster.scheduler.RedisScheduledMessageRepository;
+import org.elasticsoftware.elasticactors.redis.state.PersistentActorUpdateEventProcessor;
+import org.elasticsoftware.elasticactors.redis.state.RedisPersistentActorRepository;
+import org.elasticsoftware.elasticactors.serialization.Deserializer;
+import org.elasticsoftware.elasticactors.serialization.Serializer;
+import org.elasticsoftware.elasticactors.serialization.internal.ActorRefDeserializer;
+import org.elasticsoftware.elasticactors.serialization.internal.PersistentActorDeserializer;
+import org.elasticsoftware.elasticactors.serialization.internal.PersistentActorSerializer;
+import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageDeserializer;
+import org.elasticsoftware.elasticactors.state.OffHeapCachingPersistentActorRepository;
+import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
+import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutorImpl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import redis.clients.jedis.JedisPoolConfig;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+public class BackplaneConfiguration {
+    @Autowired
+    private Environment env;
+    @Autowired
+    private InternalActorSystems cluster;
+    @Autowired
+    private ActorRefFactory actorRefFactory;
+
+    private JedisConnectionFactory connectionFactory;
+    private RedisTemplate<String, byte[]> redisTemplate;
+
+    @PostConstruct
+    public void initialize() {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(env.getProperty("ea.redis.maxActive", Integer.class, Runtime.getRuntime().availableProcessors() * 3));
+        poolConfig.setMaxWaitMillis(2000);
+
+        connectionFactory = new JedisConnectionFactory(poolConfig);
+        connectionFactory.setHostName(env.getProperty("ea.redis.host", "localhost"));
+        connectionFactory.setPort(env.getProperty("ea.redis.port", Integer.class, 6379));
+        connectionFactory.setDatabase(env.getProperty("ea.redis.database", Integer.class, 0));
+        connectionFactory.setTimeout(env.getProperty("ea.redis.timeoutMillis", Integer.class, 2000));
+        String password = env.getProperty("ea.redis.password");
+        if (password != null) {
+            connectionFactory.setPassword(password);
+        }
+        connectionFactory.afterPropertiesSet();
+
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        // the repositories work on the raw connection and (de)serialize keys and values themselves
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.connectionFactory.destroy();
+    }
+
+    @Bean(name = {"asyncUpdateExecutor"}, destroyMethod = "shutdown")
+    public ThreadBoundExecutor createAsyncUpdateExecutor() {
+        final int workers = env.getProperty("ea.asyncUpdateExecutor.workerCount",Integer.class,Runtime.getRuntime().availableProcessors() * 3);
+        final int batchSize = env.getProperty("ea.asyncUpdateExecutor.batchSize",Integer.class,20);
+        return new ThreadBoundExecutorImpl(new PersistentActorUpdateEventProcessor(redisTemplate),batchSize,new DaemonThreadFactory("UPDATE-EXECUTOR-WORKER"),workers);
+    }
+
+    @Bean(name = {"persistentActorRepository"})
+    public PersistentActorRepository getPersistentActorRepository(@Qualifier("asyncUpdateExecutor") ThreadBoundExecutor asyncUpdateExecutor) {
+        Serializer serializer = new PersistentActorSerializer(cluster);
+        Deserializer deserializer = new PersistentActorDeserializer(actorRefFactory,cluster);
+        final PersistentActorRepository persistentActorRepository = new RedisPersistentActorRepository(cluster.getClusterName(), redisTemplate, asyncUpdateExecutor, deserializer, serializer);
+        // optional off-heap second level cache for the serialized actors, disabled by default
+        final Long offHeapCacheSize = env.getProperty("ea.persistentActorRepository.offHeapCache.maximumSize",Long.class,0L);
+        if(offHeapCacheSize > 0) {
+            return new OffHeapCachingPersistentActorRepository(persistentActorRepository,
+                    new PersistentActorSerializer(cluster), new PersistentActorDeserializer(actorRefFactory,cluster), offHeapCacheSize);
+        }
+        return persistentActorRepository;
+    }
+
+    @Bean(name = {"scheduledMessageRepository"})
+    public ScheduledMessageRepository getScheduledMessageRepository() {
+        return new RedisScheduledMessageRepository(cluster.getClusterName(), redisTemplate, new ScheduledMessageDeserializer(new ActorRefDeserializer(actorRefFactory)));
+    }
+
+    @Bean(name = {"actorSystemEventListenerRepository"})
+    public ActorSystemEventListenerRepository getActorSystemEventListenerRepository() {
+        return new RedisActorSystemEventListenerRepository(cluster.getClusterName(), redisTemplate);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.redis.cluster;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.cluster.ActorSystemEvent;
+import org.elasticsoftware.elasticactors.cluster.ActorSystemEventListener;
+import org.elasticsoftware.elasticactors.cluster.ActorSystemEventListenerRepository;
+import org.elasticsoftware.elasticactors.serialization.internal.ActorSystemEventListenerDeserializer;
+import org.elasticsoftware.elasticactors.serialization.internal.ActorSystemEventListenerSerializer;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.actorSystemEventListenersKey;
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.bytes;
+
+/**
+ * Stores the listeners of an {@link ActorSystemEvent} in a hash per shard, with the actor id of the listener as field
+ */
+public final class RedisActorSystemEventListenerRepository implements ActorSystemEventListenerRepository {
+    private static final Logger logger = LogManager.getLogger(RedisActorSystemEventListenerRepository.class);
+    private final String clusterName;
+    private final RedisTemplate<String,byte[]> redisTemplate;
+
+    public RedisActorSystemEventListenerRepository(String clusterName, RedisTemplate<String, byte[]> redisTemplate) {
+        this.clusterName = clusterName;
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public void create(ShardKey shardKey, ActorSystemEvent event, ActorSystemEventListener listener) {
+        final byte[] value = ActorSystemEventListenerSerializer.get().serialize(listener);
+        redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.hSet(actorSystemEventListenersKey(clusterName, shardKey, event.name()), bytes(listener.getActorId()), value));
+    }
+
+    @Override
+    public void delete(ShardKey shardKey, ActorSystemEvent event, ActorRef listenerId) {
+        redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.hDel(actorSystemEventListenersKey(clusterName, shardKey, event.name()), bytes(listenerId.getActorId())));
+    }
+
+    @Override
+    public List<ActorSystemEventListener> getAll(ShardKey shardKey, ActorSystemEvent event) {
+        Map<byte[], byte[]> values = redisTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection ->
+                connection.hGetAll(actorSystemEventListenersKey(clusterName, shardKey, event.name())));
+        List<ActorSystemEventListener> resultList = new LinkedList<>();
+        if (values != null) {
+            for (byte[] value : values.values()) {
+                try {
+                    resultList.add(ActorSystemEventListenerDeserializer.get().deserialize(value));
+                } catch(IOException e)  {
+                    logger.error("IOException while deserializing ActorSystemEventListener",e);
+                }
+            }
+        }
+        return resultList;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.redis.cluster.scheduler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessage;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageKey;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageRepository;
+import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageDeserializer;
+import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageSerializer;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.bytes;
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.scheduledMessageValuesKey;
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.scheduledMessagesKey;
+
+/**
+ * Stores the scheduled messages of a shard in a sorted set of message ids scored by fire time, the serialized
+ * messages are kept in a hash next to it. Both are updated in one transaction.
+ */
+public final class RedisScheduledMessageRepository implements ScheduledMessageRepository {
+    private static final Logger logger = LogManager.getLogger(RedisScheduledMessageRepository.class);
+    private final String clusterName;
+    private final RedisTemplate<String,byte[]> redisTemplate;
+    private final ScheduledMessageDeserializer scheduledMessageDeserializer;
+
+    public RedisScheduledMessageRepository(String clusterName, RedisTemplate<String, byte[]> redisTemplate, ScheduledMessageDeserializer scheduledMessageDeserializer) {
+        this.clusterName = clusterName;
+        this.redisTemplate = redisTemplate;
+        this.scheduledMessageDeserializer = scheduledMessageDeserializer;
+    }
+
+    @Override
+    public void create(ShardKey shardKey, ScheduledMessage scheduledMessage) {
+        final byte[] id = bytes(scheduledMessage.getId().toString());
+        final byte[] value = ScheduledMessageSerializer.get().serialize(scheduledMessage);
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.multi();
+            connection.zAdd(scheduledMessagesKey(clusterName, shardKey), scheduledMessage.getFireTime(TimeUnit.MILLISECONDS), id);
+            connection.hSet(scheduledMessageValuesKey(clusterName, shardKey), id, value);
+            connection.exec();
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(ShardKey shardKey, ScheduledMessageKey scheduledMessageKey) {
+        final byte[] id = bytes(scheduledMessageKey.getId().toString());
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.multi();
+            connection.zRem(scheduledMessagesKey(clusterName, shardKey), id);
+            connection.hDel(scheduledMessageValuesKey(clusterName, shardKey), id);
+            connection.exec();
+            return null;
+        });
+    }
+
+    @Override
+    public List<ScheduledMessage> getAll(ShardKey shardKey) {
+        // ordered by fire time
+        return getByScore(shardKey, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    @Override
+    public List<ScheduledMessage> getRange(ShardKey shardKey, long fromFireTime, long toFireTime) {
+        // the scores are whole millis, so the exclusive upper bound is one less
+        return getByScore(shardKey, fromFireTime, toFireTime - 1);
+    }
+
+    @Override
+    public long count(ShardKey shardKey, long fromFireTime) {
+        Long count = redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.zCount(scheduledMessagesKey(clusterName, shardKey), fromFireTime, Double.POSITIVE_INFINITY));
+        return count != null ? count : 0L;
+    }
+
+    private List<ScheduledMessage> getByScore(ShardKey shardKey, double min, double max) {
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection -> {
+            Set<byte[]> ids = connection.zRangeByScore(scheduledMessagesKey(clusterName, shardKey), min, max);
+            if (ids == null || ids.isEmpty()) {
+                return null;
+            }
+            return connection.hMGet(scheduledMessageValuesKey(clusterName, shardKey), ids.toArray(new byte[0][]));
+        });
+        List<ScheduledMessage> resultList = new ArrayList<>();
+        if (values != null) {
+            for (byte[] value : values) {
+                if (value == null) {
+                    continue;
+                }
+                try {
+                    resultList.add(scheduledMessageDeserializer.deserialize(value));
+                } catch (IOException e) {
+                    logger.error("IOException while deserializing ScheduledMessage", e);
+                }
+            }
+        }
+        return resultList;
+    }
+}
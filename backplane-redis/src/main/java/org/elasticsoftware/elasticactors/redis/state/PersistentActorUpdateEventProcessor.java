@@ -0,0 +1,120 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.redis.state;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static java.lang.System.currentTimeMillis;
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.bytes;
+
+/**
+ * Writes batches of actor state updates to Redis using a single pipeline, so a batch costs one round trip.
+ */
+public final class PersistentActorUpdateEventProcessor implements ThreadBoundEventProcessor<PersistentActorUpdateEvent> {
+    private static final Logger logger = LogManager.getLogger(PersistentActorUpdateEventProcessor.class);
+    private final RedisTemplate<String, byte[]> redisTemplate;
+
+    public PersistentActorUpdateEventProcessor(RedisTemplate<String, byte[]> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public void process(PersistentActorUpdateEvent... events) {
+        process(Arrays.asList(events));
+    }
+
+    @Override
+    public void process(List<PersistentActorUpdateEvent> allEvents) {
+        Exception executionException = null;
+        final long startTime = currentTimeMillis();
+        // only the latest state of each actor needs to be written, the listeners of all events are still called
+        final List<PersistentActorUpdateEvent> events = coalesce(allEvents);
+        try {
+            redisTemplate.execute((RedisCallback<Void>) connection -> {
+                if (events.size() == 1) {
+                    write(connection, events.get(0));
+                } else {
+                    connection.openPipeline();
+                    for (PersistentActorUpdateEvent event : events) {
+                        write(connection, event);
+                    }
+                    connection.closePipeline();
+                }
+                return null;
+            });
+        } catch(Exception e) {
+            executionException = e;
+        } finally {
+            for (PersistentActorUpdateEvent event : allEvents) {
+                if(event.getEventListener() != null) {
+                    if (executionException == null) {
+                        event.getEventListener().onDone(event.getMessage());
+                    } else {
+                        event.getEventListener().onError(event.getMessage(), executionException);
+                    }
+                }
+            }
+            // add some trace info
+            if(logger.isTraceEnabled()) {
+                final long endTime = currentTimeMillis();
+                logger.trace(format("Updating %d Actor state entrie(s) (coalesced from %d events) took %d msecs",events.size(),allEvents.size(),endTime-startTime));
+            }
+        }
+    }
+
+    private void write(RedisConnection connection, PersistentActorUpdateEvent event) {
+        if (event.getPersistentActorBytes() != null) {
+            connection.hSet(event.getHashKey(), bytes(event.getPersistentActorId()), event.getPersistentActorBytes());
+        } else {
+            // it's a delete
+            connection.hDel(event.getHashKey(), bytes(event.getPersistentActorId()));
+        }
+    }
+
+    /**
+     * Removes all but the last event for every (shard, persistentActorId) combination
+     *
+     * @param events    the events as they were handed to this processor
+     * @return          the events that need to be written, in order of their last occurrence
+     */
+    static List<PersistentActorUpdateEvent> coalesce(List<PersistentActorUpdateEvent> events) {
+        if(events.size() <= 1) {
+            return events;
+        }
+        Map<Map.Entry<Object,String>,PersistentActorUpdateEvent> latestEvents = new LinkedHashMap<>();
+        for (PersistentActorUpdateEvent event : events) {
+            Map.Entry<Object,String> key = new AbstractMap.SimpleImmutableEntry<>(event.getShardKey(), event.getPersistentActorId());
+            // remove first to move the entry to the position of the latest event
+            latestEvents.remove(key);
+            latestEvents.put(key, event);
+        }
+        return latestEvents.size() == events.size() ? events : new ArrayList<>(latestEvents.values());
+    }
+}
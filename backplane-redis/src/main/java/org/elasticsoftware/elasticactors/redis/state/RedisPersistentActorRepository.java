@@ -23,46 +23,110 @@ import org.elasticsoftware.elasticactors.serialization.Deserializer;
 import org.elasticsoftware.elasticactors.serialization.Serializer;
 import org.elasticsoftware.elasticactors.state.PersistentActor;
 import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.bytes;
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.persistentActorsKey;
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.string;
 
 /**
+ * Stores the actors of a shard in one Redis hash, with the actor id as field. Updates are handed to the
+ * {@link ThreadBoundExecutor} and written in (pipelined) batches by the {@link PersistentActorUpdateEventProcessor}.
+ *
  * @author Joost van de Wijgerd
  */
-public class RedisPersistentActorRepository implements PersistentActorRepository {
+public final class RedisPersistentActorRepository implements PersistentActorRepository {
+    private final String clusterName;
     private final RedisTemplate<String,byte[]> redisTemplate;
+    private final ThreadBoundExecutor asyncUpdateExecutor;
     private final Deserializer<byte[],PersistentActor> deserializer;
     private final Serializer<PersistentActor,byte[]> serializer;
 
-    public RedisPersistentActorRepository(RedisTemplate<String, byte[]> redisTemplate, Deserializer<byte[], PersistentActor> deserializer, Serializer<PersistentActor, byte[]> serializer) {
+    public RedisPersistentActorRepository(String clusterName,
+                                          RedisTemplate<String, byte[]> redisTemplate,
+                                          ThreadBoundExecutor asyncUpdateExecutor,
+                                          Deserializer<byte[], PersistentActor> deserializer,
+                                          Serializer<PersistentActor, byte[]> serializer) {
+        this.clusterName = clusterName;
         this.redisTemplate = redisTemplate;
+        this.asyncUpdateExecutor = asyncUpdateExecutor;
         this.deserializer = deserializer;
         this.serializer = serializer;
     }
 
     @Override
     public boolean contains(final ShardKey shard,final String actorId) {
-        return false;  //To change body of implemented methods use File | Settings | File Templates.
+        Boolean exists = redisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.hExists(persistentActorsKey(clusterName, shard), bytes(actorId)));
+        return Boolean.TRUE.equals(exists);
     }
 
     @Override
     public void update(ShardKey shard, PersistentActor persistentActor) throws IOException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        // serialize the data on the calling thread (to avoid thread visibility issues)
+        final byte[] serializedActorBytes = serializer.serialize(persistentActor);
+        asyncUpdateExecutor.execute(new PersistentActorUpdateEvent(persistentActorsKey(clusterName, shard), shard,
+                                                                   persistentActor.getSelf().getActorId(),
+                                                                   serializedActorBytes, null, null));
     }
 
     @Override
-    public void updateAsync(ShardKey shard, PersistentActor persistentActor, InternalMessage message, MessageHandlerEventListener messageHandlerEventListener) {
-        // do nothing
+    public void updateAsync(ShardKey shard, PersistentActor persistentActor, InternalMessage message, MessageHandlerEventListener messageHandlerEventListener) throws IOException {
+        // serialize the data on the calling thread (to avoid thread visibility issues)
+        final byte[] serializedActorBytes = serializer.serialize(persistentActor);
+        asyncUpdateExecutor.execute(new PersistentActorUpdateEvent(persistentActorsKey(clusterName, shard), shard,
+                                                                   persistentActor.getSelf().getActorId(),
+                                                                   serializedActorBytes, message,
+                                                                   messageHandlerEventListener));
     }
 
     @Override
     public void delete(ShardKey shard, String actorId) {
-        //To change body of implemented methods use File | Settings | File Templates.
+        asyncUpdateExecutor.execute(new PersistentActorUpdateEvent(persistentActorsKey(clusterName, shard), shard, actorId, null, null, null));
     }
 
     @Override
     public PersistentActor<ShardKey> get(ShardKey shard, String actorId) throws IOException {
-        return null;  //To change body of implemented methods use File | Settings | File Templates.
+        byte[] serializedActor = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.hGet(persistentActorsKey(clusterName, shard), bytes(actorId)));
+        return serializedActor != null ? deserializer.deserialize(serializedActor) : null;
+    }
+
+    @Override
+    public Map<String, PersistentActor<ShardKey>> getAll(ShardKey shard, Collection<String> actorIds) throws IOException {
+        final String[] ids = actorIds.toArray(new String[0]);
+        final byte[][] fields = new byte[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            fields[i] = bytes(ids[i]);
+        }
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.hMGet(persistentActorsKey(clusterName, shard), fields));
+        Map<String, PersistentActor<ShardKey>> result = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            byte[] serializedActor = values.get(i);
+            if (serializedActor != null) {
+                result.put(ids[i], deserializer.deserialize(serializedActor));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachActorId(ShardKey shard, Consumer<String> consumer) {
+        Set<byte[]> actorIds = redisTemplate.execute((RedisCallback<Set<byte[]>>) connection ->
+                connection.hKeys(persistentActorsKey(clusterName, shard)));
+        if (actorIds != null) {
+            actorIds.forEach(actorId -> consumer.accept(string(actorId)));
+        }
     }
 }
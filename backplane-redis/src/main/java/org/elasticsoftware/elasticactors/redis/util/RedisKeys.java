@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.redis.util;
+
+import org.elasticsoftware.elasticactors.ShardKey;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds the keys of the data structures the backplane stores in Redis. All keys of a shard share the same hash tag
+ * (the part between braces) so that they end up in the same slot when Redis Cluster is used, this makes it possible
+ * to update them in one transaction.
+ */
+public final class RedisKeys {
+    private RedisKeys() {}
+
+    public static byte[] persistentActorsKey(String clusterName, ShardKey shardKey) {
+        return key(clusterName, shardKey, "PersistentActors");
+    }
+
+    public static byte[] scheduledMessagesKey(String clusterName, ShardKey shardKey) {
+        return key(clusterName, shardKey, "ScheduledMessages");
+    }
+
+    public static byte[] scheduledMessageValuesKey(String clusterName, ShardKey shardKey) {
+        return key(clusterName, shardKey, "ScheduledMessages:values");
+    }
+
+    public static byte[] actorSystemEventListenersKey(String clusterName, ShardKey shardKey, String event) {
+        return key(clusterName, shardKey, "ActorSystemEventListeners:" + event);
+    }
+
+    public static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static String string(byte[] value) {
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] key(String clusterName, ShardKey shardKey, String name) {
+        return bytes("{" + clusterName + ":" + shardKey + "}:" + name);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.redis;
+
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.testng.SkipException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * Runs the tests against an embedded redis-server, the tests are skipped when the server cannot be started
+ */
+public abstract class AbstractRedisTest {
+    private RedisServer redisServer;
+    private JedisConnectionFactory connectionFactory;
+    protected RedisTemplate<String, byte[]> redisTemplate;
+
+    @BeforeClass
+    public void startRedis() throws IOException {
+        int port;
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        try {
+            redisServer = new RedisServer(port);
+            redisServer.start();
+        } catch (Exception e) {
+            redisServer = null;
+            throw new SkipException("Unable to start embedded redis-server", e);
+        }
+        connectionFactory = new JedisConnectionFactory();
+        connectionFactory.setPort(port);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @BeforeMethod
+    public void flushRedis() {
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            connection.flushDb();
+            return null;
+        });
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void stopRedis() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+}
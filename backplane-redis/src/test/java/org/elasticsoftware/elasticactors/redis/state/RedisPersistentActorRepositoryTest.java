@@ -0,0 +1,127 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.redis.state;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.messaging.InternalMessage;
+import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
+import org.elasticsoftware.elasticactors.redis.AbstractRedisTest;
+import org.elasticsoftware.elasticactors.serialization.Deserializer;
+import org.elasticsoftware.elasticactors.serialization.Serializer;
+import org.elasticsoftware.elasticactors.state.PersistentActor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.bytes;
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.persistentActorsKey;
+import static org.elasticsoftware.elasticactors.redis.util.RedisKeys.string;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.*;
+
+public class RedisPersistentActorRepositoryTest extends AbstractRedisTest {
+    private final ShardKey shardKey = new ShardKey("test", 0);
+
+    @Test
+    public void testUpdateGetAndDelete() throws Exception {
+        RedisPersistentActorRepository repository = createRepository();
+
+        repository.update(shardKey, createActor("actor-1"));
+        repository.update(shardKey, createActor("actor-2"));
+
+        assertTrue(repository.contains(shardKey, "actor-1"));
+        assertFalse(repository.contains(shardKey, "actor-3"));
+        assertEquals(repository.get(shardKey, "actor-2").getSelf().getActorId(), "actor-2");
+        assertNull(repository.get(shardKey, "actor-3"));
+
+        Map<String, PersistentActor<ShardKey>> actors = repository.getAll(shardKey, Arrays.asList("actor-1", "actor-2", "actor-3"));
+        assertEquals(actors.keySet(), new HashSet<>(Arrays.asList("actor-1", "actor-2")));
+
+        List<String> actorIds = new ArrayList<>();
+        repository.forEachActorId(shardKey, actorIds::add);
+        assertEquals(actorIds.size(), 2);
+
+        repository.delete(shardKey, "actor-1");
+        assertFalse(repository.contains(shardKey, "actor-1"));
+        assertTrue(repository.contains(shardKey, "actor-2"));
+    }
+
+    @Test
+    public void testBatchIsCoalescedAndAllListenersAreCalled() {
+        PersistentActorUpdateEventProcessor processor = new PersistentActorUpdateEventProcessor(redisTemplate);
+        MessageHandlerEventListener listener = mock(MessageHandlerEventListener.class);
+        InternalMessage first = mock(InternalMessage.class);
+        InternalMessage second = mock(InternalMessage.class);
+        InternalMessage third = mock(InternalMessage.class);
+        byte[] key = persistentActorsKey("test", shardKey);
+
+        processor.process(Arrays.asList(
+                new PersistentActorUpdateEvent(key, shardKey, "actor", bytes("state1"), first, listener),
+                new PersistentActorUpdateEvent(key, shardKey, "other", bytes("other"), second, listener),
+                new PersistentActorUpdateEvent(key, shardKey, "actor", bytes("state2"), third, listener)));
+
+        assertEquals(string(hGet(key, "actor")), "state2");
+        assertEquals(string(hGet(key, "other")), "other");
+        verify(listener).onDone(first);
+        verify(listener).onDone(second);
+        verify(listener).onDone(third);
+    }
+
+    @Test
+    public void testDeleteWinsWhenItIsTheLatestEvent() {
+        PersistentActorUpdateEventProcessor processor = new PersistentActorUpdateEventProcessor(redisTemplate);
+        byte[] key = persistentActorsKey("test", shardKey);
+
+        processor.process(Arrays.asList(
+                new PersistentActorUpdateEvent(key, shardKey, "actor", bytes("state1"), null, null),
+                new PersistentActorUpdateEvent(key, shardKey, "actor", null, null, null)));
+
+        assertNull(hGet(key, "actor"));
+    }
+
+    private byte[] hGet(byte[] key, String actorId) {
+        return redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hGet(key, bytes(actorId)));
+    }
+
+    private RedisPersistentActorRepository createRepository() {
+        // run the updates on the calling thread
+        PersistentActorUpdateEventProcessor processor = new PersistentActorUpdateEventProcessor(redisTemplate);
+        ThreadBoundExecutor executor = mock(ThreadBoundExecutor.class);
+        doAnswer(invocation -> {
+            processor.process((PersistentActorUpdateEvent) invocation.getArgument(0));
+            return null;
+        }).when(executor).execute(any(ThreadBoundEvent.class));
+        Serializer<PersistentActor, byte[]> serializer = actor -> bytes(actor.getSelf().getActorId());
+        Deserializer<byte[], PersistentActor> deserializer = bytes -> createActor(string(bytes));
+        return new RedisPersistentActorRepository("test", redisTemplate, executor, deserializer, serializer);
+    }
+
+    private PersistentActor<ShardKey> createActor(String actorId) {
+        ActorRef ref = mock(ActorRef.class);
+        when(ref.getActorId()).thenReturn(actorId);
+        return new PersistentActor<>(shardKey, null, null, ref, null, null);
+    }
+}
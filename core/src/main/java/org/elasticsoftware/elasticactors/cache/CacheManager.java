@@ -16,84 +16,212 @@
 
 package org.elasticsoftware.elasticactors.cache;
 
-import com.google.common.cache.*;
-import com.google.common.collect.*;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 /**
+ * Manages a number of segmented caches (one per shard or node) that share a single, size bounded, backing cache.
+ *
+ * The backing cache is a Caffeine cache which uses the W-TinyLFU eviction policy and doesn't take a global lock
+ * on reads or writes. Each segment keeps its own concurrent index (actor key to cache key) that is used to
+ * invalidate all entries of a segment on {@link #destroy(Cache)}, and to avoid allocating a new cache key on
+ * every lookup. The index is only changed while the backing cache holds the lock of the entry (i.e. in the mapping
+ * functions and the eviction listener), so it always contains exactly the cached entries of the segment.
+ *
  * @author Joost van de Wijgerd
  */
 public class CacheManager<K,V> {
-    private final Cache<CacheKey,V> backingCache;
-    private final Multimap<Object,CacheKey> segmentIndex;
-    private final GlobalRemovalListener globalRemovalListener = new GlobalRemovalListener();
+    private final com.github.benmanes.caffeine.cache.Cache<CacheKey,V> backingCache;
+    private final ConcurrentMap<Object,ConcurrentMap<Object,CacheKey>> segmentIndex = new ConcurrentHashMap<>();
     private final ConcurrentMap<Object,EvictionListener<V>> evictionListeners = new ConcurrentHashMap<Object,EvictionListener<V>>();
+    private final ToIntFunction<V> weigher;
 
     public CacheManager(int maximumSize) {
-        backingCache = CacheBuilder.newBuilder().maximumSize(maximumSize)
-                                                .removalListener(globalRemovalListener).build();
-        segmentIndex = Multimaps.synchronizedSetMultimap(HashMultimap.<Object,CacheKey>create());
+        this(maximumSize, 0L, null);
+    }
+
+    /**
+     * When a weigher is given and maximumWeight is larger than zero, the cache is bounded by the total weight of the
+     * entries instead of the number of entries (and maximumSize is ignored). The weight of an entry is computed when
+     * it is written and refreshed when it is read and the weight has changed since.
+     *
+     * @param maximumSize       the maximum number of entries, used when the cache is not weighted
+     * @param maximumWeight     the maximum total weight of the entries
+     * @param weigher           computes the weight of an entry
+     */
+    protected CacheManager(int maximumSize, long maximumWeight, ToIntFunction<V> weigher) {
+        this(maximumSize, maximumWeight, weigher, null);
+    }
+
+    /**
+     * When an idle timeout function is given, entries expire after they have not been accessed for the returned
+     * time (in nanoseconds). A value of zero or less means the entry will not expire. Expired entries are handled
+     * like evicted entries, i.e. the {@link EvictionListener} of the cache is called.
+     *
+     * @param maximumSize       the maximum number of entries, used when the cache is not weighted
+     * @param maximumWeight     the maximum total weight of the entries
+     * @param weigher           computes the weight of an entry
+     * @param idleTimeout       computes the idle timeout (in nanoseconds) of an entry
+     */
+    protected CacheManager(int maximumSize, long maximumWeight, ToIntFunction<V> weigher, ToLongFunction<V> idleTimeout) {
+        Caffeine<Object,Object> builder = Caffeine.newBuilder();
+        if(idleTimeout != null) {
+            // the system scheduler makes sure idle entries are also removed when there is no activity on the cache
+            builder.expireAfter(new GlobalExpiry(idleTimeout)).scheduler(Scheduler.systemScheduler());
+        }
+        if(maximumWeight > 0 && weigher != null) {
+            this.weigher = weigher;
+            builder.maximumWeight(maximumWeight).weigher(new GlobalWeigher());
+        } else {
+            this.weigher = null;
+            builder.maximumSize(maximumSize);
+        }
+        // run the maintenance (and thus the eviction listeners) on the calling thread, like the guava cache did
+        backingCache = builder.executor(Runnable::run).recordStats()
+                              .evictionListener(new IndexEvictionListener())
+                              .removalListener(new GlobalRemovalListener()).build();
     }
 
     public final Cache<K,V> create(Object cacheKey,EvictionListener<V> evictionListener) {
         if(evictionListener != null) {
             evictionListeners.put(cacheKey,evictionListener);
         }
-        return new SegmentedCache(cacheKey);
+        return new SegmentedCache(cacheKey, segmentIndex.computeIfAbsent(cacheKey, k -> new ConcurrentHashMap<>()));
     }
 
     public final void destroy(Cache<K,V> cache) {
         if(SegmentedCache.class.isInstance(cache)) {
             Object segmentKey = ((SegmentedCache)cache).segmentKey;
-            backingCache.invalidateAll(segmentIndex.removeAll(segmentKey));
+            ConcurrentMap<Object,CacheKey> index = segmentIndex.remove(segmentKey);
+            if(index != null) {
+                backingCache.invalidateAll(new ArrayList<>(index.values()));
+            }
             evictionListeners.remove(segmentKey);
         }
     }
 
+    public final boolean isWeighted() {
+        return weigher != null;
+    }
+
+    /**
+     * @return the total weight of all cached entries, or the number of entries when the cache is not weighted
+     */
+    public final long getWeightedSize() {
+        if(isWeighted()) {
+            return backingCache.policy().eviction().get().weightedSize().getAsLong();
+        }
+        return backingCache.estimatedSize();
+    }
+
+    /**
+     * @return the total weight of the entries of the given cache (i.e. shard or node), or the number of entries when
+     * the cache is not weighted
+     */
+    public final long getWeightedSize(Cache<K,V> cache) {
+        if(SegmentedCache.class.isInstance(cache)) {
+            return getWeightedSize(((SegmentedCache) cache).index);
+        }
+        return cache.size();
+    }
+
+    /**
+     * @return the weighted size per cache (i.e. per shard or node), see {@link #getWeightedSize(Cache)}
+     */
+    public final Map<Object,Long> getWeightedSizes() {
+        Map<Object,Long> result = Maps.newLinkedHashMap();
+        segmentIndex.forEach((segmentKey, index) -> result.put(segmentKey, getWeightedSize(index)));
+        return result;
+    }
+
+    private long getWeightedSize(ConcurrentMap<Object,CacheKey> index) {
+        if(isWeighted()) {
+            long weightedSize = 0L;
+            for (CacheKey cacheKey : index.values()) {
+                weightedSize += cacheKey.weight;
+            }
+            return weightedSize;
+        } else {
+            return index.size();
+        }
+    }
+
     private final class SegmentedCache extends AbstractCache<K,V> {
         private final Object segmentKey;
+        private final ConcurrentMap<Object,CacheKey> index;
 
-        private SegmentedCache(Object segmentKey) {
+        private SegmentedCache(Object segmentKey, ConcurrentMap<Object,CacheKey> index) {
             this.segmentKey = segmentKey;
+            this.index = index;
         }
 
         @Override
         public V getIfPresent(Object key) {
-            return backingCache.getIfPresent(new CacheKey(segmentKey,key));
+            CacheKey cacheKey = index.get(key);
+            return (cacheKey != null) ? reweighIfNeeded(cacheKey, backingCache.getIfPresent(cacheKey)) : null;
         }
 
         @Override
         public V get(K key, Callable<? extends V> valueLoader) throws ExecutionException {
-            CacheKey cacheKey = new CacheKey(segmentKey,key);
-            V value = backingCache.get(cacheKey,valueLoader);
-            segmentIndex.put(segmentKey,cacheKey);
-            return value;
+            CacheKey cacheKey = getOrCreateCacheKey(key);
+            try {
+                return reweighIfNeeded(cacheKey, backingCache.get(cacheKey, k -> {
+                    V value = load(valueLoader);
+                    index.put(key, k);
+                    return value;
+                }));
+            } catch (CheckedLoadException e) {
+                throw new ExecutionException(e.getCause());
+            }
         }
 
         @Override
         public void invalidate(Object key) {
-            CacheKey cacheKey = new CacheKey(segmentKey,key);
-            backingCache.invalidate(new CacheKey(segmentKey,key));
-            segmentIndex.remove(segmentKey,cacheKey);
+            CacheKey cacheKey = index.get(key);
+            if(cacheKey != null) {
+                backingCache.asMap().computeIfPresent(cacheKey, (k, v) -> {
+                    index.remove(key);
+                    k.weight = 0;
+                    return null;
+                });
+            }
         }
 
         @Override
         public void put(K key, V value) {
-            CacheKey cacheKey = new CacheKey(segmentKey,key);
-            backingCache.put(cacheKey,value);
-            segmentIndex.put(segmentKey,cacheKey);
+            backingCache.asMap().compute(getOrCreateCacheKey(key), (k, v) -> {
+                // when replacing, the index already refers to the (equal) key of the existing entry
+                index.putIfAbsent(key, k);
+                return value;
+            });
         }
 
         @Override
         public ImmutableMap<K, V> getAllPresent(Iterable<?> keys) {
             Map<K,V> result = Maps.newLinkedHashMap();
             for (Object key : keys) {
-                V value = backingCache.getIfPresent(new CacheKey(segmentKey,key));
+                V value = getIfPresent(key);
                 if(value != null) {
                     result.put((K) key, value);
                 }
@@ -115,7 +243,7 @@ public class CacheManager<K,V> {
 
         @Override
         public long size() {
-            return segmentIndex.get(segmentKey).size();
+            return index.size();
         }
 
         @Override
@@ -127,12 +255,66 @@ public class CacheManager<K,V> {
 
         @Override
         public void invalidateAll() {
-            backingCache.invalidateAll(segmentIndex.removeAll(segmentKey));
+            for (Object key : index.keySet()) {
+                invalidate(key);
+            }
         }
 
+        /**
+         * @return the stats of the backing cache, these are shared by all segments
+         */
         @Override
         public CacheStats stats() {
-            return backingCache.stats();
+            com.github.benmanes.caffeine.cache.stats.CacheStats stats = backingCache.stats();
+            return new CacheStats(stats.hitCount(), stats.missCount(), stats.loadSuccessCount(),
+                                  stats.loadFailureCount(), stats.totalLoadTime(), stats.evictionCount());
+        }
+
+        /**
+         * A new key is only added to the index once its entry has been written to the backing cache
+         */
+        private CacheKey getOrCreateCacheKey(Object key) {
+            CacheKey cacheKey = index.get(key);
+            return (cacheKey != null) ? cacheKey : new CacheKey(segmentKey, key, index);
+        }
+    }
+
+    /**
+     * The weight of a value can change after it was written to the cache (i.e. when the state of an actor is
+     * persisted), replacing the value with itself makes the backing cache weigh it again
+     */
+    private V reweighIfNeeded(CacheKey cacheKey, V value) {
+        if(weigher != null && value != null && cacheKey.weight != weigher.applyAsInt(value)) {
+            backingCache.asMap().replace(cacheKey, value, value);
+        }
+        return value;
+    }
+
+    /**
+     * Keeps the semantics of {@link Cache#get(Object, Callable)}: checked exceptions are reported as
+     * {@link ExecutionException}, unchecked exceptions as {@link UncheckedExecutionException}
+     */
+    private V load(Callable<? extends V> valueLoader) {
+        try {
+            V value = valueLoader.call();
+            if(value == null) {
+                throw new CacheLoader.InvalidCacheLoadException("valueLoader returned null");
+            }
+            return value;
+        } catch (CacheLoader.InvalidCacheLoadException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new UncheckedExecutionException(e);
+        } catch (Error e) {
+            throw new ExecutionError(e);
+        } catch (Exception e) {
+            throw new CheckedLoadException(e);
+        }
+    }
+
+    private static final class CheckedLoadException extends RuntimeException {
+        private CheckedLoadException(Exception cause) {
+            super(cause);
         }
     }
 
@@ -140,10 +322,15 @@ public class CacheManager<K,V> {
         private final Object segmentKey;
         private final Object cacheKey;
         private final int hashCode;
+        // the segment index this key belongs to
+        private final ConcurrentMap<Object,CacheKey> index;
+        // the weight of the current entry, only used when the cache is weighted
+        private volatile int weight;
 
-        private CacheKey(Object segmentKey, Object cacheKey) {
+        private CacheKey(Object segmentKey, Object cacheKey, ConcurrentMap<Object,CacheKey> index) {
             this.segmentKey = segmentKey;
             this.cacheKey = cacheKey;
+            this.index = index;
             this.hashCode = (segmentKey.hashCode() * 31) + cacheKey.hashCode();
         }
 
@@ -166,17 +353,63 @@ public class CacheManager<K,V> {
         }
     }
 
-    private final class GlobalRemovalListener implements RemovalListener<CacheManager.CacheKey,V> {
+    private final class GlobalWeigher implements Weigher<CacheKey,V> {
+        @Override
+        public int weigh(CacheKey key, V value) {
+            int weight = weigher.applyAsInt(value);
+            key.weight = weight;
+            return weight;
+        }
+    }
+
+    private final class GlobalExpiry implements Expiry<CacheKey,V> {
+        private final ToLongFunction<V> idleTimeout;
+
+        private GlobalExpiry(ToLongFunction<V> idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        @Override
+        public long expireAfterCreate(CacheKey key, V value, long currentTime) {
+            long timeout = idleTimeout.applyAsLong(value);
+            return (timeout > 0) ? timeout : Long.MAX_VALUE;
+        }
+
+        @Override
+        public long expireAfterUpdate(CacheKey key, V value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(CacheKey key, V value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+    }
+
+    /**
+     * Called atomically with the eviction, so a concurrent write of the same key cannot be dropped from the index
+     */
+    private final class IndexEvictionListener implements RemovalListener<CacheKey,V> {
+        @Override
+        public void onRemoval(CacheKey key, V value, RemovalCause cause) {
+            if(key != null) {
+                key.index.remove(key.cacheKey, key);
+                key.weight = 0;
+            }
+        }
+    }
+
+    private final class GlobalRemovalListener implements RemovalListener<CacheKey,V> {
         @Override
-        public void onRemoval(RemovalNotification<CacheKey, V> notification) {
-            if(notification.getKey() != null && notification.wasEvicted()) {
-                segmentIndex.remove(notification.getKey().segmentKey,notification.getKey());
+        public void onRemoval(CacheKey key, V value, RemovalCause cause) {
+            if(key == null) {
+                return;
             }
-            EvictionListener<V> evictionListener = evictionListeners.get(notification.getKey().segmentKey);
+            EvictionListener<V> evictionListener = evictionListeners.get(key.segmentKey);
             // only notify when it was not evicted explicitly (when a entry was deleted)
             // otherwise the prePassivate will run
-            if(evictionListener != null && notification.wasEvicted()) {
-                evictionListener.onEvicted(notification.getValue());
+            if(evictionListener != null && cause.wasEvicted()) {
+                evictionListener.onEvicted(value);
             }
         }
     }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A byte budgeted LRU cache that stores its values in direct (off-heap) memory. Entries are grouped by a segment
+ * key (i.e. the shard) so that all entries of a segment can be invalidated at once.
+ *
+ * The cache is split in a number of stripes that each have an equal part of the byte budget and their own lock, the
+ * least recently used entries of a stripe are evicted when a new entry doesn't fit in the budget of the stripe.
+ *
+ * @param <S>   the type of the segment key
+ * @param <K>   the type of the key
+ */
+public final class OffHeapCache<S,K> {
+    private static final int DEFAULT_STRIPES = 16;
+    private final List<Stripe> stripes;
+    private final long stripeCapacity;
+
+    public OffHeapCache(long maximumSize) {
+        this(maximumSize, DEFAULT_STRIPES);
+    }
+
+    public OffHeapCache(long maximumSize, int numberOfStripes) {
+        if(maximumSize <= 0 || numberOfStripes <= 0) {
+            throw new IllegalArgumentException("maximumSize and numberOfStripes need to be larger than 0");
+        }
+        this.stripes = new ArrayList<>(numberOfStripes);
+        for (int i = 0; i < numberOfStripes; i++) {
+            stripes.add(new Stripe());
+        }
+        this.stripeCapacity = maximumSize / numberOfStripes;
+    }
+
+    /**
+     * @return a copy of the cached bytes, or null if not present
+     */
+    public byte[] get(S segmentKey, K key) {
+        Key<S,K> cacheKey = new Key<>(segmentKey, key);
+        return stripeFor(cacheKey).get(cacheKey);
+    }
+
+    public boolean contains(S segmentKey, K key) {
+        Key<S,K> cacheKey = new Key<>(segmentKey, key);
+        return stripeFor(cacheKey).contains(cacheKey);
+    }
+
+    /**
+     * Stores a copy of the bytes. Values larger than the capacity of a stripe are not cached (and any previous value
+     * for the key is removed)
+     */
+    public void put(S segmentKey, K key, byte[] bytes) {
+        Key<S,K> cacheKey = new Key<>(segmentKey, key);
+        stripeFor(cacheKey).put(cacheKey, bytes);
+    }
+
+    public void invalidate(S segmentKey, K key) {
+        Key<S,K> cacheKey = new Key<>(segmentKey, key);
+        stripeFor(cacheKey).invalidate(cacheKey);
+    }
+
+    public void invalidateAll(S segmentKey) {
+        for (Stripe stripe : stripes) {
+            stripe.invalidateAll(segmentKey);
+        }
+    }
+
+    /**
+     * @return the number of off-heap bytes that is in use
+     */
+    public long getSizeInBytes() {
+        long size = 0L;
+        for (Stripe stripe : stripes) {
+            size += stripe.getSizeInBytes();
+        }
+        return size;
+    }
+
+    public long size() {
+        long size = 0L;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(Key<S,K> cacheKey) {
+        // spread the hash so that the lower bits are well distributed
+        int hash = cacheKey.hashCode ^ (cacheKey.hashCode >>> 16);
+        return stripes.get((hash & 0x7fffffff) % stripes.size());
+    }
+
+    private final class Stripe {
+        // access ordered, so the eldest entry is the least recently used
+        private final LinkedHashMap<Key<S,K>,ByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long sizeInBytes = 0L;
+
+        synchronized byte[] get(Key<S,K> key) {
+            ByteBuffer buffer = entries.get(key);
+            if(buffer == null) {
+                return null;
+            }
+            byte[] bytes = new byte[buffer.limit()];
+            buffer.duplicate().get(bytes);
+            return bytes;
+        }
+
+        synchronized boolean contains(Key<S,K> key) {
+            return entries.containsKey(key);
+        }
+
+        synchronized void put(Key<S,K> key, byte[] bytes) {
+            if(bytes.length > stripeCapacity) {
+                invalidate(key);
+                return;
+            }
+            ByteBuffer buffer = entries.remove(key);
+            if(buffer != null && buffer.capacity() < bytes.length) {
+                sizeInBytes -= buffer.capacity();
+                buffer = null;
+            }
+            if(buffer == null) {
+                evict(bytes.length);
+                buffer = ByteBuffer.allocateDirect(bytes.length);
+                sizeInBytes += buffer.capacity();
+            }
+            buffer.clear();
+            buffer.put(bytes);
+            buffer.flip();
+            entries.put(key, buffer);
+        }
+
+        synchronized void invalidate(Key<S,K> key) {
+            ByteBuffer buffer = entries.remove(key);
+            if(buffer != null) {
+                sizeInBytes -= buffer.capacity();
+            }
+        }
+
+        synchronized void invalidateAll(S segmentKey) {
+            Iterator<Map.Entry<Key<S,K>,ByteBuffer>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key<S,K>,ByteBuffer> entry = iterator.next();
+                if(entry.getKey().segmentKey.equals(segmentKey)) {
+                    sizeInBytes -= entry.getValue().capacity();
+                    iterator.remove();
+                }
+            }
+        }
+
+        synchronized long getSizeInBytes() {
+            return sizeInBytes;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        private void evict(int requiredBytes) {
+            Iterator<ByteBuffer> iterator = entries.values().iterator();
+            while (sizeInBytes + requiredBytes > stripeCapacity && iterator.hasNext()) {
+                sizeInBytes -= iterator.next().capacity();
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Key<S,K> {
+        private final S segmentKey;
+        private final K key;
+        private final int hashCode;
+
+        private Key(S segmentKey, K key) {
+            this.segmentKey = segmentKey;
+            this.key = key;
+            this.hashCode = (segmentKey.hashCode() * 31) + key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key<?,?> other = (Key<?,?>) o;
+
+            return key.equals(other.key) && segmentKey.equals(other.segmentKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
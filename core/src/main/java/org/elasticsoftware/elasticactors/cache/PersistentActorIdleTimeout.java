@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cache;
+
+import org.elasticsoftware.elasticactors.state.PassivationConfig;
+import org.elasticsoftware.elasticactors.state.PersistentActor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determines the idle timeout of a {@link PersistentActor} in the actor cache, using the {@link PassivationConfig}
+ * annotation on the actor class when present or the default idle timeout otherwise.
+ */
+final class PersistentActorIdleTimeout {
+    private final long defaultIdleTimeoutNanos;
+    private final ConcurrentMap<Class<?>,Long> idleTimeouts = new ConcurrentHashMap<>();
+
+    PersistentActorIdleTimeout(long defaultIdleTimeout, TimeUnit timeUnit) {
+        this.defaultIdleTimeoutNanos = timeUnit.toNanos(defaultIdleTimeout);
+    }
+
+    long getIdleTimeout(PersistentActor<?> persistentActor) {
+        Class<?> actorClass = persistentActor.getActorClass();
+        if(actorClass == null) {
+            return defaultIdleTimeoutNanos;
+        }
+        Long idleTimeout = idleTimeouts.get(actorClass);
+        if(idleTimeout == null) {
+            idleTimeout = idleTimeouts.computeIfAbsent(actorClass, this::resolve);
+        }
+        return idleTimeout;
+    }
+
+    private Long resolve(Class<?> actorClass) {
+        PassivationConfig passivationConfig = actorClass.getAnnotation(PassivationConfig.class);
+        if(passivationConfig != null) {
+            return passivationConfig.timeUnit().toNanos(passivationConfig.idleTimeout());
+        }
+        return defaultIdleTimeoutNanos;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cache;
+
+import org.elasticsoftware.elasticactors.state.PersistentActor;
+
+/**
+ * Weighs a {@link PersistentActor} by the size of its last known serialized state, plus a fixed overhead for the
+ * actor and cache bookkeeping so that actors that were never serialized still count.
+ */
+final class PersistentActorWeigher {
+    // rough estimate of the PersistentActor instance and the cache entry
+    static final int ENTRY_OVERHEAD = 256;
+
+    private PersistentActorWeigher() {
+    }
+
+    static int weigh(PersistentActor<?> persistentActor) {
+        return ENTRY_OVERHEAD + persistentActor.getSerializedStateSize();
+    }
+}
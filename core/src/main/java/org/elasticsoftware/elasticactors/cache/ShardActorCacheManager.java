@@ -20,11 +20,39 @@ import org.elasticsoftware.elasticactors.ActorRef;
 import org.elasticsoftware.elasticactors.ShardKey;
 import org.elasticsoftware.elasticactors.state.PersistentActor;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * @author Joost van de Wijgerd
  */
 public final class ShardActorCacheManager extends CacheManager<ActorRef,PersistentActor<ShardKey>> {
     public ShardActorCacheManager(int maximumSize) {
-        super(maximumSize);
+        this(maximumSize, 0L);
+    }
+
+    /**
+     * Creates a cache that is bounded by the serialized state size of the cached actors when maximumWeight is
+     * larger than zero, otherwise the cache is bounded by maximumSize
+     *
+     * @param maximumSize       the maximum number of actors, when not weighted
+     * @param maximumWeight     the maximum total size (in bytes) of the serialized state of the cached actors
+     */
+    public ShardActorCacheManager(int maximumSize, long maximumWeight) {
+        this(maximumSize, maximumWeight, 0L, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates a cache that also passivates actors that have been idle for longer than their idle timeout. The idle
+     * timeout is taken from the {@link org.elasticsoftware.elasticactors.state.PassivationConfig} annotation on the
+     * actor class, or defaultIdleTimeout when the actor class is not annotated
+     *
+     * @param maximumSize           the maximum number of actors, when not weighted
+     * @param maximumWeight         the maximum total size (in bytes) of the serialized state of the cached actors
+     * @param defaultIdleTimeout    the default idle timeout, 0 means actors are only evicted when the cache is full
+     * @param timeUnit              the unit of defaultIdleTimeout
+     */
+    public ShardActorCacheManager(int maximumSize, long maximumWeight, long defaultIdleTimeout, TimeUnit timeUnit) {
+        super(maximumSize, maximumWeight, PersistentActorWeigher::weigh,
+              new PersistentActorIdleTimeout(defaultIdleTimeout, timeUnit)::getIdleTimeout);
     }
 }
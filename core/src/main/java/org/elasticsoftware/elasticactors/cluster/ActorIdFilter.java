@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cluster;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
+import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.lang.String.format;
+
+/**
+ * Bloom filter of the ids of the actors that exist in a shard. It is used to avoid a read on the
+ * {@link PersistentActorRepository} to find out that an actor does not exist yet, which is the common case when
+ * actors are created.
+ *
+ * The filter is filled with the ids from {@link PersistentActorRepository#forEachActorId(ShardKey, java.util.function.Consumer)}
+ * in the background. Until that has completed every actor id might exist. Ids of deleted actors cannot be removed
+ * from a Bloom filter, so they keep answering "might exist" which falls back to reading the repository.
+ */
+final class ActorIdFilter {
+    private static final Logger logger = LogManager.getLogger(ActorIdFilter.class);
+    // shards are scanned one by one to avoid flooding the store when a node starts
+    private static final ExecutorService scanExecutor =
+            Executors.newSingleThreadExecutor(new DaemonThreadFactory("ACTOR-ID-FILTER-SCANNER"));
+    private final ShardKey shardKey;
+    private final BloomFilter<CharSequence> bloomFilter;
+    private volatile boolean initialized = false;
+    private volatile boolean destroyed = false;
+
+    ActorIdFilter(ShardKey shardKey, int expectedActors, double falsePositiveProbability) {
+        this.shardKey = shardKey;
+        this.bloomFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedActors, falsePositiveProbability);
+    }
+
+    /**
+     * Starts filling the filter with the actors that exist in the repository
+     *
+     * @param persistentActorRepository
+     */
+    void initialize(PersistentActorRepository persistentActorRepository) {
+        scanExecutor.execute(() -> {
+            if (destroyed) {
+                return;
+            }
+            try {
+                final long startTime = System.currentTimeMillis();
+                persistentActorRepository.forEachActorId(shardKey, this::put);
+                initialized = true;
+                logger.info(format("Loaded actor id filter for shard [%s] in %d msecs", shardKey, System.currentTimeMillis() - startTime));
+            } catch (UnsupportedOperationException e) {
+                logger.info(format("Actor id filter disabled for shard [%s]: %s", shardKey, e.getMessage()));
+            } catch (Exception e) {
+                logger.error(format("Exception while loading actor id filter for shard [%s], all lookups will use the repository", shardKey), e);
+            }
+        });
+    }
+
+    void put(String actorId) {
+        synchronized (bloomFilter) {
+            bloomFilter.put(actorId);
+        }
+    }
+
+    /**
+     * @param actorId
+     * @return false if the actor definitely does not exist, true if it might exist
+     */
+    boolean mightContain(String actorId) {
+        if (!initialized) {
+            return true;
+        }
+        synchronized (bloomFilter) {
+            return bloomFilter.mightContain(actorId);
+        }
+    }
+
+    void destroy() {
+        destroyed = true;
+    }
+}
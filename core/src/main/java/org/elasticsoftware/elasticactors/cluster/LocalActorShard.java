@@ -18,7 +18,6 @@ package org.elasticsoftware.elasticactors.cluster;
 
 import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableList;
-import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsoftware.elasticactors.*;
@@ -35,16 +34,25 @@ import org.elasticsoftware.elasticactors.state.ActorStateUpdateProcessor;
 import org.elasticsoftware.elasticactors.state.PersistentActor;
 import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
 import org.elasticsoftware.elasticactors.util.ManifestTools;
+import org.elasticsoftware.elasticactors.util.concurrent.CapacityExemptEvent;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Configurable;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.env.Environment;
 import org.springframework.dao.EmptyResultDataAccessException;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import static org.elasticsoftware.elasticactors.cluster.tasks.ProtocolFactoryFactory.getProtocolFactory;
 import static org.elasticsoftware.elasticactors.util.SerializationTools.deserializeMessage;
@@ -60,14 +68,28 @@ public final class LocalActorShard extends AbstractActorContainer implements Act
     private final InternalActorSystem actorSystem;
     private final ShardKey shardKey;
     private ThreadBoundExecutor actorExecutor;
+    private ThreadBoundExecutor queueExecutor;
+    // completes the asynchronous loads on the thread that handles the messages of this shard
+    private final Executor shardExecutor = this::executeOnShardThread;
     private Cache<ActorRef,PersistentActor<ShardKey>> actorCache;
     private PersistentActorRepository persistentActorRepository;
     private ActorStateUpdateProcessor actorStateUpdateProcessor;
     private final ShardActorCacheManager actorCacheManager;
     // the cacheloader instance that is reused to avoid garbage being created on each call
     private final CacheLoader cacheLoader = new CacheLoader();
+    // messages for actors that are being loaded asynchronously
+    private final Map<ActorRef,List<ParkedMessage>> loadingActors = new HashMap<>();
+    // guarded by loadingActors, loads that complete after the shard was destroyed don't activate their actor
+    private boolean destroyed = false;
 
     private Long serializationWarnThreshold;
+    private long stateFlushIntervalMillis;
+    private int stateFlushThreshold;
+    private ActorStateFlusher stateFlusher;
+    private boolean actorIdFilterEnabled;
+    private int actorIdFilterExpectedActors;
+    private double actorIdFilterFalsePositiveProbability;
+    private ActorIdFilter actorIdFilter;
 
     public LocalActorShard(PhysicalNode node,
                            InternalActorSystem actorSystem,
@@ -84,19 +106,47 @@ public final class LocalActorShard extends AbstractActorContainer implements Act
     @Autowired
     public void setEnvironment(Environment environment) {
         this.serializationWarnThreshold = environment.getProperty("ea.serialization.warn.threshold", Long.class);
+        this.stateFlushIntervalMillis = environment.getProperty("ea.actorState.flushIntervalMillis", Long.class, 1000L);
+        this.stateFlushThreshold = environment.getProperty("ea.actorState.flushThreshold", Integer.class, 1000);
+        this.actorIdFilterEnabled = environment.getProperty("ea.shard.actorIdFilter.enabled", Boolean.class, Boolean.FALSE);
+        this.actorIdFilterExpectedActors = environment.getProperty("ea.shard.actorIdFilter.expectedActors", Integer.class, 100000);
+        this.actorIdFilterFalsePositiveProbability = environment.getProperty("ea.shard.actorIdFilter.falsePositiveProbability", Double.class, 0.01d);
     }
 
     @Override
     public void init() throws Exception {
         // create cache
         this.actorCache = actorCacheManager.create(shardKey,this);
+        // the repository can keep state for this shard again
+        if (persistentActorRepository != null) {
+            persistentActorRepository.acquire(shardKey);
+        }
+        // writes the state of actors that defer their state updates
+        this.stateFlusher = new ActorStateFlusher(shardKey, actorExecutor, stateFlushIntervalMillis, stateFlushThreshold);
+        // avoids reading the repository to find out a new actor does not exist yet
+        if (actorIdFilterEnabled && persistentActorRepository != null) {
+            this.actorIdFilter = new ActorIdFilter(shardKey, actorIdFilterExpectedActors, actorIdFilterFalsePositiveProbability);
+            this.actorIdFilter.initialize(persistentActorRepository);
+        }
         // initialize queue
         super.init();
     }
 
     @Override
     public void destroy() {
+        synchronized (loadingActors) {
+            destroyed = true;
+        }
+        // write the deferred state updates before the actors get passivated
+        stateFlusher.destroy();
+        if (actorIdFilter != null) {
+            actorIdFilter.destroy();
+        }
         actorCacheManager.destroy(actorCache);
+        // drop any state the repository keeps for this shard, it might be modified on another node from now on
+        if(persistentActorRepository != null) {
+            persistentActorRepository.release(shardKey);
+        }
         super.destroy();
     }
 
@@ -115,7 +165,7 @@ public final class LocalActorShard extends AbstractActorContainer implements Act
         // see if it is not a tombstone that gets evicted
         if(!(TOMBSTONE == value)) {
             ElasticActor actorInstance = actorSystem.getActorInstance(value.getSelf(), value.getActorClass());
-            actorExecutor.execute(new PassivateActorTask(actorStateUpdateProcessor, persistentActorRepository, value,
+            executeTask(new PassivateActorTask(actorStateUpdateProcessor, persistentActorRepository, value,
                     actorSystem, actorInstance, value.getSelf()));
         }
     }
@@ -166,67 +216,25 @@ public final class LocalActorShard extends AbstractActorContainer implements Act
         if(im.getReceivers().size() > 1) {
             needsCopy = true;
             messageHandlerEventListener = new MultiMessageHandlerEventListener(mhel, im.getReceivers().size());
+            // load all receivers that are not in the cache with one round trip
+            prefetchActors(im.getReceivers());
         }
         for (ActorRef receiverRef : im.getReceivers()) {
             InternalMessage internalMessage = (needsCopy) ? im.copyOf() : im;
             if (receiverRef.getActorId() != null) {
-                // make sure we load the right value from the cache
-                cacheLoader.initialize(receiverRef);
                 try {
-                    // load persistent actor from cache or persistent store
-                    PersistentActor<ShardKey> actor = actorCache.get(receiverRef, cacheLoader);
-                    // see if we don't have a recently destroyed actor
-                    if (TOMBSTONE == actor) {
-                        try {
-                            handleUndeliverable(internalMessage, receiverRef, messageHandlerEventListener);
-                        } catch (Exception ex) {
-                            logger.error("Exception while sending message undeliverable", ex);
-                        }
-                    } else {
-                        // find actor class behind receiver ActorRef
-                        ElasticActor actorInstance = actorSystem.getActorInstance(receiverRef, actor.getActorClass());
-                        // execute on it's own thread
-                        if (internalMessage.isUndeliverable()) {
-                            actorExecutor.execute(getProtocolFactory(internalMessage.getPayloadClass())
-                                    .createHandleUndeliverableMessageTask(actorSystem,
-                                                                          actorInstance,
-                                                                          receiverRef,
-                                                                          internalMessage,
-                                                                          actor,
-                                                                          persistentActorRepository,
-                                                                          messageHandlerEventListener));
-                        } else {
-                            actorExecutor.execute(getProtocolFactory(internalMessage.getPayloadClass())
-                                    .createHandleMessageTask(actorSystem,
-                                                             actorInstance,
-                                                             receiverRef,
-                                                             internalMessage,
-                                                             actor,
-                                                             persistentActorRepository,
-                                                             actorStateUpdateProcessor,
-                                                             messageHandlerEventListener,
-                                                             serializationWarnThreshold));
-                        }
-                    }
-                } catch (UncheckedExecutionException e) {
-                    if (e.getCause() instanceof EmptyResultDataAccessException) {
-                        try {
-                            handleUndeliverable(internalMessage, receiverRef, messageHandlerEventListener);
-                        } catch (Exception ex) {
-                            logger.error("Exception while sending message undeliverable", ex);
-                        }
+                    PersistentActor<ShardKey> actor = actorCache.getIfPresent(receiverRef);
+                    if (actor != null) {
+                        dispatchMessage(actor, receiverRef, internalMessage, messageHandlerEventListener);
                     } else {
-                        messageHandlerEventListener.onError(internalMessage, e.getCause());
-                        logger.error(String.format("Exception while handling InternalMessage for Actor [%s]; senderRef [%s], messageType [%s]", receiverRef.getActorId(), internalMessage.getSender(), internalMessage.getPayloadClass()), e.getCause());
+                        // load the actor without blocking the shard
+                        loadActor(receiverRef, internalMessage, messageHandlerEventListener);
                     }
                 } catch (Exception e) {
                     //@todo: let the sender know his message could not be delivered
                     // we ack the message anyway
                     messageHandlerEventListener.onError(internalMessage, e);
-                    logger.error(String.format("Exception while handling InternalMessage for Actor [%s]; senderRef [%s], messageType [%s]", receiverRef.getActorId(), internalMessage.getSender(), internalMessage.getPayloadClass()), e.getCause());
-                } finally {
-                    // ensure the cacheLoader is reset
-                    this.cacheLoader.reset();
+                    logger.error(String.format("Exception while handling InternalMessage for Actor [%s]; senderRef [%s], messageType [%s]", receiverRef.getActorId(), internalMessage.getSender(), internalMessage.getPayloadClass()), e);
                 }
             } else {
                 // the internalMessage is intended for the shard, this means it's about creating or destroying an actor
@@ -302,10 +310,184 @@ public final class LocalActorShard extends AbstractActorContainer implements Act
         }
     }
 
+    /**
+     * Loads an actor that is not in the cache with {@link PersistentActorRepository#getAsync(ShardKey, String)}.
+     * Messages for the actor are parked until it is loaded, after which they are dispatched in the order they
+     * were received. Messages for other actors are handled in the meantime.
+     */
+    private void loadActor(ActorRef receiverRef, InternalMessage internalMessage, MessageHandlerEventListener messageHandlerEventListener) {
+        synchronized (loadingActors) {
+            List<ParkedMessage> parkedMessages = loadingActors.get(receiverRef);
+            if (parkedMessages != null) {
+                parkedMessages.add(new ParkedMessage(internalMessage, messageHandlerEventListener));
+                return;
+            }
+            // the actor might have been loaded in the meantime
+            PersistentActor<ShardKey> actor = actorCache.getIfPresent(receiverRef);
+            if (actor != null) {
+                dispatchMessage(actor, receiverRef, internalMessage, messageHandlerEventListener);
+                return;
+            }
+            parkedMessages = new ArrayList<>();
+            parkedMessages.add(new ParkedMessage(internalMessage, messageHandlerEventListener));
+            loadingActors.put(receiverRef, parkedMessages);
+        }
+        CompletableFuture<PersistentActor<ShardKey>> loadingActor;
+        try {
+            loadingActor = persistentActorRepository.getAsync(shardKey, receiverRef.getActorId());
+        } catch (Exception e) {
+            loadingActor = new CompletableFuture<>();
+            loadingActor.completeExceptionally(e);
+        }
+        loadingActor.whenCompleteAsync((loadedActor, throwable) -> onActorLoaded(receiverRef, loadedActor, throwable), shardExecutor);
+    }
+
+    /**
+     * Starts loading all actors in the list that are not cached or already being loaded with
+     * {@link PersistentActorRepository#getAllAsync(ShardKey, java.util.Collection)}. The messages for these actors
+     * will be parked by {@link #loadActor(ActorRef, InternalMessage, MessageHandlerEventListener)} until the load
+     * completes.
+     */
+    private void prefetchActors(List<? extends ActorRef> receivers) {
+        final Map<String,ActorRef> actorsToLoad = new HashMap<>();
+        synchronized (loadingActors) {
+            for (ActorRef receiverRef : receivers) {
+                if (receiverRef.getActorId() != null
+                        && !loadingActors.containsKey(receiverRef)
+                        && actorCache.getIfPresent(receiverRef) == null) {
+                    actorsToLoad.put(receiverRef.getActorId(), receiverRef);
+                }
+            }
+            if (actorsToLoad.size() < 2) {
+                // a single actor will be loaded by loadActor
+                return;
+            }
+            actorsToLoad.values().forEach(receiverRef -> loadingActors.put(receiverRef, new ArrayList<>()));
+        }
+        CompletableFuture<Map<String,PersistentActor<ShardKey>>> loadingActorsFuture;
+        try {
+            loadingActorsFuture = persistentActorRepository.getAllAsync(shardKey, actorsToLoad.keySet());
+        } catch (Exception e) {
+            loadingActorsFuture = new CompletableFuture<>();
+            loadingActorsFuture.completeExceptionally(e);
+        }
+        loadingActorsFuture.whenCompleteAsync((loadedActors, throwable) ->
+                actorsToLoad.forEach((actorId, receiverRef) ->
+                        onActorLoaded(receiverRef, loadedActors != null ? loadedActors.get(actorId) : null, throwable)),
+                shardExecutor);
+    }
+
+    private void onActorLoaded(ActorRef receiverRef, PersistentActor<ShardKey> loadedActor, Throwable throwable) {
+        synchronized (loadingActors) {
+            final List<ParkedMessage> parkedMessages = loadingActors.remove(receiverRef);
+            if (destroyed) {
+                // the shard is being handed over, the messages will be handled by the node that owns it now
+                for (ParkedMessage parkedMessage : parkedMessages) {
+                    parkedMessage.messageHandlerEventListener.onError(parkedMessage.internalMessage,
+                            new IllegalStateException(String.format("Shard [%s] was destroyed while loading actor [%s]", shardKey, receiverRef.getActorId())));
+                }
+                return;
+            }
+            if (throwable != null || loadedActor == null) {
+                Throwable cause = (throwable instanceof CompletionException && throwable.getCause() != null) ? throwable.getCause() : throwable;
+                for (ParkedMessage parkedMessage : parkedMessages) {
+                    handleLoadFailure(receiverRef, parkedMessage.internalMessage, parkedMessage.messageHandlerEventListener, cause);
+                }
+                return;
+            }
+            try {
+                // the parked messages are dispatched before the actor becomes visible in the cache, this ensures
+                // they are handled before any new messages
+                PersistentActor<ShardKey> actor = actorCache.get(receiverRef, () -> {
+                    ElasticActor actorInstance = actorSystem.getActorInstance(receiverRef, loadedActor.getActorClass());
+                    executeTask(new ActivateActorTask(actorStateUpdateProcessor,
+                                                      persistentActorRepository,
+                                                      loadedActor,
+                                                      actorSystem,
+                                                      actorInstance,
+                                                      receiverRef));
+                    for (ParkedMessage parkedMessage : parkedMessages) {
+                        dispatchMessage(loadedActor, receiverRef, parkedMessage.internalMessage, parkedMessage.messageHandlerEventListener);
+                    }
+                    return loadedActor;
+                });
+                if (actor != loadedActor) {
+                    // the actor was loaded (or destroyed) by another path while we were loading it
+                    for (ParkedMessage parkedMessage : parkedMessages) {
+                        dispatchMessage(actor, receiverRef, parkedMessage.internalMessage, parkedMessage.messageHandlerEventListener);
+                    }
+                }
+            } catch (Exception e) {
+                for (ParkedMessage parkedMessage : parkedMessages) {
+                    handleLoadFailure(receiverRef, parkedMessage.internalMessage, parkedMessage.messageHandlerEventListener, e);
+                }
+            }
+        }
+    }
+
+    private void dispatchMessage(PersistentActor<ShardKey> actor,
+                                 ActorRef receiverRef,
+                                 InternalMessage internalMessage,
+                                 MessageHandlerEventListener messageHandlerEventListener) {
+        // see if we don't have a recently destroyed actor
+        if (TOMBSTONE == actor) {
+            try {
+                handleUndeliverable(internalMessage, receiverRef, messageHandlerEventListener);
+            } catch (Exception ex) {
+                logger.error("Exception while sending message undeliverable", ex);
+            }
+        } else {
+            // find actor class behind receiver ActorRef
+            ElasticActor actorInstance = actorSystem.getActorInstance(receiverRef, actor.getActorClass());
+            // execute on it's own thread
+            if (internalMessage.isUndeliverable()) {
+                executeTask(getProtocolFactory(internalMessage.getPayloadClass())
+                        .createHandleUndeliverableMessageTask(actorSystem,
+                                                              actorInstance,
+                                                              receiverRef,
+                                                              internalMessage,
+                                                              actor,
+                                                              persistentActorRepository,
+                                                              messageHandlerEventListener));
+            } else {
+                executeTask(getProtocolFactory(internalMessage.getPayloadClass())
+                        .createHandleMessageTask(actorSystem,
+                                                 actorInstance,
+                                                 receiverRef,
+                                                 internalMessage,
+                                                 actor,
+                                                 persistentActorRepository,
+                                                 actorStateUpdateProcessor,
+                                                 messageHandlerEventListener,
+                                                 serializationWarnThreshold));
+            }
+        }
+    }
+
+    private void handleLoadFailure(ActorRef receiverRef,
+                                   InternalMessage internalMessage,
+                                   MessageHandlerEventListener messageHandlerEventListener,
+                                   @Nullable Throwable cause) {
+        if (cause == null || cause instanceof EmptyResultDataAccessException) {
+            // the actor does not exist
+            try {
+                handleUndeliverable(internalMessage, receiverRef, messageHandlerEventListener);
+            } catch (Exception ex) {
+                logger.error("Exception while sending message undeliverable", ex);
+            }
+        } else {
+            messageHandlerEventListener.onError(internalMessage, cause);
+            logger.error(String.format("Exception while handling InternalMessage for Actor [%s]; senderRef [%s], messageType [%s]", receiverRef.getActorId(), internalMessage.getSender(), internalMessage.getPayloadClass()), cause);
+        }
+    }
+
     private boolean actorExists(ActorRef actorRef) {
         PersistentActor<ShardKey> persistentActor = actorCache.getIfPresent(actorRef);
         if(persistentActor != null) {
             return !(TOMBSTONE == persistentActor);
+        } else if (actorIdFilter != null && !actorIdFilter.mightContain(actorRef.getActorId())) {
+            // definitely does not exist, no need to read the repository
+            return false;
         } else {
             return persistentActorRepository.contains(shardKey, actorRef.getActorId());
         }
@@ -322,10 +504,13 @@ public final class LocalActorShard extends AbstractActorContainer implements Act
         // persistentActorRepository.update(this.shardKey,persistentActor);
 
         actorCache.put(ref,persistentActor);
+        if (actorIdFilter != null) {
+            actorIdFilter.put(ref.getActorId());
+        }
         // find actor class behind receiver ActorRef
         ElasticActor actorInstance = actorSystem.getActorInstance(ref,persistentActor.getActorClass());
         // call postCreate
-        actorExecutor.execute(new CreateActorTask(actorStateUpdateProcessor,
+        executeTask(new CreateActorTask(actorStateUpdateProcessor,
                                                   persistentActorRepository,
                                                   persistentActor,
                                                   actorSystem,
@@ -363,7 +548,7 @@ public final class LocalActorShard extends AbstractActorContainer implements Act
             // find actor class behind receiver ActorRef
             ElasticActor actorInstance = actorSystem.getActorInstance(actorRef,persistentActor.getActorClass());
             // call preDestroy
-            actorExecutor.execute(new DestroyActorTask( actorStateUpdateProcessor,
+            executeTask(new DestroyActorTask( actorStateUpdateProcessor,
                                                         persistentActorRepository,
                                                         persistentActor,
                                                         actorSystem,
@@ -385,7 +570,7 @@ public final class LocalActorShard extends AbstractActorContainer implements Act
             // find actor class behind receiver ActorRef
             ElasticActor actorInstance = actorSystem.getActorInstance(actorRef,persistentActor.getActorClass());
             // call preDestroy
-            actorExecutor.execute(new PersistActorTask( actorStateUpdateProcessor,
+            executeTask(new PersistActorTask( actorStateUpdateProcessor,
                                                         persistentActorRepository,
                                                         persistentActor,
                                                         actorSystem,
@@ -398,11 +583,30 @@ public final class LocalActorShard extends AbstractActorContainer implements Act
         }
     }
 
+    /**
+     * The repository completes its futures on its own (i.e. the Cassandra driver's I/O) threads, those should never
+     * run executor or broker work. Hand over to the queue executor thread that handles the messages of this shard,
+     * without ever blocking the completing thread.
+     */
+    private void executeOnShardThread(Runnable runnable) {
+        queueExecutor.execute(new ShardRunnable(messageQueue.getName(), runnable));
+    }
+
+    private void executeTask(ActorLifecycleTask task) {
+        task.setStateFlusher(stateFlusher);
+        actorExecutor.execute(task);
+    }
+
     @Autowired
     public void setActorExecutor(@Qualifier("actorExecutor") ThreadBoundExecutor actorExecutor) {
         this.actorExecutor = actorExecutor;
     }
 
+    @Autowired
+    public void setQueueExecutor(@Qualifier("queueExecutor") ThreadBoundExecutor queueExecutor) {
+        this.queueExecutor = queueExecutor;
+    }
+
     @Autowired
     public void setPersistentActorRepository(PersistentActorRepository persistentActorRepository) {
         this.persistentActorRepository = persistentActorRepository;
@@ -413,6 +617,36 @@ public final class LocalActorShard extends AbstractActorContainer implements Act
         this.actorStateUpdateProcessor = actorStateUpdateProcessor;
     }
 
+    private static final class ShardRunnable implements ThreadBoundRunnable<String>, CapacityExemptEvent {
+        private final String queueName;
+        private final Runnable delegate;
+
+        private ShardRunnable(String queueName, Runnable delegate) {
+            this.queueName = queueName;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getKey() {
+            return queueName;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
+
+    private static final class ParkedMessage {
+        private final InternalMessage internalMessage;
+        private final MessageHandlerEventListener messageHandlerEventListener;
+
+        private ParkedMessage(InternalMessage internalMessage, MessageHandlerEventListener messageHandlerEventListener) {
+            this.internalMessage = internalMessage;
+            this.messageHandlerEventListener = messageHandlerEventListener;
+        }
+    }
+
     /**
      * To avoid creation of these callable, we cache it at the Shard instance, setting the values as necesser
      *
@@ -441,7 +675,7 @@ public final class LocalActorShard extends AbstractActorContainer implements Act
             } else {
                 ElasticActor actorInstance = actorSystem.getActorInstance(actorRef,
                                                                           loadedActor.getActorClass());
-                actorExecutor.execute(new ActivateActorTask(actorStateUpdateProcessor,
+                executeTask(new ActivateActorTask(actorStateUpdateProcessor,
                                                             persistentActorRepository,
                                                             loadedActor,
                                                             actorSystem,
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cluster.scheduler;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.scheduler.MissedTickPolicy;
+
+import java.util.UUID;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScheduledMessage} that fires every period. The fire time (and thus the key) is the first tick and never
+ * changes, so the stored definition and all {@link org.elasticsoftware.elasticactors.scheduler.ScheduledMessageRef}s
+ * stay valid. The ticks are planned in memory via {@link #getNextFireTime()}, only the checkpoint is stored.
+ */
+public final class RecurringScheduledMessage implements ScheduledMessage {
+    private final ScheduledMessage message;
+    private final boolean fixedRate;
+    private final long period; // milliseconds
+    private final MissedTickPolicy missedTickPolicy;
+    private final long nextFireTime; // milliseconds since epoch
+    private final long checkpointFireTime; // the nextFireTime that was last stored
+
+    public RecurringScheduledMessage(ScheduledMessage message, boolean fixedRate, long period, MissedTickPolicy missedTickPolicy) {
+        this(message, fixedRate, period, missedTickPolicy, message.getFireTime(TimeUnit.MILLISECONDS));
+    }
+
+    public RecurringScheduledMessage(ScheduledMessage message, boolean fixedRate, long period, MissedTickPolicy missedTickPolicy, long nextFireTime) {
+        this(message, fixedRate, period, missedTickPolicy, nextFireTime, nextFireTime);
+    }
+
+    private RecurringScheduledMessage(ScheduledMessage message, boolean fixedRate, long period, MissedTickPolicy missedTickPolicy,
+                                      long nextFireTime, long checkpointFireTime) {
+        if(period <= 0) {
+            throw new IllegalArgumentException("period needs to be > 0");
+        }
+        this.message = message;
+        this.fixedRate = fixedRate;
+        this.period = period;
+        this.missedTickPolicy = missedTickPolicy;
+        this.nextFireTime = nextFireTime;
+        this.checkpointFireTime = checkpointFireTime;
+    }
+
+    /**
+     * @param firedAt   the time this tick was fired
+     * @return          the next tick, relative to this tick (fixed rate) or to the time this tick was fired (fixed delay)
+     */
+    public RecurringScheduledMessage next(long firedAt) {
+        return new RecurringScheduledMessage(message, fixedRate, period, missedTickPolicy,
+                fixedRate ? nextFireTime + period : firedAt + period, checkpointFireTime);
+    }
+
+    /**
+     * Applies the {@link MissedTickPolicy} when the next tick is in the past
+     *
+     * @param now   the current time
+     * @return      this or the first tick that is not in the past
+     */
+    public RecurringScheduledMessage resume(long now) {
+        if(nextFireTime >= now || missedTickPolicy == MissedTickPolicy.CATCH_UP) {
+            return this;
+        }
+        final long missedTicks = (now - nextFireTime + period - 1) / period;
+        return new RecurringScheduledMessage(message, fixedRate, period, missedTickPolicy, nextFireTime + missedTicks * period, checkpointFireTime);
+    }
+
+    /**
+     * @return  this tick, marked as stored
+     */
+    public RecurringScheduledMessage checkpoint() {
+        return new RecurringScheduledMessage(message, fixedRate, period, missedTickPolicy, nextFireTime, nextFireTime);
+    }
+
+    /**
+     * @param interval  the maximum time (in millis) the stored next tick may lag behind
+     * @return          true when the progress of this schedule should be stored
+     */
+    public boolean needsCheckpoint(long interval) {
+        return nextFireTime - checkpointFireTime >= interval;
+    }
+
+    public boolean isFixedRate() {
+        return fixedRate;
+    }
+
+    public long getPeriod(TimeUnit timeUnit) {
+        return timeUnit.convert(period, TimeUnit.MILLISECONDS);
+    }
+
+    public MissedTickPolicy getMissedTickPolicy() {
+        return missedTickPolicy;
+    }
+
+    public long getNextFireTime(TimeUnit timeUnit) {
+        return timeUnit.convert(nextFireTime, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public ScheduledMessageKey getKey() {
+        return message.getKey();
+    }
+
+    @Override
+    public UUID getId() {
+        return message.getId();
+    }
+
+    @Override
+    public ActorRef getReceiver() {
+        return message.getReceiver();
+    }
+
+    @Override
+    public byte[] getMessageBytes() {
+        return message.getMessageBytes();
+    }
+
+    @Override
+    public ActorRef getSender() {
+        return message.getSender();
+    }
+
+    /**
+     * @return  the time of the first tick, use {@link #getNextFireTime(TimeUnit)} for the next one
+     */
+    @Override
+    public long getFireTime(TimeUnit timeUnit) {
+        return message.getFireTime(timeUnit);
+    }
+
+    @Override
+    public Class getMessageClass() {
+        return message.getMessageClass();
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(nextFireTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        if (other == this)
+            return 0;
+        long d = (getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS));
+        if(d != 0) {
+            return (d < 0) ? -1 : 1;
+        } else if(other instanceof ScheduledMessage) {
+            return getId().compareTo(((ScheduledMessage)other).getId());
+        } else {
+            return 0;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        // equal to the ScheduledMessageImpl with the same key, that is used to cancel
+        return message.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return message.hashCode();
+    }
+}
@@ -128,12 +128,13 @@ public final class ScheduledMessageImpl implements ScheduledMessage {
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
+        // a RecurringScheduledMessage has the same key as the ScheduledMessageImpl it wraps
+        if (!(o instanceof ScheduledMessage)) return false;
 
-        ScheduledMessageImpl that = (ScheduledMessageImpl) o;
+        ScheduledMessage that = (ScheduledMessage) o;
 
-        if (fireTime != that.fireTime) return false;
-        if (!id.equals(that.id)) return false;
+        if (fireTime != that.getFireTime(TimeUnit.MILLISECONDS)) return false;
+        if (!id.equals(that.getId())) return false;
 
         return true;
     }
@@ -22,13 +22,16 @@ import org.apache.logging.log4j.Logger;
 import org.elasticsoftware.elasticactors.*;
 import org.elasticsoftware.elasticactors.cluster.InternalActorSystem;
 import org.elasticsoftware.elasticactors.cluster.InternalActorSystems;
+import org.elasticsoftware.elasticactors.scheduler.MissedTickPolicy;
 import org.elasticsoftware.elasticactors.scheduler.ScheduledMessageRef;
 import org.elasticsoftware.elasticactors.serialization.MessageDeserializer;
 import org.elasticsoftware.elasticactors.serialization.MessageSerializer;
 import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.ScheduledWorkManager;
 import org.elasticsoftware.elasticactors.util.concurrent.ShardedScheduledWorkManager;
 import org.elasticsoftware.elasticactors.util.concurrent.WorkExecutor;
 import org.elasticsoftware.elasticactors.util.concurrent.WorkExecutorFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.timingwheel.TimingWheelScheduledWorkManager;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -36,10 +39,18 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static java.lang.String.format;
 
@@ -48,20 +59,66 @@ import static java.lang.String.format;
  */
 public final class ShardedScheduler implements SchedulerService,WorkExecutorFactory,ScheduledMessageRefFactory {
     private static final Logger logger = LogManager.getLogger(ShardedScheduler.class);
-    private ShardedScheduledWorkManager<ShardKey,ScheduledMessage> workManager;
+    // how far the stored progress of a recurring schedule may lag behind, this bounds the catch up after a crash
+    private static final long CHECKPOINT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private final boolean useTimingWheel;
+    private final int numberOfWorkers;
+    private final long loadWindowMillis;
+    private final ConcurrentMap<ShardKey,LoadWindow> loadWindows = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ShardKey,ConcurrentMap<ScheduledMessageKey,RecurringScheduledMessage>> recurringMessages = new ConcurrentHashMap<>();
+    private ScheduledWorkManager<ShardKey,ScheduledMessage> workManager;
+    private ScheduledExecutorService windowLoader;
     private ScheduledMessageRepository scheduledMessageRepository;
     private InternalActorSystem actorSystem;
 
+    public ShardedScheduler() {
+        this(false, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param useTimingWheel    use a {@link TimingWheelScheduledWorkManager} (O(1) schedule and cancel) instead of a
+     *                          {@link ShardedScheduledWorkManager} (a DelayQueue per shard)
+     * @param numberOfWorkers   the number of threads that fire the scheduled messages
+     */
+    public ShardedScheduler(boolean useTimingWheel, int numberOfWorkers) {
+        this(useTimingWheel, numberOfWorkers, 0L);
+    }
+
+    /**
+     * @param useTimingWheel    use a {@link TimingWheelScheduledWorkManager} (O(1) schedule and cancel) instead of a
+     *                          {@link ShardedScheduledWorkManager} (a DelayQueue per shard)
+     * @param numberOfWorkers   the number of threads that fire the scheduled messages
+     * @param loadWindowMillis  when > 0 only the messages that fire within this window are loaded in memory, the
+     *                          window is moved forward every loadWindowMillis / 2. When 0 all messages of a shard are
+     *                          loaded when it is registered
+     */
+    public ShardedScheduler(boolean useTimingWheel, int numberOfWorkers, long loadWindowMillis) {
+        this.useTimingWheel = useTimingWheel;
+        this.numberOfWorkers = numberOfWorkers;
+        this.loadWindowMillis = loadWindowMillis;
+    }
 
     @PostConstruct
     public void init() {
         ExecutorService executorService = Executors.newCachedThreadPool(new DaemonThreadFactory("SCHEDULER"));
-        workManager = new ShardedScheduledWorkManager<>(executorService,this,Runtime.getRuntime().availableProcessors());
+        if(useTimingWheel) {
+            workManager = new TimingWheelScheduledWorkManager<>(executorService,this,numberOfWorkers);
+        } else {
+            workManager = new ShardedScheduledWorkManager<>(executorService,this,numberOfWorkers);
+        }
         workManager.init();
+        if(loadWindowMillis > 0) {
+            final long interval = Math.max(1000L, loadWindowMillis / 2);
+            windowLoader = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("SCHEDULER-WINDOW-LOADER"));
+            windowLoader.scheduleWithFixedDelay(this::advanceLoadWindows, interval, interval, TimeUnit.MILLISECONDS);
+        }
     }
 
     @PreDestroy
     public void destroy() {
+        if(windowLoader != null) {
+            windowLoader.shutdownNow();
+        }
         workManager.destroy();
     }
 
@@ -77,21 +134,82 @@ public final class ShardedScheduler implements SchedulerService,WorkExecutorFact
 
     @Override
     public void registerShard(ShardKey shardKey) {
-        // obtain the scheduler shard
-        workManager.registerShard(shardKey);
-        // fetch block from repository
-        // @todo: for now we'll fetch all, this obviously has memory issues
-        List<ScheduledMessage> scheduledMessages = scheduledMessageRepository.getAll(shardKey);
-        workManager.schedule(shardKey,scheduledMessages.toArray(new ScheduledMessage[scheduledMessages.size()]));
+        recurringMessages.put(shardKey, new ConcurrentHashMap<>());
+        if(loadWindowMillis <= 0) {
+            // obtain the scheduler shard
+            workManager.registerShard(shardKey);
+            // fetch all messages from the repository
+            List<ScheduledMessage> scheduledMessages = scheduledMessageRepository.getAll(shardKey);
+            workManager.schedule(shardKey,resume(shardKey, scheduledMessages));
+        } else {
+            // make the window visible (and locked) first so that new messages wait for the initial load
+            final LoadWindow loadWindow = new LoadWindow();
+            loadWindow.lock.writeLock().lock();
+            try {
+                loadWindows.put(shardKey, loadWindow);
+                workManager.registerShard(shardKey);
+                final long loadUntil = System.currentTimeMillis() + loadWindowMillis;
+                List<ScheduledMessage> scheduledMessages = scheduledMessageRepository.getRange(shardKey, 0L, loadUntil);
+                workManager.schedule(shardKey,resume(shardKey, scheduledMessages));
+                loadWindow.loadedUntil = loadUntil;
+                // for the rest we only keep the count
+                loadWindow.pending.set(scheduledMessageRepository.count(shardKey, loadUntil));
+                logger.info(format("Loaded %d ScheduledMessages for shard %s, %d more fire after the load window",
+                        scheduledMessages.size(), shardKey, loadWindow.pending.get()));
+            } finally {
+                loadWindow.lock.writeLock().unlock();
+            }
+        }
     }
 
     @Override
     public void unregisterShard(ShardKey shardKey) {
+        loadWindows.remove(shardKey);
         workManager.unregisterShard(shardKey);
+        // store the progress of the recurring messages so the next owner knows which ticks were missed
+        final Map<ScheduledMessageKey,RecurringScheduledMessage> shardRecurringMessages = recurringMessages.remove(shardKey);
+        if(shardRecurringMessages != null) {
+            for (RecurringScheduledMessage recurringMessage : shardRecurringMessages.values()) {
+                if(recurringMessage.needsCheckpoint(1L)) {
+                    try {
+                        scheduledMessageRepository.create(shardKey, recurringMessage.checkpoint());
+                    } catch(Exception e) {
+                        logger.error(format("Exception while storing the progress of RecurringScheduledMessage %s", recurringMessage.getId()), e);
+                    }
+                }
+            }
+        }
     }
 
     @Override
     public ScheduledMessageRef scheduleOnce(ActorRef sender, Object message, ActorRef receiver, long delay, TimeUnit timeUnit) {
+        return scheduleMessage(sender, message, receiver, delay, timeUnit, scheduledMessage -> scheduledMessage);
+    }
+
+    @Override
+    public ScheduledMessageRef scheduleAtFixedRate(ActorRef sender, Object message, ActorRef receiver, long initialDelay, long period, TimeUnit timeUnit, MissedTickPolicy missedTickPolicy) {
+        final long periodMillis = checkPeriod(period, timeUnit);
+        return scheduleMessage(sender, message, receiver, initialDelay, timeUnit,
+                scheduledMessage -> new RecurringScheduledMessage(scheduledMessage, true, periodMillis, missedTickPolicy));
+    }
+
+    @Override
+    public ScheduledMessageRef scheduleWithFixedDelay(ActorRef sender, Object message, ActorRef receiver, long initialDelay, long delay, TimeUnit timeUnit, MissedTickPolicy missedTickPolicy) {
+        final long delayMillis = checkPeriod(delay, timeUnit);
+        return scheduleMessage(sender, message, receiver, initialDelay, timeUnit,
+                scheduledMessage -> new RecurringScheduledMessage(scheduledMessage, false, delayMillis, missedTickPolicy));
+    }
+
+    private static long checkPeriod(long period, TimeUnit timeUnit) {
+        final long periodMillis = TimeUnit.MILLISECONDS.convert(period, timeUnit);
+        if(periodMillis <= 0) {
+            throw new IllegalArgumentException(format("period needs to be at least 1 millisecond, got %d %s", period, timeUnit));
+        }
+        return periodMillis;
+    }
+
+    private ScheduledMessageRef scheduleMessage(ActorRef sender, Object message, ActorRef receiver, long delay, TimeUnit timeUnit,
+                                                Function<ScheduledMessage,ScheduledMessage> messageFactory) {
         // this method only works when sender is a local persistent actor (so no temp or service actor)
         if(sender instanceof ActorContainerRef) {
             ActorContainer actorContainer = ((ActorContainerRef)sender).getActorContainer();
@@ -105,9 +223,8 @@ public final class ShardedScheduler implements SchedulerService,WorkExecutorFact
                         ByteBuffer serializedMessage = serializer.serialize(message);
                         byte[] serializedBytes = new byte[serializedMessage.remaining()];
                         serializedMessage.get(serializedBytes);
-                        ScheduledMessage scheduledMessage = new ScheduledMessageImpl(fireTime,sender,receiver,message.getClass(),serializedBytes);
-                        scheduledMessageRepository.create(actorShard.getKey(), scheduledMessage);
-                        workManager.schedule(actorShard.getKey(),scheduledMessage);
+                        ScheduledMessage scheduledMessage = messageFactory.apply(new ScheduledMessageImpl(fireTime,sender,receiver,message.getClass(),serializedBytes));
+                        schedule(actorShard.getKey(), scheduledMessage);
                         return new ScheduledMessageShardRef(actorSystem.getParent().getClusterName(),actorShard,new ScheduledMessageKey(scheduledMessage.getId(),fireTime));
                     } catch(Exception e) {
                         throw new RejectedExecutionException(e);
@@ -132,16 +249,143 @@ public final class ShardedScheduler implements SchedulerService,WorkExecutorFact
 
     @Override
     public void cancel(ShardKey shardKey,ScheduledMessageKey messageKey) {
+        // this stops a recurring message from planning its next tick
+        final Map<ScheduledMessageKey,RecurringScheduledMessage> shardRecurringMessages = recurringMessages.get(shardKey);
+        if(shardRecurringMessages != null) {
+            shardRecurringMessages.remove(messageKey);
+        }
         // sanity check if this is actually a local shard that we manage
         // bit of a hack to send in a broken ScheduledMessage (only the key set)
         workManager.unschedule(shardKey,new ScheduledMessageImpl(messageKey.getId(),messageKey.getFireTime()));
         scheduledMessageRepository.delete(shardKey,messageKey);
+        final LoadWindow loadWindow = loadWindows.get(shardKey);
+        if(loadWindow != null && messageKey.getFireTime() >= loadWindow.loadedUntil) {
+            loadWindow.pending.updateAndGet(pending -> Math.max(0L, pending - 1));
+        }
+    }
+
+    /**
+     * Stores the message and hands it to the work manager, unless it fires after the load window of the shard. The
+     * message is stored under the read lock so that it is either part of the next window that is loaded, or it is
+     * scheduled here (and never both)
+     */
+    private void schedule(ShardKey shardKey, ScheduledMessage scheduledMessage) {
+        final LoadWindow loadWindow = loadWindows.get(shardKey);
+        if(loadWindow == null) {
+            scheduledMessageRepository.create(shardKey, scheduledMessage);
+            track(shardKey, scheduledMessage);
+            workManager.schedule(shardKey, scheduledMessage);
+        } else {
+            loadWindow.lock.readLock().lock();
+            try {
+                scheduledMessageRepository.create(shardKey, scheduledMessage);
+                if(scheduledMessage.getFireTime(TimeUnit.MILLISECONDS) < loadWindow.loadedUntil) {
+                    track(shardKey, scheduledMessage);
+                    workManager.schedule(shardKey, scheduledMessage);
+                } else {
+                    loadWindow.pending.incrementAndGet();
+                }
+            } finally {
+                loadWindow.lock.readLock().unlock();
+            }
+        }
+    }
+
+    private void advanceLoadWindows() {
+        for (Map.Entry<ShardKey, LoadWindow> entry : loadWindows.entrySet()) {
+            final ShardKey shardKey = entry.getKey();
+            final LoadWindow loadWindow = entry.getValue();
+            loadWindow.lock.writeLock().lock();
+            try {
+                // the shard could have been unregistered in the mean time
+                if(loadWindows.get(shardKey) != loadWindow) {
+                    continue;
+                }
+                final long loadUntil = System.currentTimeMillis() + loadWindowMillis;
+                List<ScheduledMessage> scheduledMessages = scheduledMessageRepository.getRange(shardKey, loadWindow.loadedUntil, loadUntil);
+                if(!scheduledMessages.isEmpty()) {
+                    workManager.schedule(shardKey,resume(shardKey, scheduledMessages));
+                }
+                loadWindow.loadedUntil = loadUntil;
+                loadWindow.pending.updateAndGet(pending -> Math.max(0L, pending - scheduledMessages.size()));
+                if(logger.isDebugEnabled()) {
+                    logger.debug(format("Loaded %d ScheduledMessages for shard %s, %d more fire after the load window",
+                            scheduledMessages.size(), shardKey, loadWindow.pending.get()));
+                }
+            } catch(Exception e) {
+                // the window is not moved, the next run will try again
+                logger.error(format("Exception while loading ScheduledMessages for shard %s", shardKey), e);
+            } finally {
+                loadWindow.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies the {@link MissedTickPolicy} of the loaded recurring messages and starts tracking them
+     */
+    private ScheduledMessage[] resume(ShardKey shardKey, List<ScheduledMessage> scheduledMessages) {
+        final long now = System.currentTimeMillis();
+        final ScheduledMessage[] result = new ScheduledMessage[scheduledMessages.size()];
+        int i = 0;
+        for (ScheduledMessage scheduledMessage : scheduledMessages) {
+            if(scheduledMessage instanceof RecurringScheduledMessage) {
+                scheduledMessage = ((RecurringScheduledMessage) scheduledMessage).resume(now);
+                track(shardKey, scheduledMessage);
+            }
+            result[i++] = scheduledMessage;
+        }
+        return result;
+    }
+
+    private void track(ShardKey shardKey, ScheduledMessage scheduledMessage) {
+        if(scheduledMessage instanceof RecurringScheduledMessage) {
+            final Map<ScheduledMessageKey,RecurringScheduledMessage> shardRecurringMessages = recurringMessages.get(shardKey);
+            if(shardRecurringMessages != null) {
+                shardRecurringMessages.put(scheduledMessage.getKey(), (RecurringScheduledMessage) scheduledMessage);
+            }
+        }
+    }
+
+    /**
+     * Plans the next tick of a recurring message in memory. The work manager is updated before the tracked message
+     * is replaced: when the message is cancelled in the mean time either the cancel or this method unschedules it.
+     */
+    private void scheduleNextTick(ShardKey shardKey, RecurringScheduledMessage message) {
+        final Map<ScheduledMessageKey,RecurringScheduledMessage> shardRecurringMessages = recurringMessages.get(shardKey);
+        if(shardRecurringMessages == null || !shardRecurringMessages.containsKey(message.getKey())) {
+            // cancelled, or the shard is no longer ours
+            return;
+        }
+        RecurringScheduledMessage next = message.next(System.currentTimeMillis());
+        workManager.schedule(shardKey, next);
+        if(!shardRecurringMessages.replace(next.getKey(), message, next)) {
+            workManager.unschedule(shardKey, next);
+        } else if(next.needsCheckpoint(CHECKPOINT_INTERVAL_MILLIS)) {
+            next = next.checkpoint();
+            shardRecurringMessages.replace(next.getKey(), next);
+            scheduledMessageRepository.create(shardKey, next);
+            if(!shardRecurringMessages.containsKey(next.getKey())) {
+                // cancelled while storing, don't bring it back
+                scheduledMessageRepository.delete(shardKey, next.getKey());
+            }
+        }
+    }
+
+    /**
+     * The messages of a shard that fire before loadedUntil are in the work manager, of the rest only the count is kept
+     */
+    private static final class LoadWindow {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final AtomicLong pending = new AtomicLong();
+        private volatile long loadedUntil;
     }
 
     private final class ScheduledMessageExecutor implements WorkExecutor<ShardKey,ScheduledMessage> {
 
         @Override
         public void execute(final ShardKey shardKey,final ScheduledMessage message) {
+            final boolean recurring = message instanceof RecurringScheduledMessage;
             try {
                 final MessageDeserializer messageDeserializer = actorSystem.getDeserializer(message.getMessageClass());
                 if(messageDeserializer != null) {
@@ -154,14 +398,16 @@ public final class ShardedScheduler implements SchedulerService,WorkExecutorFact
                 }
             } catch(MessageDeliveryException e) {
                 // see if it's a recoverable exception
-                if(e.isRecoverable()) {
+                if(e.isRecoverable() && recurring) {
+                    // the next tick will be delivered instead
+                    logger.warn("Got a recoverable MessageDeliveryException, skipping this tick of a RecurringScheduledMessage");
+                } else if(e.isRecoverable()) {
                     // we need to reschedule the message otherwise it will get lost
                     // because we generate a key it will be impossible to cancel, however technically it fired already
                     // so it should be no problem
                     long fireTime = System.currentTimeMillis() + 1000L;
                     ScheduledMessage rescheduledMessage = new ScheduledMessageImpl(fireTime,message.getSender(),message.getReceiver(),message.getMessageClass(),message.getMessageBytes());
-                    scheduledMessageRepository.create(shardKey, rescheduledMessage);
-                    workManager.schedule(shardKey,rescheduledMessage);
+                    schedule(shardKey, rescheduledMessage);
                     logger.warn("Got a recoverable MessageDeliveryException, rescheduling ScheduledMessage to fire in 1000 msecs");
                 } else {
                     logger.error("Got an unrecoverable MessageDeliveryException",e);
@@ -173,8 +419,17 @@ public final class ShardedScheduler implements SchedulerService,WorkExecutorFact
             } catch(Exception e) {
                 logger.error("Caught unexpected Exception while exexuting ScheduledMessage",e);
             } finally {
-                // always remove from the backing store
-                scheduledMessageRepository.delete(shardKey, message.getKey());
+                if(recurring) {
+                    // the definition stays in the backing store, the next tick is only planned in memory
+                    try {
+                        scheduleNextTick(shardKey, (RecurringScheduledMessage) message);
+                    } catch(Exception e) {
+                        logger.error("Exception while planning the next tick of a RecurringScheduledMessage", e);
+                    }
+                } else {
+                    // always remove from the backing store
+                    scheduledMessageRepository.delete(shardKey, message.getKey());
+                }
             }
         }
     }
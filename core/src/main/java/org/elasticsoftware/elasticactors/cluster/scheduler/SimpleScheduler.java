@@ -20,8 +20,13 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsoftware.elasticactors.ActorRef;
 import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.scheduler.MissedTickPolicy;
 import org.elasticsoftware.elasticactors.scheduler.ScheduledMessageRef;
 import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.ScheduledWorkManager;
+import org.elasticsoftware.elasticactors.util.concurrent.WorkExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.WorkExecutorFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.timingwheel.TimingWheelScheduledWorkManager;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -29,23 +34,46 @@ import java.util.UUID;
 import java.util.concurrent.*;
 
 /**
- * Simple in-memory scheduler that is backed by a {@link java.util.concurrent.ScheduledExecutorService}
+ * Simple in-memory scheduler that is backed by a {@link java.util.concurrent.ScheduledExecutorService}, or by a
+ * {@link TimingWheelScheduledWorkManager} for large numbers of pending messages
  *
  * @author Joost van de Wijgerd
  */
 public final class SimpleScheduler implements SchedulerService,ScheduledMessageRefFactory {
     private static final Logger logger = LogManager.getLogger(SimpleScheduler.class);
+    private static final String SHARD = "SIMPLE";
+    private final boolean useTimingWheel;
     private ScheduledExecutorService scheduledExecutorService;
+    private ScheduledWorkManager<String,TimingWheelTask> workManager;
     private final ConcurrentMap<String,ScheduledFuture> scheduledFutures = new ConcurrentHashMap<>();
 
+    public SimpleScheduler() {
+        this(false);
+    }
+
+    public SimpleScheduler(boolean useTimingWheel) {
+        this.useTimingWheel = useTimingWheel;
+    }
+
     @PostConstruct
     public void init() {
-        scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("SIMPLE-SCHEDULER"));
+        if(useTimingWheel) {
+            WorkExecutorFactory<WorkExecutor<String,TimingWheelTask>> workExecutorFactory = () -> (shard, task) -> task.run();
+            workManager = new TimingWheelScheduledWorkManager<>(Executors.newSingleThreadExecutor(new DaemonThreadFactory("SIMPLE-SCHEDULER")), workExecutorFactory, 1);
+            workManager.init();
+            workManager.registerShard(SHARD);
+        } else {
+            scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("SIMPLE-SCHEDULER"));
+        }
     }
 
     @PreDestroy
     public void destroy() {
-        scheduledExecutorService.shutdown();
+        if(workManager != null) {
+            workManager.destroy();
+        } else {
+            scheduledExecutorService.shutdown();
+        }
     }
 
     @Override
@@ -61,7 +89,52 @@ public final class SimpleScheduler implements SchedulerService,ScheduledMessageR
     @Override
     public ScheduledMessageRef scheduleOnce(ActorRef sender,Object message, ActorRef receiver, long delay, TimeUnit timeUnit) {
         String id = UUID.randomUUID().toString();
-        ScheduledFuture scheduledFuture = scheduledExecutorService.schedule(new TellActorTask(id, sender,receiver,message),delay,timeUnit);
+        final ScheduledFuture scheduledFuture;
+        if(workManager != null) {
+            TimingWheelTask task = new TimingWheelTask(new TellActorTask(id, sender,receiver,message,false),
+                    System.currentTimeMillis() + timeUnit.toMillis(delay), 0L, false);
+            workManager.schedule(SHARD, task);
+            scheduledFuture = task;
+        } else {
+            scheduledFuture = scheduledExecutorService.schedule(new TellActorTask(id, sender,receiver,message,false),delay,timeUnit);
+        }
+        scheduledFutures.put(id,scheduledFuture);
+        return new SimpleScheduledMessageRef(id,scheduledFuture);
+    }
+
+    /**
+     * There are no shard moves in a single instance, so the {@link MissedTickPolicy} is not used
+     */
+    @Override
+    public ScheduledMessageRef scheduleAtFixedRate(ActorRef sender, Object message, ActorRef receiver, long initialDelay, long period, TimeUnit timeUnit, MissedTickPolicy missedTickPolicy) {
+        return scheduleRecurring(sender, message, receiver, initialDelay, period, timeUnit, true);
+    }
+
+    /**
+     * There are no shard moves in a single instance, so the {@link MissedTickPolicy} is not used
+     */
+    @Override
+    public ScheduledMessageRef scheduleWithFixedDelay(ActorRef sender, Object message, ActorRef receiver, long initialDelay, long delay, TimeUnit timeUnit, MissedTickPolicy missedTickPolicy) {
+        return scheduleRecurring(sender, message, receiver, initialDelay, delay, timeUnit, false);
+    }
+
+    private ScheduledMessageRef scheduleRecurring(ActorRef sender, Object message, ActorRef receiver, long initialDelay, long period, TimeUnit timeUnit, boolean fixedRate) {
+        String id = UUID.randomUUID().toString();
+        final ScheduledFuture scheduledFuture;
+        final TellActorTask tellActorTask = new TellActorTask(id, sender, receiver, message, true);
+        if(workManager != null) {
+            if(timeUnit.toMillis(period) <= 0) {
+                throw new IllegalArgumentException("period needs to be at least 1 millisecond");
+            }
+            TimingWheelTask task = new TimingWheelTask(tellActorTask, System.currentTimeMillis() + timeUnit.toMillis(initialDelay),
+                    timeUnit.toMillis(period), fixedRate);
+            workManager.schedule(SHARD, task);
+            scheduledFuture = task;
+        } else if(fixedRate) {
+            scheduledFuture = scheduledExecutorService.scheduleAtFixedRate(tellActorTask, initialDelay, period, timeUnit);
+        } else {
+            scheduledFuture = scheduledExecutorService.scheduleWithFixedDelay(tellActorTask, initialDelay, period, timeUnit);
+        }
         scheduledFutures.put(id,scheduledFuture);
         return new SimpleScheduledMessageRef(id,scheduledFuture);
     }
@@ -83,22 +156,97 @@ public final class SimpleScheduler implements SchedulerService,ScheduledMessageR
         private final ActorRef sender;
         private final ActorRef reciever;
         private final Object message;
+        private final boolean recurring;
 
-        private TellActorTask(String id, ActorRef sender, ActorRef reciever, Object message) {
+        private TellActorTask(String id, ActorRef sender, ActorRef reciever, Object message, boolean recurring) {
             this.id = id;
             this.sender = sender;
             this.reciever = reciever;
             this.message = message;
+            this.recurring = recurring;
         }
 
         @Override
         public void run() {
             try {
                 reciever.tell(message,sender);
-                scheduledFutures.remove(id);
+                if(!recurring) {
+                    scheduledFutures.remove(id);
+                }
             } catch (Exception e) {
                 logger.error("Exception sending scheduled messsage",e);
             }
         }
     }
+
+    /**
+     * The {@link ScheduledFuture} (used by {@link SimpleScheduledMessageRef} to cancel) for tasks on the timing wheel
+     */
+    private final class TimingWheelTask implements ScheduledFuture<Object>, Runnable {
+        private final TellActorTask task;
+        private final long period;
+        private final boolean fixedRate;
+        private volatile long fireTime;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private TimingWheelTask(TellActorTask task, long fireTime, long period, boolean fixedRate) {
+            this.task = task;
+            this.fireTime = fireTime;
+            this.period = period;
+            this.fixedRate = fixedRate;
+        }
+
+        @Override
+        public void run() {
+            if(!result.isCancelled()) {
+                task.run();
+                if(period > 0) {
+                    // the task is not on the wheel while it runs, so it can be added again with the next fire time
+                    fireTime = fixedRate ? fireTime + period : System.currentTimeMillis() + period;
+                    workManager.schedule(SHARD, this);
+                    if(result.isCancelled()) {
+                        workManager.unschedule(SHARD, this);
+                    }
+                } else {
+                    result.complete(null);
+                }
+            }
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(fireTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            workManager.unschedule(SHARD, this);
+            return result.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return result.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return result.isDone();
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            return result.get();
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return result.get(timeout, unit);
+        }
+    }
 }
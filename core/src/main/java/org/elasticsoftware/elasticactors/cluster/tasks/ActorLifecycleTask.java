@@ -26,7 +26,10 @@ import org.elasticsoftware.elasticactors.serialization.SerializationContext;
 import org.elasticsoftware.elasticactors.state.*;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -49,6 +52,10 @@ public abstract class ActorLifecycleTask implements ThreadBoundRunnable<String>
     private final Measurement measurement;
     private final ActorStateUpdateProcessor actorStateUpdateProcessor;
     private final Long serializationWarnThreshold;
+    private Exception executionException;
+    // whether handling this task changed the state, set after it was executed
+    private boolean stateUpdated;
+    private ActorStateFlusher stateFlusher;
 
     protected ActorLifecycleTask(ActorStateUpdateProcessor actorStateUpdateProcessor,
                                  PersistentActorRepository persistentActorRepository,
@@ -82,75 +89,250 @@ public abstract class ActorLifecycleTask implements ThreadBoundRunnable<String>
         if(this.measurement != null) {
             this.measurement.setExecutionStart(System.nanoTime());
         }
-        // setup the context
-        Exception executionException = null;
-        InternalActorContext.setContext(persistentActor);
-        SerializationContext.initialize();
         boolean shouldUpdateState = false;
         try {
-            shouldUpdateState = doInActorContext(actorSystem, receiver, receiverRef, internalMessage);
-            executeLifecycleListeners();
-        } catch (Exception e) {
-            log.error("Exception in doInActorContext",e);
-            executionException = e;
+            shouldUpdateState = execute();
         } finally {
-            // reset the serialization context
-            SerializationContext.reset();
-            // clear the state from the thread
-            InternalActorContext.getAndClearContext();
             // marks the end of the execution path
             if(this.measurement != null) {
                 this.measurement.setExecutionEnd(System.nanoTime());
             }
+            discardDeferredUpdatesIfDestroyed();
             // check if we have state now that needs to be written to the persistent actor store
             if (persistentActorRepository != null && persistentActor.getState() != null && shouldUpdateState) {
-                try {
-                    // generate the serialized state
-                    persistentActor.serializeState();
-                    persistentActorRepository.updateAsync((ShardKey) persistentActor.getKey(), persistentActor,
-                                                          internalMessage, messageHandlerEventListener);
-                    // if we have a configured actor state update processor, then use it
-                    if(actorStateUpdateProcessor != null) {
-                        // this is either a lifecycle step or an incoming message
-                        if(getLifeCycleStep() != null) {
-                            actorStateUpdateProcessor.process(getLifeCycleStep(), null, persistentActor);
-                        } else {
-                            // it's an incoming message so the messageClass in the internal message is what we need
-                            // to support multiple internal message handling protocols (such as the reactive streams protocol)
-                            // we need to unwrap here to find the actual message
-                            unwrapMessageClass(internalMessage).ifPresent(messageClass ->
-                                    actorStateUpdateProcessor.process(null, messageClass, persistentActor));
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error(format("Exception while serializing ActorState for actor [%s]", receiverRef.getActorId()), e);
-                } finally {
-                    // always ensure we release the memory of the serialized state
-                     persistentActor.setSerializedState(null);
-                }
-                // measure the serialization time
-                if(this.measurement != null) {
-                    this.measurement.setSerializationEnd(System.nanoTime());
+                if(shouldDeferStateUpdate()) {
+                    stateFlusher.markDirty(this, Collections.singletonList(this));
+                } else {
+                    updateStateWithDeferredUpdates(Collections.singletonList(this), messageHandlerEventListener);
                 }
+            } else if (persistentActorRepository != null && persistentActor.getState() != null && mustFlush()) {
+                // a lifecycle step of a dirty actor (i.e. passivation), the deferred state needs to be written now
+                updateStateWithDeferredUpdates(Collections.singletonList(this), messageHandlerEventListener);
             } else if(messageHandlerEventListener != null) {
-                if(executionException == null) {
-                    messageHandlerEventListener.onDone(internalMessage);
+                acknowledge();
+            }
+            logMeasurement();
+        }
+    }
+
+    /**
+     * Runs a batch of tasks for the same actor against one state instance. The state is serialized and persisted
+     * only once after the whole batch has been handled, after which all messages are acknowledged. All tasks
+     * should be {@link #isBatchable() batchable} and share the same {@link PersistentActor}.
+     *
+     * @param tasks
+     */
+    public static void runBatch(List<? extends ActorLifecycleTask> tasks) {
+        if(tasks.size() == 1) {
+            tasks.get(0).run();
+            return;
+        }
+        final List<ActorLifecycleTask> handled = new ArrayList<>(tasks.size());
+        ActorLifecycleTask lastUpdate = null;
+        try {
+            for (ActorLifecycleTask task : tasks) {
+                if(task.measurement != null) {
+                    task.measurement.setExecutionStart(System.nanoTime());
+                }
+                boolean shouldUpdateState = task.execute();
+                if(task.measurement != null) {
+                    task.measurement.setExecutionEnd(System.nanoTime());
+                }
+                if(task.executionException != null) {
+                    // nothing to wait for, the state change (if any) was not completed
+                    if(task.messageHandlerEventListener != null) {
+                        task.acknowledge();
+                    }
+                } else {
+                    handled.add(task);
+                    if(shouldUpdateState) {
+                        lastUpdate = task;
+                    }
+                }
+            }
+        } finally {
+            if (lastUpdate != null && lastUpdate.persistentActorRepository != null && lastUpdate.persistentActor.getState() != null) {
+                if(lastUpdate.shouldDeferStateUpdate()) {
+                    lastUpdate.stateFlusher.markDirty(lastUpdate, handled);
                 } else {
-                    messageHandlerEventListener.onError(internalMessage,executionException);
+                    lastUpdate.updateStateWithDeferredUpdates(handled, new BatchMessageHandlerEventListener(handled));
+                    lastUpdate.logMeasurement();
                 }
-                // measure the ack time
-                if(this.measurement != null) {
-                    this.measurement.setAckEnd(System.nanoTime());
+            } else {
+                for (ActorLifecycleTask task : handled) {
+                    if(task.messageHandlerEventListener != null) {
+                        task.acknowledge();
+                    }
                 }
             }
-            // do some trace logging
-            if(this.measurement != null) {
-                // @todo: commenting this out for now, as in a real life scenario it would just spam the logs
-                //log.trace(format("(%s) Message of type [%s] with id [%s] for actor [%s] took %d microsecs in queue, %d microsecs to execute, %d microsecs to serialize and %d microsecs to ack (state update %b)",this.getClass().getSimpleName(),(internalMessage != null) ? internalMessage.getPayloadClass() : "null",(internalMessage != null) ? internalMessage.getId().toString() : "null",receiverRef.getActorId(),measurement.getQueueDuration(MICROSECONDS),measurement.getExecutionDuration(MICROSECONDS),measurement.getSerializationDuration(MICROSECONDS),measurement.getAckDuration(MICROSECONDS),measurement.isSerialized()));
+        }
+    }
+
+    /**
+     * Whether this task can be merged with other tasks for the same actor, see {@link #runBatch(List)}
+     *
+     * @return
+     */
+    public boolean isBatchable() {
+        return false;
+    }
+
+    /**
+     * Writes the state of an actor that was marked dirty by the {@link ActorStateFlusher}. All messages that were
+     * handled since the previous write are acknowledged once the state is written.
+     *
+     * @param tasks the deferred tasks in the order they were handled
+     */
+    static void flush(List<ActorLifecycleTask> tasks) {
+        final ActorLifecycleTask lastUpdate = tasks.get(tasks.size() - 1);
+        if (lastUpdate.persistentActor.getState() != null) {
+            lastUpdate.updateState(tasks, new BatchMessageHandlerEventListener(tasks));
+        } else {
+            new BatchMessageHandlerEventListener(tasks).onDone(null);
+        }
+    }
 
-                if (serializationWarnThreshold != null && this.measurement.getSerializationDuration(TimeUnit.MICROSECONDS) > serializationWarnThreshold) {
-                    log.warn(format("(%s) Message of type [%s] with id [%s] triggered serialization for actor [%s] which took %d microsecs to complete",this.getClass().getSimpleName(),(internalMessage != null) ? internalMessage.getPayloadClass() : "null",(internalMessage != null) ? internalMessage.getId().toString() : "null",receiverRef.getActorId(),measurement.getSerializationDuration(MICROSECONDS)));
+    /**
+     * Set by the shard that owns the actor, when set state updates of {@link #isDeferrable() deferrable} tasks are
+     * handed to the flusher instead of being written directly.
+     *
+     * @param stateFlusher
+     */
+    public final void setStateFlusher(@Nullable ActorStateFlusher stateFlusher) {
+        this.stateFlusher = stateFlusher;
+    }
+
+    /**
+     * Whether the state update after this task can be deferred, see
+     * {@link org.elasticsoftware.elasticactors.state.PersistenceConfig#deferStateUpdates()}
+     *
+     * @return
+     */
+    protected boolean isDeferrable() {
+        return false;
+    }
+
+    private boolean shouldDeferStateUpdate() {
+        return stateFlusher != null && executionException == null && isDeferrable();
+    }
+
+    private boolean mustFlush() {
+        return stateFlusher != null && !isDeferrable() && stateFlusher.isDirty(receiverRef.getActorId());
+    }
+
+    /**
+     * Writes the state, the messages that are waiting for a deferred state update of this actor (if any) are
+     * acknowledged with the handled messages, as the state that is about to be written covers their state changes
+     * as well.
+     */
+    private void updateStateWithDeferredUpdates(List<ActorLifecycleTask> handled,
+                                                MessageHandlerEventListener messageHandlerEventListener) {
+        final List<ActorLifecycleTask> deferred = stateFlusher != null ? stateFlusher.drain(receiverRef.getActorId()) : null;
+        if (deferred == null) {
+            updateState(handled, messageHandlerEventListener);
+        } else {
+            deferred.addAll(handled);
+            updateState(deferred, new BatchMessageHandlerEventListener(deferred));
+        }
+    }
+
+    /**
+     * The state of a destroyed actor is deleted, so there is nothing left to write for any deferred updates
+     */
+    private void discardDeferredUpdatesIfDestroyed() {
+        if (stateFlusher != null && getLifeCycleStep() == ActorLifecycleStep.DESTROY) {
+            final List<ActorLifecycleTask> deferred = stateFlusher.drain(receiverRef.getActorId());
+            if (deferred != null) {
+                new BatchMessageHandlerEventListener(deferred).onDone(null);
+            }
+        }
+    }
+
+    private boolean execute() {
+        // setup the context
+        InternalActorContext.setContext(persistentActor);
+        SerializationContext.initialize();
+        try {
+            boolean shouldUpdateState = doInActorContext(actorSystem, receiver, receiverRef, internalMessage);
+            executeLifecycleListeners();
+            stateUpdated = shouldUpdateState;
+            return shouldUpdateState;
+        } catch (Exception e) {
+            log.error("Exception in doInActorContext",e);
+            executionException = e;
+            return false;
+        } finally {
+            // reset the serialization context
+            SerializationContext.reset();
+            // clear the state from the thread
+            InternalActorContext.getAndClearContext();
+        }
+    }
+
+    /**
+     * Writes the state after this task, which also covers the state changes of the other (earlier) tasks. The
+     * {@link ActorStateUpdateProcessor} is called for every task that changed the state.
+     */
+    private void updateState(List<ActorLifecycleTask> tasks, MessageHandlerEventListener messageHandlerEventListener) {
+        try {
+            // generate the serialized state
+            persistentActor.serializeState();
+            persistentActorRepository.updateAsync((ShardKey) persistentActor.getKey(), persistentActor,
+                                                  internalMessage, messageHandlerEventListener);
+            // if we have a configured actor state update processor, then use it
+            if(actorStateUpdateProcessor != null) {
+                for (ActorLifecycleTask task : tasks) {
+                    if(task != this && task.stateUpdated) {
+                        processStateUpdate(task);
+                    }
                 }
+                processStateUpdate(this);
+            }
+        } catch (Exception e) {
+            log.error(format("Exception while serializing ActorState for actor [%s]", receiverRef.getActorId()), e);
+        } finally {
+            // always ensure we release the memory of the serialized state
+             persistentActor.setSerializedState(null);
+        }
+        // measure the serialization time
+        if(this.measurement != null) {
+            this.measurement.setSerializationEnd(System.nanoTime());
+        }
+    }
+
+    private void processStateUpdate(ActorLifecycleTask task) {
+        // this is either a lifecycle step or an incoming message
+        if(task.getLifeCycleStep() != null) {
+            actorStateUpdateProcessor.process(task.getLifeCycleStep(), null, persistentActor);
+        } else {
+            // it's an incoming message so the messageClass in the internal message is what we need
+            // to support multiple internal message handling protocols (such as the reactive streams protocol)
+            // we need to unwrap here to find the actual message
+            task.unwrapMessageClass(task.internalMessage).ifPresent(messageClass ->
+                    actorStateUpdateProcessor.process(null, messageClass, persistentActor));
+        }
+    }
+
+    private void acknowledge() {
+        if(executionException == null) {
+            messageHandlerEventListener.onDone(internalMessage);
+        } else {
+            messageHandlerEventListener.onError(internalMessage,executionException);
+        }
+        // measure the ack time
+        if(this.measurement != null) {
+            this.measurement.setAckEnd(System.nanoTime());
+        }
+    }
+
+    private void logMeasurement() {
+        // do some trace logging
+        if(this.measurement != null) {
+            // @todo: commenting this out for now, as in a real life scenario it would just spam the logs
+            //log.trace(format("(%s) Message of type [%s] with id [%s] for actor [%s] took %d microsecs in queue, %d microsecs to execute, %d microsecs to serialize and %d microsecs to ack (state update %b)",this.getClass().getSimpleName(),(internalMessage != null) ? internalMessage.getPayloadClass() : "null",(internalMessage != null) ? internalMessage.getId().toString() : "null",receiverRef.getActorId(),measurement.getQueueDuration(MICROSECONDS),measurement.getExecutionDuration(MICROSECONDS),measurement.getSerializationDuration(MICROSECONDS),measurement.getAckDuration(MICROSECONDS),measurement.isSerialized()));
+
+            if (serializationWarnThreshold != null && this.measurement.getSerializationDuration(TimeUnit.MICROSECONDS) > serializationWarnThreshold) {
+                log.warn(format("(%s) Message of type [%s] with id [%s] triggered serialization for actor [%s] which took %d microsecs to complete",this.getClass().getSimpleName(),(internalMessage != null) ? internalMessage.getPayloadClass() : "null",(internalMessage != null) ? internalMessage.getId().toString() : "null",receiverRef.getActorId(),measurement.getSerializationDuration(MICROSECONDS)));
             }
         }
     }
@@ -226,4 +408,33 @@ public abstract class ActorLifecycleTask implements ThreadBoundRunnable<String>
             return Optional.empty();
         }
     }
+
+    /**
+     * Acknowledges all messages of a batch once the (single) state update has been written
+     */
+    private static final class BatchMessageHandlerEventListener implements MessageHandlerEventListener {
+        private final List<ActorLifecycleTask> tasks;
+
+        private BatchMessageHandlerEventListener(List<ActorLifecycleTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        public void onError(InternalMessage message, Throwable exception) {
+            for (ActorLifecycleTask task : tasks) {
+                if(task.messageHandlerEventListener != null) {
+                    task.messageHandlerEventListener.onError(task.internalMessage, exception);
+                }
+            }
+        }
+
+        @Override
+        public void onDone(InternalMessage message) {
+            for (ActorLifecycleTask task : tasks) {
+                if(task.messageHandlerEventListener != null) {
+                    task.messageHandlerEventListener.onDone(task.internalMessage);
+                }
+            }
+        }
+    }
 }
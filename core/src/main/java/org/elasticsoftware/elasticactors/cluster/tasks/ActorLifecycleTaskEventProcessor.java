@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cluster.tasks;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link ThreadBoundEventProcessor} for the actor executor. Consecutive {@link ActorLifecycleTask#isBatchable() batchable}
+ * tasks for the same actor are merged and run with {@link ActorLifecycleTask#runBatch(List)}, all other events are
+ * run one by one in the order they were received.
+ */
+public final class ActorLifecycleTaskEventProcessor implements ThreadBoundEventProcessor<ThreadBoundRunnable> {
+    private static final Logger logger = LogManager.getLogger(ActorLifecycleTaskEventProcessor.class);
+
+    @Override
+    public void process(List<ThreadBoundRunnable> events) {
+        // the processor is shared between the worker threads, so the batch cannot be a field
+        final List<ActorLifecycleTask> batch = new ArrayList<>(events.size());
+        try {
+            for (ThreadBoundRunnable event : events) {
+                if (event instanceof ActorLifecycleTask && ((ActorLifecycleTask) event).isBatchable()) {
+                    ActorLifecycleTask task = (ActorLifecycleTask) event;
+                    if (!batch.isEmpty() && batch.get(0).persistentActor != task.persistentActor) {
+                        runBatch(batch);
+                    }
+                    batch.add(task);
+                } else {
+                    runBatch(batch);
+                    run(event);
+                }
+            }
+        } finally {
+            runBatch(batch);
+        }
+    }
+
+    @Override
+    public void process(ThreadBoundRunnable... events) {
+        for (ThreadBoundRunnable event : events) {
+            run(event);
+        }
+    }
+
+    private void runBatch(List<ActorLifecycleTask> batch) {
+        if (!batch.isEmpty()) {
+            try {
+                ActorLifecycleTask.runBatch(batch);
+            } catch (Throwable exception) {
+                logger.error(String.format("exception on queue %s while executing batch of %d tasks for actor %s", Thread.currentThread().getName(), batch.size(), batch.get(0).receiverRef), exception);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void run(ThreadBoundRunnable event) {
+        try {
+            event.run();
+        } catch (Throwable exception) {
+            logger.error(String.format("exception on queue %s while executing runnable: %s", Thread.currentThread().getName(), event), exception);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cluster.tasks;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Keeps track of the actors in a shard that have state changes that were not written yet, see
+ * {@link org.elasticsoftware.elasticactors.state.PersistenceConfig#deferStateUpdates()}. Every flush interval, or
+ * as soon as the number of dirty actors reaches the flush threshold, a flush task is scheduled on the actor
+ * executor for every dirty actor. The state is serialized on the thread of the actor, so it is never serialized
+ * while a message is being handled.
+ *
+ * The pending tasks of an actor are only accessed from the thread the actor is bound to, the flusher thread only
+ * looks at the keys of the dirty actors.
+ */
+public final class ActorStateFlusher {
+    private static final Logger logger = LogManager.getLogger(ActorStateFlusher.class);
+    private static final ScheduledExecutorService flushScheduler =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("ACTOR-STATE-FLUSHER"));
+    private final ShardKey shardKey;
+    private final ThreadBoundExecutor actorExecutor;
+    private final int flushThreshold;
+    private final ConcurrentMap<String, DirtyActor> dirtyActors = new ConcurrentHashMap<>();
+    // number of actors that became dirty since the last flush
+    private final AtomicInteger unflushed = new AtomicInteger(0);
+    private final ScheduledFuture<?> scheduledFlush;
+
+    public ActorStateFlusher(ShardKey shardKey, ThreadBoundExecutor actorExecutor, long flushIntervalMillis, int flushThreshold) {
+        this.shardKey = shardKey;
+        this.actorExecutor = actorExecutor;
+        this.flushThreshold = flushThreshold;
+        this.scheduledFlush = flushScheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, MILLISECONDS);
+    }
+
+    /**
+     * Registers the handled tasks of an actor whose state changed but was not written yet. Must be called on the
+     * thread the actor is bound to.
+     *
+     * @param lastUpdate    the last task that changed the state
+     * @param handled       all tasks that should be acknowledged when the state is written
+     */
+    void markDirty(ActorLifecycleTask lastUpdate, List<? extends ActorLifecycleTask> handled) {
+        final String actorId = lastUpdate.receiverRef.getActorId();
+        DirtyActor dirtyActor = dirtyActors.get(actorId);
+        if (dirtyActor != null) {
+            dirtyActor.tasks.addAll(handled);
+        } else {
+            dirtyActor = new DirtyActor(actorId, lastUpdate.getKey());
+            dirtyActor.tasks.addAll(handled);
+            dirtyActors.put(actorId, dirtyActor);
+            if (unflushed.incrementAndGet() >= flushThreshold) {
+                flush();
+            }
+        }
+    }
+
+    boolean isDirty(String actorId) {
+        return dirtyActors.containsKey(actorId);
+    }
+
+    /**
+     * Removes the actor from the dirty set. Must be called on the thread the actor is bound to.
+     *
+     * @param actorId
+     * @return  the tasks that are waiting for the state to be written or null if the actor is not dirty
+     */
+    @Nullable
+    List<ActorLifecycleTask> drain(String actorId) {
+        DirtyActor dirtyActor = dirtyActors.remove(actorId);
+        return dirtyActor != null ? dirtyActor.tasks : null;
+    }
+
+    /**
+     * Schedules a write of the state of every dirty actor
+     */
+    public void flush() {
+        unflushed.set(0);
+        for (DirtyActor dirtyActor : dirtyActors.values()) {
+            try {
+                actorExecutor.execute(new FlushActorStateTask(dirtyActor));
+            } catch (Exception e) {
+                logger.error(String.format("Exception while scheduling state flush for actor [%s] in shard [%s]",
+                        dirtyActor.actorId, shardKey), e);
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic flush and schedules a final write of all dirty actors
+     */
+    public void destroy() {
+        scheduledFlush.cancel(false);
+        flush();
+    }
+
+    private static final class DirtyActor {
+        private final String actorId;
+        private final String executorKey;
+        // only accessed from the thread the actor is bound to
+        private final List<ActorLifecycleTask> tasks = new ArrayList<>();
+
+        private DirtyActor(String actorId, String executorKey) {
+            this.actorId = actorId;
+            this.executorKey = executorKey;
+        }
+    }
+
+    private final class FlushActorStateTask implements ThreadBoundRunnable<String> {
+        private final DirtyActor dirtyActor;
+
+        private FlushActorStateTask(DirtyActor dirtyActor) {
+            this.dirtyActor = dirtyActor;
+        }
+
+        @Override
+        public String getKey() {
+            return dirtyActor.executorKey;
+        }
+
+        @Override
+        public void run() {
+            // the state might already have been written by a lifecycle step or an earlier flush
+            List<ActorLifecycleTask> tasks = dirtyActors.remove(dirtyActor.actorId, dirtyActor) ? dirtyActor.tasks : null;
+            if (tasks != null && !tasks.isEmpty()) {
+                ActorLifecycleTask.flush(tasks);
+            }
+        }
+    }
+}
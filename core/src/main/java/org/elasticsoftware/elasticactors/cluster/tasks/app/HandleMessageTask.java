@@ -29,6 +29,7 @@ import org.elasticsoftware.elasticactors.state.ActorStateUpdateProcessor;
 import org.elasticsoftware.elasticactors.messaging.reactivestreams.NextMessage;
 import org.elasticsoftware.elasticactors.serialization.MessageSerializer;
 import org.elasticsoftware.elasticactors.state.MessageSubscriber;
+import org.elasticsoftware.elasticactors.state.PersistenceConfig;
 import org.elasticsoftware.elasticactors.state.PersistentActor;
 import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
 
@@ -47,6 +48,21 @@ import static org.elasticsoftware.elasticactors.util.SerializationTools.deserial
  */
 public final class HandleMessageTask extends ActorLifecycleTask {
     private static final Logger log = LogManager.getLogger(HandleMessageTask.class);
+    // these are checked for every message, so only look at the annotation once per actor class
+    private static final ClassValue<Boolean> BATCH_MESSAGES = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            PersistenceConfig persistenceConfig = type.getAnnotation(PersistenceConfig.class);
+            return persistenceConfig != null && persistenceConfig.batchMessages();
+        }
+    };
+    private static final ClassValue<Boolean> DEFER_STATE_UPDATES = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            PersistenceConfig persistenceConfig = type.getAnnotation(PersistenceConfig.class);
+            return persistenceConfig != null && persistenceConfig.deferStateUpdates();
+        }
+    };
 
 
     public HandleMessageTask(InternalActorSystem actorSystem,
@@ -73,6 +89,16 @@ public final class HandleMessageTask extends ActorLifecycleTask {
     }
 
 
+    @Override
+    public boolean isBatchable() {
+        return BATCH_MESSAGES.get(receiver.getClass());
+    }
+
+    @Override
+    protected boolean isDeferrable() {
+        return DEFER_STATE_UPDATES.get(receiver.getClass());
+    }
+
     protected boolean doInActorContext(InternalActorSystem actorSystem,
                                        ElasticActor receiver,
                                        ActorRef receiverRef,
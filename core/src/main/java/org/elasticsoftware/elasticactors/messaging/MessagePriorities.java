@@ -0,0 +1,45 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.messaging;
+
+import com.google.common.collect.ImmutableSet;
+import org.elasticsoftware.elasticactors.messaging.internal.CancelScheduledMessageMessage;
+import org.elasticsoftware.elasticactors.messaging.internal.CreateActorMessage;
+import org.elasticsoftware.elasticactors.messaging.internal.PersistActorMessage;
+
+import java.util.Set;
+
+/**
+ * Determines which {@link InternalMessage}s are shard control messages or undeliverable notifications that
+ * should skip the backlog of application messages.
+ *
+ * <p/>
+ * {@link org.elasticsoftware.elasticactors.messaging.internal.DestroyActorMessage} is deliberately not a priority
+ * message: it would overtake the messages that were sent to the actor before it was stopped.
+ */
+public final class MessagePriorities {
+    private static final Set<String> PRIORITY_PAYLOAD_CLASSES = ImmutableSet.of(
+            CreateActorMessage.class.getName(),
+            CancelScheduledMessageMessage.class.getName(),
+            PersistActorMessage.class.getName());
+
+    private MessagePriorities() {}
+
+    public static boolean isPriority(InternalMessage message) {
+        return message.isUndeliverable() || PRIORITY_PAYLOAD_CLASSES.contains(message.getPayloadClass());
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.serialization.compression;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * A compression format for serialized actor state and messages. Every codec frames its output with its own magic
+ * header, so a deserializer that knows several codecs can tell them apart and data written with a previous codec
+ * stays readable after switching to another one.
+ */
+public interface CompressionCodec {
+    /**
+     * @param context   the category of the data (usually the actor class name), codecs can use it to select a
+     *                  dictionary. May be null, in which case no dictionary is used
+     * @param data      the uncompressed data
+     * @return          the framed compressed data, or null when compressing does not make the data any smaller
+     */
+    @Nullable
+    byte[] compress(@Nullable String context, byte[] data) throws IOException;
+
+    boolean isCompressed(byte[] data);
+
+    byte[] decompress(byte[] data) throws IOException;
+}
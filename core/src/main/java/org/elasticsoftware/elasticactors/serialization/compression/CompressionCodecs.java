@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.serialization.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public final class CompressionCodecs {
+    private CompressionCodecs() {
+    }
+
+    /**
+     * The codecs to read data with, independent of the codec that is used for compression: data written before
+     * switching from LZ4 to zstd (or back) has to stay readable. Values compressed with a dictionary can only be
+     * read when the registry of the zstd codec has the dictionary.
+     */
+    public static List<CompressionCodec> decompressionCodecs(ZstdCompressionCodec zstdCodec) {
+        return Arrays.asList(zstdCodec, Lz4CompressionCodec.INSTANCE);
+    }
+
+    /**
+     * Decompresses the data with the first codec that recognizes its header, data that none of the codecs
+     * recognize is returned as is (it was stored uncompressed).
+     */
+    public static byte[] decompress(List<CompressionCodec> codecs, byte[] data) throws IOException {
+        for (CompressionCodec codec : codecs) {
+            if (codec.isCompressed(data)) {
+                return codec.decompress(data);
+            }
+        }
+        return data;
+    }
+
+    static boolean startsWith(byte[] data, byte[] header) {
+        if (data.length < header.length) {
+            return false;
+        }
+        for (int i = 0; i < header.length; i++) {
+            if (data[i] != header[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
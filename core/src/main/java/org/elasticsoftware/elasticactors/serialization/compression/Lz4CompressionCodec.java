@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.serialization.compression;
+
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import javax.annotation.Nullable;
+
+/**
+ * The original LZ4 format: the magic header followed by the uncompressed length (int) and the LZ4 block.
+ */
+public final class Lz4CompressionCodec implements CompressionCodec {
+    public static final Lz4CompressionCodec INSTANCE = new Lz4CompressionCodec();
+    private static final LZ4Compressor lz4Compressor = LZ4Factory.fastestJavaInstance().fastCompressor();
+    private static final LZ4FastDecompressor lz4Decompressor = LZ4Factory.fastestJavaInstance().fastDecompressor();
+    private static final byte[] MAGIC_HEADER = {0x18,0x4D,0x22,0x04};
+
+    private Lz4CompressionCodec() {
+    }
+
+    @Nullable
+    @Override
+    public byte[] compress(@Nullable String context, byte[] data) {
+        byte[] compressedBytes =  lz4Compressor.compress(data);
+        ByteArrayDataOutput dataOutput = ByteStreams.newDataOutput(compressedBytes.length+8);
+        dataOutput.write(MAGIC_HEADER);
+        dataOutput.writeInt(data.length);
+        dataOutput.write(compressedBytes);
+        return dataOutput.toByteArray();
+    }
+
+    @Override
+    public boolean isCompressed(byte[] data) {
+        return CompressionCodecs.startsWith(data, MAGIC_HEADER);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data) {
+        ByteArrayDataInput dataInput = ByteStreams.newDataInput(data);
+        // skip the header
+        dataInput.skipBytes(4);
+        int uncompressedLength = dataInput.readInt();
+        return lz4Decompressor.decompress(data, 8, uncompressedLength);
+    }
+}
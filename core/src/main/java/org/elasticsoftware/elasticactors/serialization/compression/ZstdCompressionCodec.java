@@ -0,0 +1,114 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.serialization.compression;
+
+import com.github.luben.zstd.Zstd;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * Zstandard compression, with a trained dictionary when the {@link ZstdDictionaryRegistry} has one for the context.
+ * Dictionaries make a big difference for small values (like most JSON actor states) that share a lot of structure
+ * but are too small to compress well on their own.
+ *
+ * The format is the magic header, the dictionary id (int, 0 means no dictionary), the uncompressed length (int) and
+ * the zstd frame. Values for which no dictionary exists yet are handed to the registry as training samples. Values
+ * compressed without a context never use a dictionary.
+ */
+public final class ZstdCompressionCodec implements CompressionCodec {
+    private static final byte[] MAGIC_HEADER = {0x28,(byte)0xB5,0x2F,(byte)0xFD};
+    private static final int HEADER_SIZE = 12;
+    private final ZstdDictionaryRegistry dictionaryRegistry;
+    private final int compressionLevel;
+
+    public ZstdCompressionCodec(ZstdDictionaryRegistry dictionaryRegistry, int compressionLevel) {
+        this.dictionaryRegistry = dictionaryRegistry;
+        this.compressionLevel = compressionLevel;
+    }
+
+    @Nullable
+    @Override
+    public byte[] compress(@Nullable String context, byte[] data) throws IOException {
+        // without a context (like the snapshots and deltas of delta encoded actors) no dictionary is used
+        ZstdDictionary dictionary = context != null ? dictionaryRegistry.getCurrentDictionary(context) : null;
+        if (dictionary == null && context != null) {
+            dictionaryRegistry.sample(context, data);
+        }
+        byte[] compressed = new byte[HEADER_SIZE + (int) Zstd.compressBound(data.length)];
+        long size = dictionary != null
+                ? Zstd.compressFastDict(compressed, HEADER_SIZE, data, 0, data.length, dictionary.getCompressDictionary())
+                : Zstd.compressByteArray(compressed, HEADER_SIZE, compressed.length - HEADER_SIZE, data, 0, data.length, compressionLevel);
+        if (Zstd.isError(size)) {
+            throw new IOException(format("Zstd compression failed: %s", Zstd.getErrorName(size)));
+        }
+        if (HEADER_SIZE + size >= data.length) {
+            return null;
+        }
+        System.arraycopy(MAGIC_HEADER, 0, compressed, 0, MAGIC_HEADER.length);
+        writeInt(compressed, 4, dictionary != null ? dictionary.getId() : 0);
+        writeInt(compressed, 8, data.length);
+        return Arrays.copyOf(compressed, HEADER_SIZE + (int) size);
+    }
+
+    @Override
+    public boolean isCompressed(byte[] data) {
+        return data.length >= HEADER_SIZE && CompressionCodecs.startsWith(data, MAGIC_HEADER);
+    }
+
+    @Override
+    public byte[] decompress(byte[] data) throws IOException {
+        int dictionaryId = readInt(data, 4);
+        byte[] decompressed = new byte[readInt(data, 8)];
+        long size;
+        if (dictionaryId == 0) {
+            size = Zstd.decompressByteArray(decompressed, 0, decompressed.length, data, HEADER_SIZE, data.length - HEADER_SIZE);
+        } else {
+            ZstdDictionary dictionary = dictionaryRegistry.getDictionary(dictionaryId);
+            if (dictionary == null) {
+                throw new IOException(format("Unknown zstd dictionary id %d", dictionaryId));
+            }
+            size = Zstd.decompressFastDict(decompressed, 0, data, HEADER_SIZE, data.length - HEADER_SIZE, dictionary.getDecompressDictionary());
+        }
+        if (Zstd.isError(size)) {
+            throw new IOException(format("Zstd decompression failed: %s", Zstd.getErrorName(size)));
+        }
+        return decompressed;
+    }
+
+    /**
+     * Releases the dictionaries, called by Spring when the codec is a bean.
+     */
+    public void close() {
+        dictionaryRegistry.close();
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.serialization.compression;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+import static java.lang.String.format;
+
+/**
+ * A trained Zstandard dictionary for one context (actor class). The id is the dictionary id zstd stores in the
+ * dictionary itself, it is written in the header of every value compressed with the dictionary. The version orders
+ * the dictionaries of the same context, the one with the highest version is used for compression.
+ */
+public final class ZstdDictionary implements AutoCloseable {
+    private final String context;
+    private final int version;
+    private final int id;
+    private final byte[] bytes;
+    private final ZstdDictCompress compressDictionary;
+    private final ZstdDictDecompress decompressDictionary;
+
+    public ZstdDictionary(String context, int version, byte[] bytes, int compressionLevel) {
+        this.id = (int) Zstd.getDictIdFromDict(bytes);
+        if (this.id == 0) {
+            throw new IllegalArgumentException(format("Dictionary %s version %d has no dictionary id, raw content dictionaries are not supported", context, version));
+        }
+        this.context = context;
+        this.version = version;
+        this.bytes = bytes;
+        this.compressDictionary = new ZstdDictCompress(bytes, compressionLevel);
+        this.decompressDictionary = new ZstdDictDecompress(bytes);
+    }
+
+    public String getContext() {
+        return context;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    ZstdDictCompress getCompressDictionary() {
+        return compressDictionary;
+    }
+
+    ZstdDictDecompress getDecompressDictionary() {
+        return decompressDictionary;
+    }
+
+    @Override
+    public void close() {
+        compressDictionary.close();
+        decompressDictionary.close();
+    }
+}
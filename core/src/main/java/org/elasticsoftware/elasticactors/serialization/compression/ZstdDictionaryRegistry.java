@@ -0,0 +1,246 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.serialization.compression;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictTrainer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.String.format;
+
+/**
+ * Keeps the {@link ZstdDictionary} instances by id (for decompression) and the current dictionary per context (for
+ * compression). Dictionaries are stored in a directory as {@code <context>-<version>-<id>.zdict} files, which is read
+ * on {@link #open(File, int, int, int)}. The id is part of the name so nodes that train a dictionary for the same
+ * context concurrently never overwrite each other's file.
+ *
+ * When {@code trainingSampleSize} is larger than zero the registry trains a dictionary for every context that doesn't
+ * have one yet, from the values that are compressed without one. Training happens in the background once enough
+ * samples have been collected, the dictionary is synced to the directory before it is used. Every node that reads
+ * the data needs the dictionary, so the directory has to be durable and shared between the nodes (or training should
+ * be done offline with {@link #train(String, List)} and the dictionaries shipped with the application). Without a
+ * directory only values compressed without a dictionary can be read.
+ */
+public final class ZstdDictionaryRegistry implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(ZstdDictionaryRegistry.class);
+    public static final String DEFAULT_CONTEXT = "default";
+    private static final String FILE_SUFFIX = ".zdict";
+    @Nullable
+    private final File directory;
+    private final int compressionLevel;
+    private final int trainingSampleSize;
+    private final int dictionarySize;
+    private final ConcurrentMap<Integer,ZstdDictionary> dictionariesById = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String,ZstdDictionary> currentDictionaries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String,Samples> samples = new ConcurrentHashMap<>();
+    private final ExecutorService trainingExecutor;
+
+    private ZstdDictionaryRegistry(@Nullable File directory, int compressionLevel, int trainingSampleSize, int dictionarySize) {
+        this.directory = directory;
+        this.compressionLevel = compressionLevel;
+        this.trainingSampleSize = trainingSampleSize;
+        this.dictionarySize = dictionarySize;
+        this.trainingExecutor = trainingSampleSize > 0
+                ? Executors.newSingleThreadExecutor(new DaemonThreadFactory("ZSTD-DICTIONARY-TRAINER"))
+                : null;
+    }
+
+    /**
+     * @param directory             the (durable) directory with the dictionaries, it is created if it doesn't exist.
+     *                              When null no dictionaries are used and training is not possible
+     * @param compressionLevel      the zstd compression level
+     * @param trainingSampleSize    the total size (in bytes) of the samples to train a dictionary with, 0 disables
+     *                              training
+     * @param dictionarySize        the maximum size (in bytes) of a trained dictionary
+     */
+    public static ZstdDictionaryRegistry open(@Nullable File directory, int compressionLevel, int trainingSampleSize, int dictionarySize) throws IOException {
+        if (directory == null) {
+            if (trainingSampleSize > 0) {
+                throw new IllegalArgumentException("Training zstd dictionaries requires a (durable) dictionary directory");
+            }
+            return new ZstdDictionaryRegistry(null, compressionLevel, 0, dictionarySize);
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException(format("Unable to create dictionary directory %s", directory.getAbsolutePath()));
+        }
+        ZstdDictionaryRegistry registry = new ZstdDictionaryRegistry(directory, compressionLevel, trainingSampleSize, dictionarySize);
+        registry.load(FILE_SUFFIX);
+        return registry;
+    }
+
+    /**
+     * Registers the dictionary files in the directory whose name ends with the suffix.
+     */
+    private void load(String suffix) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName().substring(0, file.getName().length() - FILE_SUFFIX.length());
+                int idSeparator = name.lastIndexOf('-');
+                int versionSeparator = idSeparator > 0 ? name.lastIndexOf('-', idSeparator - 1) : -1;
+                if (versionSeparator <= 0) {
+                    logger.warn(format("Ignoring dictionary file %s, expected <context>-<version>-<id>%s", file.getName(), FILE_SUFFIX));
+                    continue;
+                }
+                register(name.substring(0, versionSeparator),
+                         Integer.parseInt(name.substring(versionSeparator + 1, idSeparator)),
+                         Files.readAllBytes(file.toPath()));
+            }
+        }
+    }
+
+    /**
+     * Adds a dictionary, it becomes the current dictionary of its context if it has the highest version.
+     */
+    public ZstdDictionary register(String context, int version, byte[] bytes) {
+        ZstdDictionary dictionary = new ZstdDictionary(context, version, bytes, compressionLevel);
+        ZstdDictionary existing = dictionariesById.putIfAbsent(dictionary.getId(), dictionary);
+        if (existing != null) {
+            dictionary.close();
+            if (!existing.getContext().equals(context) || existing.getVersion() != version) {
+                throw new IllegalStateException(format("Dictionary %s version %d has the same id (%d) as dictionary %s version %d",
+                        context, version, existing.getId(), existing.getContext(), existing.getVersion()));
+            }
+            return existing;
+        }
+        // two nodes can train the same version concurrently, the highest id wins so all nodes pick the same one
+        currentDictionaries.merge(context, dictionary, (current, added) ->
+                added.getVersion() > current.getVersion()
+                        || (added.getVersion() == current.getVersion() && added.getId() > current.getId()) ? added : current);
+        return dictionary;
+    }
+
+    /**
+     * Returns the dictionary with the id. Dictionaries that were added to the (shared) directory by another node
+     * after {@link #open(File, int, int, int)} are loaded on first use.
+     */
+    @Nullable
+    public ZstdDictionary getDictionary(int id) throws IOException {
+        ZstdDictionary dictionary = dictionariesById.get(id);
+        if (dictionary == null && directory != null) {
+            synchronized (this) {
+                dictionary = dictionariesById.get(id);
+                if (dictionary == null) {
+                    load(format("-%d%s", id, FILE_SUFFIX));
+                    dictionary = dictionariesById.get(id);
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    @Nullable
+    public ZstdDictionary getCurrentDictionary(@Nullable String context) {
+        return currentDictionaries.get(context != null ? context : DEFAULT_CONTEXT);
+    }
+
+    /**
+     * Offers a value as training sample for the context, a no-op when training is disabled. Only values that are
+     * small compared to the sample size are used, large values compress well without a dictionary.
+     */
+    public void sample(@Nullable String context, byte[] data) {
+        if (trainingSampleSize <= 0 || data.length == 0 || data.length > trainingSampleSize / 100) {
+            return;
+        }
+        final String sampleContext = context != null ? context : DEFAULT_CONTEXT;
+        Samples contextSamples = samples.computeIfAbsent(sampleContext, c -> new Samples(new ZstdDictTrainer(trainingSampleSize, dictionarySize)));
+        if (!contextSamples.trainer.addSample(data) && contextSamples.training.compareAndSet(false, true)) {
+            trainingExecutor.execute(() -> {
+                try {
+                    if (getCurrentDictionary(sampleContext) == null) {
+                        ZstdDictionary dictionary = store(sampleContext, contextSamples.trainer.trainSamples());
+                        logger.info(format("Trained zstd dictionary %s version %d (id %d, %d bytes)",
+                                sampleContext, dictionary.getVersion(), dictionary.getId(), dictionary.getBytes().length));
+                    }
+                } catch (Exception e) {
+                    logger.warn(format("Training zstd dictionary %s failed", sampleContext), e);
+                } finally {
+                    samples.remove(sampleContext, contextSamples);
+                }
+            });
+        }
+    }
+
+    /**
+     * Trains a new version of the dictionary for the context and stores it.
+     */
+    public ZstdDictionary train(@Nullable String context, List<byte[]> samples) throws IOException {
+        if (directory == null) {
+            throw new IllegalStateException("Training zstd dictionaries requires a (durable) dictionary directory");
+        }
+        int totalSize = samples.stream().mapToInt(sample -> sample.length).sum();
+        ZstdDictTrainer trainer = new ZstdDictTrainer(totalSize, dictionarySize);
+        samples.forEach(trainer::addSample);
+        return store(context != null ? context : DEFAULT_CONTEXT, trainer.trainSamples());
+    }
+
+    private synchronized ZstdDictionary store(String context, byte[] bytes) throws IOException {
+        ZstdDictionary current = currentDictionaries.get(context);
+        int version = current != null ? current.getVersion() + 1 : 1;
+        Path target = new File(directory, format("%s-%d-%d%s", context, version, Zstd.getDictIdFromDict(bytes), FILE_SUFFIX)).toPath();
+        Path temp = Files.createTempFile(directory.toPath(), context, FILE_SUFFIX + ".tmp");
+        try {
+            // the data written with the dictionary can't be read without it, so it has to be on disk before it is used
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return register(context, version, bytes);
+    }
+
+    @Override
+    public void close() {
+        if (trainingExecutor != null) {
+            trainingExecutor.shutdownNow();
+        }
+        dictionariesById.values().forEach(ZstdDictionary::close);
+    }
+
+    private static final class Samples {
+        private final ZstdDictTrainer trainer;
+        private final AtomicBoolean training = new AtomicBoolean(false);
+
+        private Samples(ZstdDictTrainer trainer) {
+            this.trainer = trainer;
+        }
+    }
+}
@@ -17,13 +17,17 @@
 package org.elasticsoftware.elasticactors.serialization.internal;
 
 import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.cluster.scheduler.RecurringScheduledMessage;
 import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessage;
 import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageImpl;
 import org.elasticsoftware.elasticactors.messaging.UUIDTools;
+import org.elasticsoftware.elasticactors.scheduler.MissedTickPolicy;
 import org.elasticsoftware.elasticactors.serialization.Deserializer;
 import org.elasticsoftware.elasticactors.serialization.protobuf.Elasticactors;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.UUID;
 
 /**
@@ -38,6 +42,24 @@ public final class ScheduledMessageDeserializer implements Deserializer<byte[],S
 
     @Override
     public ScheduledMessage deserialize(byte[] serializedObject) throws IOException {
+        if(serializedObject.length > 0 && serializedObject[0] == ScheduledMessageSerializer.RECURRING_MARKER) {
+            ByteBuffer buffer = ByteBuffer.wrap(serializedObject);
+            buffer.get();
+            byte version = buffer.get();
+            if(version != ScheduledMessageSerializer.RECURRING_VERSION) {
+                throw new IOException("Unsupported RecurringScheduledMessage version: " + version);
+            }
+            boolean fixedRate = buffer.get() == 1;
+            MissedTickPolicy missedTickPolicy = buffer.get() == 1 ? MissedTickPolicy.CATCH_UP : MissedTickPolicy.SKIP;
+            long period = buffer.getLong();
+            long nextFireTime = buffer.getLong();
+            ScheduledMessage message = deserializeMessage(Arrays.copyOfRange(serializedObject, ScheduledMessageSerializer.RECURRING_HEADER_SIZE, serializedObject.length));
+            return new RecurringScheduledMessage(message, fixedRate, period, missedTickPolicy, nextFireTime);
+        }
+        return deserializeMessage(serializedObject);
+    }
+
+    private ScheduledMessage deserializeMessage(byte[] serializedObject) throws IOException {
         try {
             Elasticactors.ScheduledMessage protobufMessage = Elasticactors.ScheduledMessage.parseFrom(serializedObject);
             ActorRef sender = protobufMessage.getSender() != null && !protobufMessage.getSender().isEmpty() ? actorRefDeserializer.deserialize(protobufMessage.getSender()) : null;
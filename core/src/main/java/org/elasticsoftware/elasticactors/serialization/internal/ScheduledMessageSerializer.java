@@ -17,11 +17,14 @@
 package org.elasticsoftware.elasticactors.serialization.internal;
 
 import com.google.protobuf.ByteString;
+import org.elasticsoftware.elasticactors.cluster.scheduler.RecurringScheduledMessage;
 import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessage;
 import org.elasticsoftware.elasticactors.messaging.UUIDTools;
+import org.elasticsoftware.elasticactors.scheduler.MissedTickPolicy;
 import org.elasticsoftware.elasticactors.serialization.Serializer;
 import org.elasticsoftware.elasticactors.serialization.protobuf.Elasticactors;
 
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -29,6 +32,15 @@ import java.util.concurrent.TimeUnit;
  */
 public final class ScheduledMessageSerializer implements Serializer<ScheduledMessage,byte[]> {
     private static final ScheduledMessageSerializer INSTANCE = new ScheduledMessageSerializer();
+    /**
+     * A {@link RecurringScheduledMessage} is written as a header followed by the protobuf ScheduledMessage. A
+     * protobuf message never starts with a 0 byte (field number 0 is invalid), so the formats can't be confused.
+     * The header is: marker (1 byte), version (1 byte), fixedRate (1 byte), missedTickPolicy (1 byte), period in
+     * millis (8 bytes) and the next fire time in millis (8 bytes)
+     */
+    static final byte RECURRING_MARKER = 0;
+    static final byte RECURRING_VERSION = 1;
+    static final int RECURRING_HEADER_SIZE = 20;
 
     public static ScheduledMessageSerializer get() {
         return INSTANCE;
@@ -36,6 +48,23 @@ public final class ScheduledMessageSerializer implements Serializer<ScheduledMes
 
     @Override
     public byte[] serialize(ScheduledMessage scheduledMessage) {
+        if(scheduledMessage instanceof RecurringScheduledMessage) {
+            RecurringScheduledMessage recurringMessage = (RecurringScheduledMessage) scheduledMessage;
+            byte[] messageBytes = serializeMessage(scheduledMessage);
+            ByteBuffer buffer = ByteBuffer.allocate(RECURRING_HEADER_SIZE + messageBytes.length);
+            buffer.put(RECURRING_MARKER);
+            buffer.put(RECURRING_VERSION);
+            buffer.put((byte) (recurringMessage.isFixedRate() ? 1 : 0));
+            buffer.put(recurringMessage.getMissedTickPolicy() == MissedTickPolicy.CATCH_UP ? (byte) 1 : (byte) 0);
+            buffer.putLong(recurringMessage.getPeriod(TimeUnit.MILLISECONDS));
+            buffer.putLong(recurringMessage.getNextFireTime(TimeUnit.MILLISECONDS));
+            buffer.put(messageBytes);
+            return buffer.array();
+        }
+        return serializeMessage(scheduledMessage);
+    }
+
+    private byte[] serializeMessage(ScheduledMessage scheduledMessage) {
         Elasticactors.ScheduledMessage.Builder builder = Elasticactors.ScheduledMessage.newBuilder();
         builder.setId(ByteString.copyFrom(UUIDTools.toByteArray(scheduledMessage.getId())));
         builder.setFireTime(scheduledMessage.getFireTime(TimeUnit.MILLISECONDS));
@@ -45,6 +74,4 @@ public final class ScheduledMessageSerializer implements Serializer<ScheduledMes
         builder.setMessage(ByteString.copyFrom(scheduledMessage.getMessageBytes()));
         return builder.build().toByteArray();
     }
-
-
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.state;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Computes and applies compact binary diffs. A delta consists of COPY instructions, that refer to a range of the
+ * base, and INSERT instructions with literal bytes for the parts of the target that don't occur in the base. Matches
+ * are found by indexing the base in blocks of {@link #BLOCK_SIZE} bytes and looking up a rolling hash of the target,
+ * so a small change in a large document results in a delta of a few dozen bytes. The delta starts with the checksum
+ * of the base it was computed against, so applying it to a different base is detected.
+ *
+ * <pre>
+ * | base crc32 (int) | target length (varint) | instructions |
+ * COPY:   | 0x01 | offset (varint) | length (varint) |
+ * INSERT: | 0x02 | length (varint) | bytes |
+ * </pre>
+ */
+public final class BinaryDelta {
+    static final int BLOCK_SIZE = 16;
+    private static final byte COPY = 0x01;
+    private static final byte INSERT = 0x02;
+    private static final int PRIME = 31;
+    // PRIME ^ (BLOCK_SIZE - 1), used to roll the first byte out of the hash
+    private static final int OUT_FACTOR;
+
+    static {
+        int factor = 1;
+        for (int i = 0; i < BLOCK_SIZE - 1; i++) {
+            factor *= PRIME;
+        }
+        OUT_FACTOR = factor;
+    }
+
+    private BinaryDelta() {}
+
+    public static byte[] diff(byte[] base, byte[] target) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(64);
+        writeInt(output, checksum(base));
+        writeVarInt(output, target.length);
+        if (base.length < BLOCK_SIZE || target.length < BLOCK_SIZE) {
+            writeInsert(output, target, 0, target.length);
+            return output.toByteArray();
+        }
+        // index the base, the table holds (offset + 1) of the last block with a given hash
+        final int[] table = new int[Integer.highestOneBit(base.length / BLOCK_SIZE) * 4];
+        final int mask = table.length - 1;
+        for (int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE) {
+            table[hash(base, offset) & mask] = offset + 1;
+        }
+        int pending = 0;
+        int position = 0;
+        int hash = hash(target, 0);
+        while (true) {
+            final int candidate = table[hash & mask] - 1;
+            if (candidate >= 0 && matches(base, candidate, target, position)) {
+                // extend the match backwards into the pending literals and forwards as far as it goes
+                int baseStart = candidate;
+                int targetStart = position;
+                while (baseStart > 0 && targetStart > pending && base[baseStart - 1] == target[targetStart - 1]) {
+                    baseStart--;
+                    targetStart--;
+                }
+                int baseEnd = candidate + BLOCK_SIZE;
+                int targetEnd = position + BLOCK_SIZE;
+                while (baseEnd < base.length && targetEnd < target.length && base[baseEnd] == target[targetEnd]) {
+                    baseEnd++;
+                    targetEnd++;
+                }
+                writeInsert(output, target, pending, targetStart - pending);
+                output.write(COPY);
+                writeVarInt(output, baseStart);
+                writeVarInt(output, baseEnd - baseStart);
+                pending = position = targetEnd;
+                if (position + BLOCK_SIZE > target.length) {
+                    break;
+                }
+                hash = hash(target, position);
+            } else {
+                if (position + BLOCK_SIZE >= target.length) {
+                    break;
+                }
+                hash = (hash - target[position] * OUT_FACTOR) * PRIME + target[position + BLOCK_SIZE];
+                position++;
+            }
+        }
+        writeInsert(output, target, pending, target.length - pending);
+        return output.toByteArray();
+    }
+
+    /**
+     * @return the target, or null when the delta was not computed against the given base
+     */
+    @Nullable
+    public static byte[] apply(byte[] base, byte[] delta) {
+        final int[] position = {4};
+        if (readInt(delta, 0) != checksum(base)) {
+            return null;
+        }
+        final byte[] target = new byte[readVarInt(delta, position)];
+        int targetPosition = 0;
+        while (position[0] < delta.length) {
+            final byte instruction = delta[position[0]++];
+            if (instruction == COPY) {
+                final int offset = readVarInt(delta, position);
+                final int length = readVarInt(delta, position);
+                System.arraycopy(base, offset, target, targetPosition, length);
+                targetPosition += length;
+            } else if (instruction == INSERT) {
+                final int length = readVarInt(delta, position);
+                System.arraycopy(delta, position[0], target, targetPosition, length);
+                position[0] += length;
+                targetPosition += length;
+            } else {
+                throw new IllegalArgumentException("Invalid delta instruction " + instruction);
+            }
+        }
+        if (targetPosition != target.length) {
+            throw new IllegalArgumentException("Delta produced " + targetPosition + " bytes, expected " + target.length);
+        }
+        return target;
+    }
+
+    private static int hash(byte[] bytes, int offset) {
+        int hash = 0;
+        for (int i = offset; i < offset + BLOCK_SIZE; i++) {
+            hash = hash * PRIME + bytes[i];
+        }
+        return hash;
+    }
+
+    private static boolean matches(byte[] base, int baseOffset, byte[] target, int targetOffset) {
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            if (base[baseOffset + i] != target[targetOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeInsert(ByteArrayOutputStream output, byte[] bytes, int offset, int length) {
+        if (length > 0) {
+            output.write(INSERT);
+            writeVarInt(output, length);
+            output.write(bytes, offset, length);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream output, int value) {
+        output.write(value >>> 24);
+        output.write(value >>> 16);
+        output.write(value >>> 8);
+        output.write(value);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -19,6 +19,8 @@ package org.elasticsoftware.elasticactors.state;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.MpscBlockingQueue;
+import org.elasticsoftware.elasticactors.util.concurrent.OverflowPolicy;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutorImpl;
@@ -42,8 +44,14 @@ public final class DefaultActorStateUpdateProcessor implements ActorStateUpdateP
     private final Consumer<List<ActorStateUpdateEvent>> processingFunction;
 
     public DefaultActorStateUpdateProcessor(Collection<ActorStateUpdateListener> listeners, int workerCount, int maxBatchSize) {
+        this(listeners, workerCount, maxBatchSize, false);
+    }
+
+    public DefaultActorStateUpdateProcessor(Collection<ActorStateUpdateListener> listeners, int workerCount, int maxBatchSize, boolean useMpscQueue) {
         this.listeners.addAll(listeners);
-        this.executor = new ThreadBoundExecutorImpl(this, maxBatchSize, new DaemonThreadFactory("ACTORSTATE-UPDATE-WORKER"), workerCount);
+        this.executor = useMpscQueue
+                ? new ThreadBoundExecutorImpl(this, maxBatchSize, new DaemonThreadFactory("ACTORSTATE-UPDATE-WORKER"), workerCount, 0, OverflowPolicy.BLOCK, MpscBlockingQueue::new)
+                : new ThreadBoundExecutorImpl(this, maxBatchSize, new DaemonThreadFactory("ACTORSTATE-UPDATE-WORKER"), workerCount);
         // optimize in the case of one listener, copy otherwise to avoid possible concurrency issues on the serializedState ByteBuffer
         this.processingFunction = (listeners.size() == 1) ? this::processWithoutCopy : this::processWithCopy;
     }
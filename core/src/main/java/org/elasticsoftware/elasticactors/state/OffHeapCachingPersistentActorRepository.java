@@ -0,0 +1,267 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.state;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.cache.OffHeapCache;
+import org.elasticsoftware.elasticactors.messaging.InternalMessage;
+import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
+import org.elasticsoftware.elasticactors.serialization.Deserializer;
+import org.elasticsoftware.elasticactors.serialization.Serializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+
+/**
+ * {@link PersistentActorRepository} that keeps the serialized form of the {@link PersistentActor}s it has
+ * seen in an {@link OffHeapCache}, in front of the delegate repository. This is a second level cache behind the
+ * on-heap actor cache: actors that were passivated (evicted) can be activated again without a round trip to the
+ * backing store.
+ *
+ * The cache is filled when actors are loaded from and written to the delegate. It is invalidated when an actor
+ * is deleted and when a shard is released. Tasks of a released shard can still be running (or queued), the cache
+ * is not filled for the shard until it is acquired again.
+ */
+public final class OffHeapCachingPersistentActorRepository implements PersistentActorRepository {
+    private static final Logger logger = LogManager.getLogger(OffHeapCachingPersistentActorRepository.class);
+    private final PersistentActorRepository delegate;
+    private final OffHeapCache<ShardKey,String> cache;
+    private final Serializer<PersistentActor<ShardKey>,byte[]> serializer;
+    private final Deserializer<byte[],PersistentActor<ShardKey>> deserializer;
+    // incremented on release and acquire: the shard is released when odd, a store only happens for the epoch in
+    // which the update or load was started
+    private final ConcurrentMap<ShardKey,Integer> epochs = new ConcurrentHashMap<>();
+
+    public OffHeapCachingPersistentActorRepository(PersistentActorRepository delegate,
+                                                   Serializer<PersistentActor<ShardKey>,byte[]> serializer,
+                                                   Deserializer<byte[],PersistentActor<ShardKey>> deserializer,
+                                                   long maximumSizeInBytes) {
+        this.delegate = delegate;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+        this.cache = new OffHeapCache<>(maximumSizeInBytes);
+    }
+
+    @Override
+    public boolean contains(ShardKey shard, String actorId) {
+        return cache.contains(shard, actorId) || delegate.contains(shard, actorId);
+    }
+
+    @Override
+    public void update(ShardKey shard, PersistentActor persistentActor) throws IOException {
+        final int epoch = epoch(shard);
+        delegate.update(shard, persistentActor);
+        store(shard, persistentActor, epoch);
+    }
+
+    @Override
+    public void updateAsync(ShardKey shard, PersistentActor persistentActor, InternalMessage message, MessageHandlerEventListener messageHandlerEventListener) throws IOException {
+        final String actorId = persistentActor.getSelf().getActorId();
+        if(messageHandlerEventListener == null) {
+            // we won't know if the write fails, so don't serve this version from the cache
+            cache.invalidate(shard, actorId);
+            delegate.updateAsync(shard, persistentActor, message, null);
+            return;
+        }
+        // store first, the serialized state of the actor is released after this call returns. when the write fails
+        // the entry is invalidated again so we never serve state that was not persisted
+        store(shard, persistentActor, epoch(shard));
+        try {
+            delegate.updateAsync(shard, persistentActor, message,
+                    new InvalidatingEventListener(shard, actorId, messageHandlerEventListener));
+        } catch (IOException | RuntimeException e) {
+            cache.invalidate(shard, actorId);
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(ShardKey shard, String actorId) {
+        cache.invalidate(shard, actorId);
+        delegate.delete(shard, actorId);
+    }
+
+    @Override
+    public PersistentActor<ShardKey> get(ShardKey shard, String actorId) throws IOException {
+        byte[] serializedActor = cache.get(shard, actorId);
+        if(serializedActor != null) {
+            return deserializer.deserialize(serializedActor);
+        }
+        final int epoch = epoch(shard);
+        PersistentActor<ShardKey> persistentActor = delegate.get(shard, actorId);
+        if(persistentActor != null) {
+            store(shard, persistentActor, epoch);
+        }
+        return persistentActor;
+    }
+
+    @Override
+    public CompletableFuture<PersistentActor<ShardKey>> getAsync(ShardKey shard, String actorId) {
+        byte[] serializedActor = cache.get(shard, actorId);
+        if(serializedActor != null) {
+            CompletableFuture<PersistentActor<ShardKey>> future = new CompletableFuture<>();
+            try {
+                future.complete(deserializer.deserialize(serializedActor));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+        final int epoch = epoch(shard);
+        return delegate.getAsync(shard, actorId).thenApply(persistentActor -> {
+            if(persistentActor != null) {
+                store(shard, persistentActor, epoch);
+            }
+            return persistentActor;
+        });
+    }
+
+    @Override
+    public Map<String, PersistentActor<ShardKey>> getAll(ShardKey shard, Collection<String> actorIds) throws IOException {
+        Map<String, PersistentActor<ShardKey>> result = new HashMap<>();
+        List<String> misses = getAllCached(shard, actorIds, result);
+        if(!misses.isEmpty()) {
+            final int epoch = epoch(shard);
+            Map<String, PersistentActor<ShardKey>> loaded = delegate.getAll(shard, misses);
+            loaded.values().forEach(persistentActor -> store(shard, persistentActor, epoch));
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, PersistentActor<ShardKey>>> getAllAsync(ShardKey shard, Collection<String> actorIds) {
+        Map<String, PersistentActor<ShardKey>> result = new HashMap<>();
+        final List<String> misses;
+        try {
+            misses = getAllCached(shard, actorIds, result);
+        } catch (IOException e) {
+            CompletableFuture<Map<String, PersistentActor<ShardKey>>> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        if(misses.isEmpty()) {
+            return CompletableFuture.completedFuture(result);
+        }
+        final int epoch = epoch(shard);
+        return delegate.getAllAsync(shard, misses).thenApply(loaded -> {
+            loaded.values().forEach(persistentActor -> store(shard, persistentActor, epoch));
+            result.putAll(loaded);
+            return result;
+        });
+    }
+
+    /**
+     * Adds the cached actors to the result and returns the ids of the actors that were not in the cache
+     */
+    private List<String> getAllCached(ShardKey shard, Collection<String> actorIds, Map<String, PersistentActor<ShardKey>> result) throws IOException {
+        List<String> misses = new ArrayList<>();
+        for (String actorId : actorIds) {
+            byte[] serializedActor = cache.get(shard, actorId);
+            if(serializedActor != null) {
+                result.put(actorId, deserializer.deserialize(serializedActor));
+            } else {
+                misses.add(actorId);
+            }
+        }
+        return misses;
+    }
+
+    @Override
+    public void forEachActorId(ShardKey shard, Consumer<String> consumer) {
+        delegate.forEachActorId(shard, consumer);
+    }
+
+    @Override
+    public void acquire(ShardKey shard) {
+        epochs.compute(shard, (key, epoch) -> epoch != null && isReleased(epoch) ? epoch + 1 : epoch);
+        delegate.acquire(shard);
+    }
+
+    @Override
+    public void release(ShardKey shard) {
+        epochs.compute(shard, (key, epoch) -> epoch == null ? 1 : isReleased(epoch) ? epoch : epoch + 1);
+        cache.invalidateAll(shard);
+        delegate.release(shard);
+    }
+
+    public OffHeapCache<ShardKey, String> getCache() {
+        return cache;
+    }
+
+    private final class InvalidatingEventListener implements MessageHandlerEventListener {
+        private final ShardKey shard;
+        private final String actorId;
+        private final MessageHandlerEventListener delegate;
+
+        private InvalidatingEventListener(ShardKey shard, String actorId, MessageHandlerEventListener delegate) {
+            this.shard = shard;
+            this.actorId = actorId;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onError(InternalMessage message, Throwable exception) {
+            cache.invalidate(shard, actorId);
+            delegate.onError(message, exception);
+        }
+
+        @Override
+        public void onDone(InternalMessage message) {
+            delegate.onDone(message);
+        }
+    }
+
+    private int epoch(ShardKey shard) {
+        return epochs.getOrDefault(shard, 0);
+    }
+
+    private static boolean isReleased(int epoch) {
+        return (epoch & 1) == 1;
+    }
+
+    private void store(ShardKey shard, PersistentActor<ShardKey> persistentActor, int epoch) {
+        String actorId = persistentActor.getSelf().getActorId();
+        if(isReleased(epoch) || epoch(shard) != epoch) {
+            // the shard was released after the update or load started, it might be managed by another node now
+            return;
+        }
+        try {
+            cache.put(shard, actorId, serializer.serialize(persistentActor));
+            if(epoch(shard) != epoch) {
+                // released while storing
+                cache.invalidate(shard, actorId);
+            }
+        } catch (Exception e) {
+            // make sure we don't serve a stale version
+            cache.invalidate(shard, actorId);
+            logger.warn(format("Exception while caching the serialized state of actor [%s]", actorId), e);
+        }
+    }
+}
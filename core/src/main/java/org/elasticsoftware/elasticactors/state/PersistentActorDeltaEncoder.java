@@ -0,0 +1,140 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.state;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.cache.OffHeapCache;
+import org.elasticsoftware.elasticactors.serialization.Deserializer;
+import org.elasticsoftware.elasticactors.serialization.Serializer;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * Delta encoding of the serialized {@link PersistentActor} for repositories that can store two values per actor: a
+ * full snapshot and a delta. Instead of rewriting the complete state on every update only a {@link BinaryDelta}
+ * against the last snapshot is written. The delta is cumulative (it replaces the previous one) so a read never
+ * needs more than the snapshot and one delta.
+ *
+ * A new snapshot is written when the actor has been updated {@code maximumDeltas} times since the last snapshot, when
+ * the delta grows beyond {@code maximumDeltaRatio} times the size of the state, or when the last snapshot is not
+ * known (the snapshots are kept in an {@link OffHeapCache}). Repositories must clear the delta whenever they write a
+ * snapshot, in the same (atomic) operation.
+ */
+public final class PersistentActorDeltaEncoder {
+    private static final Logger logger = LogManager.getLogger(PersistentActorDeltaEncoder.class);
+    private final Serializer<PersistentActor<ShardKey>,byte[]> serializer;
+    private final Deserializer<byte[],PersistentActor<ShardKey>> deserializer;
+    private final int maximumDeltas;
+    private final double maximumDeltaRatio;
+    // the cached value is the number of deltas written since the snapshot (int) followed by the snapshot
+    private final OffHeapCache<ShardKey,String> snapshots;
+
+    public PersistentActorDeltaEncoder(Serializer<PersistentActor<ShardKey>, byte[]> serializer,
+                                       Deserializer<byte[], PersistentActor<ShardKey>> deserializer,
+                                       int maximumDeltas,
+                                       double maximumDeltaRatio,
+                                       long snapshotCacheSizeInBytes) {
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+        this.maximumDeltas = maximumDeltas;
+        this.maximumDeltaRatio = maximumDeltaRatio;
+        this.snapshots = new OffHeapCache<>(snapshotCacheSizeInBytes);
+    }
+
+    /**
+     * Serializes the actor and determines whether to write a snapshot or a delta. Calls for the same actor need to
+     * be made in the order the updates are written (i.e. from the thread of the actor)
+     */
+    public Update encode(ShardKey shard, PersistentActor<ShardKey> persistentActor) throws IOException {
+        final String actorId = persistentActor.getSelf().getActorId();
+        final byte[] serializedActor = serializer.serialize(persistentActor);
+        final byte[] cached = snapshots.get(shard, actorId);
+        if (cached != null) {
+            final int deltas = ByteBuffer.wrap(cached).getInt();
+            if (deltas < maximumDeltas) {
+                final byte[] snapshot = Arrays.copyOfRange(cached, 4, cached.length);
+                final byte[] delta = BinaryDelta.diff(snapshot, serializedActor);
+                if (delta.length <= serializedActor.length * maximumDeltaRatio) {
+                    cache(shard, actorId, deltas + 1, snapshot);
+                    return new Update(false, delta);
+                }
+            }
+        }
+        cache(shard, actorId, 0, serializedActor);
+        return new Update(true, serializedActor);
+    }
+
+    /**
+     * Reconstructs the actor from the snapshot and (optional) delta that were read from the repository
+     */
+    public PersistentActor<ShardKey> decode(ShardKey shard, String actorId, byte[] snapshot, @Nullable byte[] delta) throws IOException {
+        if (delta == null || delta.length == 0) {
+            cache(shard, actorId, 0, snapshot);
+            return deserializer.deserialize(snapshot);
+        }
+        final byte[] serializedActor = BinaryDelta.apply(snapshot, delta);
+        if (serializedActor == null) {
+            // the snapshot was written but the delta failed, or the other way around
+            logger.warn(format("Delta for actor [%s] on shard [%s] does not belong to the stored snapshot, ignoring it", actorId, shard));
+            snapshots.invalidate(shard, actorId);
+            return deserializer.deserialize(snapshot);
+        }
+        // the number of deltas since the snapshot is not known, next update will write a delta that counts as the last
+        cache(shard, actorId, Math.max(0, maximumDeltas - 1), snapshot);
+        return deserializer.deserialize(serializedActor);
+    }
+
+    public void invalidate(ShardKey shard, String actorId) {
+        snapshots.invalidate(shard, actorId);
+    }
+
+    public void release(ShardKey shard) {
+        snapshots.invalidateAll(shard);
+    }
+
+    private void cache(ShardKey shard, String actorId, int deltas, byte[] snapshot) {
+        snapshots.put(shard, actorId, ByteBuffer.allocate(snapshot.length + 4).putInt(deltas).put(snapshot).array());
+    }
+
+    public static final class Update {
+        private final boolean snapshot;
+        private final byte[] bytes;
+
+        private Update(boolean snapshot, byte[] bytes) {
+            this.snapshot = snapshot;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return true when the bytes are a full snapshot, in which case the stored delta must be cleared
+         */
+        public boolean isSnapshot() {
+            return snapshot;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+}
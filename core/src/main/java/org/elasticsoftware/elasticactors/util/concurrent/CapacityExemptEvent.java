@@ -0,0 +1,26 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.elasticsoftware.elasticactors.util.concurrent;
+
+/**
+ * Marker interface for {@link ThreadBoundEvent}s that will always be queued, regardless of the capacity of the
+ * {@link ThreadBoundExecutor}. Use this for housekeeping events (acks, receive loops, shutdown) that should never
+ * be blocked or rejected, and for events that are already flow controlled by other means.
+ */
+public interface CapacityExemptEvent {
+}
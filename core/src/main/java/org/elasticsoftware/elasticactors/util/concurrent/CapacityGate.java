@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+
+/**
+ * Lets producers wait for a bounded queue to drain below its capacity (the {@link OverflowPolicy#BLOCK} policy)
+ * without spinning. The consumer calls {@link #signal()} after it has taken events from the queue, this is a single
+ * volatile read when no producer is waiting.
+ */
+public final class CapacityGate {
+    // upper bound on a single wait, the size and the cancelled condition are re-checked after it
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition belowCapacity = lock.newCondition();
+    private final AtomicInteger waiters = new AtomicInteger(0);
+
+    /**
+     * Wait until {@code size} drops below {@code capacity} or until {@code cancelled} becomes true. An interrupt
+     * ends the wait as well (the interrupted status is preserved).
+     */
+    public void await(IntSupplier size, int capacity, BooleanSupplier cancelled) {
+        lock.lock();
+        // register before checking the size, the consumer updates the size before checking for waiters
+        waiters.incrementAndGet();
+        try {
+            while (size.getAsInt() >= capacity && !cancelled.getAsBoolean()) {
+                belowCapacity.awaitNanos(MAX_WAIT_NANOS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wake up the waiting producers, if any
+     */
+    public void signal() {
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                belowCapacity.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock free multi-producer/single-consumer {@link BlockingQueue}. Elements are stored in fixed size array segments,
+ * a producer claims a slot with a single atomic increment so there is no lock and no node allocation per element
+ * (only one segment per segmentSize elements). The queue is unbounded, capacity limits are enforced by the
+ * {@link ThreadBoundExecutor}, so producers never block.
+ *
+ * <p/>
+ * The consumer waits by spinning, then yielding and finally parking. Producers only unpark the consumer when it is
+ * actually parked.
+ *
+ * <p/>
+ * Only one thread is allowed to consume ({@link #poll()}, {@link #peek()}, {@link #take()} and the drainTo methods).
+ * {@link #size()} is an estimate when producers are active. The {@link #iterator()} is weakly consistent and can be
+ * used from any thread, removing elements other than the head (i.e. {@link #remove(Object)}) is not supported.
+ */
+public final class MpscBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private static final int DEFAULT_SEGMENT_SIZE = 1024;
+    private static final int SPINS = 100;
+    private static final int YIELDS = 10;
+    private static final AtomicLongFieldUpdater<MpscBlockingQueue> CONSUMED =
+            AtomicLongFieldUpdater.newUpdater(MpscBlockingQueue.class, "consumed");
+    private final int segmentSize;
+    private final AtomicReference<Segment<E>> tail;
+    // consumer side state, only written by the consumer thread (head is read by iterators)
+    private volatile Segment<E> head;
+    private int headIndex = 0;
+    // only written by the consumer, used to calculate the size
+    private volatile long consumed = 0L;
+    // set when the consumer is (about to get) parked
+    private volatile Thread waiter;
+
+    public MpscBlockingQueue() {
+        this(DEFAULT_SEGMENT_SIZE);
+    }
+
+    public MpscBlockingQueue(int segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("segmentSize must be positive");
+        }
+        this.segmentSize = segmentSize;
+        this.head = new Segment<>(0L, segmentSize);
+        this.tail = new AtomicReference<>(head);
+    }
+
+    @Override
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        while (true) {
+            Segment<E> segment = tail.get();
+            int index = segment.enqueueIndex.getAndIncrement();
+            if (index < segmentSize) {
+                // volatile write, needs to happen before we check for a parked consumer
+                segment.slots.set(index, e);
+                Thread parked = waiter;
+                if (parked != null) {
+                    LockSupport.unpark(parked);
+                }
+                return true;
+            }
+            // segment is full, link (or help linking) the next one
+            Segment<E> next = segment.next.get();
+            if (next == null) {
+                Segment<E> newSegment = new Segment<>(segment.base + segmentSize, segmentSize);
+                next = segment.next.compareAndSet(null, newSegment) ? newSegment : segment.next.get();
+            }
+            tail.compareAndSet(segment, next);
+        }
+    }
+
+    @Override
+    public E poll() {
+        E e = peek();
+        if (e != null) {
+            head.slots.lazySet(headIndex++, null);
+            CONSUMED.lazySet(this, consumed + 1);
+        }
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        if (headIndex == segmentSize) {
+            Segment<E> next = head.next.get();
+            if (next == null) {
+                return null;
+            }
+            head = next;
+            headIndex = 0;
+        }
+        E e = head.slots.get(headIndex);
+        if (e == null && head.enqueueIndex.get() > headIndex) {
+            // the slot is claimed but the producer has not stored the element yet, this is very short
+            while ((e = head.slots.get(headIndex)) == null) {
+                Thread.yield();
+            }
+        }
+        return e;
+    }
+
+    @Override
+    public void put(E e) {
+        offer(e);
+    }
+
+    /**
+     * The queue is unbounded so this never waits, the timeout is not used
+     */
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) {
+        return offer(e);
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e;
+        int idleCount = 0;
+        while ((e = poll()) == null) {
+            idleCount = idle(idleCount, Long.MAX_VALUE);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E e;
+        int idleCount = 0;
+        while ((e = poll()) == null) {
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            idleCount = idle(idleCount, deadline);
+        }
+        return e;
+    }
+
+    private int idle(int idleCount, long deadline) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (idleCount < SPINS) {
+            return idleCount + 1;
+        } else if (idleCount < SPINS + YIELDS) {
+            Thread.yield();
+            return idleCount + 1;
+        } else {
+            waiter = Thread.currentThread();
+            // check again after announcing ourselves, otherwise we could miss the unpark
+            if (peek() == null) {
+                if (deadline == Long.MAX_VALUE) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, deadline - System.nanoTime());
+                }
+            }
+            waiter = null;
+            return idleCount;
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        int drained = 0;
+        E e;
+        while (drained < maxElements && (e = poll()) != null) {
+            c.add(e);
+            drained++;
+        }
+        return drained;
+    }
+
+    @Override
+    public int size() {
+        Segment<E> segment = tail.get();
+        long produced = segment.base + Math.min(segment.enqueueIndex.get(), segmentSize);
+        long size = produced - consumed;
+        return size <= 0 ? 0 : (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * A weakly consistent iterator: it can be used concurrently with the producers and the consumer, and may or may
+     * not reflect the elements that were added or consumed after it was created. {@link Iterator#remove()} is not
+     * supported.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    /**
+     * Not supported, only the consumer can remove (the head) from this queue
+     */
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException("MpscBlockingQueue only supports removing the head");
+    }
+
+    private final class Itr implements Iterator<E> {
+        private Segment<E> segment;
+        private int index;
+        private E next;
+
+        private Itr() {
+            // start at the first element that was not consumed yet (the consumer could be ahead of us by now)
+            this.segment = head;
+            this.index = (int) Math.max(0L, Math.min(consumed - segment.base, segmentSize));
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (segment != null) {
+                int produced = Math.min(segment.enqueueIndex.get(), segmentSize);
+                while (index < produced) {
+                    // null when it was consumed already, or claimed but not stored yet
+                    E e = segment.slots.get(index++);
+                    if (e != null) {
+                        next = e;
+                        return;
+                    }
+                }
+                if (produced < segmentSize) {
+                    return;
+                }
+                segment = segment.next.get();
+                index = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public E next() {
+            E e = next;
+            if (e == null) {
+                throw new NoSuchElementException();
+            }
+            advance();
+            return e;
+        }
+    }
+
+    private static final class Segment<E> {
+        private final long base;
+        private final AtomicReferenceArray<E> slots;
+        // can (temporarily) exceed the segment size when producers race for the last slots
+        private final AtomicInteger enqueueIndex = new AtomicInteger(0);
+        private final AtomicReference<Segment<E>> next = new AtomicReference<>();
+
+        private Segment(long base, int size) {
+            this.base = base;
+            this.slots = new AtomicReferenceArray<>(size);
+        }
+    }
+}
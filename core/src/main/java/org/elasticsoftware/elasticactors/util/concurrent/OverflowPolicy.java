@@ -0,0 +1,39 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.elasticsoftware.elasticactors.util.concurrent;
+
+/**
+ * Determines what a bounded {@link ThreadBoundExecutor} does with an event when the queue it is bound to
+ * has reached its capacity. Events that implement {@link CapacityExemptEvent} are never subject to this policy.
+ */
+public enum OverflowPolicy {
+    /**
+     * Block the producing thread until the queue has drained below its capacity. Be careful when using this on
+     * both the actor and queue executors as the worker threads of one can end up waiting on the other.
+     */
+    BLOCK,
+    /**
+     * Throw a (recoverable) {@link QueueOverflowException} to the producer
+     */
+    REJECT,
+    /**
+     * Hand the event off via {@link SpillableEvent#spill()} (i.e. to the message broker), events that cannot be
+     * spilled will be handled as with {@link #BLOCK}
+     */
+    SPILL
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent;
+
+/**
+ * A {@link ThreadBoundEvent} that can be put in the priority lane of the {@link ThreadBoundExecutor}. Priority events
+ * are executed before the normal events that are pending for the same worker (or key), events within each lane
+ * keep their order. Priority events are never subject to the queue capacity.
+ *
+ * <p/>
+ * The disruptor based executor does not have a priority lane and treats these as normal events.
+ */
+public interface PrioritizedEvent {
+    boolean isPriority();
+}
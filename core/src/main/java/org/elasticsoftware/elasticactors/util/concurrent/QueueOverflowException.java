@@ -0,0 +1,30 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent;
+
+import org.elasticsoftware.elasticactors.MessageDeliveryException;
+
+/**
+ * Thrown (to the producer) by a bounded {@link ThreadBoundExecutor} when the queue an event is bound to is at
+ * capacity and the {@link OverflowPolicy#REJECT} policy is in effect. It is always recoverable: the event was not
+ * queued and can be offered again later.
+ */
+public final class QueueOverflowException extends MessageDeliveryException {
+    public QueueOverflowException(String message) {
+        super(message, true);
+    }
+}
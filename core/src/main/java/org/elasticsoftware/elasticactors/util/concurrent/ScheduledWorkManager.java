@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent;
+
+import java.util.concurrent.Delayed;
+
+/**
+ * Holds units of work per shard until their delay has expired and then passes them to a {@link WorkExecutor} created
+ * by the {@link WorkExecutorFactory}. Units of work are identified by their {@link Object#equals(Object)}, which is
+ * what {@link #unschedule(Object, Delayed)} uses to find them.
+ *
+ * @param <K>   Key for a shard
+ * @param <T>   The Scheduled Object that will be passed to {@link WorkExecutor#execute(Object, Object)} after the delay has expired
+ */
+public interface ScheduledWorkManager<K,T extends Delayed> {
+    void init();
+
+    void destroy();
+
+    void registerShard(K shard);
+
+    void unregisterShard(K shard);
+
+    void schedule(K shard, T... unitsOfWork);
+
+    void unschedule(K shard, T unitOfWork);
+
+    int getSize();
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.elasticsoftware.elasticactors.util.concurrent;
+
+/**
+ * A {@link ThreadBoundEvent} that can be handed off to another (durable) medium when the queue it is bound to
+ * is at capacity and the {@link OverflowPolicy#SPILL} policy is in effect.
+ *
+ * @param <T>   the type of the key
+ */
+public interface SpillableEvent<T> extends ThreadBoundEvent<T> {
+    /**
+     * Hand off this event instead of queueing it.
+     *
+     * @return  true if the event was spilled, false if it needs to be queued after all
+     */
+    boolean spill();
+}
@@ -33,4 +33,18 @@ public interface ThreadBoundExecutor<T extends ThreadBoundEvent<?>> {
     void shutdown();
 
     int getThreadCount();
+
+    /**
+     * Returns the number of events that are waiting to be processed on the queue the given key is bound to. This
+     * can be used by consumers of external queues to stop pulling work until the executor has caught up.
+     *
+     * @param key   the key to look up the queue for
+     * @return      the number of pending events on the queue for the key
+     */
+    int getQueueDepth(Object key);
+
+    /**
+     * @return  the maximum number of events per queue or {@link Integer#MAX_VALUE} when the queues are unbounded
+     */
+    int getQueueCapacity();
 }
@@ -22,8 +22,10 @@ import org.apache.logging.log4j.Logger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Queue;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import static java.lang.String.format;
 
@@ -35,6 +37,11 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
     private final ThreadFactory threadFactory;
     private final AtomicBoolean shuttingDown = new AtomicBoolean(false);
     private final List<BlockingQueue<ThreadBoundEvent>> queues = new ArrayList<>();
+    private final List<Queue<ThreadBoundEvent>> priorityQueues = new ArrayList<>();
+    private final List<CapacityGate> capacityGates = new ArrayList<>();
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final String queueType;
 
     /**
      * Create an executor with numberOfThreads worker threads.
@@ -45,13 +52,49 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
         this(new ThreadBoundRunnableEventProcessor(),1,threadFactory,numberOfThreads);
     }
 
+    public ThreadBoundExecutorImpl(ThreadFactory threadFactory, int numberOfThreads, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this(new ThreadBoundRunnableEventProcessor(),1,threadFactory,numberOfThreads,queueCapacity,overflowPolicy);
+    }
+
     public ThreadBoundExecutorImpl(ThreadBoundEventProcessor eventProcessor, int maxBatchSize, ThreadFactory threadFactory, int numberOfThreads) {
+        this(eventProcessor,maxBatchSize,threadFactory,numberOfThreads,0,OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Create an executor with bounded queues. The capacity is enforced on {@link #execute(ThreadBoundEvent)} and
+     * can be exceeded by (at most) the number of concurrent producers. {@link CapacityExemptEvent}s are always
+     * queued.
+     *
+     * @param queueCapacity     the maximum number of pending events per worker, 0 or less means unbounded
+     * @param overflowPolicy    what to do with an event when the queue is at capacity
+     */
+    public ThreadBoundExecutorImpl(ThreadBoundEventProcessor eventProcessor, int maxBatchSize, ThreadFactory threadFactory,
+                                   int numberOfThreads, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this(eventProcessor,maxBatchSize,threadFactory,numberOfThreads,queueCapacity,overflowPolicy,LinkedBlockingQueue::new);
+    }
+
+    /**
+     * Create an executor with a custom queue implementation, for instance {@link MpscBlockingQueue}. The queue
+     * will only be consumed by its worker thread. Queues should be unbounded, the capacity is enforced by the
+     * executor.
+     *
+     * @param queueFactory      creates the queue for each worker
+     */
+    public ThreadBoundExecutorImpl(ThreadBoundEventProcessor eventProcessor, int maxBatchSize, ThreadFactory threadFactory,
+                                   int numberOfThreads, int queueCapacity, OverflowPolicy overflowPolicy,
+                                   Supplier<BlockingQueue<ThreadBoundEvent>> queueFactory) {
         this.threadFactory = threadFactory;
-        LOG.info(format("Initializing (LinkedBlockingQueue)ThreadBoundExecutor[%s]",threadFactory.toString()));
+        this.queueCapacity = queueCapacity > 0 ? queueCapacity : Integer.MAX_VALUE;
+        this.overflowPolicy = overflowPolicy;
         for (int i = 0; i < numberOfThreads; i++) {
-            BlockingQueue<ThreadBoundEvent> queue = new LinkedBlockingQueue<>();
-            Thread t = threadFactory.newThread(new Consumer(queue,eventProcessor,maxBatchSize));
-            queues.add(queue);
+            queues.add(queueFactory.get());
+            priorityQueues.add(new ConcurrentLinkedQueue<>());
+            capacityGates.add(new CapacityGate());
+        }
+        this.queueType = queues.isEmpty() ? "LinkedBlockingQueue" : queues.get(0).getClass().getSimpleName();
+        LOG.info(format("Initializing (%s)ThreadBoundExecutor[%s]",queueType,threadFactory.toString()));
+        for (int i = 0; i < numberOfThreads; i++) {
+            Thread t = threadFactory.newThread(new Consumer(queues.get(i),priorityQueues.get(i),capacityGates.get(i),eventProcessor,maxBatchSize));
             t.start();
         }
     }
@@ -67,6 +110,29 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
         }
         int bucket = getBucket(event.getKey());
         BlockingQueue<ThreadBoundEvent> queue = queues.get(bucket);
+        if(event instanceof PrioritizedEvent && ((PrioritizedEvent) event).isPriority()) {
+            priorityQueues.get(bucket).add(event);
+            // wakes up the consumer, it will pick up the priority events before taking the next normal event
+            queue.add(PrioritySignal.INSTANCE);
+            return;
+        }
+        // the queue itself is unbounded so we can always add exempt events
+        if(queue.size() >= queueCapacity && !(event instanceof CapacityExemptEvent)) {
+            handleOverflow(event, queue, capacityGates.get(bucket));
+        } else {
+            queue.add(event);
+        }
+    }
+
+    private void handleOverflow(ThreadBoundEvent event, BlockingQueue<ThreadBoundEvent> queue, CapacityGate capacityGate) {
+        if(overflowPolicy == OverflowPolicy.REJECT) {
+            throw new QueueOverflowException(format("Queue for key [%s] on ThreadBoundExecutor[%s] is at capacity (%d)",
+                    event.getKey(), threadFactory.toString(), queueCapacity));
+        } else if(overflowPolicy == OverflowPolicy.SPILL && event instanceof SpillableEvent && ((SpillableEvent) event).spill()) {
+            return;
+        }
+        // wait for the consumer to catch up, we don't want to wait forever when shutting down
+        capacityGate.await(queue::size, queueCapacity, shuttingDown::get);
         queue.add(event);
     }
 
@@ -75,42 +141,58 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
         return queues.size();
     }
 
+    @Override
+    public int getQueueDepth(Object key) {
+        return queues.get(getBucket(key)).size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
     private int getBucket(Object key) {
         return Math.abs(key.hashCode()) % queues.size();
     }
 
     public void shutdown() {
-        LOG.info(format("shutting down the (LinkedBlockingQueue)ThreadBoundExecutor[%s]",threadFactory.toString()));
+        LOG.info(format("shutting down the (%s)ThreadBoundExecutor[%s]",queueType,threadFactory.toString()));
         if (shuttingDown.compareAndSet(false, true)) {
             final CountDownLatch shuttingDownLatch = new CountDownLatch(queues.size());
             for (BlockingQueue<ThreadBoundEvent> queue : queues) {
                 queue.add(new ShutdownTask(shuttingDownLatch));
             }
+            // release the producers that are waiting for capacity
+            capacityGates.forEach(CapacityGate::signal);
             try {
                 if (!shuttingDownLatch.await(30, TimeUnit.SECONDS)) {
-                    LOG.error(format("timeout while waiting for (LinkedBlockingQueue)ThreadBoundExecutor[%s] queues to empty",threadFactory.toString()));
+                    LOG.error(format("timeout while waiting for (%s)ThreadBoundExecutor[%s] queues to empty",queueType,threadFactory.toString()));
                 }
             } catch (InterruptedException ignore) {
                 //we are shutting down anyway
-                LOG.warn(format("(LinkedBlockingQueue)ThreadBoundExecutor[%s] shutdown interrupted.",threadFactory.toString()));
+                LOG.warn(format("(%s)ThreadBoundExecutor[%s] shutdown interrupted.",queueType,threadFactory.toString()));
             }
         }
-        LOG.info(format("(LinkedBlockingQueue)ThreadBoundExecutor[%s] shut down completed",threadFactory.toString()));
+        LOG.info(format("(%s)ThreadBoundExecutor[%s] shut down completed",queueType,threadFactory.toString()));
     }
 
 
     private static final class Consumer implements Runnable {
         private final BlockingQueue<ThreadBoundEvent> queue;
+        private final Queue<ThreadBoundEvent> priorityQueue;
+        private final CapacityGate capacityGate;
         private final int maxBatchSize;
         private final ArrayList<ThreadBoundEvent> batch;
         private final ThreadBoundEventProcessor<ThreadBoundEvent> eventProcessor;
 
-        public Consumer(BlockingQueue<ThreadBoundEvent> queue) {
-            this(queue,new ThreadBoundRunnableEventProcessor(),1);
+        public Consumer(BlockingQueue<ThreadBoundEvent> queue, Queue<ThreadBoundEvent> priorityQueue, CapacityGate capacityGate) {
+            this(queue,priorityQueue,capacityGate,new ThreadBoundRunnableEventProcessor(),1);
         }
 
-        public Consumer(BlockingQueue<ThreadBoundEvent> queue, ThreadBoundEventProcessor eventProcessor, int maxBatchSize) {
+        public Consumer(BlockingQueue<ThreadBoundEvent> queue, Queue<ThreadBoundEvent> priorityQueue, CapacityGate capacityGate, ThreadBoundEventProcessor eventProcessor, int maxBatchSize) {
             this.queue = queue;
+            this.priorityQueue = priorityQueue;
+            this.capacityGate = capacityGate;
             this.eventProcessor = eventProcessor;
             // store this -1 as we will always use take to get the first element of the batch
             this.maxBatchSize = maxBatchSize - 1;
@@ -121,8 +203,13 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
         public void run() {
             try {
                 boolean running = true;
+                ShutdownTask shutdownTask = null;
                 while (running) {
                     try {
+                        // priority events go before anything that is pending in the normal queue
+                        if(processPriorityEvents()) {
+                            continue;
+                        }
                         // block on event availability
                         ThreadBoundEvent event = queue.take();
                         // add to the batch, and see if we can add more
@@ -130,7 +217,9 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
                         if(maxBatchSize > 0) {
                             queue.drainTo(batch, maxBatchSize);
                         }
-                        // check for the stop condition (and remove it)
+                        // wake up the producers that are waiting for capacity (if any)
+                        capacityGate.signal();
+                        // check for the stop condition and the priority signals (and remove them)
                         // treat batches of 1 (the most common case) specially
                         if(batch.size() > 1) {
                             ListIterator<ThreadBoundEvent> itr = batch.listIterator();
@@ -138,17 +227,21 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
                                 ThreadBoundEvent next = itr.next();
                                 if (next.getClass().equals(ShutdownTask.class)) {
                                     running = false;
-                                    ((ShutdownTask)next).latch.countDown();
+                                    shutdownTask = (ShutdownTask) next;
+                                    itr.remove();
+                                } else if (next == PrioritySignal.INSTANCE) {
                                     itr.remove();
                                 }
                             }
-                            eventProcessor.process(batch);
+                            if(!batch.isEmpty()) {
+                                eventProcessor.process(batch);
+                            }
                         } else {
                             // just the one event, no need to iterate
                             if(event.getClass().equals(ShutdownTask.class)) {
                                 running = false;
-                                ((ShutdownTask)event).latch.countDown();
-                            } else {
+                                shutdownTask = (ShutdownTask) event;
+                            } else if(event != PrioritySignal.INSTANCE) {
                                 eventProcessor.process(batch);
                             }
                         }
@@ -162,6 +255,17 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
                         batch.clear();
                     }
                 }
+                // the signal of the last priority events can have been taken together with the shutdown task
+                try {
+                    while(processPriorityEvents()) {
+                        batch.clear();
+                    }
+                } catch (Throwable exception) {
+                    LOG.error(String.format("exception on queue %s while executing events", Thread.currentThread().getName()), exception);
+                } finally {
+                    batch.clear();
+                    shutdownTask.latch.countDown();
+                }
             } catch(Throwable unexpectedThrowable) {
                 // we observed some cases where trying to log the inner exception threw an error
                 // don't use the logger here as that seems to be causing the problem in the first place
@@ -170,9 +274,40 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
                 unexpectedThrowable.printStackTrace(System.err);
             }
         }
+
+        private boolean processPriorityEvents() {
+            ThreadBoundEvent event = priorityQueue.poll();
+            if(event == null) {
+                return false;
+            }
+            batch.add(event);
+            // maxBatchSize is stored as -1
+            while(batch.size() <= maxBatchSize && (event = priorityQueue.poll()) != null) {
+                batch.add(event);
+            }
+            eventProcessor.process(batch);
+            return true;
+        }
+    }
+
+    /**
+     * Put on the normal queue for every priority event, it makes sure the consumer wakes up
+     */
+    private static final class PrioritySignal implements ThreadBoundEvent<Object>, CapacityExemptEvent {
+        private static final PrioritySignal INSTANCE = new PrioritySignal();
+
+        @Override
+        public Object getKey() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "PrioritySignal";
+        }
     }
 
-    private static final class ShutdownTask implements ThreadBoundRunnable<Object> {
+    private static final class ShutdownTask implements ThreadBoundRunnable<Object>, CapacityExemptEvent {
 
         private final CountDownLatch latch;
 
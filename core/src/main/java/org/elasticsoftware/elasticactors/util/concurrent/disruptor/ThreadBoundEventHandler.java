@@ -28,17 +28,20 @@ import java.util.List;
  */
 public final class ThreadBoundEventHandler implements EventHandler<ThreadBoundEventWrapper> {
     private final ThreadBoundEventProcessor delegate;
+    private final int maxBatchSize;
     private final List<ThreadBoundEvent<?>> batch;
 
     public ThreadBoundEventHandler(ThreadBoundEventProcessor delegate, int maxBatchSize) {
         this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
         this.batch = new ArrayList<>(maxBatchSize);
     }
 
     @Override
     public void onEvent(ThreadBoundEventWrapper event, long sequence, boolean endOfBatch) throws Exception {
         batch.add(event.getWrappedEvent());
-        if(endOfBatch) {
+        // the disruptor hands out all available events, the processor gets them in batches of at most maxBatchSize
+        if(endOfBatch || batch.size() >= maxBatchSize) {
             try {
                 delegate.process(batch);
             } finally {
@@ -21,6 +21,10 @@ import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.dsl.Disruptor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.util.concurrent.CapacityExemptEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.OverflowPolicy;
+import org.elasticsoftware.elasticactors.util.concurrent.QueueOverflowException;
+import org.elasticsoftware.elasticactors.util.concurrent.SpillableEvent;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEvent;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
@@ -43,13 +47,42 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
     private final ThreadFactory threadFactory;
     private final List<Disruptor<ThreadBoundEventWrapper>> disruptors;
     private final ThreadBoundEventTranslator translator = new ThreadBoundEventTranslator();
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
 
     public ThreadBoundExecutorImpl(ThreadFactory threadFactory, int workers) {
         this(new ThreadBoundRunnableEventProcessor(), 1024, threadFactory, workers);
     }
 
+    public ThreadBoundExecutorImpl(ThreadFactory threadFactory, int workers, int bufferSize, OverflowPolicy overflowPolicy) {
+        this(new ThreadBoundRunnableEventProcessor(), bufferSize, threadFactory, workers, overflowPolicy);
+    }
+
     public ThreadBoundExecutorImpl(ThreadBoundEventProcessor eventProcessor, int bufferSize, ThreadFactory threadFactory, int workers) {
+        this(eventProcessor, bufferSize, threadFactory, workers, OverflowPolicy.BLOCK);
+    }
+
+    public ThreadBoundExecutorImpl(ThreadBoundEventProcessor eventProcessor, int bufferSize, ThreadFactory threadFactory,
+                                   int workers, OverflowPolicy overflowPolicy) {
+        this(eventProcessor, bufferSize, bufferSize, threadFactory, workers, overflowPolicy);
+    }
+
+    /**
+     * The ring buffers are bounded by definition, the bufferSize (which needs to be a power of 2) is the capacity
+     * per worker. {@link CapacityExemptEvent}s will wait for a free slot regardless of the overflow policy. The
+     * event processor is handed the available events in batches of at most maxBatchSize.
+     */
+    public ThreadBoundExecutorImpl(ThreadBoundEventProcessor eventProcessor, int maxBatchSize, int bufferSize,
+                                   ThreadFactory threadFactory, int workers, OverflowPolicy overflowPolicy) {
+        if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException(format("bufferSize must be a power of 2, got %d", bufferSize));
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException(format("maxBatchSize must be at least 1, got %d", maxBatchSize));
+        }
         this.threadFactory = threadFactory;
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = overflowPolicy;
         this.disruptors = new ArrayList<>(workers);
 
         LOG.info(format("Initializing (Disruptor)ThreadBoundExecutor[%s]",threadFactory.toString()));
@@ -57,7 +90,7 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
 
         for (int i = 0; i < workers; i++) {
             Disruptor<ThreadBoundEventWrapper> disruptor = new Disruptor<>(eventFactory,bufferSize,threadFactory);
-            disruptor.handleEventsWith(new ThreadBoundEventHandler(eventProcessor, bufferSize));
+            disruptor.handleEventsWith(new ThreadBoundEventHandler(eventProcessor, Math.min(maxBatchSize, bufferSize)));
             this.disruptors.add(disruptor);
             disruptor.start();
         }
@@ -69,8 +102,18 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
             throw new RejectedExecutionException("The system is shutting down.");
         }
         final RingBuffer<ThreadBoundEventWrapper> ringBuffer = this.disruptors.get(getBucket(event.getKey())).getRingBuffer();
-        // this method will wait when the buffer is overflowing ( using Lock.parkNanos(1) )
-        ringBuffer.publishEvent(translator, event);
+        if(!ringBuffer.tryPublishEvent(translator, event)) {
+            if(!(event instanceof CapacityExemptEvent)) {
+                if(overflowPolicy == OverflowPolicy.REJECT) {
+                    throw new QueueOverflowException(format("RingBuffer for key [%s] on (Disruptor)ThreadBoundExecutor[%s] is at capacity (%d)",
+                            event.getKey(), threadFactory.toString(), bufferSize));
+                } else if(overflowPolicy == OverflowPolicy.SPILL && event instanceof SpillableEvent && ((SpillableEvent) event).spill()) {
+                    return;
+                }
+            }
+            // this method will wait when the buffer is overflowing ( using Lock.parkNanos(1) )
+            ringBuffer.publishEvent(translator, event);
+        }
     }
 
     @Override
@@ -90,6 +133,16 @@ public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
         return disruptors.size();
     }
 
+    @Override
+    public int getQueueDepth(Object key) {
+        return bufferSize - (int) this.disruptors.get(getBucket(key)).getRingBuffer().remainingCapacity();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return bufferSize;
+    }
+
     private int getBucket(Object key) {
         return Math.abs(key.hashCode()) % disruptors.size();
     }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent.timingwheel;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel. Level 0 has one slot per tick, every next level has slots that span all the slots of the
+ * level below it. A timer is put on the lowest level that can hold it without wrapping around, and is moved down a
+ * level (cascaded) when the wheel reaches the start of its slot. Adding and removing a timer is O(1), timers are nodes
+ * of a doubly linked list per slot.
+ *
+ * Time is expressed in ticks. Not thread safe, guarded by the owning worker.
+ *
+ * @param <E>   the timer payload
+ */
+final class TimingWheel<E> {
+    private final int bits;
+    private final int mask;
+    private final int levels;
+    private final Node<E>[][] slots;
+    private final int[] levelSizes;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(int wheelSizeBits, long startTick) {
+        this.bits = wheelSizeBits;
+        this.mask = (1 << wheelSizeBits) - 1;
+        this.levels = (63 + wheelSizeBits - 1) / wheelSizeBits;
+        this.slots = new Node[levels][1 << wheelSizeBits];
+        this.levelSizes = new int[levels];
+        this.currentTick = startTick;
+    }
+
+    /**
+     * @param tick  the tick to expire the timer on, timers in the past expire on the next tick
+     */
+    Node<E> add(E element, long tick) {
+        Node<E> node = new Node<>(element, Math.max(tick, currentTick + 1));
+        insert(node);
+        size++;
+        return node;
+    }
+
+    void remove(Node<E> node) {
+        if (node.level >= 0) {
+            unlink(node);
+            size--;
+        }
+    }
+
+    /**
+     * Moves the wheel forward to the given tick, passing the expired timers to the consumer
+     */
+    void advance(long tick, Consumer<E> expired) {
+        while (currentTick < tick) {
+            if (size == 0) {
+                currentTick = tick;
+                return;
+            }
+            // nothing happens until the next slot boundary of the lowest level that has timers
+            int level = 0;
+            while (levelSizes[level] == 0) {
+                level++;
+            }
+            if (level == 0) {
+                currentTick += 1;
+            } else {
+                currentTick = Math.min(tick, ((currentTick >>> (level * bits)) + 1) << (level * bits));
+            }
+            // cascade the slots that start at this tick, from the highest level down
+            for (int l = levels - 1; l > 0; l--) {
+                if ((currentTick & ((1L << (l * bits)) - 1)) == 0 && levelSizes[l] > 0) {
+                    int slot = (int) (currentTick >>> (l * bits)) & mask;
+                    Node<E> node = slots[l][slot];
+                    while (node != null) {
+                        Node<E> next = node.next;
+                        unlink(node);
+                        insert(node);
+                        node = next;
+                    }
+                }
+            }
+            int slot = (int) currentTick & mask;
+            Node<E> node = slots[0][slot];
+            while (node != null) {
+                Node<E> next = node.next;
+                unlink(node);
+                size--;
+                expired.accept(node.element);
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * @return  the first tick on which a timer can expire or needs to be cascaded, {@link Long#MAX_VALUE} when empty
+     */
+    long nextTick() {
+        long nextTick = Long.MAX_VALUE;
+        for (int level = 0; level < levels; level++) {
+            if (levelSizes[level] > 0) {
+                long levelTick = currentTick >>> (level * bits);
+                for (int i = 1; i <= mask + 1; i++) {
+                    if (slots[level][(int) (levelTick + i) & mask] != null) {
+                        nextTick = Math.min(nextTick, (levelTick + i) << (level * bits));
+                        break;
+                    }
+                }
+            }
+        }
+        return nextTick;
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void insert(Node<E> node) {
+        int level = 0;
+        while (level < levels - 1 && (node.tick >>> (level * bits)) - (currentTick >>> (level * bits)) > mask) {
+            level++;
+        }
+        int slot = (int) (node.tick >>> (level * bits)) & mask;
+        node.level = level;
+        node.slot = slot;
+        node.previous = null;
+        node.next = slots[level][slot];
+        if (node.next != null) {
+            node.next.previous = node;
+        }
+        slots[level][slot] = node;
+        levelSizes[level]++;
+    }
+
+    private void unlink(Node<E> node) {
+        if (node.previous != null) {
+            node.previous.next = node.next;
+        } else {
+            slots[node.level][node.slot] = node.next;
+        }
+        if (node.next != null) {
+            node.next.previous = node.previous;
+        }
+        levelSizes[node.level]--;
+        node.level = -1;
+        node.previous = null;
+        node.next = null;
+    }
+
+    static final class Node<E> {
+        private final E element;
+        private final long tick;
+        private int level = -1;
+        private int slot;
+        private Node<E> previous;
+        private Node<E> next;
+
+        private Node(E element, long tick) {
+            this.element = element;
+            this.tick = tick;
+        }
+
+        E getElement() {
+            return element;
+        }
+
+        long getTick() {
+            return tick;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent.timingwheel;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.util.concurrent.ScheduledWorkManager;
+import org.elasticsoftware.elasticactors.util.concurrent.WorkExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.WorkExecutorFactory;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.String.format;
+
+/**
+ * A {@link ScheduledWorkManager} that keeps the scheduled work in hierarchical {@link TimingWheel}s, which makes
+ * scheduling and unscheduling O(1) regardless of the number of pending units of work. Every shard is assigned to one
+ * of the workers, each worker has its own wheel, lock and wake up condition: scheduling only wakes up the worker that
+ * owns the shard, and only when the new work expires before the worker would wake up anyway. The units of work are
+ * indexed per shard on their {@link Object#equals(Object)} to find them on {@link #unschedule(Object, Delayed)}.
+ *
+ * Expiration has a resolution of {@code tickMillis}.
+ *
+ * @param <K>   Key for a shard
+ * @param <T>   The Scheduled Object that will be passed to {@link WorkExecutor#execute(Object, Object)} after the delay has expired
+ */
+public final class TimingWheelScheduledWorkManager<K,T extends Delayed> implements ScheduledWorkManager<K,T> {
+    private static final Logger LOGGER = LogManager.getLogger(TimingWheelScheduledWorkManager.class);
+    public static final long MAX_AWAIT_MILLIS = 60000L;
+    private static final int WHEEL_SIZE_BITS = 8;
+
+    private final ExecutorService executor;
+    private final WorkExecutorFactory<WorkExecutor<K,T>> workerFactory;
+    private final long tickMillis;
+    private final List<Worker> workers;
+    private final ConcurrentMap<K,Worker> shards = new ConcurrentHashMap<>();
+    private final List<Future<?>> futures = new ArrayList<>();
+    private volatile boolean stop;
+
+    public TimingWheelScheduledWorkManager(ExecutorService executor, WorkExecutorFactory<WorkExecutor<K,T>> workerFactory, int numberOfWorkers) {
+        this(executor, workerFactory, numberOfWorkers, 1L);
+    }
+
+    public TimingWheelScheduledWorkManager(ExecutorService executor,
+                                           WorkExecutorFactory<WorkExecutor<K,T>> workerFactory,
+                                           int numberOfWorkers,
+                                           long tickMillis) {
+        this.executor = executor;
+        this.workerFactory = workerFactory;
+        this.tickMillis = Math.max(1L, tickMillis);
+        this.workers = new ArrayList<>();
+        final long startTick = currentTick();
+        for (int i = 0; i < Math.max(1, numberOfWorkers); i++) {
+            workers.add(new Worker(startTick));
+        }
+    }
+
+    @PostConstruct
+    @Override
+    public void init() {
+        stop = false;
+        for (Worker worker : workers) {
+            futures.add(executor.submit(worker.withExecutor(workerFactory.create())));
+        }
+    }
+
+    @PreDestroy
+    @Override
+    public void destroy() {
+        LOGGER.info("calling TimingWheelScheduledWorkManager.destroy()");
+        stop = true;
+        for (Future<?> future : futures) {
+            try {
+                future.cancel(true);
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+        shards.clear();
+    }
+
+    @Override
+    public void registerShard(K shard) {
+        Worker worker = workers.get(Math.abs(shard.hashCode() % workers.size()));
+        if (shards.putIfAbsent(shard, worker) == null) {
+            worker.registerShard(shard);
+        }
+    }
+
+    @Override
+    public void unregisterShard(K shard) {
+        Worker worker = shards.remove(shard);
+        if (worker != null) {
+            worker.unregisterShard(shard);
+        }
+    }
+
+    @Override
+    public void schedule(K shard, T... unitsOfWork) {
+        final Worker worker = shards.get(shard);
+        if (worker == null) {
+            throw new RejectedExecutionException(format("Shard: %s is not registered, please call registerShard first",shard.toString()));
+        }
+        worker.schedule(shard, unitsOfWork);
+    }
+
+    @Override
+    public void unschedule(K shard, T unitOfWork) {
+        final Worker worker = shards.get(shard);
+        if (worker == null) {
+            throw new IllegalArgumentException(format("Shard: %s is not registered, please call registerShard first",shard.toString()));
+        }
+        worker.unschedule(shard, unitOfWork);
+    }
+
+    @Override
+    public int getSize() {
+        int totalSize = 0;
+        for (Worker worker : workers) {
+            totalSize += worker.size();
+        }
+        return totalSize;
+    }
+
+    private long currentTick() {
+        return System.currentTimeMillis() / tickMillis;
+    }
+
+    private long tickOf(T unitOfWork) {
+        // round up, work should never fire early
+        long fireTime = System.currentTimeMillis() + unitOfWork.getDelay(TimeUnit.MILLISECONDS);
+        return (fireTime + tickMillis - 1) / tickMillis;
+    }
+
+    private static final class Entry<K,T> {
+        private final K shard;
+        private final T unitOfWork;
+
+        private Entry(K shard, T unitOfWork) {
+            this.shard = shard;
+            this.unitOfWork = unitOfWork;
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition wakeUp = lock.newCondition();
+        private final TimingWheel<Entry<K,T>> wheel;
+        private final Map<K,Map<T,TimingWheel.Node<Entry<K,T>>>> index = new HashMap<>();
+        // the tick on which the worker will wake up (if not signalled)
+        private long wakeUpTick = Long.MAX_VALUE;
+        private WorkExecutor<K,T> workExecutor;
+
+        private Worker(long startTick) {
+            this.wheel = new TimingWheel<>(WHEEL_SIZE_BITS, startTick);
+        }
+
+        private Worker withExecutor(WorkExecutor<K,T> workExecutor) {
+            this.workExecutor = workExecutor;
+            return this;
+        }
+
+        private void registerShard(K shard) {
+            lock.lock();
+            try {
+                index.putIfAbsent(shard, new HashMap<>());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void unregisterShard(K shard) {
+            lock.lock();
+            try {
+                Map<T,TimingWheel.Node<Entry<K,T>>> shardIndex = index.remove(shard);
+                if (shardIndex != null) {
+                    shardIndex.values().forEach(wheel::remove);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void schedule(K shard, T[] unitsOfWork) {
+            lock.lock();
+            try {
+                Map<T,TimingWheel.Node<Entry<K,T>>> shardIndex = index.get(shard);
+                if (shardIndex == null) {
+                    throw new RejectedExecutionException(format("Shard: %s is not registered, please call registerShard first",shard.toString()));
+                }
+                long earliestTick = Long.MAX_VALUE;
+                for (T unitOfWork : unitsOfWork) {
+                    TimingWheel.Node<Entry<K,T>> node = wheel.add(new Entry<>(shard, unitOfWork), tickOf(unitOfWork));
+                    TimingWheel.Node<Entry<K,T>> previous = shardIndex.put(unitOfWork, node);
+                    if (previous != null) {
+                        wheel.remove(previous);
+                    }
+                    earliestTick = Math.min(earliestTick, node.getTick());
+                }
+                // only wake up the worker when it would otherwise sleep past the new work
+                if (earliestTick < wakeUpTick) {
+                    wakeUp.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void unschedule(K shard, T unitOfWork) {
+            lock.lock();
+            try {
+                Map<T,TimingWheel.Node<Entry<K,T>>> shardIndex = index.get(shard);
+                if (shardIndex != null) {
+                    TimingWheel.Node<Entry<K,T>> node = shardIndex.remove(unitOfWork);
+                    if (node != null) {
+                        wheel.remove(node);
+                    }
+                }
+                // no need to wake up the worker as there is nothing to do..
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return wheel.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            final List<Entry<K,T>> expired = new ArrayList<>();
+            try {
+                while (!stop) {
+                    lock.lockInterruptibly();
+                    try {
+                        wheel.advance(currentTick(), entry -> {
+                            Map<T,TimingWheel.Node<Entry<K,T>>> shardIndex = index.get(entry.shard);
+                            if (shardIndex != null) {
+                                shardIndex.remove(entry.unitOfWork);
+                            }
+                            expired.add(entry);
+                        });
+                        if (expired.isEmpty()) {
+                            long nextTick = Math.min(wheel.nextTick(), currentTick() + MAX_AWAIT_MILLIS / tickMillis);
+                            wakeUpTick = nextTick;
+                            long waitTimeMillis = (nextTick * tickMillis) - System.currentTimeMillis();
+                            if (waitTimeMillis > 0) {
+                                wakeUp.await(waitTimeMillis, TimeUnit.MILLISECONDS);
+                            }
+                            wakeUpTick = Long.MAX_VALUE;
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    // execute outside of the lock so scheduling from the executed work doesn't block
+                    for (Entry<K,T> entry : expired) {
+                        try {
+                            workExecutor.execute(entry.shard, entry.unitOfWork);
+                        } catch (Throwable e) {
+                            LOGGER.error("Exception while executing work!", e);
+                        }
+                    }
+                    expired.clear();
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            } finally {
+                LOGGER.info("Worker thread stopped");
+            }
+        }
+    }
+}
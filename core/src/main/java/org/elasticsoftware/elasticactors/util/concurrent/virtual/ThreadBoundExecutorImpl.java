@@ -0,0 +1,245 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent.virtual;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.util.concurrent.CapacityExemptEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.OverflowPolicy;
+import org.elasticsoftware.elasticactors.util.concurrent.PrioritizedEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.QueueOverflowException;
+import org.elasticsoftware.elasticactors.util.concurrent.SpillableEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnableEventProcessor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.String.format;
+
+/**
+ * A {@link ThreadBoundExecutor} that gives every key its own mailbox which is drained by a virtual thread. A virtual
+ * thread is started when the first event for a key arrives and it finishes (and the mailbox is removed) as soon as
+ * the mailbox is empty, so only the keys that have pending events cost anything. Since a mailbox is drained by at
+ * most one virtual thread at a time the events for a key are never executed concurrently and always in order, but
+ * (like the work stealing implementation) not necessarily by the same thread.
+ *
+ * <p/>
+ * Blocking calls made while processing an event only park the virtual thread, the carrier thread is free to run
+ * the mailboxes of other keys in the meantime.
+ *
+ * <p/>
+ * Requires Java 21 or higher, use {@link #isSupported()} to check.
+ */
+public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
+    private static final Logger LOG = LogManager.getLogger(ThreadBoundExecutorImpl.class);
+    private final String name;
+    private final AtomicBoolean shuttingDown = new AtomicBoolean(false);
+    private final ConcurrentMap<Object, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ExecutorService executorService;
+    private final ThreadBoundEventProcessor eventProcessor;
+    private final int maxBatchSize;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+
+    public static boolean isSupported() {
+        return VirtualThreads.isSupported();
+    }
+
+    public ThreadBoundExecutorImpl(String name) {
+        this(new ThreadBoundRunnableEventProcessor(), 1, name, 0, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Create a virtual thread executor.
+     *
+     * @param name                  used as the prefix of the virtual thread names
+     * @param queueCapacity         the maximum number of pending events per key, 0 or less means unbounded
+     * @param overflowPolicy        what to do with an event when the mailbox of the key is at capacity
+     * @throws IllegalStateException when running on a Java version without virtual threads
+     */
+    public ThreadBoundExecutorImpl(ThreadBoundEventProcessor eventProcessor, int maxBatchSize, String name,
+                                   int queueCapacity, OverflowPolicy overflowPolicy) {
+        if (!isSupported()) {
+            throw new IllegalStateException(format("(Virtual)ThreadBoundExecutor[%s] requires Java 21 or higher, running on %s",
+                    name, System.getProperty("java.version")));
+        }
+        this.name = name;
+        this.eventProcessor = eventProcessor;
+        this.maxBatchSize = maxBatchSize;
+        this.queueCapacity = queueCapacity > 0 ? queueCapacity : Integer.MAX_VALUE;
+        this.overflowPolicy = overflowPolicy;
+        LOG.info(format("Initializing (Virtual)ThreadBoundExecutor[%s]", name));
+        this.executorService = VirtualThreads.newThreadPerTaskExecutor(name);
+    }
+
+    @Override
+    public void execute(ThreadBoundEvent event) {
+        if (shuttingDown.get()) {
+            throw new RejectedExecutionException("The system is shutting down.");
+        }
+        final boolean priority = event instanceof PrioritizedEvent && ((PrioritizedEvent) event).isPriority();
+        while (true) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(event.getKey(), Mailbox::new);
+            if (!priority && mailbox.size() >= queueCapacity && !(event instanceof CapacityExemptEvent)) {
+                if (overflowPolicy == OverflowPolicy.REJECT) {
+                    throw new QueueOverflowException(format("Mailbox for key [%s] on (Virtual)ThreadBoundExecutor[%s] is at capacity (%d)",
+                            event.getKey(), name, queueCapacity));
+                } else if (overflowPolicy == OverflowPolicy.SPILL && event instanceof SpillableEvent && ((SpillableEvent) event).spill()) {
+                    return;
+                }
+                mailbox.awaitCapacity();
+            }
+            // a closed mailbox was removed from the map concurrently, try again with a fresh one
+            if (mailbox.offer(event, priority)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        LOG.info(format("shutting down the (Virtual)ThreadBoundExecutor[%s]", name));
+        if (shuttingDown.compareAndSet(false, true)) {
+            // mailboxes remove themselves once they are drained
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (!mailboxes.isEmpty() && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+            if (!mailboxes.isEmpty()) {
+                LOG.error(format("timeout while waiting for (Virtual)ThreadBoundExecutor[%s] queues to empty", name));
+            }
+            executorService.shutdown();
+        }
+        LOG.info(format("(Virtual)ThreadBoundExecutor[%s] shut down completed", name));
+    }
+
+    /**
+     * Virtual threads are not bound to a fixed number of threads, this returns the number of carrier threads
+     * (which defaults to the number of available processors).
+     */
+    @Override
+    public int getThreadCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public int getQueueDepth(Object key) {
+        Mailbox mailbox = mailboxes.get(key);
+        return mailbox != null ? mailbox.size() : 0;
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    private final class Mailbox implements Runnable {
+        private final Object key;
+        private final ArrayDeque<ThreadBoundEvent> events = new ArrayDeque<>();
+        private final ArrayDeque<ThreadBoundEvent> priorityEvents = new ArrayDeque<>();
+        // true while a virtual thread has been started for this mailbox
+        private boolean running = false;
+        // once closed the mailbox is (being) removed from the map and will not accept any more events
+        private boolean closed = false;
+        // number of producers waiting in awaitCapacity
+        private int waiters = 0;
+
+        private Mailbox(Object key) {
+            this.key = key;
+        }
+
+        private synchronized int size() {
+            return priorityEvents.size() + events.size();
+        }
+
+        /**
+         * Wait (on the monitor of this mailbox) until it has drained below its capacity
+         */
+        private synchronized void awaitCapacity() {
+            waiters++;
+            try {
+                while (size() >= queueCapacity && !closed && !shuttingDown.get()) {
+                    // bounded so we notice shutdown
+                    wait(10L);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiters--;
+            }
+        }
+
+        private synchronized boolean offer(ThreadBoundEvent event, boolean priority) {
+            if (closed) {
+                return false;
+            }
+            if (priority) {
+                priorityEvents.offer(event);
+            } else {
+                events.offer(event);
+            }
+            if (!running) {
+                running = true;
+                executorService.execute(this);
+            }
+            return true;
+        }
+
+        private synchronized boolean drainTo(List<ThreadBoundEvent> batch) {
+            ThreadBoundEvent event;
+            while (batch.size() < maxBatchSize && ((event = priorityEvents.poll()) != null || (event = events.poll()) != null)) {
+                batch.add(event);
+            }
+            if (waiters > 0) {
+                notifyAll();
+            }
+            if (batch.isEmpty()) {
+                // nothing left to do, retire this mailbox
+                running = false;
+                closed = true;
+                mailboxes.remove(key, this);
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            List<ThreadBoundEvent> batch = new ArrayList<>(maxBatchSize);
+            while (drainTo(batch)) {
+                try {
+                    eventProcessor.process(batch);
+                } catch (Throwable exception) {
+                    LOG.error(String.format("exception on queue %s while executing events", Thread.currentThread().getName()), exception);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent.virtual;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Java 8 version, virtual threads are not available. The Java 21 version of this class is packaged in
+ * META-INF/versions/21 of the (multi-release) jar.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return false;
+    }
+
+    static ExecutorService newThreadPerTaskExecutor(String name) {
+        throw new UnsupportedOperationException("Virtual threads require Java 21 or higher");
+    }
+}
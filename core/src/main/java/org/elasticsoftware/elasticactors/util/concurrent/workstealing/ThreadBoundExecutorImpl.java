@@ -0,0 +1,339 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.elasticsoftware.elasticactors.util.concurrent.workstealing;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsoftware.elasticactors.util.concurrent.CapacityExemptEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.CapacityGate;
+import org.elasticsoftware.elasticactors.util.concurrent.OverflowPolicy;
+import org.elasticsoftware.elasticactors.util.concurrent.PrioritizedEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.QueueOverflowException;
+import org.elasticsoftware.elasticactors.util.concurrent.SpillableEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnableEventProcessor;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.String.format;
+
+/**
+ * A {@link ThreadBoundExecutor} that hashes keys onto a (large) number of key groups instead of directly onto the
+ * worker threads. A key group is a FIFO queue that is processed by at most one worker at a time, which guarantees
+ * the ordering per key. Each key group has a home worker, but when a worker becomes idle it will steal scheduled key
+ * groups from the other workers. Ownership of a key group only moves when it is not being processed, so a single hot
+ * key will still occupy only one thread but the other keys that happened to hash onto the same worker will be picked
+ * up by the idle workers.
+ *
+ * <p/>
+ * Note that this relaxes the contract of {@link ThreadBoundExecutor}: events with the same key are never executed
+ * concurrently and always in order, but not necessarily by the same thread.
+ */
+public final class ThreadBoundExecutorImpl implements ThreadBoundExecutor {
+    private static final Logger LOG = LogManager.getLogger(ThreadBoundExecutorImpl.class);
+    // the maximum number of events to process for a key group before giving other key groups a chance
+    private static final int MAX_EVENTS_PER_RUN = 64;
+    // safety net in case an idle worker misses the wake-up signal
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private final ThreadFactory threadFactory;
+    private final AtomicBoolean shuttingDown = new AtomicBoolean(false);
+    private final KeyGroup[] keyGroups;
+    private final Worker[] workers;
+    private final Queue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+    private final ThreadBoundEventProcessor eventProcessor;
+    private final int maxBatchSize;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final CountDownLatch shutdownLatch;
+
+    public ThreadBoundExecutorImpl(ThreadFactory threadFactory, int workers, int keyGroupsPerWorker) {
+        this(new ThreadBoundRunnableEventProcessor(), 1, threadFactory, workers, keyGroupsPerWorker, 0, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Create a work stealing executor.
+     *
+     * @param keyGroupsPerWorker    the number of key groups per worker, the more groups the finer grained the work
+     *                              that can be stolen
+     * @param queueCapacity         the maximum number of pending events per key group, 0 or less means unbounded
+     * @param overflowPolicy        what to do with an event when the key group is at capacity
+     */
+    public ThreadBoundExecutorImpl(ThreadBoundEventProcessor eventProcessor, int maxBatchSize, ThreadFactory threadFactory,
+                                   int workers, int keyGroupsPerWorker, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this.threadFactory = threadFactory;
+        this.eventProcessor = eventProcessor;
+        this.maxBatchSize = maxBatchSize;
+        this.queueCapacity = queueCapacity > 0 ? queueCapacity : Integer.MAX_VALUE;
+        this.overflowPolicy = overflowPolicy;
+        this.shutdownLatch = new CountDownLatch(workers);
+        LOG.info(format("Initializing (WorkStealing)ThreadBoundExecutor[%s]",threadFactory.toString()));
+        this.keyGroups = new KeyGroup[workers * keyGroupsPerWorker];
+        for (int i = 0; i < keyGroups.length; i++) {
+            // spread the home workers evenly
+            keyGroups[i] = new KeyGroup(i % workers);
+        }
+        this.workers = new Worker[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Worker(i);
+        }
+        for (Worker worker : this.workers) {
+            worker.thread = threadFactory.newThread(worker);
+        }
+        for (Worker worker : this.workers) {
+            worker.thread.start();
+        }
+    }
+
+    @Override
+    public void execute(ThreadBoundEvent event) {
+        if (shuttingDown.get()) {
+            throw new RejectedExecutionException("The system is shutting down.");
+        }
+        KeyGroup keyGroup = keyGroups[getBucket(event.getKey())];
+        final boolean priority = event instanceof PrioritizedEvent && ((PrioritizedEvent) event).isPriority();
+        if(!priority && keyGroup.size.get() >= queueCapacity && !(event instanceof CapacityExemptEvent)) {
+            if(overflowPolicy == OverflowPolicy.REJECT) {
+                throw new QueueOverflowException(format("KeyGroup for key [%s] on (WorkStealing)ThreadBoundExecutor[%s] is at capacity (%d)",
+                        event.getKey(), threadFactory.toString(), queueCapacity));
+            } else if(overflowPolicy == OverflowPolicy.SPILL && event instanceof SpillableEvent && ((SpillableEvent) event).spill()) {
+                return;
+            }
+            keyGroup.capacityGate.await(keyGroup.size::get, queueCapacity, shuttingDown::get);
+        }
+        keyGroup.size.incrementAndGet();
+        if(priority) {
+            keyGroup.priorityEvents.offer(event);
+        } else {
+            keyGroup.events.offer(event);
+        }
+        // only schedule when the key group is not already scheduled or running
+        if(keyGroup.scheduled.compareAndSet(false, true)) {
+            schedule(keyGroup);
+        }
+    }
+
+    private void schedule(KeyGroup keyGroup) {
+        Worker owner = workers[keyGroup.owner];
+        owner.runQueue.offerLast(keyGroup);
+        if(owner.idle) {
+            LockSupport.unpark(owner.thread);
+        } else {
+            // the owner is busy, wake up an idle worker so it can steal the key group
+            Worker idleWorker = idleWorkers.poll();
+            if(idleWorker != null) {
+                LockSupport.unpark(idleWorker.thread);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        LOG.info(format("shutting down the (WorkStealing)ThreadBoundExecutor[%s]",threadFactory.toString()));
+        if (shuttingDown.compareAndSet(false, true)) {
+            // the workers will stop once all the key groups are drained
+            for (Worker worker : workers) {
+                LockSupport.unpark(worker.thread);
+            }
+            for (KeyGroup keyGroup : keyGroups) {
+                keyGroup.capacityGate.signal();
+            }
+            try {
+                if (!shutdownLatch.await(30, TimeUnit.SECONDS)) {
+                    LOG.error(format("timeout while waiting for (WorkStealing)ThreadBoundExecutor[%s] queues to empty",threadFactory.toString()));
+                }
+            } catch (InterruptedException ignore) {
+                //we are shutting down anyway
+                LOG.warn(format("(WorkStealing)ThreadBoundExecutor[%s] shutdown interrupted.",threadFactory.toString()));
+            }
+        }
+        LOG.info(format("(WorkStealing)ThreadBoundExecutor[%s] shut down completed",threadFactory.toString()));
+    }
+
+    @Override
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    @Override
+    public int getQueueDepth(Object key) {
+        return keyGroups[getBucket(key)].size.get();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    private int getBucket(Object key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % keyGroups.length;
+    }
+
+    private static final class KeyGroup {
+        private final Queue<ThreadBoundEvent> events = new ConcurrentLinkedQueue<>();
+        private final Queue<ThreadBoundEvent> priorityEvents = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger(0);
+        private final CapacityGate capacityGate = new CapacityGate();
+        // true when the key group is on a run queue or being processed
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        // the worker that last processed this key group, only changed by the worker that is processing it
+        private volatile int owner;
+
+        private KeyGroup(int owner) {
+            this.owner = owner;
+        }
+
+        private ThreadBoundEvent poll() {
+            ThreadBoundEvent event = priorityEvents.poll();
+            return event != null ? event : events.poll();
+        }
+
+        private boolean isEmpty() {
+            return priorityEvents.isEmpty() && events.isEmpty();
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final int index;
+        private final ConcurrentLinkedDeque<KeyGroup> runQueue = new ConcurrentLinkedDeque<>();
+        private final ArrayList<ThreadBoundEvent> batch;
+        private volatile boolean idle = false;
+        private Thread thread;
+
+        private Worker(int index) {
+            this.index = index;
+            this.batch = new ArrayList<>(maxBatchSize);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    KeyGroup keyGroup = next();
+                    if (keyGroup != null) {
+                        process(keyGroup);
+                    } else if (shuttingDown.get() && allEmpty()) {
+                        break;
+                    } else {
+                        // announce that we are idle before checking again, this way we cannot miss a wake-up
+                        idle = true;
+                        idleWorkers.offer(this);
+                        keyGroup = next();
+                        if (keyGroup == null && !shuttingDown.get()) {
+                            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                        }
+                        idle = false;
+                        idleWorkers.remove(this);
+                        if (keyGroup != null) {
+                            process(keyGroup);
+                        }
+                    }
+                }
+            } catch(Throwable unexpectedThrowable) {
+                // we observed some cases where trying to log the inner exception threw an error
+                // don't use the logger here as that seems to be causing the problem in the first place
+                System.err.println("Caught an unexpected Throwable while logging");
+                System.err.println("This problem happens when jar files change at runtime, JVM might be UNSTABLE");
+                unexpectedThrowable.printStackTrace(System.err);
+            } finally {
+                shutdownLatch.countDown();
+            }
+        }
+
+        private KeyGroup next() {
+            KeyGroup keyGroup = runQueue.pollFirst();
+            return keyGroup != null ? keyGroup : steal();
+        }
+
+        private KeyGroup steal() {
+            // start at a random victim to avoid all idle workers hitting the same one
+            int start = ThreadLocalRandom.current().nextInt(workers.length);
+            for (int i = 0; i < workers.length; i++) {
+                Worker victim = workers[(start + i) % workers.length];
+                if (victim != this) {
+                    // take from the tail, the owner takes from the head
+                    KeyGroup keyGroup = victim.runQueue.pollLast();
+                    if (keyGroup != null) {
+                        return keyGroup;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private boolean allEmpty() {
+            for (KeyGroup keyGroup : keyGroups) {
+                if (keyGroup.scheduled.get()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void process(KeyGroup keyGroup) {
+            // nobody else can be processing this key group, so this is where ownership moves
+            keyGroup.owner = index;
+            int processed = 0;
+            try {
+                while (processed < MAX_EVENTS_PER_RUN) {
+                    ThreadBoundEvent event;
+                    while (batch.size() < maxBatchSize && (event = keyGroup.poll()) != null) {
+                        batch.add(event);
+                    }
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    keyGroup.size.addAndGet(-batch.size());
+                    keyGroup.capacityGate.signal();
+                    processed += batch.size();
+                    try {
+                        eventProcessor.process(batch);
+                    } catch (Throwable exception) {
+                        LOG.error(String.format("exception on queue %s while executing events", Thread.currentThread().getName()), exception);
+                    } finally {
+                        batch.clear();
+                    }
+                }
+            } finally {
+                if (!keyGroup.isEmpty()) {
+                    // give the other key groups a chance, keep it scheduled on our own queue
+                    runQueue.offerLast(keyGroup);
+                } else {
+                    keyGroup.scheduled.set(false);
+                    // an event might have been added after we last looked, in that case the producer could not
+                    // schedule it so we need to do it
+                    if (!keyGroup.isEmpty() && keyGroup.scheduled.compareAndSet(false, true)) {
+                        runQueue.offerLast(keyGroup);
+                    }
+                }
+            }
+        }
+    }
+}
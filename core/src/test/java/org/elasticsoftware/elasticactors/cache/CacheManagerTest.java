@@ -0,0 +1,252 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.UntypedActor;
+import org.elasticsoftware.elasticactors.state.PassivationConfig;
+import org.elasticsoftware.elasticactors.state.PersistentActor;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class CacheManagerTest {
+    @Test
+    public void testSegmentsAreIsolated() throws Exception {
+        CacheManager<String,String> cacheManager = new CacheManager<>(100);
+        Cache<String,String> segment1 = cacheManager.create("segment1", null);
+        Cache<String,String> segment2 = cacheManager.create("segment2", null);
+
+        segment1.put("key", "value1");
+        assertEquals(segment2.get("key", () -> "value2"), "value2");
+        assertEquals(segment1.getIfPresent("key"), "value1");
+        assertEquals(segment1.size(), 1L);
+        assertEquals(segment2.size(), 1L);
+
+        segment1.invalidate("key");
+        assertNull(segment1.getIfPresent("key"));
+        assertEquals(segment2.getIfPresent("key"), "value2");
+    }
+
+    @Test
+    public void testEvictionNotifiesListener() throws Exception {
+        final List<String> evicted = new ArrayList<>();
+        CacheManager<String,String> cacheManager = new CacheManager<>(10);
+        Cache<String,String> segment = cacheManager.create("segment", evicted::add);
+
+        for (int i = 0; i < 100; i++) {
+            segment.put("key" + i, "value" + i);
+        }
+        segment.cleanUp();
+
+        assertEquals(evicted.size(), 90);
+        assertEquals(segment.size(), 10L);
+        for (String value : evicted) {
+            assertNull(segment.getIfPresent(value.replace("value", "key")));
+        }
+    }
+
+    @Test
+    public void testDestroyDoesNotNotifyListener() throws Exception {
+        final List<String> evicted = new ArrayList<>();
+        CacheManager<String,String> cacheManager = new CacheManager<>(100);
+        Cache<String,String> segment1 = cacheManager.create("segment1", evicted::add);
+        Cache<String,String> segment2 = cacheManager.create("segment2", evicted::add);
+        for (int i = 0; i < 10; i++) {
+            segment1.put("key" + i, "value" + i);
+            segment2.put("key" + i, "value" + i);
+        }
+
+        cacheManager.destroy(segment1);
+
+        assertTrue(evicted.isEmpty());
+        for (int i = 0; i < 10; i++) {
+            assertNull(segment1.getIfPresent("key" + i));
+            assertEquals(segment2.getIfPresent("key" + i), "value" + i);
+        }
+    }
+
+    @Test
+    public void testLoaderExceptions() throws Exception {
+        Cache<String,String> segment = new CacheManager<String,String>(100).create("segment", null);
+        try {
+            segment.get("key", () -> { throw new IllegalStateException(); });
+            fail("expected UncheckedExecutionException");
+        } catch (UncheckedExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        try {
+            segment.get("key", () -> { throw new IOException(); });
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertNull(segment.getIfPresent("key"));
+        // failed loads are not indexed
+        assertEquals(segment.size(), 0L);
+    }
+
+    @Test
+    public void testInvalidateAll() throws Exception {
+        CacheManager<String,String> cacheManager = new CacheManager<>(100);
+        Cache<String,String> segment1 = cacheManager.create("segment1", null);
+        Cache<String,String> segment2 = cacheManager.create("segment2", null);
+        for (int i = 0; i < 10; i++) {
+            segment1.put("key" + i, "value" + i);
+            segment2.put("key" + i, "value" + i);
+        }
+
+        segment1.invalidateAll();
+
+        assertEquals(segment1.size(), 0L);
+        assertEquals(cacheManager.getWeightedSize(segment1), 0L);
+        assertNull(segment1.getIfPresent("key0"));
+        assertEquals(segment2.size(), 10L);
+    }
+
+    @Test
+    public void testWeightedEviction() throws Exception {
+        final List<String> evicted = new ArrayList<>();
+        CacheManager<String,String> cacheManager = new CacheManager<>(0, 100L, String::length);
+        Cache<String,String> segment1 = cacheManager.create("segment1", evicted::add);
+        Cache<String,String> segment2 = cacheManager.create("segment2", evicted::add);
+
+        segment1.put("key1", "0123456789");
+        segment2.put("key1", "01234567890123456789");
+        assertEquals(cacheManager.getWeightedSize(), 30L);
+        assertEquals(cacheManager.getWeightedSize(segment1), 10L);
+        assertEquals(cacheManager.getWeightedSizes().get("segment2"), Long.valueOf(20L));
+
+        for (int i = 2; i < 20; i++) {
+            segment1.put("key" + i, "0123456789");
+        }
+        segment1.cleanUp();
+
+        assertTrue(cacheManager.getWeightedSize() <= 100L);
+        assertFalse(evicted.isEmpty());
+        assertEquals(cacheManager.getWeightedSize(segment1) + cacheManager.getWeightedSize(segment2), cacheManager.getWeightedSize());
+    }
+
+    @Test
+    public void testReweighOnAccess() throws Exception {
+        CacheManager<String,StringBuilder> cacheManager = new CacheManager<>(0, 1000L, StringBuilder::length);
+        Cache<String,StringBuilder> segment = cacheManager.create("segment", null);
+        StringBuilder value = new StringBuilder("0123456789");
+        segment.put("key", value);
+        assertEquals(cacheManager.getWeightedSize(segment), 10L);
+
+        value.append("0123456789");
+        segment.getIfPresent("key");
+
+        assertEquals(cacheManager.getWeightedSize(segment), 20L);
+        assertEquals(cacheManager.getWeightedSize(), 20L);
+    }
+
+    @Test
+    public void testIndexFollowsConcurrentEviction() throws Exception {
+        CacheManager<String,String> cacheManager = new CacheManager<>(10);
+        Cache<String,String> segment = cacheManager.create("segment", null);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        segment.put("key" + (i % 50), "value");
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        segment.cleanUp();
+
+        assertEquals(segment.size(), cacheManager.getWeightedSize());
+
+        // nothing of the segment may be left behind
+        cacheManager.destroy(segment);
+        segment.cleanUp();
+        assertEquals(cacheManager.getWeightedSize(), 0L);
+    }
+
+    @Test
+    public void testStatsAreRecorded() throws Exception {
+        Cache<String,String> segment = new CacheManager<String,String>(100).create("segment", null);
+        segment.get("key", () -> "value");
+        segment.getIfPresent("key");
+
+        assertEquals(segment.stats().missCount(), 1L);
+        assertEquals(segment.stats().hitCount(), 1L);
+        assertEquals(segment.stats().loadSuccessCount(), 1L);
+    }
+
+    @Test
+    public void testIdleActorsArePassivated() throws Exception {
+        final List<PersistentActor<ShardKey>> evicted = new CopyOnWriteArrayList<>();
+        ShardActorCacheManager cacheManager = new ShardActorCacheManager(100, 0L, 0L, TimeUnit.SECONDS);
+        Cache<ActorRef,PersistentActor<ShardKey>> cache = cacheManager.create("shard", evicted::add);
+        ActorRef sessionRef = mock(ActorRef.class);
+        ActorRef aggregateRef = mock(ActorRef.class);
+        PersistentActor<ShardKey> session = new PersistentActor<>(null, null, null, sessionRef, SessionActor.class, null);
+        PersistentActor<ShardKey> aggregate = new PersistentActor<>(null, null, null, aggregateRef, AggregateActor.class, null);
+        cache.put(sessionRef, session);
+        cache.put(aggregateRef, aggregate);
+
+        // expiration has a resolution of about a second
+        Thread.sleep(1500);
+        cache.cleanUp();
+
+        assertEquals(evicted, Collections.singletonList(session));
+        assertNull(cache.getIfPresent(sessionRef));
+        assertEquals(cache.getIfPresent(aggregateRef), aggregate);
+    }
+
+    @PassivationConfig(idleTimeout = 50, timeUnit = TimeUnit.MILLISECONDS)
+    private static final class SessionActor extends UntypedActor {
+        @Override
+        public void onReceive(ActorRef sender, Object message) {
+        }
+    }
+
+    private static final class AggregateActor extends UntypedActor {
+        @Override
+        public void onReceive(ActorRef sender, Object message) {
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cache;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class OffHeapCacheTest {
+    @Test
+    public void testPutAndGet() {
+        OffHeapCache<String,String> cache = new OffHeapCache<>(1024);
+        cache.put("shard1", "actor1", new byte[] {1, 2, 3});
+
+        assertEquals(cache.get("shard1", "actor1"), new byte[] {1, 2, 3});
+        assertNull(cache.get("shard2", "actor1"));
+        assertTrue(cache.contains("shard1", "actor1"));
+
+        // smaller values reuse the allocated memory
+        cache.put("shard1", "actor1", new byte[] {4, 5});
+        assertEquals(cache.get("shard1", "actor1"), new byte[] {4, 5});
+        assertEquals(cache.getSizeInBytes(), 3L);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        OffHeapCache<String,String> cache = new OffHeapCache<>(30, 1);
+        cache.put("shard", "actor1", new byte[10]);
+        cache.put("shard", "actor2", new byte[10]);
+        cache.put("shard", "actor3", new byte[10]);
+        // make actor1 the most recently used
+        assertNotNull(cache.get("shard", "actor1"));
+
+        cache.put("shard", "actor4", new byte[10]);
+
+        assertFalse(cache.contains("shard", "actor2"));
+        assertTrue(cache.contains("shard", "actor1"));
+        assertTrue(cache.contains("shard", "actor3"));
+        assertTrue(cache.contains("shard", "actor4"));
+        assertEquals(cache.getSizeInBytes(), 30L);
+    }
+
+    @Test
+    public void testValueLargerThanBudgetIsNotCached() {
+        OffHeapCache<String,String> cache = new OffHeapCache<>(30, 1);
+        cache.put("shard", "actor1", new byte[10]);
+        cache.put("shard", "actor1", new byte[31]);
+
+        assertFalse(cache.contains("shard", "actor1"));
+        assertEquals(cache.getSizeInBytes(), 0L);
+    }
+
+    @Test
+    public void testInvalidateAllForSegment() {
+        OffHeapCache<String,String> cache = new OffHeapCache<>(1024);
+        for (int i = 0; i < 10; i++) {
+            cache.put("shard1", "actor" + i, new byte[10]);
+            cache.put("shard2", "actor" + i, new byte[10]);
+        }
+
+        cache.invalidateAll("shard1");
+
+        assertEquals(cache.size(), 10L);
+        assertEquals(cache.getSizeInBytes(), 100L);
+        assertNull(cache.get("shard1", "actor1"));
+        assertNotNull(cache.get("shard2", "actor1"));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cluster;
+
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ActorIdFilterTest {
+    private final ShardKey shardKey = new ShardKey("test", 0);
+
+    @Test
+    public void testFilterIsLoadedFromRepository() throws Exception {
+        PersistentActorRepository repository = mock(PersistentActorRepository.class);
+        CountDownLatch scanned = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(1);
+            consumer.accept("existing-1");
+            consumer.accept("existing-2");
+            scanned.countDown();
+            return null;
+        }).when(repository).forEachActorId(eq(shardKey), any());
+        ActorIdFilter filter = new ActorIdFilter(shardKey, 1000, 0.0001d);
+
+        // not initialized yet, so everything might exist
+        assertTrue(filter.mightContain("new"));
+
+        filter.initialize(repository);
+        assertTrue(scanned.await(5, TimeUnit.SECONDS));
+        waitForInitialization(filter);
+
+        assertTrue(filter.mightContain("existing-1"));
+        assertTrue(filter.mightContain("existing-2"));
+        assertFalse(filter.mightContain("new"));
+
+        filter.put("new");
+        assertTrue(filter.mightContain("new"));
+    }
+
+    @Test
+    public void testFilterIsDisabledWhenScanIsNotSupported() throws Exception {
+        PersistentActorRepository repository = mock(PersistentActorRepository.class);
+        CountDownLatch scanned = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            scanned.countDown();
+            throw new UnsupportedOperationException("not supported");
+        }).when(repository).forEachActorId(eq(shardKey), any());
+        ActorIdFilter filter = new ActorIdFilter(shardKey, 1000, 0.0001d);
+
+        filter.initialize(repository);
+        assertTrue(scanned.await(5, TimeUnit.SECONDS));
+        // give the scanner some time to (not) mark the filter as initialized
+        Thread.sleep(100);
+
+        assertTrue(filter.mightContain("new"));
+    }
+
+    private void waitForInitialization(ActorIdFilter filter) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (filter.mightContain("unknown") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cluster.scheduler;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.cluster.ActorRefFactory;
+import org.elasticsoftware.elasticactors.scheduler.MissedTickPolicy;
+import org.elasticsoftware.elasticactors.serialization.internal.ActorRefDeserializer;
+import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageDeserializer;
+import org.elasticsoftware.elasticactors.serialization.internal.ScheduledMessageSerializer;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class RecurringScheduledMessageTest {
+    @Test
+    public void testFixedRateIsRelativeToThePreviousTick() {
+        RecurringScheduledMessage message = create(1000L, true, 100L, MissedTickPolicy.SKIP);
+        RecurringScheduledMessage next = message.next(1050L);
+        assertEquals(next.getNextFireTime(MILLISECONDS), 1100L);
+        // the key never changes
+        assertEquals(next.getFireTime(MILLISECONDS), 1000L);
+        assertEquals(next.getKey(), message.getKey());
+    }
+
+    @Test
+    public void testFixedDelayIsRelativeToTheFiringTime() {
+        RecurringScheduledMessage message = create(1000L, false, 100L, MissedTickPolicy.SKIP);
+        assertEquals(message.next(1050L).getNextFireTime(MILLISECONDS), 1150L);
+    }
+
+    @Test
+    public void testSkipMovesToTheFirstTickThatIsNotInThePast() {
+        RecurringScheduledMessage message = create(1000L, true, 100L, MissedTickPolicy.SKIP);
+        assertEquals(message.resume(1250L).getNextFireTime(MILLISECONDS), 1300L);
+        assertEquals(message.resume(1300L).getNextFireTime(MILLISECONDS), 1300L);
+        assertEquals(message.resume(500L).getNextFireTime(MILLISECONDS), 1000L);
+    }
+
+    @Test
+    public void testCatchUpFiresTheMissedTicks() {
+        RecurringScheduledMessage message = create(1000L, true, 100L, MissedTickPolicy.CATCH_UP);
+        assertEquals(message.resume(1250L).getNextFireTime(MILLISECONDS), 1000L);
+    }
+
+    @Test
+    public void testCheckpoint() {
+        RecurringScheduledMessage message = create(1000L, true, 100L, MissedTickPolicy.SKIP);
+        RecurringScheduledMessage next = message.next(1000L).next(1100L);
+        assertFalse(message.needsCheckpoint(1L));
+        assertTrue(next.needsCheckpoint(200L));
+        assertFalse(next.needsCheckpoint(201L));
+        assertFalse(next.checkpoint().needsCheckpoint(1L));
+    }
+
+    @Test
+    public void testEqualsTheKeyUsedToCancel() {
+        RecurringScheduledMessage message = create(1000L, true, 100L, MissedTickPolicy.SKIP).next(1000L);
+        ScheduledMessageImpl key = new ScheduledMessageImpl(message.getId(), 1000L);
+        assertEquals(message, key);
+        assertEquals(key, message);
+        assertEquals(message.hashCode(), key.hashCode());
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        ActorRefFactory actorRefFactory = mock(ActorRefFactory.class);
+        when(actorRefFactory.create(anyString())).thenReturn(mock(ActorRef.class));
+        ScheduledMessageDeserializer deserializer = new ScheduledMessageDeserializer(new ActorRefDeserializer(actorRefFactory));
+        RecurringScheduledMessage message = create(1000L, false, 100L, MissedTickPolicy.CATCH_UP).next(1234L).checkpoint();
+
+        ScheduledMessage deserialized = deserializer.deserialize(ScheduledMessageSerializer.get().serialize(message));
+
+        assertTrue(deserialized instanceof RecurringScheduledMessage);
+        RecurringScheduledMessage recurringMessage = (RecurringScheduledMessage) deserialized;
+        assertEquals(recurringMessage.getKey(), message.getKey());
+        assertFalse(recurringMessage.isFixedRate());
+        assertEquals(recurringMessage.getPeriod(MILLISECONDS), 100L);
+        assertEquals(recurringMessage.getMissedTickPolicy(), MissedTickPolicy.CATCH_UP);
+        assertEquals(recurringMessage.getNextFireTime(MILLISECONDS), 1334L);
+        assertEquals(recurringMessage.getMessageClass(), String.class);
+        // a one-off message is not affected
+        ScheduledMessage oneOff = deserializer.deserialize(ScheduledMessageSerializer.get().serialize(createMessage(1000L)));
+        assertFalse(oneOff instanceof RecurringScheduledMessage);
+        assertEquals(oneOff.getFireTime(TimeUnit.MILLISECONDS), 1000L);
+    }
+
+    private RecurringScheduledMessage create(long fireTime, boolean fixedRate, long period, MissedTickPolicy missedTickPolicy) {
+        return new RecurringScheduledMessage(createMessage(fireTime), fixedRate, period, missedTickPolicy);
+    }
+
+    private ScheduledMessage createMessage(long fireTime) {
+        ActorRef ref = mock(ActorRef.class);
+        when(ref.toString()).thenReturn("actor://test/test/shards/0/actor");
+        return new ScheduledMessageImpl(fireTime, ref, ref, String.class, new byte[] {1, 2, 3});
+    }
+}
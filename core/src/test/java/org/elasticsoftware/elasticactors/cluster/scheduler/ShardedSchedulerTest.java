@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cluster.scheduler;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.cluster.InternalActorSystem;
+import org.elasticsoftware.elasticactors.scheduler.MissedTickPolicy;
+import org.elasticsoftware.elasticactors.serialization.MessageDeserializer;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.longThat;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ShardedSchedulerTest {
+    private final ShardKey shardKey = new ShardKey("test", 0);
+    private ScheduledMessageRepository scheduledMessageRepository;
+    private ShardedScheduler scheduler;
+
+    @BeforeMethod
+    public void setUp() {
+        scheduledMessageRepository = mock(ScheduledMessageRepository.class);
+        when(scheduledMessageRepository.getRange(eq(shardKey), anyLong(), anyLong())).thenReturn(Collections.emptyList());
+        when(scheduledMessageRepository.count(eq(shardKey), anyLong())).thenReturn(5L);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        scheduler.destroy();
+    }
+
+    @Test
+    public void testLoadsAllWithoutWindow() {
+        scheduler = new ShardedScheduler(false, 1);
+        scheduler.setScheduledMessageRepository(scheduledMessageRepository);
+        scheduler.init();
+        scheduler.registerShard(shardKey);
+        verify(scheduledMessageRepository).getAll(shardKey);
+        verify(scheduledMessageRepository, never()).getRange(eq(shardKey), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testLoadsWindowAndPagesInTheNext() {
+        scheduler = new ShardedScheduler(true, 1, 2000L);
+        scheduler.setScheduledMessageRepository(scheduledMessageRepository);
+        scheduler.init();
+        final long start = System.currentTimeMillis();
+        scheduler.registerShard(shardKey);
+        verify(scheduledMessageRepository).getRange(eq(shardKey), eq(0L), longThat(until -> until >= start + 2000L));
+        verify(scheduledMessageRepository).count(eq(shardKey), longThat(from -> from >= start + 2000L));
+        verify(scheduledMessageRepository, never()).getAll(shardKey);
+        // the next window starts where the first one ended
+        verify(scheduledMessageRepository, timeout(5000L)).getRange(eq(shardKey),
+                longThat(from -> from >= start + 2000L), longThat(until -> until >= start + 3000L));
+        // cancelling a message that was never loaded only removes it from the repository
+        ScheduledMessageKey messageKey = new ScheduledMessageKey(UUID.randomUUID(), start + 60000L);
+        scheduler.cancel(shardKey, messageKey);
+        verify(scheduledMessageRepository).delete(shardKey, messageKey);
+    }
+
+    @Test
+    public void testRecurringMessageFiresFromMemory() throws Exception {
+        InternalActorSystem actorSystem = mock(InternalActorSystem.class);
+        MessageDeserializer<String> deserializer = mock(MessageDeserializer.class);
+        when(deserializer.deserialize(any(ByteBuffer.class))).thenReturn("tick");
+        when(actorSystem.getDeserializer(String.class)).thenReturn(deserializer);
+        ActorRef sender = mock(ActorRef.class);
+        ActorRef receiver = mock(ActorRef.class);
+        // the shard moved: the first tick was a while ago
+        RecurringScheduledMessage recurringMessage = new RecurringScheduledMessage(
+                new ScheduledMessageImpl(System.currentTimeMillis() - 5000L, sender, receiver, String.class, new byte[0]),
+                true, 100L, MissedTickPolicy.SKIP);
+        when(scheduledMessageRepository.getAll(shardKey)).thenReturn(Collections.singletonList(recurringMessage));
+        scheduler = new ShardedScheduler(true, 1);
+        scheduler.setScheduledMessageRepository(scheduledMessageRepository);
+        scheduler.setActorSystem(actorSystem);
+        scheduler.init();
+        scheduler.registerShard(shardKey);
+
+        verify(receiver, timeout(5000L).atLeast(3)).tell("tick", sender);
+        // the missed ticks were skipped
+        verify(receiver, atMost(6)).tell("tick", sender);
+        verify(scheduledMessageRepository, never()).delete(any(ShardKey.class), any(ScheduledMessageKey.class));
+
+        scheduler.cancel(shardKey, recurringMessage.getKey());
+        Thread.sleep(50L);
+        clearInvocations(receiver);
+        verify(receiver, after(500L).never()).tell("tick", sender);
+        verify(scheduledMessageRepository).delete(shardKey, recurringMessage.getKey());
+    }
+
+    @Test
+    public void testProgressIsStoredOnUnregister() {
+        ActorRef ref = mock(ActorRef.class);
+        RecurringScheduledMessage recurringMessage = new RecurringScheduledMessage(
+                new ScheduledMessageImpl(System.currentTimeMillis() - 5000L, ref, ref, String.class, new byte[0]),
+                true, TimeUnit.MINUTES.toMillis(1), MissedTickPolicy.SKIP);
+        when(scheduledMessageRepository.getAll(shardKey)).thenReturn(Collections.singletonList(recurringMessage));
+        scheduler = new ShardedScheduler(false, 1);
+        scheduler.setScheduledMessageRepository(scheduledMessageRepository);
+        scheduler.init();
+        scheduler.registerShard(shardKey);
+        scheduler.unregisterShard(shardKey);
+
+        ArgumentCaptor<ScheduledMessage> stored = ArgumentCaptor.forClass(ScheduledMessage.class);
+        verify(scheduledMessageRepository).create(eq(shardKey), stored.capture());
+        RecurringScheduledMessage storedMessage = (RecurringScheduledMessage) stored.getValue();
+        assertEquals(storedMessage.getKey(), recurringMessage.getKey());
+        assertTrue(storedMessage.getNextFireTime(TimeUnit.MILLISECONDS) >= System.currentTimeMillis() - 1000L);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cluster.tasks;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ActorState;
+import org.elasticsoftware.elasticactors.ElasticActor;
+import org.elasticsoftware.elasticactors.cluster.InternalActorSystem;
+import org.elasticsoftware.elasticactors.messaging.InternalMessage;
+import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
+import org.elasticsoftware.elasticactors.state.ActorStateUpdateProcessor;
+import org.elasticsoftware.elasticactors.state.PersistentActor;
+import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class ActorLifecycleTaskEventProcessorTest {
+    private InternalActorSystem actorSystem;
+    private PersistentActorRepository repository;
+    private MessageHandlerEventListener listener;
+    private List<InternalMessage> handled;
+
+    @BeforeMethod
+    public void setUp() {
+        actorSystem = mock(InternalActorSystem.class, RETURNS_DEEP_STUBS);
+        repository = mock(PersistentActorRepository.class);
+        listener = mock(MessageHandlerEventListener.class);
+        handled = new ArrayList<>();
+    }
+
+    @Test
+    public void testBatchIsPersistedOnce() throws Exception {
+        PersistentActor<?> actor = createPersistentActor();
+        List<TestTask> tasks = Arrays.asList(new TestTask(actor, true), new TestTask(actor, true), new TestTask(actor, true));
+
+        new ActorLifecycleTaskEventProcessor().process(new ArrayList<ThreadBoundRunnable>(tasks));
+
+        assertEquals(handled.size(), 3);
+        ArgumentCaptor<MessageHandlerEventListener> captor = ArgumentCaptor.forClass(MessageHandlerEventListener.class);
+        verify(repository, times(1)).updateAsync(any(), eq(actor), eq(tasks.get(2).internalMessage), captor.capture());
+        // nothing is acked before the state is written
+        verify(listener, never()).onDone(any());
+        captor.getValue().onDone(tasks.get(2).internalMessage);
+        for (TestTask task : tasks) {
+            verify(listener).onDone(task.internalMessage);
+        }
+    }
+
+    @Test
+    public void testBatchIsSplitPerActor() throws Exception {
+        PersistentActor<?> actor1 = createPersistentActor();
+        PersistentActor<?> actor2 = createPersistentActor();
+        List<ThreadBoundRunnable> tasks = Arrays.asList(new TestTask(actor1, true), new TestTask(actor1, true),
+                new TestTask(actor2, true), new TestTask(actor1, true));
+
+        new ActorLifecycleTaskEventProcessor().process(tasks);
+
+        assertEquals(handled.size(), 4);
+        verify(repository, times(2)).updateAsync(any(), eq(actor1), any(), any());
+        verify(repository, times(1)).updateAsync(any(), eq(actor2), any(), any());
+    }
+
+    @Test
+    public void testNotBatchableTasksRunOneByOne() throws Exception {
+        PersistentActor<?> actor = createPersistentActor();
+        List<ThreadBoundRunnable> tasks = Arrays.asList(new TestTask(actor, false), new TestTask(actor, false));
+
+        new ActorLifecycleTaskEventProcessor().process(tasks);
+
+        assertEquals(handled.size(), 2);
+        verify(repository, times(2)).updateAsync(any(), eq(actor), any(), eq(listener));
+    }
+
+    @Test
+    public void testStateUpdateProcessorIsCalledForEveryMessageOfBatch() throws Exception {
+        PersistentActor<?> actor = createPersistentActor();
+        ActorStateUpdateProcessor processor = mock(ActorStateUpdateProcessor.class);
+        List<ThreadBoundRunnable> tasks = Arrays.asList(new TestTask(processor, actor, String.class),
+                new TestTask(processor, actor, Integer.class), new TestTask(processor, actor, Long.class));
+
+        new ActorLifecycleTaskEventProcessor().process(tasks);
+
+        verify(repository, times(1)).updateAsync(any(), eq(actor), any(), any());
+        verify(processor).process(null, String.class, actor);
+        verify(processor).process(null, Integer.class, actor);
+        verify(processor).process(null, Long.class, actor);
+    }
+
+    private PersistentActor<?> createPersistentActor() {
+        ActorRef actorRef = mock(ActorRef.class);
+        return new PersistentActor<>(null, actorSystem, "1.0", actorRef, ElasticActor.class, mock(ActorState.class));
+    }
+
+    private final class TestTask extends ActorLifecycleTask {
+        private final boolean batchable;
+
+        private TestTask(PersistentActor persistentActor, boolean batchable) {
+            super(null, repository, persistentActor, ActorLifecycleTaskEventProcessorTest.this.actorSystem, mock(ElasticActor.class), persistentActor.getSelf(),
+                    listener, mock(InternalMessage.class), null);
+            this.batchable = batchable;
+        }
+
+        private TestTask(ActorStateUpdateProcessor processor, PersistentActor persistentActor, Class<?> messageClass) {
+            super(processor, repository, persistentActor, ActorLifecycleTaskEventProcessorTest.this.actorSystem, mock(ElasticActor.class), persistentActor.getSelf(),
+                    listener, message(messageClass), null);
+            this.batchable = true;
+        }
+
+        @Override
+        public boolean isBatchable() {
+            return batchable;
+        }
+
+        @Override
+        protected boolean doInActorContext(InternalActorSystem actorSystem, ElasticActor receiver, ActorRef receiverRef, InternalMessage internalMessage) {
+            handled.add(internalMessage);
+            return true;
+        }
+    }
+
+    private static InternalMessage message(Class<?> messageClass) {
+        InternalMessage message = mock(InternalMessage.class);
+        when(message.getPayloadClass()).thenReturn(messageClass.getName());
+        return message;
+    }
+}
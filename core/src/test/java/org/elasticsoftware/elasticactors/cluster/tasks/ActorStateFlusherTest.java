@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.cluster.tasks;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ActorState;
+import org.elasticsoftware.elasticactors.ElasticActor;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.cluster.InternalActorSystem;
+import org.elasticsoftware.elasticactors.messaging.InternalMessage;
+import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
+import org.elasticsoftware.elasticactors.state.PersistentActor;
+import org.elasticsoftware.elasticactors.state.PersistentActorRepository;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ActorStateFlusherTest {
+    private InternalActorSystem actorSystem;
+    private PersistentActorRepository repository;
+    private MessageHandlerEventListener listener;
+    private ThreadBoundExecutor executor;
+    private ActorStateFlusher flusher;
+
+    @BeforeMethod
+    public void setUp() {
+        actorSystem = mock(InternalActorSystem.class, RETURNS_DEEP_STUBS);
+        repository = mock(PersistentActorRepository.class);
+        listener = mock(MessageHandlerEventListener.class);
+        executor = mock(ThreadBoundExecutor.class);
+        // run everything on the calling thread
+        doAnswer(invocation -> {
+            ((ThreadBoundRunnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(executor).execute(any());
+        flusher = new ActorStateFlusher(new ShardKey("test", 0), executor, 60000L, 100);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        flusher.destroy();
+    }
+
+    @Test
+    public void testStateIsWrittenOnFlush() throws Exception {
+        PersistentActor<?> actor = createPersistentActor("actor");
+        List<TestTask> tasks = Arrays.asList(new TestTask(actor, true), new TestTask(actor, true), new TestTask(actor, true));
+
+        tasks.forEach(this::execute);
+
+        verify(repository, never()).updateAsync(any(), any(), any(), any());
+        verify(listener, never()).onDone(any());
+        assertTrue(flusher.isDirty("actor"));
+
+        flusher.flush();
+
+        assertFalse(flusher.isDirty("actor"));
+        ArgumentCaptor<MessageHandlerEventListener> captor = ArgumentCaptor.forClass(MessageHandlerEventListener.class);
+        verify(repository, times(1)).updateAsync(any(), eq(actor), eq(tasks.get(2).internalMessage), captor.capture());
+        captor.getValue().onDone(tasks.get(2).internalMessage);
+        for (TestTask task : tasks) {
+            verify(listener).onDone(task.internalMessage);
+        }
+    }
+
+    @Test
+    public void testDirtyStateIsWrittenByLifecycleStep() throws Exception {
+        PersistentActor<?> actor = createPersistentActor("actor");
+        TestTask deferred = new TestTask(actor, true);
+        execute(deferred);
+
+        // i.e. passivation, which does not update the state by itself
+        TestTask passivate = new TestTask(actor, false, false);
+        execute(passivate);
+
+        assertFalse(flusher.isDirty("actor"));
+        ArgumentCaptor<MessageHandlerEventListener> captor = ArgumentCaptor.forClass(MessageHandlerEventListener.class);
+        verify(repository, times(1)).updateAsync(any(), eq(actor), any(), captor.capture());
+        captor.getValue().onDone(passivate.internalMessage);
+        verify(listener).onDone(deferred.internalMessage);
+        verify(listener).onDone(passivate.internalMessage);
+        // nothing left to write
+        flusher.flush();
+        verify(repository, times(1)).updateAsync(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testThresholdTriggersFlush() throws Exception {
+        flusher.destroy();
+        flusher = new ActorStateFlusher(new ShardKey("test", 0), executor, 60000L, 2);
+
+        execute(new TestTask(createPersistentActor("actor1"), true));
+        verify(repository, never()).updateAsync(any(), any(), any(), any());
+        execute(new TestTask(createPersistentActor("actor2"), true));
+
+        verify(repository, times(2)).updateAsync(any(), any(), any(), any());
+    }
+
+    private void execute(TestTask task) {
+        task.setStateFlusher(flusher);
+        task.run();
+    }
+
+    private PersistentActor<?> createPersistentActor(String actorId) {
+        ActorRef actorRef = mock(ActorRef.class);
+        when(actorRef.getActorId()).thenReturn(actorId);
+        return new PersistentActor<>(null, actorSystem, "1.0", actorRef, ElasticActor.class, mock(ActorState.class));
+    }
+
+    private final class TestTask extends ActorLifecycleTask {
+        private final boolean deferrable;
+        private final boolean updatesState;
+
+        private TestTask(PersistentActor persistentActor, boolean deferrable) {
+            this(persistentActor, deferrable, true);
+        }
+
+        private TestTask(PersistentActor persistentActor, boolean deferrable, boolean updatesState) {
+            super(null, repository, persistentActor, ActorStateFlusherTest.this.actorSystem, mock(ElasticActor.class), persistentActor.getSelf(),
+                    listener, mock(InternalMessage.class), null);
+            this.deferrable = deferrable;
+            this.updatesState = updatesState;
+        }
+
+        @Override
+        protected boolean isDeferrable() {
+            return deferrable;
+        }
+
+        @Override
+        protected boolean doInActorContext(InternalActorSystem actorSystem, ElasticActor receiver, ActorRef receiverRef, InternalMessage internalMessage) {
+            return updatesState;
+        }
+    }
+}
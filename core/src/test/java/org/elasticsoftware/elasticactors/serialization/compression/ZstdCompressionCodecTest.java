@@ -0,0 +1,262 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.serialization.compression;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertThrows;
+import static org.testng.Assert.assertTrue;
+
+public class ZstdCompressionCodecTest {
+    private static final String CONTEXT = "org.elasticsoftware.elasticactors.test.OrderActor";
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("zstd-dictionaries").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testSmallStatesWithTrainedDictionary() throws IOException {
+        Random random = new Random(42);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            samples.add(orderState(random));
+        }
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024)) {
+            ZstdCompressionCodec codec = new ZstdCompressionCodec(registry, 3);
+            byte[] state = orderState(random);
+            // barely compresses without a dictionary
+            byte[] withoutDictionary = codec.compress(CONTEXT, state);
+            assertTrue(withoutDictionary == null || withoutDictionary.length * 3 > state.length);
+
+            ZstdDictionary dictionary = registry.train(CONTEXT, samples);
+            assertEquals(dictionary.getVersion(), 1);
+
+            byte[] compressed = codec.compress(CONTEXT, state);
+            assertNotNull(compressed);
+            assertTrue(compressed.length * 2 < state.length, "compressed " + state.length + " bytes to " + compressed.length);
+            assertTrue(codec.isCompressed(compressed));
+            assertEquals(codec.decompress(compressed), state);
+            // other contexts don't use the dictionary
+            byte[] otherContext = codec.compress("other", state);
+            assertTrue(otherContext == null || otherContext.length > compressed.length);
+        }
+    }
+
+    @Test
+    public void testDictionariesAreReloadedAndVersioned() throws IOException {
+        Random random = new Random(7);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            samples.add(orderState(random));
+        }
+        byte[] state = orderState(random);
+        byte[] compressed;
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024)) {
+            registry.train(CONTEXT, samples);
+            compressed = new ZstdCompressionCodec(registry, 3).compress(CONTEXT, state);
+            assertNotNull(compressed);
+            assertEquals(registry.train(CONTEXT, samples.subList(0, 1000)).getVersion(), 2);
+        }
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024)) {
+            assertEquals(registry.getCurrentDictionary(CONTEXT).getVersion(), 2);
+            // written with version 1, still readable
+            assertEquals(new ZstdCompressionCodec(registry, 3).decompress(compressed), state);
+        }
+    }
+
+    @Test
+    public void testOnlineTraining() throws Exception {
+        Random random = new Random(11);
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(directory, 3, 256 * 1024, 8 * 1024)) {
+            ZstdCompressionCodec codec = new ZstdCompressionCodec(registry, 3);
+            for (int i = 0; i < 5000 && registry.getCurrentDictionary(CONTEXT) == null; i++) {
+                codec.compress(CONTEXT, orderState(random));
+                if (i > 2000) {
+                    Thread.sleep(10);
+                }
+            }
+            ZstdDictionary dictionary = registry.getCurrentDictionary(CONTEXT);
+            assertNotNull(dictionary);
+            assertTrue(new File(directory, CONTEXT + "-1-" + dictionary.getId() + ".zdict").exists());
+        }
+    }
+
+    @Test
+    public void testNodesTrainingConcurrentlyKeepBothDictionaries() throws IOException {
+        Random random = new Random(5);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) {
+            samples.add(orderState(random));
+        }
+        byte[] state = orderState(random);
+        byte[] compressedByFirst;
+        byte[] compressedBySecond;
+        // two nodes sharing the directory, both train version 1 of the dictionary
+        try (ZstdDictionaryRegistry first = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024);
+             ZstdDictionaryRegistry second = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024)) {
+            ZstdDictionary firstDictionary = first.train(CONTEXT, samples.subList(0, 2000));
+            ZstdDictionary secondDictionary = second.train(CONTEXT, samples.subList(2000, 4000));
+            assertEquals(firstDictionary.getVersion(), 1);
+            assertEquals(secondDictionary.getVersion(), 1);
+            assertNotEquals(firstDictionary.getId(), secondDictionary.getId());
+            compressedByFirst = new ZstdCompressionCodec(first, 3).compress(CONTEXT, state);
+            compressedBySecond = new ZstdCompressionCodec(second, 3).compress(CONTEXT, state);
+        }
+        assertEquals(directory.listFiles((dir, name) -> name.endsWith(".zdict")).length, 2);
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024)) {
+            ZstdCompressionCodec codec = new ZstdCompressionCodec(registry, 3);
+            assertEquals(codec.decompress(compressedByFirst), state);
+            assertEquals(codec.decompress(compressedBySecond), state);
+        }
+    }
+
+    @Test
+    public void testDictionaryOfOtherNodeIsLoadedOnFirstUse() throws IOException {
+        Random random = new Random(13);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            samples.add(orderState(random));
+        }
+        byte[] state = orderState(random);
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024)) {
+            // the other node trains a dictionary after this node opened the (shared) directory
+            try (ZstdDictionaryRegistry otherNode = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024)) {
+                ZstdDictionary dictionary = otherNode.train(CONTEXT, samples);
+                byte[] compressed = new ZstdCompressionCodec(otherNode, 3).compress(CONTEXT, state);
+                assertNull(registry.getCurrentDictionary(CONTEXT));
+                assertEquals(new ZstdCompressionCodec(registry, 3).decompress(compressed), state);
+                assertEquals(registry.getCurrentDictionary(CONTEXT).getId(), dictionary.getId());
+            }
+        }
+    }
+
+    @Test
+    public void testNoDictionaryWithoutContext() throws IOException {
+        Random random = new Random(17);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            samples.add(orderState(random));
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append("{\"field\":").append(i).append('}');
+        }
+        byte[] data = builder.toString().getBytes(UTF_8);
+        byte[] compressed;
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024)) {
+            registry.train(null, samples);
+            compressed = new ZstdCompressionCodec(registry, 3).compress(null, data);
+            assertNotNull(compressed);
+        }
+        // readable without any of the dictionaries
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(null, 3, 0, 16 * 1024)) {
+            assertEquals(new ZstdCompressionCodec(registry, 3).decompress(compressed), data);
+        }
+    }
+
+    @Test
+    public void testWithoutDirectory() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append("{\"field\":").append(i).append('}');
+        }
+        byte[] data = builder.toString().getBytes(UTF_8);
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(null, 3, 0, 16 * 1024)) {
+            ZstdCompressionCodec codec = new ZstdCompressionCodec(registry, 3);
+            byte[] compressed = codec.compress(CONTEXT, data);
+            assertNotNull(compressed);
+            assertEquals(codec.decompress(compressed), data);
+            assertThrows(IllegalStateException.class, () -> registry.train(CONTEXT, Collections.singletonList(data)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> ZstdDictionaryRegistry.open(null, 3, 256 * 1024, 8 * 1024));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testUnknownDictionary() throws IOException {
+        Random random = new Random(3);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            samples.add(orderState(random));
+        }
+        byte[] compressed;
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024)) {
+            registry.train(CONTEXT, samples);
+            compressed = new ZstdCompressionCodec(registry, 3).compress(CONTEXT, orderState(random));
+        }
+        tearDown();
+        setUp();
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024)) {
+            new ZstdCompressionCodec(registry, 3).decompress(compressed);
+        }
+    }
+
+    @Test
+    public void testLz4DataStaysReadable() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append("{\"field\":").append(i).append('}');
+        }
+        byte[] data = builder.toString().getBytes(UTF_8);
+        byte[] lz4Compressed = Lz4CompressionCodec.INSTANCE.compress(null, data);
+        try (ZstdDictionaryRegistry registry = ZstdDictionaryRegistry.open(directory, 3, 0, 16 * 1024)) {
+            List<CompressionCodec> codecs = CompressionCodecs.decompressionCodecs(new ZstdCompressionCodec(registry, 3));
+            assertEquals(CompressionCodecs.decompress(codecs, lz4Compressed), data);
+            byte[] zstdCompressed = codecs.get(0).compress(null, data);
+            assertEquals(CompressionCodecs.decompress(codecs, zstdCompressed), data);
+            // uncompressed data is passed through
+            assertEquals(CompressionCodecs.decompress(codecs, data), data);
+            assertEquals(CompressionCodecs.decompress(codecs, new byte[0]), new byte[0]);
+        }
+    }
+
+    private static byte[] orderState(Random random) {
+        return String.format("{\"orderId\":\"%s\",\"customerId\":\"customer-%d\",\"status\":\"%s\",\"currency\":\"EUR\"," +
+                        "\"amount\":%d.%02d,\"createdAt\":\"2019-0%d-1%dT1%d:%d5:00Z\",\"lines\":[{\"sku\":\"SKU-%d\",\"quantity\":%d}]}",
+                new java.util.UUID(random.nextLong(), random.nextLong()), random.nextInt(100000),
+                random.nextBoolean() ? "PENDING" : "SHIPPED", random.nextInt(1000), random.nextInt(100),
+                1 + random.nextInt(9), random.nextInt(10), random.nextInt(10), random.nextInt(6),
+                random.nextInt(10000), 1 + random.nextInt(5)).getBytes(UTF_8);
+    }
+}
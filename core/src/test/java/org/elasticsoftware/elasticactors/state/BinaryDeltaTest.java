@@ -0,0 +1,75 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.state;
+
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class BinaryDeltaTest {
+    @Test
+    public void testSmallChangeInLargeDocument() {
+        StringBuilder document = new StringBuilder("{");
+        for (int i = 0; i < 5000; i++) {
+            document.append("\"field").append(i).append("\":").append(i).append(',');
+        }
+        byte[] base = document.append("\"last\":true}").toString().getBytes(UTF_8);
+        byte[] target = new String(base, UTF_8).replace("\"field2500\":2500", "\"field2500\":\"changed\"").getBytes(UTF_8);
+
+        byte[] delta = BinaryDelta.diff(base, target);
+
+        assertTrue(delta.length < 64, "delta is " + delta.length + " bytes");
+        assertEquals(BinaryDelta.apply(base, delta), target);
+    }
+
+    @Test
+    public void testRandomEdits() {
+        Random random = new Random(42);
+        for (int run = 0; run < 50; run++) {
+            byte[] base = new byte[random.nextInt(4096)];
+            random.nextBytes(base);
+            byte[] target = base.clone();
+            for (int edit = 0; edit < random.nextInt(10) && target.length > 0; edit++) {
+                int offset = random.nextInt(target.length);
+                byte[] inserted = new byte[random.nextInt(64)];
+                random.nextBytes(inserted);
+                int removed = Math.min(random.nextInt(64), target.length - offset);
+                byte[] edited = new byte[target.length - removed + inserted.length];
+                System.arraycopy(target, 0, edited, 0, offset);
+                System.arraycopy(inserted, 0, edited, offset, inserted.length);
+                System.arraycopy(target, offset + removed, edited, offset + inserted.length, target.length - offset - removed);
+                target = edited;
+            }
+
+            assertEquals(BinaryDelta.apply(base, BinaryDelta.diff(base, target)), target);
+        }
+    }
+
+    @Test
+    public void testDeltaAgainstOtherBaseIsRejected() {
+        byte[] base = "the quick brown fox jumps over the lazy dog".getBytes(UTF_8);
+        byte[] target = "the quick brown cat jumps over the lazy dog".getBytes(UTF_8);
+        byte[] delta = BinaryDelta.diff(base, target);
+
+        assertNull(BinaryDelta.apply("something else entirely".getBytes(UTF_8), delta));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.state;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.messaging.InternalMessage;
+import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
+import org.elasticsoftware.elasticactors.serialization.Deserializer;
+import org.elasticsoftware.elasticactors.serialization.Serializer;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class OffHeapCachingPersistentActorRepositoryTest {
+    private final ShardKey shardKey = new ShardKey("test", 0);
+    private PersistentActorRepository delegate;
+    private OffHeapCachingPersistentActorRepository repository;
+    private PersistentActor<ShardKey> persistentActor;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        delegate = mock(PersistentActorRepository.class);
+        Serializer<PersistentActor<ShardKey>,byte[]> serializer = mock(Serializer.class);
+        when(serializer.serialize(any())).thenReturn(new byte[] {1, 2, 3});
+        repository = new OffHeapCachingPersistentActorRepository(delegate, serializer, mock(Deserializer.class), 1024L * 1024L);
+        ActorRef ref = mock(ActorRef.class);
+        when(ref.getActorId()).thenReturn("actor");
+        persistentActor = new PersistentActor<>(shardKey, null, "1.0", ref, null, null);
+    }
+
+    @Test
+    public void testFailedWriteIsNotCached() throws IOException {
+        MessageHandlerEventListener listener = mock(MessageHandlerEventListener.class);
+        InternalMessage message = mock(InternalMessage.class);
+        repository.updateAsync(shardKey, persistentActor, message, listener);
+
+        ArgumentCaptor<MessageHandlerEventListener> captor = ArgumentCaptor.forClass(MessageHandlerEventListener.class);
+        verify(delegate).updateAsync(eq(shardKey), eq(persistentActor), eq(message), captor.capture());
+        IOException exception = new IOException("write failed");
+        captor.getValue().onError(message, exception);
+
+        assertFalse(repository.getCache().contains(shardKey, "actor"));
+        verify(listener).onError(message, exception);
+    }
+
+    @Test
+    public void testSuccessfulWriteIsCached() throws IOException {
+        MessageHandlerEventListener listener = mock(MessageHandlerEventListener.class);
+        InternalMessage message = mock(InternalMessage.class);
+        repository.updateAsync(shardKey, persistentActor, message, listener);
+
+        ArgumentCaptor<MessageHandlerEventListener> captor = ArgumentCaptor.forClass(MessageHandlerEventListener.class);
+        verify(delegate).updateAsync(eq(shardKey), eq(persistentActor), eq(message), captor.capture());
+        captor.getValue().onDone(message);
+
+        assertTrue(repository.getCache().contains(shardKey, "actor"));
+        verify(listener).onDone(message);
+    }
+
+    @Test
+    public void testReleasedShardIsNotCached() throws IOException {
+        repository.release(shardKey);
+        // a flush task of the released shard that still runs
+        repository.update(shardKey, persistentActor);
+        assertFalse(repository.getCache().contains(shardKey, "actor"));
+
+        repository.acquire(shardKey);
+        repository.update(shardKey, persistentActor);
+        assertTrue(repository.getCache().contains(shardKey, "actor"));
+    }
+
+    @Test
+    public void testLoadStartedBeforeReleaseIsNotCached() throws Exception {
+        CompletableFuture<PersistentActor<ShardKey>> load = new CompletableFuture<>();
+        when(delegate.getAsync(shardKey, "actor")).thenReturn(load);
+        CompletableFuture<PersistentActor<ShardKey>> result = repository.getAsync(shardKey, "actor");
+
+        repository.release(shardKey);
+        repository.acquire(shardKey);
+        load.complete(persistentActor);
+
+        assertSame(result.get(), persistentActor);
+        assertFalse(repository.getCache().contains(shardKey, "actor"));
+    }
+}
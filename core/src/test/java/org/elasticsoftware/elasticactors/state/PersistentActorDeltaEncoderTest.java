@@ -0,0 +1,113 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.state;
+
+import org.elasticsoftware.elasticactors.ActorRef;
+import org.elasticsoftware.elasticactors.ShardKey;
+import org.elasticsoftware.elasticactors.serialization.Deserializer;
+import org.elasticsoftware.elasticactors.serialization.Serializer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class PersistentActorDeltaEncoderTest {
+    private final ShardKey shardKey = new ShardKey("test", 0);
+    private PersistentActor<ShardKey> persistentActor;
+    private Serializer<PersistentActor<ShardKey>, byte[]> serializer;
+    private Deserializer<byte[], PersistentActor<ShardKey>> deserializer;
+
+    @BeforeMethod
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        ActorRef ref = mock(ActorRef.class);
+        when(ref.getActorId()).thenReturn("actor");
+        persistentActor = new PersistentActor<>(shardKey, null, null, ref, null, null);
+        serializer = mock(Serializer.class);
+        deserializer = mock(Deserializer.class);
+    }
+
+    @Test
+    public void testDeltasUntilMaximumIsReached() throws Exception {
+        PersistentActorDeltaEncoder encoder = new PersistentActorDeltaEncoder(serializer, deserializer, 2, 0.5d, 1024 * 1024);
+        byte[] state = state(0);
+        when(serializer.serialize(persistentActor)).thenReturn(state, state(1), state(2), state(3));
+
+        PersistentActorDeltaEncoder.Update first = encoder.encode(shardKey, persistentActor);
+        PersistentActorDeltaEncoder.Update second = encoder.encode(shardKey, persistentActor);
+        PersistentActorDeltaEncoder.Update third = encoder.encode(shardKey, persistentActor);
+        PersistentActorDeltaEncoder.Update fourth = encoder.encode(shardKey, persistentActor);
+
+        assertTrue(first.isSnapshot());
+        assertFalse(second.isSnapshot());
+        assertTrue(second.getBytes().length < state.length / 10);
+        // deltas are against the snapshot, not against each other
+        assertEquals(BinaryDelta.apply(state, third.getBytes()), state(2));
+        assertTrue(fourth.isSnapshot());
+        assertEquals(fourth.getBytes(), state(3));
+    }
+
+    @Test
+    public void testLargeDeltaResultsInSnapshot() throws Exception {
+        PersistentActorDeltaEncoder encoder = new PersistentActorDeltaEncoder(serializer, deserializer, 100, 0.5d, 1024 * 1024);
+        byte[] completelyDifferent = new byte[1000];
+        Arrays.fill(completelyDifferent, (byte) 'x');
+        when(serializer.serialize(persistentActor)).thenReturn(state(0), completelyDifferent);
+
+        encoder.encode(shardKey, persistentActor);
+
+        assertTrue(encoder.encode(shardKey, persistentActor).isSnapshot());
+    }
+
+    @Test
+    public void testDecodeAppliesDeltaAndPrimesSnapshot() throws Exception {
+        PersistentActorDeltaEncoder encoder = new PersistentActorDeltaEncoder(serializer, deserializer, 100, 0.5d, 1024 * 1024);
+        byte[] delta = BinaryDelta.diff(state(0), state(1));
+
+        encoder.decode(shardKey, "actor", state(0), delta);
+
+        verify(deserializer).deserialize(state(1));
+        // the snapshot is known now, so the next update can be a delta
+        when(serializer.serialize(persistentActor)).thenReturn(state(2));
+        assertFalse(encoder.encode(shardKey, persistentActor).isSnapshot());
+    }
+
+    @Test
+    public void testDeltaOfOtherSnapshotIsIgnored() throws Exception {
+        PersistentActorDeltaEncoder encoder = new PersistentActorDeltaEncoder(serializer, deserializer, 100, 0.5d, 1024 * 1024);
+        byte[] delta = BinaryDelta.diff(state(0), state(1));
+
+        encoder.decode(shardKey, "actor", state(2), delta);
+
+        verify(deserializer).deserialize(state(2));
+    }
+
+    private static byte[] state(int version) {
+        StringBuilder document = new StringBuilder("{\"version\":").append(version);
+        for (int i = 0; i < 100; i++) {
+            document.append(",\"field").append(i).append("\":\"value").append(i).append('"');
+        }
+        return document.append('}').toString().getBytes();
+    }
+}
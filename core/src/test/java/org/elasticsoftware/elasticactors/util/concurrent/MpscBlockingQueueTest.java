@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class MpscBlockingQueueTest {
+    @Test
+    public void testOrderingPerProducer() throws Exception {
+        final int producers = 4;
+        final int elementsPerProducer = 100000;
+        // small segments to make sure we cross a lot of segment boundaries
+        final MpscBlockingQueue<int[]> queue = new MpscBlockingQueue<>(16);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < elementsPerProducer; i++) {
+                    queue.offer(new int[] {producer, i});
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        startLatch.countDown();
+        final int[] expected = new int[producers];
+        final List<int[]> batch = new ArrayList<>();
+        int received = 0;
+        while (received < producers * elementsPerProducer) {
+            int[] element = queue.poll(5, TimeUnit.SECONDS);
+            assertTrue(element != null, "timeout while waiting for elements");
+            batch.add(element);
+            queue.drainTo(batch, 19);
+            for (int[] next : batch) {
+                assertEquals(next[1], expected[next[0]]++);
+            }
+            received += batch.size();
+            batch.clear();
+        }
+        assertEquals(queue.size(), 0);
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testIterator() {
+        final MpscBlockingQueue<Integer> queue = new MpscBlockingQueue<>(4);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(i);
+        }
+        // consume into the second segment
+        for (int i = 0; i < 5; i++) {
+            queue.poll();
+        }
+        List<Integer> remaining = new ArrayList<>();
+        queue.iterator().forEachRemaining(remaining::add);
+        assertEquals(remaining, Arrays.asList(5, 6, 7, 8, 9));
+        assertTrue(queue.contains(7));
+        assertFalse(queue.contains(3));
+        assertEquals(queue.toString(), "[5, 6, 7, 8, 9]");
+        expectThrows(UnsupportedOperationException.class, () -> queue.remove(Integer.valueOf(7)));
+        queue.drainTo(new ArrayList<>());
+        assertFalse(queue.iterator().hasNext());
+    }
+
+    @Test
+    public void testTakeWakesUpParkedConsumer() throws Exception {
+        final MpscBlockingQueue<String> queue = new MpscBlockingQueue<>();
+        final CountDownLatch takenLatch = new CountDownLatch(1);
+        Thread consumer = new Thread(() -> {
+            try {
+                if ("wake up".equals(queue.take())) {
+                    takenLatch.countDown();
+                }
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        });
+        consumer.setDaemon(true);
+        consumer.start();
+        // give the consumer enough time to get parked
+        Thread.sleep(100);
+        queue.offer("wake up");
+        assertTrue(takenLatch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPollTimeout() throws Exception {
+        final MpscBlockingQueue<String> queue = new MpscBlockingQueue<>();
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        queue.offer("one");
+        queue.offer("two");
+        assertEquals(queue.size(), 2);
+        assertEquals(queue.peek(), "one");
+        assertEquals(queue.poll(10, TimeUnit.MILLISECONDS), "one");
+        assertEquals(queue.take(), "two");
+        assertEquals(queue.size(), 0);
+    }
+
+    @Test
+    public void testExecutorWithMpscQueue() throws Exception {
+        final int events = 10000;
+        final List<Integer> results = new ArrayList<>();
+        final CountDownLatch doneLatch = new CountDownLatch(events);
+        ThreadBoundExecutor executor = new ThreadBoundExecutorImpl(new ThreadBoundRunnableEventProcessor(), 10,
+                new DaemonThreadFactory("TEST-WORKER"), 2, 0, OverflowPolicy.BLOCK, MpscBlockingQueue::new);
+        try {
+            for (int i = 0; i < events; i++) {
+                final int sequence = i;
+                executor.execute(new ThreadBoundRunnable<String>() {
+                    @Override
+                    public String getKey() {
+                        return "key";
+                    }
+
+                    @Override
+                    public void run() {
+                        results.add(sequence);
+                        doneLatch.countDown();
+                    }
+                });
+            }
+            assertTrue(doneLatch.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < events; i++) {
+            assertEquals(results.get(i).intValue(), i);
+        }
+    }
+}
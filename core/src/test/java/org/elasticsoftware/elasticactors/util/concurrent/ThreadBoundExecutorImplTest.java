@@ -0,0 +1,199 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.elasticsoftware.elasticactors.util.concurrent;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+public class ThreadBoundExecutorImplTest {
+    @Test
+    public void testRejectWhenAtCapacity() throws Exception {
+        ThreadBoundExecutor executor = new ThreadBoundExecutorImpl(new DaemonThreadFactory("TEST-WORKER"), 1, 2, OverflowPolicy.REJECT);
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        try {
+            // occupy the worker thread
+            executor.execute(new TestRunnable("key", () -> {
+                startedLatch.countDown();
+                awaitQuietly(blockLatch);
+            }));
+            assertTrue(startedLatch.await(5, TimeUnit.SECONDS));
+            executor.execute(new TestRunnable("key", () -> {}));
+            executor.execute(new TestRunnable("key", () -> {}));
+            assertEquals(executor.getQueueDepth("key"), 2);
+            assertEquals(executor.getQueueCapacity(), 2);
+            try {
+                executor.execute(new TestRunnable("key", () -> {}));
+                fail("Expected a QueueOverflowException");
+            } catch(QueueOverflowException e) {
+                assertTrue(e.isRecoverable());
+            }
+            // exempt events are always accepted
+            executor.execute(new ExemptTestRunnable("key"));
+            assertEquals(executor.getQueueDepth("key"), 3);
+        } finally {
+            blockLatch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSpillWhenAtCapacity() throws Exception {
+        ThreadBoundExecutor executor = new ThreadBoundExecutorImpl(new DaemonThreadFactory("TEST-WORKER"), 1, 1, OverflowPolicy.SPILL);
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        AtomicInteger spilled = new AtomicInteger(0);
+        try {
+            executor.execute(new TestRunnable("key", () -> {
+                startedLatch.countDown();
+                awaitQuietly(blockLatch);
+            }));
+            assertTrue(startedLatch.await(5, TimeUnit.SECONDS));
+            executor.execute(new SpillableTestRunnable("key", spilled));
+            executor.execute(new SpillableTestRunnable("key", spilled));
+            assertEquals(spilled.get(), 1);
+            assertEquals(executor.getQueueDepth("key"), 1);
+        } finally {
+            blockLatch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testBlockWhenAtCapacity() throws Exception {
+        ThreadBoundExecutor executor = new ThreadBoundExecutorImpl(new DaemonThreadFactory("TEST-WORKER"), 1, 1, OverflowPolicy.BLOCK);
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(3);
+        try {
+            executor.execute(new TestRunnable("key", () -> {
+                awaitQuietly(blockLatch);
+                doneLatch.countDown();
+            }));
+            executor.execute(new TestRunnable("key", doneLatch::countDown));
+            Thread producer = new Thread(() -> executor.execute(new TestRunnable("key", doneLatch::countDown)));
+            producer.start();
+            producer.join(100);
+            // the producer should be waiting (not spinning) for the queue to drain
+            assertTrue(producer.isAlive());
+            assertEquals(producer.getState(), Thread.State.TIMED_WAITING);
+            blockLatch.countDown();
+            assertTrue(doneLatch.await(5, TimeUnit.SECONDS));
+            producer.join(1000);
+            assertFalse(producer.isAlive());
+        } finally {
+            blockLatch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPriorityEventsGoFirst() throws Exception {
+        ThreadBoundExecutor executor = new ThreadBoundExecutorImpl(new DaemonThreadFactory("TEST-WORKER"), 1);
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(4);
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        try {
+            // occupy the worker thread
+            executor.execute(new TestRunnable("key", () -> {
+                startedLatch.countDown();
+                awaitQuietly(blockLatch);
+            }));
+            assertTrue(startedLatch.await(5, TimeUnit.SECONDS));
+            executor.execute(new TestRunnable("key", () -> { executed.add("normal-1"); doneLatch.countDown(); }));
+            executor.execute(new TestRunnable("key", () -> { executed.add("normal-2"); doneLatch.countDown(); }));
+            executor.execute(new PriorityTestRunnable("key", () -> { executed.add("priority-1"); doneLatch.countDown(); }));
+            executor.execute(new PriorityTestRunnable("key", () -> { executed.add("priority-2"); doneLatch.countDown(); }));
+            blockLatch.countDown();
+            assertTrue(doneLatch.await(5, TimeUnit.SECONDS));
+            assertEquals(executed, Arrays.asList("priority-1", "priority-2", "normal-1", "normal-2"));
+        } finally {
+            blockLatch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+
+    private static class TestRunnable implements ThreadBoundRunnable<String> {
+        private final String key;
+        private final Runnable delegate;
+
+        private TestRunnable(String key, Runnable delegate) {
+            this.key = key;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
+
+    private static final class PriorityTestRunnable extends TestRunnable implements PrioritizedEvent {
+        private PriorityTestRunnable(String key, Runnable delegate) {
+            super(key, delegate);
+        }
+
+        @Override
+        public boolean isPriority() {
+            return true;
+        }
+    }
+
+    private static final class ExemptTestRunnable extends TestRunnable implements CapacityExemptEvent {
+        private ExemptTestRunnable(String key) {
+            super(key, () -> {});
+        }
+    }
+
+    private static final class SpillableTestRunnable extends TestRunnable implements SpillableEvent<String> {
+        private final AtomicInteger spilled;
+
+        private SpillableTestRunnable(String key, AtomicInteger spilled) {
+            super(key, () -> {});
+            this.spilled = spilled;
+        }
+
+        @Override
+        public boolean spill() {
+            spilled.incrementAndGet();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent.disruptor;
+
+import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.OverflowPolicy;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ThreadBoundExecutorImplTest {
+    @Test
+    public void testBatchesAreCappedAtMaxBatchSize() throws Exception {
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(6);
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        ThreadBoundEventProcessor<TestEvent> processor = new ThreadBoundEventProcessor<TestEvent>() {
+            @Override
+            public void process(List<TestEvent> events) {
+                batchSizes.add(events.size());
+                if (batchSizes.size() == 1) {
+                    awaitQuietly(blockLatch);
+                }
+                events.forEach(event -> doneLatch.countDown());
+            }
+
+            @Override
+            public void process(TestEvent... events) {
+                process(Arrays.asList(events));
+            }
+        };
+        ThreadBoundExecutor executor = new ThreadBoundExecutorImpl(processor, 2, 16, new DaemonThreadFactory("TEST-WORKER"), 1, OverflowPolicy.BLOCK);
+        try {
+            executor.execute(new TestEvent());
+            // the worker is blocked on the first event while the others become available
+            for (int i = 0; i < 5; i++) {
+                executor.execute(new TestEvent());
+            }
+            blockLatch.countDown();
+            assertTrue(doneLatch.await(5, TimeUnit.SECONDS));
+        } finally {
+            blockLatch.countDown();
+            executor.shutdown();
+        }
+        assertEquals(batchSizes.stream().mapToInt(Integer::intValue).sum(), 6);
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 2), batchSizes.toString());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBufferSizeMustBePowerOfTwo() {
+        new ThreadBoundExecutorImpl(new TestProcessor(), 1, 1000, new DaemonThreadFactory("TEST-WORKER"), 1, OverflowPolicy.BLOCK);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class TestEvent implements ThreadBoundEvent<Integer> {
+        @Override
+        public Integer getKey() {
+            return 0;
+        }
+    }
+
+    private static final class TestProcessor implements ThreadBoundEventProcessor<TestEvent> {
+        @Override
+        public void process(List<TestEvent> events) {
+        }
+
+        @Override
+        public void process(TestEvent... events) {
+        }
+    }
+}
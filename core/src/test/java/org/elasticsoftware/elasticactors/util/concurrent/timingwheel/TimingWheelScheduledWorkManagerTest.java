@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent.timingwheel;
+
+import org.elasticsoftware.elasticactors.util.concurrent.WorkExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.WorkExecutorFactory;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TimingWheelScheduledWorkManagerTest {
+    private ExecutorService executor;
+    private BlockingQueue<Work> executed;
+    private TimingWheelScheduledWorkManager<String,Work> workManager;
+
+    @BeforeMethod
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        executed = new LinkedBlockingQueue<>();
+        WorkExecutorFactory<WorkExecutor<String,Work>> factory = () -> (shard, work) -> executed.add(work);
+        workManager = new TimingWheelScheduledWorkManager<>(executor, factory, 2);
+        workManager.init();
+        workManager.registerShard("shard-1");
+        workManager.registerShard("shard-2");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        workManager.destroy();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testExecutesInOrder() throws Exception {
+        Work late = new Work("late", 200);
+        Work early = new Work("early", 50);
+        workManager.schedule("shard-1", late);
+        workManager.schedule("shard-1", early);
+        assertEquals(workManager.getSize(), 2);
+        Work first = executed.poll(5, TimeUnit.SECONDS);
+        Work second = executed.poll(5, TimeUnit.SECONDS);
+        assertEquals(first, early);
+        assertEquals(second, late);
+        assertTrue(System.currentTimeMillis() >= late.fireTime);
+        assertEquals(workManager.getSize(), 0);
+    }
+
+    @Test
+    public void testEarlierWorkWakesUpWorker() throws Exception {
+        workManager.schedule("shard-1", new Work("far", TimeUnit.MINUTES.toMillis(10)));
+        Work soon = new Work("soon", 10);
+        workManager.schedule("shard-1", soon);
+        assertEquals(executed.poll(5, TimeUnit.SECONDS), soon);
+    }
+
+    @Test
+    public void testUnscheduleUsesEquals() throws Exception {
+        Work work = new Work("cancel-me", 100);
+        workManager.schedule("shard-2", work);
+        workManager.unschedule("shard-2", new Work("cancel-me", 0));
+        assertEquals(workManager.getSize(), 0);
+        assertNull(executed.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testUnregisterShardDropsWork() throws Exception {
+        workManager.schedule("shard-1", new Work("dropped", 100));
+        workManager.unregisterShard("shard-1");
+        assertEquals(workManager.getSize(), 0);
+        assertNull(executed.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expectedExceptions = RejectedExecutionException.class)
+    public void testScheduleOnUnknownShard() {
+        workManager.schedule("unknown", new Work("rejected", 0));
+    }
+
+    private static final class Work implements Delayed {
+        private final String id;
+        private final long fireTime;
+
+        private Work(String id, long delayMillis) {
+            this.id = id;
+            this.fireTime = System.currentTimeMillis() + delayMillis;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(fireTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Work && id.equals(((Work) o).id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+}
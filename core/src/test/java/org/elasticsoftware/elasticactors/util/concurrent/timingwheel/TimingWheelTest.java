@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent.timingwheel;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TimingWheelTest {
+    @Test
+    public void testExpiresOnTick() {
+        TimingWheel<Long> wheel = new TimingWheel<>(4, 0L);
+        wheel.add(5L, 5L);
+        wheel.add(3L, 3L);
+        List<Long> expired = new ArrayList<>();
+        wheel.advance(4L, expired::add);
+        assertEquals(expired.size(), 1);
+        assertEquals(expired.get(0).longValue(), 3L);
+        wheel.advance(5L, expired::add);
+        assertEquals(expired.size(), 2);
+        assertEquals(wheel.size(), 0);
+    }
+
+    @Test
+    public void testTickInThePastExpiresOnNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(4, 100L);
+        wheel.add("late", 10L);
+        assertEquals(wheel.nextTick(), 101L);
+        List<String> expired = new ArrayList<>();
+        wheel.advance(101L, expired::add);
+        assertEquals(expired.size(), 1);
+    }
+
+    @Test
+    public void testRemove() {
+        TimingWheel<Long> wheel = new TimingWheel<>(4, 0L);
+        TimingWheel.Node<Long> node = wheel.add(1000L, 1000L);
+        wheel.add(2000L, 2000L);
+        wheel.remove(node);
+        // removing twice is a no-op
+        wheel.remove(node);
+        assertEquals(wheel.size(), 1);
+        List<Long> expired = new ArrayList<>();
+        wheel.advance(3000L, expired::add);
+        assertEquals(expired.size(), 1);
+        assertEquals(expired.get(0).longValue(), 2000L);
+    }
+
+    @Test
+    public void testCascadesInOrder() {
+        final long start = 123456789L;
+        TimingWheel<Long> wheel = new TimingWheel<>(3, start);
+        Random random = new Random(42);
+        List<Long> ticks = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            long tick = start + 1 + (long) (random.nextDouble() * (1L << (random.nextInt(30) + 1)));
+            ticks.add(tick);
+            wheel.add(tick, tick);
+        }
+        long previous = start;
+        int count = 0;
+        while (wheel.size() > 0) {
+            long nextTick = wheel.nextTick();
+            assertTrue(nextTick > wheel.getCurrentTick());
+            final long now = nextTick;
+            final List<Long> expired = new ArrayList<>();
+            wheel.advance(now, expired::add);
+            for (Long tick : expired) {
+                // never early, never late and in order
+                assertEquals(tick.longValue(), now);
+                assertTrue(tick >= previous);
+                previous = tick;
+                count++;
+            }
+        }
+        assertEquals(count, ticks.size());
+        assertEquals(wheel.nextTick(), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testAdvanceOverLargeGap() {
+        TimingWheel<Long> wheel = new TimingWheel<>(8, 0L);
+        wheel.add(Long.MAX_VALUE / 2, Long.MAX_VALUE / 2);
+        List<Long> expired = new ArrayList<>();
+        wheel.advance(Long.MAX_VALUE / 2 - 1, expired::add);
+        assertTrue(expired.isEmpty());
+        wheel.advance(Long.MAX_VALUE / 2, expired::add);
+        assertEquals(expired.size(), 1);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.util.concurrent.virtual;
+
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class ThreadBoundExecutorImplTest {
+    @Test
+    public void testSupportedOnTheMultiReleaseJar() {
+        // set by the surefire execution that runs against the packaged jar on Java 21
+        if (!Boolean.getBoolean("ea.test.multiReleaseJar")) {
+            throw new SkipException("Not running against the multi-release jar");
+        }
+        assertTrue(ThreadBoundExecutorImpl.isSupported());
+    }
+
+    @Test
+    public void testUnsupportedJavaVersion() {
+        if (ThreadBoundExecutorImpl.isSupported()) {
+            throw new SkipException("Virtual threads are supported");
+        }
+        expectThrows(IllegalStateException.class, () -> new ThreadBoundExecutorImpl("TEST-WORKER"));
+    }
+
+    @Test
+    public void testOrderingPerKey() throws Exception {
+        if (!ThreadBoundExecutorImpl.isSupported()) {
+            throw new SkipException("Virtual threads require Java 21 or higher and the multi-release jar");
+        }
+        final int keys = 16;
+        final int eventsPerKey = 10000;
+        ThreadBoundExecutor executor = new ThreadBoundExecutorImpl("TEST-WORKER");
+        final List<List<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            results.add(new ArrayList<>());
+        }
+        CountDownLatch doneLatch = new CountDownLatch(keys * eventsPerKey);
+        try {
+            for (int i = 0; i < eventsPerKey; i++) {
+                for (int key = 0; key < keys; key++) {
+                    final int sequence = i;
+                    final List<Integer> result = results.get(key);
+                    executor.execute(new TestRunnable(key, () -> {
+                        result.add(sequence);
+                        doneLatch.countDown();
+                    }));
+                }
+            }
+            assertTrue(doneLatch.await(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        for (List<Integer> result : results) {
+            assertEquals(result.size(), eventsPerKey);
+            for (int i = 0; i < eventsPerKey; i++) {
+                assertEquals(result.get(i).intValue(), i);
+            }
+        }
+        // drained mailboxes are removed
+        assertEquals(executor.getQueueDepth(0), 0);
+    }
+
+    private static final class TestRunnable implements ThreadBoundRunnable<Integer> {
+        private final Integer key;
+        private final Runnable delegate;
+
+        private TestRunnable(Integer key, Runnable delegate) {
+            this.key = key;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Integer getKey() {
+            return key;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
+}
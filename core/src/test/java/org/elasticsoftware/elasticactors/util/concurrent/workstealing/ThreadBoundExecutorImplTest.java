@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.elasticsoftware.elasticactors.util.concurrent.workstealing;
+
+import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ThreadBoundExecutorImplTest {
+    @Test
+    public void testIdleWorkerStealsKeyGroup() throws Exception {
+        // 2 workers with 4 key groups each: integer keys 0 and 2 end up in different groups on the same home worker
+        ThreadBoundExecutor executor = new ThreadBoundExecutorImpl(new DaemonThreadFactory("TEST-WORKER"), 2, 4);
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        CountDownLatch stolenLatch = new CountDownLatch(1);
+        try {
+            executor.execute(new TestRunnable(0, () -> {
+                startedLatch.countDown();
+                awaitQuietly(blockLatch);
+            }));
+            assertTrue(startedLatch.await(5, TimeUnit.SECONDS));
+            executor.execute(new TestRunnable(2, stolenLatch::countDown));
+            // key 2 should not have to wait for key 0
+            assertTrue(stolenLatch.await(5, TimeUnit.SECONDS));
+        } finally {
+            blockLatch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testOrderingPerKey() throws Exception {
+        final int keys = 16;
+        final int eventsPerKey = 10000;
+        ThreadBoundExecutor executor = new ThreadBoundExecutorImpl(new DaemonThreadFactory("TEST-WORKER"), 4, 2);
+        final List<List<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            results.add(new ArrayList<>());
+        }
+        CountDownLatch doneLatch = new CountDownLatch(keys * eventsPerKey);
+        try {
+            for (int i = 0; i < eventsPerKey; i++) {
+                for (int key = 0; key < keys; key++) {
+                    final int sequence = i;
+                    final List<Integer> result = results.get(key);
+                    executor.execute(new TestRunnable(key, () -> {
+                        result.add(sequence);
+                        doneLatch.countDown();
+                    }));
+                }
+            }
+            assertTrue(doneLatch.await(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        for (List<Integer> result : results) {
+            assertEquals(result.size(), eventsPerKey);
+            for (int i = 0; i < eventsPerKey; i++) {
+                assertEquals(result.get(i).intValue(), i);
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+    }
+
+    private static final class TestRunnable implements ThreadBoundRunnable<Integer> {
+        private final Integer key;
+        private final Runnable delegate;
+
+        private TestRunnable(Integer key, Runnable delegate) {
+            this.key = key;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Integer getKey() {
+            return key;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
+}
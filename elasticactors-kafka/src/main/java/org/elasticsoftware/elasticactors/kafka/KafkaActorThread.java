@@ -3,7 +3,6 @@ package org.elasticsoftware.elasticactors.kafka;
 import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.TreeMultimap;
 import org.apache.kafka.clients.CommonClientConfigs;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
@@ -27,6 +26,7 @@ import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessage;
 import org.elasticsoftware.elasticactors.kafka.cluster.ActorLifecycleFunction;
 import org.elasticsoftware.elasticactors.kafka.cluster.ApplicationProtocol;
 import org.elasticsoftware.elasticactors.kafka.cluster.ReactiveStreamsProtocol;
+import org.elasticsoftware.elasticactors.kafka.scheduler.ScheduledMessageIndex;
 import org.elasticsoftware.elasticactors.kafka.serialization.*;
 import org.elasticsoftware.elasticactors.kafka.state.ChronicleMapPersistentActorStore;
 import org.elasticsoftware.elasticactors.kafka.state.InMemoryPersistentActorStore;
@@ -93,6 +93,8 @@ public final class KafkaActorThread extends Thread {
             logger.error("Exception while sending message to KafkaProducer", exception);
         }};
     private KafkaActorSystemState state = KafkaActorSystemState.INITIALIZING;
+    // lower bound for the earliest fire time of the ScheduledMessages of the local shards
+    private long nextScheduledMessageFireTime = Long.MAX_VALUE;
 
     private enum KafkaActorSystemState {
         INITIALIZING, ACTIVE, REBALANCING
@@ -341,10 +343,10 @@ public final class KafkaActorThread extends Thread {
                     ManagedActorShard managedActorShard = this.localShards.get(new ShardKey(internalActorSystem.getName(), topicPartition.partition()));
                     if (managedActorShard != null) {
                         if (consumerRecord.value() != null) {
-                            managedActorShard.scheduledMessages.put(consumerRecord.value().getFireTime(TimeUnit.MILLISECONDS), consumerRecord.value());
+                            managedActorShard.addScheduledMessage(consumerRecord.value());
                         } else {
-                            // for removed scheduledmessages we only have the id, we will have to search
-                            managedActorShard.scheduledMessages.entries().removeIf(entry -> entry.getValue().getId().equals(consumerRecord.key()));
+                            // for removed scheduledmessages we only have the id
+                            managedActorShard.scheduledMessages.remove(consumerRecord.key());
                         }
                     }
                 }));
@@ -360,10 +362,15 @@ public final class KafkaActorThread extends Thread {
     }
 
     private void maybeFireScheduledMessages() {
+        final long now = System.currentTimeMillis();
+        // only look at the shards when the earliest message is due
+        if (nextScheduledMessageFireTime >= now) {
+            return;
+        }
         // @todo: this needs proper error handling
         // now see if we need to fire a message
         List<ScheduledMessage> messagesToFire = this.localShards.values().stream()
-                .map(managedActorShard -> managedActorShard.getScheduledMessagesThatShouldFire(System.currentTimeMillis()))
+                .map(managedActorShard -> managedActorShard.getScheduledMessagesThatShouldFire(now))
                 .flatMap(List::stream).collect(Collectors.toList());
         if(!messagesToFire.isEmpty()) {
             // fire them all within a producer transaction
@@ -388,7 +395,7 @@ public final class KafkaActorThread extends Thread {
                 // now we need to remove them from the managedActorShards as well
                 messagesToFire.forEach(scheduledMessage -> {
                     ShardKey sourceKey = ((ActorShard) ((ActorContainerRef) scheduledMessage.getSender()).getActorContainer()).getKey();
-                    this.localShards.get(sourceKey).scheduledMessages.remove(scheduledMessage.getFireTime(TimeUnit.MILLISECONDS), scheduledMessage);
+                    this.localShards.get(sourceKey).scheduledMessages.remove(scheduledMessage.getId());
                 });
             } catch(RetriableException e) {
                 logger.warn("Recoverable exception while sending ScheduledMessages", e);
@@ -402,6 +409,10 @@ public final class KafkaActorThread extends Thread {
                 logger.error("Unexpected exception while processing ScheduledMessages", t);
             }
         }
+        // messages that were not sent stay in place and will be retried on the next iteration
+        nextScheduledMessageFireTime = this.localShards.values().stream()
+                .mapToLong(managedActorShard -> managedActorShard.scheduledMessages.getEarliestFireTime())
+                .min().orElse(Long.MAX_VALUE);
     }
 
     void send(ShardKey shard, InternalMessage internalMessage) {
@@ -712,13 +723,10 @@ public final class KafkaActorThread extends Thread {
                 scheduleMessageRecords.iterator().forEachRemaining(consumerRecord -> {
                     // value can be null if the scheduled message was deleted
                     if(consumerRecord.value() != null) {
-                        partitionsToShards.get(consumerRecord.partition())
-                                .scheduledMessages.put(consumerRecord.value().getFireTime(TimeUnit.MILLISECONDS),
-                                consumerRecord.value());
+                        partitionsToShards.get(consumerRecord.partition()).addScheduledMessage(consumerRecord.value());
                     } else {
                         // could be that we need to remove one that was already added
-                        partitionsToShards.get(consumerRecord.partition()).scheduledMessages.entries()
-                                .removeIf(entry -> entry.getValue().getId().equals(consumerRecord.key()));
+                        partitionsToShards.get(consumerRecord.partition()).scheduledMessages.remove(consumerRecord.key());
                     }
                     // see if we still have seen (at least) everything for this partition
                     Long endOffset = endOffsets.get(consumerRecord.partition());
@@ -1095,14 +1103,14 @@ public final class KafkaActorThread extends Thread {
         private final KafkaActorShard actorShard;
         private final Cache<ActorRef,PersistentActor<ShardKey>> actorCache;
         private final PersistentActorStore actorStore;
-        private final TreeMultimap<Long, ScheduledMessage> scheduledMessages;
+        private final ScheduledMessageIndex scheduledMessages;
 
         public ManagedActorShard(KafkaActorShard actorShard,
                                  PersistentActorStore actorStore) {
             this.actorShard = actorShard;
             this.actorCache = shardActorCacheManager.create(actorShard.getKey(), this);
             this.actorStore = actorStore;
-            this.scheduledMessages = TreeMultimap.create(Comparator.naturalOrder(), Comparator.naturalOrder());
+            this.scheduledMessages = new ScheduledMessageIndex();
         }
 
         public ShardKey getKey() {
@@ -1148,10 +1156,14 @@ public final class KafkaActorThread extends Thread {
             return actorStore.containsKey(actorRef.getActorId());
         }
 
+        public void addScheduledMessage(ScheduledMessage scheduledMessage) {
+            this.scheduledMessages.put(scheduledMessage);
+            // keep track of the earliest fire time over all shards
+            nextScheduledMessageFireTime = Math.min(nextScheduledMessageFireTime, scheduledMessage.getFireTime(TimeUnit.MILLISECONDS));
+        }
+
         public List<ScheduledMessage> getScheduledMessagesThatShouldFire(long now) {
-            return this.scheduledMessages.values().stream()
-                    .filter(scheduledMessage -> scheduledMessage.getFireTime(TimeUnit.MILLISECONDS) < now)
-                    .collect(Collectors.toList());
+            return this.scheduledMessages.getMessagesThatShouldFire(now);
         }
 
         @Override
@@ -31,6 +31,11 @@ import org.elasticsoftware.elasticactors.scheduler.ScheduledMessageRef;
 import org.elasticsoftware.elasticactors.serialization.Deserializer;
 import org.elasticsoftware.elasticactors.serialization.Serializer;
 import org.elasticsoftware.elasticactors.serialization.SystemSerializationFramework;
+import org.elasticsoftware.elasticactors.serialization.compression.CompressionCodec;
+import org.elasticsoftware.elasticactors.serialization.compression.CompressionCodecs;
+import org.elasticsoftware.elasticactors.serialization.compression.Lz4CompressionCodec;
+import org.elasticsoftware.elasticactors.serialization.compression.ZstdCompressionCodec;
+import org.elasticsoftware.elasticactors.serialization.compression.ZstdDictionaryRegistry;
 import org.elasticsoftware.elasticactors.serialization.internal.PersistentActorDeserializer;
 import org.elasticsoftware.elasticactors.serialization.internal.PersistentActorSerializer;
 import org.elasticsoftware.elasticactors.state.PersistentActor;
@@ -41,8 +46,10 @@ import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 
 import javax.annotation.PostConstruct;
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
 
 public class NodeConfiguration {
     @Autowired
@@ -115,25 +122,40 @@ public class NodeConfiguration {
     @Bean(name = {"nodeActorCacheManager"})
     public NodeActorCacheManager createNodeActorCacheManager() {
         int maximumSize = env.getProperty("ea.nodeCache.maximumSize",Integer.class,10240);
-        return new NodeActorCacheManager(maximumSize);
+        // when set, the cache is bounded by the total serialized state size (in bytes) instead of the actor count
+        long maximumWeight = env.getProperty("ea.nodeCache.maximumWeight",Long.class,0L);
+        // passivate actors that are idle for longer than this, can be overridden with @PassivationConfig
+        long idleTimeoutSeconds = env.getProperty("ea.nodeCache.idleTimeoutSeconds",Long.class,0L);
+        return new NodeActorCacheManager(maximumSize, maximumWeight, idleTimeoutSeconds, TimeUnit.SECONDS);
     }
 
     @Bean(name = {"shardActorCacheManager"})
     public ShardActorCacheManager createShardActorCacheManager() {
         int maximumSize = env.getProperty("ea.shardCache.maximumSize",Integer.class,10240);
-        return new ShardActorCacheManager(maximumSize);
+        // when set, the cache is bounded by the total serialized state size (in bytes) instead of the actor count
+        long maximumWeight = env.getProperty("ea.shardCache.maximumWeight",Long.class,0L);
+        // passivate actors that are idle for longer than this, can be overridden with @PassivationConfig
+        long idleTimeoutSeconds = env.getProperty("ea.shardCache.idleTimeoutSeconds",Long.class,0L);
+        return new ShardActorCacheManager(maximumSize, maximumWeight, idleTimeoutSeconds, TimeUnit.SECONDS);
     }
 
     @Bean(name = {"internalActorSystem"})
     public InternalActorSystem createLocalActorSystemInstance(ShardActorCacheManager shardActorCacheManager,
                                                               NodeActorCacheManager nodeActorCacheManager,
                                                               ActorLifecycleListenerRegistry actorLifecycleListenerRegistry,
-                                                              PersistentActorStoreFactory persistentActorStoreFactory) {
+                                                              PersistentActorStoreFactory persistentActorStoreFactory,
+                                                              ZstdCompressionCodec zstdCompressionCodec) {
         final int workers = env.getProperty("ea.shardThreads.workerCount",Integer.class,Runtime.getRuntime().availableProcessors());
         final String bootstrapServers = env.getRequiredProperty("ea.kafka.bootstrapServers");
-        final Integer compressionThreshold = env.getProperty("ea.persistentActorRepository.compressionThreshold",Integer.class, 512);
-        Serializer<PersistentActor<ShardKey>,byte[]> serializer = new CompressingSerializer<>(new PersistentActorSerializer(node),compressionThreshold);
-        Deserializer<byte[],PersistentActor<ShardKey>> deserializer = new DecompressingDeserializer<>(new PersistentActorDeserializer(node, node));
+        // zstd with a trained dictionary per actor class, lz4 by default
+        final CompressionCodec compressionCodec = isZstdCompression() ? zstdCompressionCodec : Lz4CompressionCodec.INSTANCE;
+        // dictionaries make small states compressible, so the default threshold is much lower for zstd
+        final Integer compressionThreshold = env.getProperty("ea.persistentActorRepository.compressionThreshold",Integer.class,
+                compressionCodec instanceof ZstdCompressionCodec ? 64 : 512);
+        Serializer<PersistentActor<ShardKey>,byte[]> serializer = new CompressingSerializer<>(new PersistentActorSerializer(node),compressionThreshold,
+                compressionCodec, actor -> actor.getActorClass().getName());
+        Deserializer<byte[],PersistentActor<ShardKey>> deserializer = new DecompressingDeserializer<>(new PersistentActorDeserializer(node, node),
+                CompressionCodecs.decompressionCodecs(zstdCompressionCodec));
         // NOTE: the node topic will be created with ea.shardThreads.workerCount number of partitions, changing this
         // value will require you to update the topic or face serious issues otherwise
         return new KafkaActorSystemInstance(node, configuration, nodeSelectorFactory, workers, bootstrapServers,
@@ -141,6 +163,24 @@ public class NodeConfiguration {
                 actorLifecycleListenerRegistry, persistentActorStoreFactory);
     }
 
+    @Bean(name = {"persistentActorZstdCompressionCodec"})
+    public ZstdCompressionCodec createPersistentActorZstdCompressionCodec() throws IOException {
+        // also used when compressing with lz4: state written with zstd stays readable after switching back
+        final int level = env.getProperty("ea.persistentActorRepository.compression.zstd.level",Integer.class,3);
+        // the dictionaries are needed to read the state back: the directory must be durable and shared by all nodes,
+        // without one no dictionaries are used
+        final String dictionaryDirectory = env.getProperty("ea.persistentActorRepository.compression.zstd.dictionaryDirectory");
+        // online training of the dictionaries from the persisted actors, disabled by default
+        final int trainingSampleSize = isZstdCompression() ? env.getProperty("ea.persistentActorRepository.compression.zstd.trainingSampleSize",Integer.class,0) : 0;
+        final int dictionarySize = env.getProperty("ea.persistentActorRepository.compression.zstd.dictionarySize",Integer.class,16 * 1024);
+        return new ZstdCompressionCodec(ZstdDictionaryRegistry.open(dictionaryDirectory != null ? new File(dictionaryDirectory) : null,
+                level, trainingSampleSize, dictionarySize), level);
+    }
+
+    private boolean isZstdCompression() {
+        return "zstd".equalsIgnoreCase(env.getProperty("ea.persistentActorRepository.compression.codec","lz4"));
+    }
+
     @Bean(name = {"internalActorSystemHealthCheck"})
     public InternalActorSystemHealthCheck createHealthCheck(InternalActorSystem internalActorSystem) {
         return new InternalActorSystemHealthCheck(internalActorSystem);
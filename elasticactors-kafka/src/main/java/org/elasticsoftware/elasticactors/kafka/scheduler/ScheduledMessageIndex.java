@@ -0,0 +1,84 @@
+package org.elasticsoftware.elasticactors.kafka.scheduler;
+
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * The {@link ScheduledMessage}s of one shard, indexed by fire time (to find the ones that are due) and by id (to
+ * handle tombstones, which only carry the id). Insert and remove are O(log n).
+ *
+ * Not thread safe, this is meant to be used from the KafkaActorThread that owns the shard.
+ */
+public final class ScheduledMessageIndex {
+    private static final Comparator<ScheduledMessage> FIRE_TIME_ORDER =
+            Comparator.<ScheduledMessage>comparingLong(scheduledMessage -> scheduledMessage.getFireTime(MILLISECONDS))
+                    .thenComparing(ScheduledMessage::getId);
+
+    private final NavigableSet<ScheduledMessage> byFireTime = new TreeSet<>(FIRE_TIME_ORDER);
+    private final Map<UUID, ScheduledMessage> byId = new HashMap<>();
+
+    /**
+     * Adds the message, replacing an earlier version with the same id
+     */
+    public void put(ScheduledMessage scheduledMessage) {
+        ScheduledMessage previous = byId.put(scheduledMessage.getId(), scheduledMessage);
+        if (previous != null) {
+            byFireTime.remove(previous);
+        }
+        byFireTime.add(scheduledMessage);
+    }
+
+    /**
+     * @return the removed message, or null if there was no message with this id
+     */
+    public ScheduledMessage remove(UUID id) {
+        ScheduledMessage removed = byId.remove(id);
+        if (removed != null) {
+            byFireTime.remove(removed);
+        }
+        return removed;
+    }
+
+    /**
+     * @return the earliest fire time (in milliseconds) or {@link Long#MAX_VALUE} when there are no messages
+     */
+    public long getEarliestFireTime() {
+        return byFireTime.isEmpty() ? Long.MAX_VALUE : byFireTime.first().getFireTime(MILLISECONDS);
+    }
+
+    /**
+     * @return the messages with a fire time before {@code now}, in fire time order. They are not removed.
+     */
+    public List<ScheduledMessage> getMessagesThatShouldFire(long now) {
+        if (getEarliestFireTime() >= now) {
+            return Collections.emptyList();
+        }
+        List<ScheduledMessage> messagesToFire = new ArrayList<>();
+        for (ScheduledMessage scheduledMessage : byFireTime) {
+            if (scheduledMessage.getFireTime(MILLISECONDS) >= now) {
+                break;
+            }
+            messagesToFire.add(scheduledMessage);
+        }
+        return messagesToFire;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public boolean isEmpty() {
+        return byId.isEmpty();
+    }
+}
@@ -0,0 +1,65 @@
+package org.elasticsoftware.elasticactors.kafka.scheduler;
+
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessage;
+import org.elasticsoftware.elasticactors.cluster.scheduler.ScheduledMessageImpl;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class ScheduledMessageIndexTest {
+    @Test
+    public void testMessagesThatShouldFireAreInFireTimeOrder() {
+        ScheduledMessageIndex index = new ScheduledMessageIndex();
+        ScheduledMessage third = new ScheduledMessageImpl(UUID.randomUUID(), 300L);
+        ScheduledMessage first = new ScheduledMessageImpl(UUID.randomUUID(), 100L);
+        ScheduledMessage second = new ScheduledMessageImpl(UUID.randomUUID(), 200L);
+        ScheduledMessage sameTime = new ScheduledMessageImpl(UUID.randomUUID(), 200L);
+        index.put(third);
+        index.put(first);
+        index.put(second);
+        index.put(sameTime);
+
+        assertEquals(index.getEarliestFireTime(), 100L);
+        assertTrue(index.getMessagesThatShouldFire(100L).isEmpty());
+        assertEquals(index.getMessagesThatShouldFire(201L).size(), 3);
+        assertSame(index.getMessagesThatShouldFire(201L).get(0), first);
+        assertEquals(index.getMessagesThatShouldFire(301L).get(3), third);
+        // the messages are only removed explicitly
+        assertEquals(index.size(), 4);
+    }
+
+    @Test
+    public void testRemoveById() {
+        ScheduledMessageIndex index = new ScheduledMessageIndex();
+        ScheduledMessage first = new ScheduledMessageImpl(UUID.randomUUID(), 100L);
+        ScheduledMessage second = new ScheduledMessageImpl(UUID.randomUUID(), 200L);
+        index.put(first);
+        index.put(second);
+
+        assertSame(index.remove(first.getId()), first);
+        assertNull(index.remove(first.getId()));
+        assertEquals(index.getEarliestFireTime(), 200L);
+        assertEquals(index.getMessagesThatShouldFire(Long.MAX_VALUE), Arrays.asList(second));
+        index.remove(second.getId());
+        assertTrue(index.isEmpty());
+        assertEquals(index.getEarliestFireTime(), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testPutReplacesMessageWithTheSameId() {
+        ScheduledMessageIndex index = new ScheduledMessageIndex();
+        UUID id = UUID.randomUUID();
+        index.put(new ScheduledMessageImpl(id, 100L));
+        index.put(new ScheduledMessageImpl(id, 500L));
+
+        assertEquals(index.size(), 1);
+        assertEquals(index.getEarliestFireTime(), 500L);
+        assertTrue(index.getMessagesThatShouldFire(400L).isEmpty());
+    }
+}
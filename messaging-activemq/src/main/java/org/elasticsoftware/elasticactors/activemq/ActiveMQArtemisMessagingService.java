@@ -51,6 +51,8 @@ public final class ActiveMQArtemisMessagingService implements MessagingService {
     private static final String QUEUE_NAME_FORMAT = "%s/%s";
     private static final String EA_ADDRESS_FORMAT = "ea.%s";
     private static final int SERVER_DEFAULT_PORT = 61616;
+    // the default priority is 4, the broker delivers messages with a higher priority first
+    static final byte PRIORITY_MESSAGE_PRIORITY = 9;
     private final String activeMQHosts;
     private final String activeMQUsername;
     private final String activeMQPassword;
@@ -27,8 +27,11 @@ import org.elasticsoftware.elasticactors.MessageDeliveryException;
 import org.elasticsoftware.elasticactors.messaging.InternalMessage;
 import org.elasticsoftware.elasticactors.messaging.MessageHandler;
 import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
+import org.elasticsoftware.elasticactors.messaging.MessagePriorities;
 import org.elasticsoftware.elasticactors.messaging.MessageQueue;
 import org.elasticsoftware.elasticactors.serialization.internal.InternalMessageDeserializer;
+import org.elasticsoftware.elasticactors.util.concurrent.CapacityExemptEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.PrioritizedEvent;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
 
@@ -36,6 +39,7 @@ import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import static java.lang.String.format;
 import static org.apache.activemq.artemis.api.core.Message.HDR_DUPLICATE_DETECTION_ID;
@@ -60,7 +64,9 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
     private final ActiveMQMessageProcessor messageProcessor;
     private final CountDownLatch destroyLatch = new CountDownLatch(1);
     private final boolean useMessageHandler;
-    private boolean running = true;
+    private final int pauseThreshold;
+    private final int resumeThreshold;
+    private volatile boolean running = true;
 
     LocalMessageQueue(ThreadBoundExecutor queueExecutor, InternalMessageDeserializer internalMessageDeserializer,
                       String queueName, String routingKey, ClientSession clientSession, ClientProducer clientProducer,
@@ -76,6 +82,10 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
         this.consumer = clientSession.createConsumer(queueName);
         this.messageHandler = messageHandler;
         this.messageProcessor = new ActiveMQMessageProcessor(queueName, internalMessageDeserializer, messageHandler, useImmediateReceive);
+        // stop consuming when the queue executor is filling up, and start again when it has drained sufficiently
+        final int queueCapacity = queueExecutor.getQueueCapacity();
+        this.pauseThreshold = (queueCapacity == Integer.MAX_VALUE) ? Integer.MAX_VALUE : queueCapacity - (queueCapacity / 4);
+        this.resumeThreshold = queueCapacity / 4;
     }
 
     @Override
@@ -138,7 +148,14 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
         byte[] bodyBuffer = new byte[message.getBodySize()];
         message.getBodyBuffer().readBytes(bodyBuffer);
         // execute on separate (thread bound) executor
-        queueExecutor.execute(new ActiveMQMessageHandler(queueName,bodyBuffer,internalMessageDeserializer,messageHandler,new ActiveMQAck(message),logger));
+        queueExecutor.execute(new ActiveMQMessageHandler(queueName,bodyBuffer,message.getPriority() >= ActiveMQArtemisMessagingService.PRIORITY_MESSAGE_PRIORITY,internalMessageDeserializer,messageHandler,new ActiveMQAck(message),logger));
+        if(queueExecutor.getQueueDepth(queueName) >= pauseThreshold) {
+            // every queue has it's own session so we can hold up the delivery thread until the executor has
+            // caught up, the server will stop sending once the consumer window is full
+            while(running && queueExecutor.getQueueDepth(queueName) > resumeThreshold) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
     }
 
     private void receiveMessage() {
@@ -149,7 +166,7 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
         }
     }
 
-    private final class ActiveMQMessageProcessor implements ThreadBoundRunnable<String> {
+    private final class ActiveMQMessageProcessor implements ThreadBoundRunnable<String>, CapacityExemptEvent {
         private final String queueName;
         private final InternalMessageDeserializer internalMessageDeserializer;
         private final org.elasticsoftware.elasticactors.messaging.MessageHandler messageHandler;
@@ -171,6 +188,10 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
         @Override
         public void run() {
             try {
+                // don't pull in more messages while the executor is catching up
+                if(queueExecutor.getQueueDepth(queueName) >= pauseThreshold) {
+                    return;
+                }
                 ClientMessage clientMessage = receiveImmediate ? consumer.receiveImmediate() : consumer.receive(1);
                 if(clientMessage != null) {
                     byte[] bodyBuffer = new byte[clientMessage.getBodySize()];
@@ -194,20 +215,23 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
 
     }
 
-    private static final class ActiveMQMessageHandler implements ThreadBoundRunnable<String> {
+    // the consumer is paused when the executor fills up so these never need to be bounded themselves
+    private static final class ActiveMQMessageHandler implements ThreadBoundRunnable<String>, CapacityExemptEvent, PrioritizedEvent {
         private final String queueName;
         private final InternalMessageDeserializer internalMessageDeserializer;
         private final byte[] body;
+        private final boolean priority;
         private final org.elasticsoftware.elasticactors.messaging.MessageHandler messageHandler;
         private final MessageHandlerEventListener listener;
         private final Logger logger;
 
-        private ActiveMQMessageHandler(String queueName, byte[] body, InternalMessageDeserializer internalMessageDeserializer,
+        private ActiveMQMessageHandler(String queueName, byte[] body, boolean priority, InternalMessageDeserializer internalMessageDeserializer,
                                        org.elasticsoftware.elasticactors.messaging.MessageHandler messageHandler,
                                        MessageHandlerEventListener listener, Logger logger) {
             this.queueName = queueName;
             this.internalMessageDeserializer = internalMessageDeserializer;
             this.body = body;
+            this.priority = priority;
             this.messageHandler = messageHandler;
             this.listener = listener;
             this.logger = logger;
@@ -218,6 +242,11 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
             return queueName;
         }
 
+        @Override
+        public boolean isPriority() {
+            return priority;
+        }
+
         @Override
         public void run() {
             InternalMessage message = null;
@@ -251,7 +280,7 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
         }
     }
 
-    private final class SendMessage implements ThreadBoundRunnable<String> {
+    private final class SendMessage implements ThreadBoundRunnable<String>, PrioritizedEvent {
         private final InternalMessage message;
 
         public SendMessage(InternalMessage message) {
@@ -269,6 +298,9 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
             if(message.getTimeout() >= 0) {
                 clientMessage.setExpiration(System.currentTimeMillis() + message.getTimeout());
             }
+            if(MessagePriorities.isPriority(message)) {
+                clientMessage.setPriority(ActiveMQArtemisMessagingService.PRIORITY_MESSAGE_PRIORITY);
+            }
             try {
                 producer.send(clientMessage);
             } catch (ActiveMQException e) {
@@ -283,9 +315,14 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
         public String getKey() {
             return queueName;
         }
+
+        @Override
+        public boolean isPriority() {
+            return MessagePriorities.isPriority(message);
+        }
     }
 
-    private static final class AcknowledgeMessage implements ThreadBoundRunnable<String> {
+    private static final class AcknowledgeMessage implements ThreadBoundRunnable<String>, CapacityExemptEvent {
         private final String queueName;
         private final ClientMessage clientMessage;
 
@@ -309,7 +346,7 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
         }
     }
 
-    private static final class InternalMessageHandler implements ThreadBoundRunnable<String> {
+    private static final class InternalMessageHandler implements ThreadBoundRunnable<String>, PrioritizedEvent {
         private final String queueName;
         private final InternalMessage message;
         private final MessageHandler messageHandler;
@@ -329,6 +366,11 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
             return queueName;
         }
 
+        @Override
+        public boolean isPriority() {
+            return MessagePriorities.isPriority(message);
+        }
+
         @Override
         public void run() {
             try {
@@ -354,7 +396,7 @@ public final class LocalMessageQueue implements MessageQueue, org.apache.activem
         }
     }
 
-    private final class DestroyQueue implements ThreadBoundRunnable<String> {
+    private final class DestroyQueue implements ThreadBoundRunnable<String>, CapacityExemptEvent {
         private final String queueName;
 
         private DestroyQueue(String queueName) {
@@ -22,6 +22,7 @@ import org.apache.activemq.artemis.api.core.client.ClientProducer;
 import org.apache.activemq.artemis.api.core.client.ClientSession;
 import org.elasticsoftware.elasticactors.MessageDeliveryException;
 import org.elasticsoftware.elasticactors.messaging.InternalMessage;
+import org.elasticsoftware.elasticactors.messaging.MessagePriorities;
 import org.elasticsoftware.elasticactors.messaging.MessageQueue;
 
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -62,6 +63,9 @@ public final class RemoteMessageQueue implements MessageQueue {
         if(message.getTimeout() >= 0) {
             clientMessage.setExpiration(System.currentTimeMillis() + message.getTimeout());
         }
+        if(MessagePriorities.isPriority(message)) {
+            clientMessage.setPriority(ActiveMQArtemisMessagingService.PRIORITY_MESSAGE_PRIORITY);
+        }
         try {
             producer.send(clientMessage);
             return true;
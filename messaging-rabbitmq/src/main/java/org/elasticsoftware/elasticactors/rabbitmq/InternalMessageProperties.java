@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.rabbitmq;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.MessageProperties;
+import org.elasticsoftware.elasticactors.messaging.InternalMessage;
+import org.elasticsoftware.elasticactors.messaging.MessagePriorities;
+
+/**
+ * Creates the {@link AMQP.BasicProperties} for an {@link InternalMessage}. Priority messages (see
+ * {@link MessagePriorities}) are published with a priority of 1, which is used on delivery to put them in the
+ * priority lane of the queue executor.
+ */
+public final class InternalMessageProperties {
+    public static final int PRIORITY = 1;
+    private static final AMQP.BasicProperties PERSISTENT_PRIORITY = MessageProperties.PERSISTENT_BASIC.builder().priority(PRIORITY).build();
+    private static final AMQP.BasicProperties BASIC_PRIORITY = MessageProperties.BASIC.builder().priority(PRIORITY).build();
+
+    private InternalMessageProperties() {}
+
+    public static AMQP.BasicProperties create(InternalMessage message) {
+        final boolean priority = MessagePriorities.isPriority(message);
+        if(message.getTimeout() < 0) {
+            if(priority) {
+                return message.isDurable() ? PERSISTENT_PRIORITY : BASIC_PRIORITY;
+            }
+            return message.isDurable() ? MessageProperties.PERSISTENT_BASIC : MessageProperties.BASIC;
+        } else {
+            return new AMQP.BasicProperties.Builder().contentType("application/octet-stream").deliveryMode(message.isDurable() ? 2 : 1)
+                    .priority(priority ? PRIORITY : 0).expiration(String.valueOf(message.getTimeout())).build();
+        }
+    }
+
+    public static boolean isPriority(AMQP.BasicProperties properties) {
+        return properties != null && properties.getPriority() != null && properties.getPriority() >= PRIORITY;
+    }
+}
@@ -24,8 +24,14 @@ import org.elasticsoftware.elasticactors.MessageDeliveryException;
 import org.elasticsoftware.elasticactors.messaging.InternalMessage;
 import org.elasticsoftware.elasticactors.messaging.MessageHandler;
 import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
+import org.elasticsoftware.elasticactors.messaging.MessagePriorities;
 import org.elasticsoftware.elasticactors.messaging.MessageQueue;
+import org.elasticsoftware.elasticactors.messaging.TransientInternalMessage;
 import org.elasticsoftware.elasticactors.serialization.internal.InternalMessageDeserializer;
+import org.elasticsoftware.elasticactors.util.concurrent.CapacityExemptEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.PrioritizedEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.QueueOverflowException;
+import org.elasticsoftware.elasticactors.util.concurrent.SpillableEvent;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
 
@@ -33,6 +39,7 @@ import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.String.format;
 
@@ -53,6 +60,14 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
     private final AtomicBoolean recovering = new AtomicBoolean(false);
     private final ChannelListenerRegistry channelListenerRegistry;
     private final MessageAcker messageAcker;
+    private final AtomicBoolean paused = new AtomicBoolean(false);
+    // the number of cancels sent by pause() that have not been confirmed yet, these should not release destroy()
+    private final AtomicInteger pendingPauseCancels = new AtomicInteger(0);
+    private final int pauseThreshold;
+    private final int resumeThreshold;
+    private volatile boolean destroyed = false;
+    // guards destroyed against a concurrent resume of the consumer
+    private final Object consumerLock = new Object();
 
     public LocalMessageQueue(ThreadBoundExecutor queueExecutor,
                              ChannelListenerRegistry channelListenerRegistry,
@@ -74,6 +89,10 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         this.messageAcker = messageAcker;
         this.channelListenerRegistry = channelListenerRegistry;
         this.channelListenerRegistry.addChannelListener(this.producerChannel,this);
+        // stop consuming when the queue executor is filling up, and start again when it has drained sufficiently
+        final int queueCapacity = queueExecutor.getQueueCapacity();
+        this.pauseThreshold = (queueCapacity == Integer.MAX_VALUE) ? Integer.MAX_VALUE : queueCapacity - (queueCapacity / 4);
+        this.resumeThreshold = queueCapacity / 4;
     }
 
     @Override
@@ -87,33 +106,24 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
             queueExecutor.execute(new InternalMessageHandler(queueName,message,messageHandler,transientAck,logger));
             return true;
         } else {
-            try {
-                final AMQP.BasicProperties props = createProps(message);
-                producerChannel.basicPublish(exchangeName, queueName, false, false, props, message.toByteArray());
-                return true;
-            } catch (IOException e) {
-                throw new MessageDeliveryException("IOException while publishing message",e,false);
-            } catch(AlreadyClosedException e) {
-                this.recovering.set(true);
-                throw new MessageDeliveryException("MessagingService is recovering",true);
-            }
+            publish(message);
+            return true;
         }
     }
 
-    private AMQP.BasicProperties createProps(InternalMessage message) {
-        if(message.getTimeout() < 0) {
-            return message.isDurable() ? MessageProperties.PERSISTENT_BASIC : MessageProperties.BASIC;
-        } else {
-            if(message.isDurable()) {
-                return new AMQP.BasicProperties.Builder().contentType("application/octet-stream").deliveryMode(2)
-                        .priority(0).expiration(String.valueOf(message.getTimeout())).build();
-            } else {
-                return new AMQP.BasicProperties.Builder().contentType("application/octet-stream").deliveryMode(1)
-                        .priority(0).expiration(String.valueOf(message.getTimeout())).build();
-            }
+    private void publish(final InternalMessage message) {
+        try {
+            final AMQP.BasicProperties props = InternalMessageProperties.create(message);
+            producerChannel.basicPublish(exchangeName, queueName, false, false, props, message.toByteArray());
+        } catch (IOException e) {
+            throw new MessageDeliveryException("IOException while publishing message",e,false);
+        } catch(AlreadyClosedException e) {
+            this.recovering.set(true);
+            throw new MessageDeliveryException("MessagingService is recovering",true);
         }
     }
 
+
     @Override
     public boolean add(InternalMessage message) {
         return offer(message);
@@ -136,9 +146,17 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
 
     @Override
     public void destroy() {
+        final boolean consuming;
+        synchronized (consumerLock) {
+            destroyed = true;
+            // when paused the consumer was already cancelled, and it cannot be resumed anymore
+            consuming = paused.compareAndSet(false, true);
+        }
         try {
-            consumerChannel.basicCancel(getConsumerTag());
-            destroyLatch.await(4, TimeUnit.SECONDS);
+            if(consuming) {
+                consumerChannel.basicCancel(getConsumerTag());
+                destroyLatch.await(4, TimeUnit.SECONDS);
+            }
         } catch (IOException e) {
             logger.error("IOException while cancelling consumer",e);
         } catch (InterruptedException e) {
@@ -150,7 +168,10 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
 
     @Override
     public void handleCancelOk(String consumerTag) {
-        destroyLatch.countDown();
+        // the cancel-oks arrive in order, so the one for destroy() always comes after those for earlier pauses
+        if(pendingPauseCancels.getAndUpdate(pending -> pending > 0 ? pending - 1 : 0) == 0) {
+            destroyLatch.countDown();
+        }
     }
 
     @Override
@@ -174,11 +195,29 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         try {
             messageAcker.deliver(envelope.getDeliveryTag());
             // execute on seperate (thread bound) executor
-            queueExecutor.execute(new RabbitMQMessageHandler(queueName,body,internalMessageDeserializer,messageHandler,new RabbitMQAck(envelope),logger));
+            queueExecutor.execute(new RabbitMQMessageHandler(queueName,body,InternalMessageProperties.isPriority(properties),internalMessageDeserializer,messageHandler,new RabbitMQAck(envelope),logger));
         } catch(Exception e) {
             logger.error("Unexpected Exception on handleDelivery.. Acking the message so it will not clog up the system",e);
             messageAcker.ack(envelope.getDeliveryTag());
         }
+        if(queueExecutor.getQueueDepth(queueName) >= pauseThreshold) {
+            pause();
+        }
+    }
+
+    private void pause() {
+        if(!destroyed && paused.compareAndSet(false, true)) {
+            pendingPauseCancels.incrementAndGet();
+            try {
+                consumerChannel.basicCancel(getConsumerTag());
+                logger.warn(format("Paused consuming from queue %s, queue executor is at %d pending events", queueName, queueExecutor.getQueueDepth(queueName)));
+                queueExecutor.execute(new ResumeConsumer());
+            } catch (IOException e) {
+                logger.error(format("IOException while pausing consumer on queue %s", queueName), e);
+                pendingPauseCancels.decrementAndGet();
+                paused.set(false);
+            }
+        }
     }
 
     @Override
@@ -215,19 +254,22 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         logger.error("RabbitMQ Channel recovery failed");
     }
 
-    private static final class RabbitMQMessageHandler implements ThreadBoundRunnable<String> {
+    // the consumer is paused when the executor fills up so these never need to be bounded themselves
+    private static final class RabbitMQMessageHandler implements ThreadBoundRunnable<String>, CapacityExemptEvent, PrioritizedEvent {
         private final String queueName;
         private final InternalMessageDeserializer internalMessageDeserializer;
         private final byte[] body;
+        private final boolean priority;
         private final MessageHandler messageHandler;
         private final MessageHandlerEventListener listener;
         private final Logger logger;
         private final long startTime;
 
-        private RabbitMQMessageHandler(String queueName, byte[] body, InternalMessageDeserializer internalMessageDeserializer, MessageHandler messageHandler, MessageHandlerEventListener listener, Logger logger) {
+        private RabbitMQMessageHandler(String queueName, byte[] body, boolean priority, InternalMessageDeserializer internalMessageDeserializer, MessageHandler messageHandler, MessageHandlerEventListener listener, Logger logger) {
             this.queueName = queueName;
             this.internalMessageDeserializer = internalMessageDeserializer;
             this.body = body;
+            this.priority = priority;
             this.messageHandler = messageHandler;
             this.listener = listener;
             this.logger = logger;
@@ -239,6 +281,11 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
             return queueName;
         }
 
+        @Override
+        public boolean isPriority() {
+            return priority;
+        }
+
         @Override
         public void run() {
             InternalMessage message = null;
@@ -269,6 +316,14 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
 
         @Override
         public void onError(final InternalMessage message,final Throwable exception) {
+            if(exception instanceof QueueOverflowException) {
+                // the actor executor rejected the message because it is at capacity, put it back on the queue before acking it
+                try {
+                    publish(message);
+                } catch(MessageDeliveryException e) {
+                    logger.error(format("Could not requeue message of type [%s] with id [%s]", message.getPayloadClass(), message.getId()), e);
+                }
+            }
             onDone(message);
         }
 
@@ -278,7 +333,35 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         }
     }
 
-    private static final class InternalMessageHandler implements ThreadBoundRunnable<String> {
+    private final class ResumeConsumer implements ThreadBoundRunnable<String>, CapacityExemptEvent {
+
+        @Override
+        public String getKey() {
+            return queueName;
+        }
+
+        @Override
+        public void run() {
+            if(queueExecutor.getQueueDepth(queueName) <= resumeThreshold) {
+                // destroy() should either see that we are consuming again or stop us from resuming
+                synchronized (consumerLock) {
+                    if(!destroyed && paused.compareAndSet(true, false)) {
+                        try {
+                            consumerChannel.basicConsume(queueName, false, LocalMessageQueue.this);
+                            logger.info(format("Resumed consuming from queue %s", queueName));
+                        } catch (IOException e) {
+                            logger.error(format("IOException while resuming consumer on queue %s", queueName), e);
+                        }
+                    }
+                }
+            } else if(!destroyed) {
+                // check again after the current backlog
+                queueExecutor.execute(this);
+            }
+        }
+    }
+
+    private final class InternalMessageHandler implements ThreadBoundRunnable<String>, SpillableEvent<String>, PrioritizedEvent {
         private final String queueName;
         private final InternalMessage message;
         private final MessageHandler messageHandler;
@@ -300,6 +383,21 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
             return queueName;
         }
 
+        @Override
+        public boolean isPriority() {
+            return MessagePriorities.isPriority(message);
+        }
+
+        @Override
+        public boolean spill() {
+            // transient messages cannot be serialized so they need to stay local
+            if(message instanceof TransientInternalMessage) {
+                return false;
+            }
+            publish(message);
+            return true;
+        }
+
         @Override
         public void run() {
             try {
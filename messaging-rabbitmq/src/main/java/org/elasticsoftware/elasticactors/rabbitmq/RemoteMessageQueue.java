@@ -57,7 +57,7 @@ public final class RemoteMessageQueue extends DefaultChannelListener implements
             throw new MessageDeliveryException("MessagingService is recovering",true);
         }
         try {
-            final AMQP.BasicProperties props = createProps(message);
+            final AMQP.BasicProperties props = InternalMessageProperties.create(message);
             producerChannel.basicPublish(exchangeName, queueName,false,false,props,message.toByteArray());
             return true;
         } catch (IOException e) {
@@ -68,19 +68,6 @@ public final class RemoteMessageQueue extends DefaultChannelListener implements
         }
     }
 
-    private AMQP.BasicProperties createProps(InternalMessage message) {
-        if(message.getTimeout() < 0) {
-            return message.isDurable() ? MessageProperties.PERSISTENT_BASIC : MessageProperties.BASIC;
-        } else {
-            if(message.isDurable()) {
-                return new AMQP.BasicProperties.Builder().contentType("application/octet-stream").deliveryMode(2)
-                        .priority(0).expiration(String.valueOf(message.getTimeout())).build();
-            } else {
-                return new AMQP.BasicProperties.Builder().contentType("application/octet-stream").deliveryMode(1)
-                        .priority(0).expiration(String.valueOf(message.getTimeout())).build();
-            }
-        }
-    }
 
     @Override
     public boolean add(InternalMessage message) {
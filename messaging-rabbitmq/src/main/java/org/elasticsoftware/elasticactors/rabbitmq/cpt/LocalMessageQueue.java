@@ -24,10 +24,15 @@ import org.elasticsoftware.elasticactors.MessageDeliveryException;
 import org.elasticsoftware.elasticactors.messaging.InternalMessage;
 import org.elasticsoftware.elasticactors.messaging.MessageHandler;
 import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
+import org.elasticsoftware.elasticactors.messaging.MessagePriorities;
 import org.elasticsoftware.elasticactors.messaging.MessageQueue;
 import org.elasticsoftware.elasticactors.rabbitmq.ChannelListenerRegistry;
+import org.elasticsoftware.elasticactors.rabbitmq.InternalMessageProperties;
 import org.elasticsoftware.elasticactors.rabbitmq.MessageAcker;
 import org.elasticsoftware.elasticactors.serialization.internal.InternalMessageDeserializer;
+import org.elasticsoftware.elasticactors.util.concurrent.CapacityExemptEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.PrioritizedEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.QueueOverflowException;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
 
@@ -35,6 +40,7 @@ import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.String.format;
 
@@ -55,6 +61,14 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
     private final AtomicBoolean recovering = new AtomicBoolean(false);
     private final ChannelListenerRegistry channelListenerRegistry;
     private final MessageAcker messageAcker;
+    private final AtomicBoolean paused = new AtomicBoolean(false);
+    // the number of cancels sent by pause() that have not been confirmed yet, these should not release destroy()
+    private final AtomicInteger pendingPauseCancels = new AtomicInteger(0);
+    private final int pauseThreshold;
+    private final int resumeThreshold;
+    private volatile boolean destroyed = false;
+    // guards destroyed against a concurrent resume of the consumer
+    private final Object consumerLock = new Object();
 
     public LocalMessageQueue(ThreadBoundExecutor queueExecutor,
                              ChannelListenerRegistry channelListenerRegistry,
@@ -76,6 +90,10 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         this.messageAcker = messageAcker;
         this.channelListenerRegistry = channelListenerRegistry;
         this.channelListenerRegistry.addChannelListener(this.producerChannel,this);
+        // stop consuming when the queue executor is filling up, and start again when it has drained sufficiently
+        final int queueCapacity = queueExecutor.getQueueCapacity();
+        this.pauseThreshold = (queueCapacity == Integer.MAX_VALUE) ? Integer.MAX_VALUE : queueCapacity - (queueCapacity / 4);
+        this.resumeThreshold = queueCapacity / 4;
     }
 
     @Override
@@ -94,19 +112,6 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         }
     }
 
-    private AMQP.BasicProperties createProps(InternalMessage message) {
-        if(message.getTimeout() < 0) {
-            return message.isDurable() ? MessageProperties.PERSISTENT_BASIC : MessageProperties.BASIC;
-        } else {
-            if(message.isDurable()) {
-                return new AMQP.BasicProperties.Builder().contentType("application/octet-stream").deliveryMode(2)
-                        .priority(0).expiration(String.valueOf(message.getTimeout())).build();
-            } else {
-                return new AMQP.BasicProperties.Builder().contentType("application/octet-stream").deliveryMode(1)
-                        .priority(0).expiration(String.valueOf(message.getTimeout())).build();
-            }
-        }
-    }
 
     @Override
     public boolean add(InternalMessage message) {
@@ -130,9 +135,17 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
 
     @Override
     public void destroy() {
+        final boolean consuming;
+        synchronized (consumerLock) {
+            destroyed = true;
+            // when paused the consumer was already cancelled, and it cannot be resumed anymore
+            consuming = paused.compareAndSet(false, true);
+        }
         try {
-            consumerChannel.basicCancel(getConsumerTag());
-            destroyLatch.await(4, TimeUnit.SECONDS);
+            if(consuming) {
+                consumerChannel.basicCancel(getConsumerTag());
+                destroyLatch.await(4, TimeUnit.SECONDS);
+            }
         } catch (IOException e) {
             logger.error("IOException while cancelling consumer",e);
         } catch (InterruptedException e) {
@@ -144,7 +157,10 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
 
     @Override
     public void handleCancelOk(String consumerTag) {
-        destroyLatch.countDown();
+        // the cancel-oks arrive in order, so the one for destroy() always comes after those for earlier pauses
+        if(pendingPauseCancels.getAndUpdate(pending -> pending > 0 ? pending - 1 : 0) == 0) {
+            destroyLatch.countDown();
+        }
     }
 
     @Override
@@ -168,11 +184,29 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         try {
             messageAcker.deliver(envelope.getDeliveryTag());
             // execute on seperate (thread bound) executor
-            queueExecutor.execute(new RabbitMQMessageHandler(queueName,body,internalMessageDeserializer,messageHandler,new RabbitMQAck(envelope),logger));
+            queueExecutor.execute(new RabbitMQMessageHandler(queueName,body,InternalMessageProperties.isPriority(properties),internalMessageDeserializer,messageHandler,new RabbitMQAck(envelope),logger));
         } catch(Exception e) {
             logger.error("Unexpected Exception on handleDelivery.. Acking the message so it will not clog up the system",e);
             messageAcker.ack(envelope.getDeliveryTag());
         }
+        if(queueExecutor.getQueueDepth(queueName) >= pauseThreshold) {
+            pause();
+        }
+    }
+
+    private void pause() {
+        if(!destroyed && paused.compareAndSet(false, true)) {
+            pendingPauseCancels.incrementAndGet();
+            try {
+                consumerChannel.basicCancel(getConsumerTag());
+                logger.warn(format("Paused consuming from queue %s, queue executor is at %d pending events", queueName, queueExecutor.getQueueDepth(queueName)));
+                queueExecutor.execute(new ResumeConsumer());
+            } catch (IOException e) {
+                logger.error(format("IOException while pausing consumer on queue %s", queueName), e);
+                pendingPauseCancels.decrementAndGet();
+                paused.set(false);
+            }
+        }
     }
 
     @Override
@@ -209,19 +243,22 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         logger.error("RabbitMQ Channel recovery failed");
     }
 
-    private static final class RabbitMQMessageHandler implements ThreadBoundRunnable<String> {
+    // the consumer is paused when the executor fills up so these never need to be bounded themselves
+    private static final class RabbitMQMessageHandler implements ThreadBoundRunnable<String>, CapacityExemptEvent, PrioritizedEvent {
         private final String queueName;
         private final InternalMessageDeserializer internalMessageDeserializer;
         private final byte[] body;
+        private final boolean priority;
         private final MessageHandler messageHandler;
         private final MessageHandlerEventListener listener;
         private final Logger logger;
         private final long startTime;
 
-        private RabbitMQMessageHandler(String queueName, byte[] body, InternalMessageDeserializer internalMessageDeserializer, MessageHandler messageHandler, MessageHandlerEventListener listener, Logger logger) {
+        private RabbitMQMessageHandler(String queueName, byte[] body, boolean priority, InternalMessageDeserializer internalMessageDeserializer, MessageHandler messageHandler, MessageHandlerEventListener listener, Logger logger) {
             this.queueName = queueName;
             this.internalMessageDeserializer = internalMessageDeserializer;
             this.body = body;
+            this.priority = priority;
             this.messageHandler = messageHandler;
             this.listener = listener;
             this.logger = logger;
@@ -233,6 +270,11 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
             return queueName;
         }
 
+        @Override
+        public boolean isPriority() {
+            return priority;
+        }
+
         @Override
         public void run() {
             InternalMessage message = null;
@@ -263,6 +305,14 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
 
         @Override
         public void onError(final InternalMessage message,final Throwable exception) {
+            if(exception instanceof QueueOverflowException) {
+                // the actor executor rejected the message because it is at capacity, put it back on the queue before acking it
+                try {
+                    queueExecutor.execute(new RequeueMessageSender(message));
+                } catch(MessageDeliveryException e) {
+                    logger.error(format("Could not requeue message of type [%s] with id [%s]", message.getPayloadClass(), message.getId()), e);
+                }
+            }
             onDone(message);
         }
 
@@ -272,7 +322,35 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         }
     }
 
-    private static final class InternalMessageHandler implements ThreadBoundRunnable<String> {
+    private final class ResumeConsumer implements ThreadBoundRunnable<String>, CapacityExemptEvent {
+
+        @Override
+        public String getKey() {
+            return queueName;
+        }
+
+        @Override
+        public void run() {
+            if(queueExecutor.getQueueDepth(queueName) <= resumeThreshold) {
+                // destroy() should either see that we are consuming again or stop us from resuming
+                synchronized (consumerLock) {
+                    if(!destroyed && paused.compareAndSet(true, false)) {
+                        try {
+                            consumerChannel.basicConsume(queueName, false, LocalMessageQueue.this);
+                            logger.info(format("Resumed consuming from queue %s", queueName));
+                        } catch (IOException e) {
+                            logger.error(format("IOException while resuming consumer on queue %s", queueName), e);
+                        }
+                    }
+                }
+            } else if(!destroyed) {
+                // check again after the current backlog
+                queueExecutor.execute(this);
+            }
+        }
+    }
+
+    private static final class InternalMessageHandler implements ThreadBoundRunnable<String>, PrioritizedEvent {
         private final String queueName;
         private final InternalMessage message;
         private final MessageHandler messageHandler;
@@ -294,6 +372,11 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
             return queueName;
         }
 
+        @Override
+        public boolean isPriority() {
+            return MessagePriorities.isPriority(message);
+        }
+
         @Override
         public void run() {
             try {
@@ -322,7 +405,7 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         }
     }
 
-    private final class MessageSender implements ThreadBoundRunnable<String> {
+    private class MessageSender implements ThreadBoundRunnable<String>, PrioritizedEvent {
         private final InternalMessage message;
 
         public MessageSender(InternalMessage message) {
@@ -332,7 +415,7 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         @Override
         public void run() {
             try {
-                final AMQP.BasicProperties props = createProps(message);
+                final AMQP.BasicProperties props = InternalMessageProperties.create(message);
                 producerChannel.basicPublish(exchangeName, queueName, false, false, props, message.toByteArray());
             } catch (IOException e) {
                 logger.error("IOException while publishing message", e);
@@ -346,5 +429,17 @@ public final class LocalMessageQueue extends DefaultConsumer implements MessageQ
         public String getKey() {
             return LocalMessageQueue.this.queueName;
         }
+
+        @Override
+        public boolean isPriority() {
+            return MessagePriorities.isPriority(message);
+        }
+    }
+
+    private final class RequeueMessageSender extends MessageSender implements CapacityExemptEvent {
+
+        public RequeueMessageSender(InternalMessage message) {
+            super(message);
+        }
     }
 }
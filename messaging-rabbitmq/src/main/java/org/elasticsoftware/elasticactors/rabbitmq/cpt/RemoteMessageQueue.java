@@ -27,6 +27,7 @@ import org.elasticsoftware.elasticactors.MessageDeliveryException;
 import org.elasticsoftware.elasticactors.messaging.InternalMessage;
 import org.elasticsoftware.elasticactors.messaging.MessageQueue;
 import org.elasticsoftware.elasticactors.rabbitmq.ChannelListenerRegistry;
+import org.elasticsoftware.elasticactors.rabbitmq.InternalMessageProperties;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
 
@@ -65,19 +66,6 @@ public final class RemoteMessageQueue extends DefaultChannelListener implements
         return true;
     }
 
-    private AMQP.BasicProperties createProps(InternalMessage message) {
-        if(message.getTimeout() < 0) {
-            return message.isDurable() ? MessageProperties.PERSISTENT_BASIC : MessageProperties.BASIC;
-        } else {
-            if(message.isDurable()) {
-                return new AMQP.BasicProperties.Builder().contentType("application/octet-stream").deliveryMode(2)
-                        .priority(0).expiration(String.valueOf(message.getTimeout())).build();
-            } else {
-                return new AMQP.BasicProperties.Builder().contentType("application/octet-stream").deliveryMode(1)
-                        .priority(0).expiration(String.valueOf(message.getTimeout())).build();
-            }
-        }
-    }
 
     @Override
     public boolean add(InternalMessage message) {
@@ -128,7 +116,7 @@ public final class RemoteMessageQueue extends DefaultChannelListener implements
         @Override
         public void run() {
             try {
-                final AMQP.BasicProperties props = createProps(message);
+                final AMQP.BasicProperties props = InternalMessageProperties.create(message);
                 producerChannel.basicPublish(exchangeName, queueName, false, false, props, message.toByteArray());
             } catch (IOException e) {
                 logger.error("IOException while publishing message", e);
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 - 2017 The Original Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.elasticsoftware.elasticactors.rabbitmq;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import org.elasticsoftware.elasticactors.messaging.MessageHandler;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEvent;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class LocalMessageQueueTest {
+    @Test
+    public void testCancelOkOfPauseDoesNotReleaseDestroy() throws Exception {
+        ThreadBoundExecutor<ThreadBoundEvent<?>> queueExecutor = mock(ThreadBoundExecutor.class);
+        when(queueExecutor.getQueueCapacity()).thenReturn(4);
+        Channel consumerChannel = mock(Channel.class);
+        LocalMessageQueue messageQueue = new LocalMessageQueue(queueExecutor, mock(ChannelListenerRegistry.class),
+                consumerChannel, mock(Channel.class), "exchange", "queue", mock(MessageHandler.class),
+                null, mock(MessageAcker.class));
+
+        // fill up the executor so the consumer gets paused
+        when(queueExecutor.getQueueDepth("queue")).thenReturn(4);
+        messageQueue.handleDelivery("tag", new Envelope(1L, false, "exchange", "queue"), null, new byte[0]);
+        verify(consumerChannel).basicCancel(any());
+
+        // drain it again so the consumer gets resumed, before the cancel of the pause was confirmed
+        ArgumentCaptor<ThreadBoundEvent<?>> captor = ArgumentCaptor.forClass(ThreadBoundEvent.class);
+        verify(queueExecutor, times(2)).execute(captor.capture());
+        List<ThreadBoundEvent<?>> events = captor.getAllValues();
+        when(queueExecutor.getQueueDepth("queue")).thenReturn(0);
+        ((Runnable) events.get(events.size() - 1)).run();
+        verify(consumerChannel).basicConsume(eq("queue"), anyBoolean(), eq(messageQueue));
+
+        Thread destroyer = new Thread(messageQueue::destroy);
+        destroyer.start();
+        verify(consumerChannel, timeout(1000).times(2)).basicCancel(any());
+
+        // the (late) confirmation of the pause should not release destroy()
+        messageQueue.handleCancelOk("tag");
+        destroyer.join(500);
+        assertTrue(destroyer.isAlive());
+
+        messageQueue.handleCancelOk("tag");
+        destroyer.join(1000);
+        assertFalse(destroyer.isAlive());
+    }
+}
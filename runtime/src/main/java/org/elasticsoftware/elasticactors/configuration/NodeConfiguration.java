@@ -27,6 +27,7 @@ import org.elasticsoftware.elasticactors.cache.NodeActorCacheManager;
 import org.elasticsoftware.elasticactors.cache.ShardActorCacheManager;
 import org.elasticsoftware.elasticactors.cluster.*;
 import org.elasticsoftware.elasticactors.cluster.scheduler.ShardedScheduler;
+import org.elasticsoftware.elasticactors.cluster.tasks.ActorLifecycleTaskEventProcessor;
 import org.elasticsoftware.elasticactors.health.InternalActorSystemHealthCheck;
 import org.elasticsoftware.elasticactors.messaging.MessageQueueFactoryFactory;
 import org.elasticsoftware.elasticactors.runtime.DefaultConfiguration;
@@ -39,8 +40,12 @@ import org.elasticsoftware.elasticactors.state.DefaultActorStateUpdateProcessor;
 import org.elasticsoftware.elasticactors.state.NoopActorStateUpdateProcessor;
 import org.elasticsoftware.elasticactors.serialization.SystemSerializationFramework;
 import org.elasticsoftware.elasticactors.util.concurrent.DaemonThreadFactory;
+import org.elasticsoftware.elasticactors.util.concurrent.MpscBlockingQueue;
+import org.elasticsoftware.elasticactors.util.concurrent.OverflowPolicy;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutorImpl;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundEventProcessor;
+import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnableEventProcessor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
@@ -54,6 +59,7 @@ import javax.annotation.PostConstruct;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Joost van de Wijgerd
@@ -128,36 +134,68 @@ public class NodeConfiguration {
     @Bean(name = {"nodeActorCacheManager"})
     public NodeActorCacheManager createNodeActorCacheManager() {
         int maximumSize = env.getProperty("ea.nodeCache.maximumSize",Integer.class,10240);
-        return new NodeActorCacheManager(maximumSize);
+        // when set, the cache is bounded by the total serialized state size (in bytes) instead of the actor count
+        long maximumWeight = env.getProperty("ea.nodeCache.maximumWeight",Long.class,0L);
+        // passivate actors that are idle for longer than this, can be overridden with @PassivationConfig
+        long idleTimeoutSeconds = env.getProperty("ea.nodeCache.idleTimeoutSeconds",Long.class,0L);
+        return new NodeActorCacheManager(maximumSize, maximumWeight, idleTimeoutSeconds, TimeUnit.SECONDS);
     }
 
     @Bean(name = {"shardActorCacheManager"})
     public ShardActorCacheManager createShardActorCacheManager() {
         int maximumSize = env.getProperty("ea.shardCache.maximumSize",Integer.class,10240);
-        return new ShardActorCacheManager(maximumSize);
+        // when set, the cache is bounded by the total serialized state size (in bytes) instead of the actor count
+        long maximumWeight = env.getProperty("ea.shardCache.maximumWeight",Long.class,0L);
+        // passivate actors that are idle for longer than this, can be overridden with @PassivationConfig
+        long idleTimeoutSeconds = env.getProperty("ea.shardCache.idleTimeoutSeconds",Long.class,0L);
+        return new ShardActorCacheManager(maximumSize, maximumWeight, idleTimeoutSeconds, TimeUnit.SECONDS);
     }
 
     @Bean(name = {"actorExecutor"}, destroyMethod = "shutdown")
     @DependsOn("asyncUpdateExecutor")
     public ThreadBoundExecutor createActorExecutor() {
         final int workers = env.getProperty("ea.actorExecutor.workerCount",Integer.class,Runtime.getRuntime().availableProcessors() * 3);
-        final Boolean useDisruptor = env.getProperty("ea.actorExecutor.useDisruptor",Boolean.class,Boolean.FALSE);
-        if(useDisruptor) {
-            return new org.elasticsoftware.elasticactors.util.concurrent.disruptor.ThreadBoundExecutorImpl(new DaemonThreadFactory("ACTOR-WORKER"),workers);
-        } else {
-            return new ThreadBoundExecutorImpl(new DaemonThreadFactory("ACTOR-WORKER"), workers);
+        final int queueCapacity = env.getProperty("ea.actorExecutor.queueCapacity",Integer.class,0);
+        final OverflowPolicy overflowPolicy = env.getProperty("ea.actorExecutor.overflowPolicy",OverflowPolicy.class,OverflowPolicy.BLOCK);
+        final Boolean useVirtualThreads = env.getProperty("ea.actorExecutor.useVirtualThreads",Boolean.class,Boolean.FALSE);
+        // consecutive messages for actors with @PersistenceConfig(batchMessages = true) are merged up to this size,
+        // the default of 1 keeps handling one event at a time (and thus disables batching)
+        final int maxBatchSize = env.getProperty("ea.actorExecutor.maxBatchSize",Integer.class,1);
+        if(useVirtualThreads) {
+            // one virtual thread per actor with pending messages, workerCount is not used (requires Java 21+)
+            return new org.elasticsoftware.elasticactors.util.concurrent.virtual.ThreadBoundExecutorImpl(
+                    new ActorLifecycleTaskEventProcessor(), maxBatchSize, "ACTOR-WORKER", queueCapacity, overflowPolicy);
         }
+        return createThreadBoundExecutor(new ActorLifecycleTaskEventProcessor(), maxBatchSize, new DaemonThreadFactory("ACTOR-WORKER"), workers, queueCapacity, overflowPolicy);
     }
 
     @Bean(name = {"queueExecutor"}, destroyMethod = "shutdown")
     @DependsOn("actorExecutor")
     public ThreadBoundExecutor createQueueExecutor() {
         final int workers = env.getProperty("ea.queueExecutor.workerCount",Integer.class,Runtime.getRuntime().availableProcessors() * 3);
+        final int queueCapacity = env.getProperty("ea.queueExecutor.queueCapacity",Integer.class,0);
+        final OverflowPolicy overflowPolicy = env.getProperty("ea.queueExecutor.overflowPolicy",OverflowPolicy.class,OverflowPolicy.BLOCK);
+        return createThreadBoundExecutor(new ThreadBoundRunnableEventProcessor(), 1, new DaemonThreadFactory("QUEUE-WORKER"), workers, queueCapacity, overflowPolicy);
+    }
+
+    private ThreadBoundExecutor createThreadBoundExecutor(ThreadBoundEventProcessor eventProcessor, int maxBatchSize,
+                                                          DaemonThreadFactory threadFactory, int workers, int queueCapacity, OverflowPolicy overflowPolicy) {
         final Boolean useDisruptor = env.getProperty("ea.actorExecutor.useDisruptor",Boolean.class,Boolean.FALSE);
+        final Boolean useWorkStealing = env.getProperty("ea.actorExecutor.useWorkStealing",Boolean.class,Boolean.FALSE);
+        final Boolean useMpscQueue = env.getProperty("ea.actorExecutor.useMpscQueue",Boolean.class,Boolean.FALSE);
         if(useDisruptor) {
-            return new org.elasticsoftware.elasticactors.util.concurrent.disruptor.ThreadBoundExecutorImpl(new DaemonThreadFactory("QUEUE-WORKER"), workers);
+            // the disruptor is always bounded, the capacity is rounded up to a power of 2
+            final int bufferSize = queueCapacity > 1 ? Integer.highestOneBit(queueCapacity - 1) << 1 : queueCapacity == 1 ? 1 : 1024;
+            return new org.elasticsoftware.elasticactors.util.concurrent.disruptor.ThreadBoundExecutorImpl(
+                    eventProcessor, maxBatchSize, bufferSize, threadFactory, workers, overflowPolicy);
+        } else if(useWorkStealing) {
+            final int keyGroupsPerWorker = env.getProperty("ea.actorExecutor.keyGroupsPerWorker",Integer.class,16);
+            return new org.elasticsoftware.elasticactors.util.concurrent.workstealing.ThreadBoundExecutorImpl(
+                    eventProcessor, maxBatchSize, threadFactory, workers, keyGroupsPerWorker, queueCapacity, overflowPolicy);
+        } else if(useMpscQueue) {
+            return new ThreadBoundExecutorImpl(eventProcessor, maxBatchSize, threadFactory, workers, queueCapacity, overflowPolicy, MpscBlockingQueue::new);
         } else {
-            return new ThreadBoundExecutorImpl(new DaemonThreadFactory("QUEUE-WORKER"), workers);
+            return new ThreadBoundExecutorImpl(eventProcessor, maxBatchSize, threadFactory, workers, queueCapacity, overflowPolicy);
         }
     }
 
@@ -173,8 +211,12 @@ public class NodeConfiguration {
 
     @Bean(name = {"scheduler"})
     public ShardedScheduler createScheduler() {
-        //@todo: maybe configure scheduler here with number of workers
-        return new ShardedScheduler();
+        // the timing wheel has O(1) schedule and cancel, which pays off with large numbers of pending messages
+        final boolean useTimingWheel = "timingWheel".equalsIgnoreCase(env.getProperty("ea.scheduler.engine","delayQueue"));
+        final int workers = env.getProperty("ea.scheduler.workerCount",Integer.class,Runtime.getRuntime().availableProcessors());
+        // only load the messages firing within the window on shard acquisition, 0 loads all of them
+        final long loadWindowMinutes = env.getProperty("ea.scheduler.loadWindowMinutes",Long.class,0L);
+        return new ShardedScheduler(useTimingWheel, workers, TimeUnit.MINUTES.toMillis(loadWindowMinutes));
     }
 
     @Bean(name = {"actorSystemEventListenerService"})
@@ -195,7 +237,8 @@ public class NodeConfiguration {
         } else {
             final int workers = env.getProperty("ea.actorStateUpdateProcessor.workerCount",Integer.class,1);
             final int maxBatchSize = env.getProperty("ea.actorStateUpdateProcessor.maxBatchSize",Integer.class,20);
-            return new DefaultActorStateUpdateProcessor(listeners.values(), workers, maxBatchSize);
+            final boolean useMpscQueue = env.getProperty("ea.actorStateUpdateProcessor.useMpscQueue",Boolean.class,Boolean.FALSE);
+            return new DefaultActorStateUpdateProcessor(listeners.values(), workers, maxBatchSize, useMpscQueue);
         }
     }
 }
@@ -19,6 +19,8 @@ package org.elasticsoftware.elasticactors.cluster.scheduler;
 import org.elasticsoftware.elasticactors.ShardKey;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * @author Joost van de Wijgerd
@@ -29,4 +31,36 @@ public interface ScheduledMessageRepository {
     void delete(ShardKey shardKey, ScheduledMessageKey scheduledMessage);
 
     List<ScheduledMessage> getAll(ShardKey shardKey);
+
+    /**
+     * Returns the messages with a fire time (in millis) in the range [fromFireTime, toFireTime). By default this
+     * filters the result of {@link #getAll(ShardKey)}, implementations that can do a range query on the fire time
+     * should override this method and {@link #count(ShardKey, long)}.
+     *
+     * @param shardKey
+     * @param fromFireTime  inclusive
+     * @param toFireTime    exclusive
+     * @return
+     */
+    default List<ScheduledMessage> getRange(ShardKey shardKey, long fromFireTime, long toFireTime) {
+        return getAll(shardKey).stream()
+                .filter(scheduledMessage -> {
+                    long fireTime = scheduledMessage.getFireTime(TimeUnit.MILLISECONDS);
+                    return fireTime >= fromFireTime && fireTime < toFireTime;
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Counts the messages with a fire time (in millis) at or after fromFireTime, without materializing them
+     *
+     * @param shardKey
+     * @param fromFireTime  inclusive
+     * @return
+     */
+    default long count(ShardKey shardKey, long fromFireTime) {
+        return getAll(shardKey).stream()
+                .filter(scheduledMessage -> scheduledMessage.getFireTime(TimeUnit.MILLISECONDS) >= fromFireTime)
+                .count();
+    }
 }
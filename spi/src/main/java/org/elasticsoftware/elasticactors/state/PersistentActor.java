@@ -45,6 +45,7 @@ public final class PersistentActor<K> implements ActorContext, ProcessorContext
     @Nullable
     private final String affinityKey;
     private transient volatile byte[] serializedState;
+    private transient volatile int serializedStateSize;
     private volatile ActorState actorState;
     private HashMultimap<String, MessageSubscriber> messageSubscribers;
     private List<InternalPersistentSubscription> persistentSubscriptions;
@@ -108,6 +109,7 @@ public final class PersistentActor<K> implements ActorContext, ProcessorContext
         this.ref = ref;
         this.affinityKey = affinityKey;
         this.serializedState = serializedState;
+        this.serializedStateSize = (serializedState != null) ? serializedState.length : 0;
         this.actorState = actorState;
         this.messageSubscribers = messageSubscribers;
         this.persistentSubscriptions = persistentSubscriptions;
@@ -154,6 +156,19 @@ public final class PersistentActor<K> implements ActorContext, ProcessorContext
 
     public void setSerializedState(byte[] serializedState) {
         this.serializedState = serializedState;
+        if(serializedState != null) {
+            this.serializedStateSize = serializedState.length;
+        }
+    }
+
+    /**
+     * The size of the last known serialized state, either the state this actor was loaded with or the state that
+     * was last persisted. This is kept after the serialized state itself has been released
+     *
+     * @return the size in bytes, or 0 when the state has never been serialized
+     */
+    public int getSerializedStateSize() {
+        return serializedStateSize;
     }
 
     @Override
@@ -242,6 +257,7 @@ public final class PersistentActor<K> implements ActorContext, ProcessorContext
     public void serializeState() throws IOException {
         this.serializedState = actorSystem.getParent().getSerializationFramework(actorState.getSerializationFramework())
                 .getActorStateSerializer(this.actorState).serialize(this.actorState);
+        this.serializedStateSize = (this.serializedState != null) ? this.serializedState.length : 0;
     }
 
 }
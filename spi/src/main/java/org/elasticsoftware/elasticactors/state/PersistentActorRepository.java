@@ -21,6 +21,11 @@ import org.elasticsoftware.elasticactors.messaging.InternalMessage;
 import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * @author Joost van de Wijgerd
@@ -35,4 +40,95 @@ public interface PersistentActorRepository {
     void delete(ShardKey shard,String actorId);
 
     PersistentActor<ShardKey> get(ShardKey shard,String actorId) throws IOException;
+
+    /**
+     * Non-blocking version of {@link #get(ShardKey, String)}. The returned future completes with null when the actor
+     * does not exist. Implementations that have an asynchronous client should override this method, by default the
+     * actor is loaded on the calling thread. Actor shards load actors that are not cached with this method from the
+     * thread that handles the messages of the shard, so the default blocks the shard until the actor is loaded.
+     *
+     * @param shard
+     * @param actorId
+     * @return
+     */
+    default CompletableFuture<PersistentActor<ShardKey>> getAsync(ShardKey shard, String actorId) {
+        CompletableFuture<PersistentActor<ShardKey>> future = new CompletableFuture<>();
+        try {
+            future.complete(get(shard, actorId));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Loads multiple actors of the same shard at once. Actors that don't exist are not part of the returned map.
+     * By default the actors are loaded one by one, implementations that can fetch multiple actors in one round trip
+     * should override this method and {@link #getAllAsync(ShardKey, Collection)}.
+     *
+     * @param shard
+     * @param actorIds
+     * @return a map of actorId to {@link PersistentActor}
+     * @throws IOException
+     */
+    default Map<String,PersistentActor<ShardKey>> getAll(ShardKey shard, Collection<String> actorIds) throws IOException {
+        Map<String,PersistentActor<ShardKey>> result = new HashMap<>();
+        for (String actorId : actorIds) {
+            PersistentActor<ShardKey> persistentActor = get(shard, actorId);
+            if (persistentActor != null) {
+                result.put(actorId, persistentActor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Non-blocking version of {@link #getAll(ShardKey, Collection)}, by default the actors are loaded on the calling
+     * thread (which blocks the shard, see {@link #getAsync(ShardKey, String)}).
+     *
+     * @param shard
+     * @param actorIds
+     * @return
+     */
+    default CompletableFuture<Map<String,PersistentActor<ShardKey>>> getAllAsync(ShardKey shard, Collection<String> actorIds) {
+        CompletableFuture<Map<String,PersistentActor<ShardKey>>> future = new CompletableFuture<>();
+        try {
+            future.complete(getAll(shard, actorIds));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Passes the ids of all actors that are stored for the given shard to the consumer. This is used to build an
+     * in-memory index of the existing actors when a shard is initialized. Implementations that cannot list the
+     * actors of a shard efficiently don't need to implement this.
+     *
+     * @param shard
+     * @param consumer
+     * @throws UnsupportedOperationException when the repository does not support listing the actor ids
+     */
+    default void forEachActorId(ShardKey shard, Consumer<String> consumer) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support listing actor ids");
+    }
+
+    /**
+     * Called when the shard is (again) managed by this node, before any of its actors are loaded
+     *
+     * @param shard
+     */
+    default void acquire(ShardKey shard) {
+        // nothing to acquire by default
+    }
+
+    /**
+     * Called when the shard is no longer managed by this node. Implementations that keep (cached) actor state
+     * in memory should drop it here, as the state will be modified by another node from now on
+     *
+     * @param shard
+     */
+    default void release(ShardKey shard) {
+        // nothing to release by default
+    }
 }
@@ -26,6 +26,7 @@ import org.elasticsoftware.elasticactors.cache.NodeActorCacheManager;
 import org.elasticsoftware.elasticactors.cache.ShardActorCacheManager;
 import org.elasticsoftware.elasticactors.cluster.*;
 import org.elasticsoftware.elasticactors.cluster.scheduler.SimpleScheduler;
+import org.elasticsoftware.elasticactors.cluster.tasks.ActorLifecycleTaskEventProcessor;
 import org.elasticsoftware.elasticactors.messaging.UUIDTools;
 import org.elasticsoftware.elasticactors.runtime.DefaultConfiguration;
 import org.elasticsoftware.elasticactors.runtime.MessagesScanner;
@@ -134,7 +135,8 @@ public class TestConfiguration {
     @Bean(name = {"actorExecutor"}, destroyMethod = "shutdown")
     public ThreadBoundExecutor createActorExecutor() {
         int workers = Runtime.getRuntime().availableProcessors() * 3;
-        return new ThreadBoundExecutorImpl(new DaemonThreadFactory("ACTOR-WORKER"),workers);
+        int maxBatchSize = env.getProperty("ea.actorExecutor.maxBatchSize",Integer.class,1);
+        return new ThreadBoundExecutorImpl(new ActorLifecycleTaskEventProcessor(),maxBatchSize,new DaemonThreadFactory("ACTOR-WORKER"),workers);
     }
 
     @Bean(name = {"queueExecutor"}, destroyMethod = "shutdown")
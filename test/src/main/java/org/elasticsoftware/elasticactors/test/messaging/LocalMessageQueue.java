@@ -21,7 +21,9 @@ import org.apache.logging.log4j.Logger;
 import org.elasticsoftware.elasticactors.messaging.InternalMessage;
 import org.elasticsoftware.elasticactors.messaging.MessageHandler;
 import org.elasticsoftware.elasticactors.messaging.MessageHandlerEventListener;
+import org.elasticsoftware.elasticactors.messaging.MessagePriorities;
 import org.elasticsoftware.elasticactors.messaging.MessageQueue;
+import org.elasticsoftware.elasticactors.util.concurrent.PrioritizedEvent;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundExecutor;
 import org.elasticsoftware.elasticactors.util.concurrent.ThreadBoundRunnable;
 
@@ -75,7 +77,7 @@ public final class LocalMessageQueue implements MessageQueue {
     }
 
 
-    private static final class InternalMessageHandler implements ThreadBoundRunnable<String> {
+    private static final class InternalMessageHandler implements ThreadBoundRunnable<String>, PrioritizedEvent {
         private final String queueName;
         private final InternalMessage message;
         private final MessageHandler messageHandler;
@@ -95,6 +97,11 @@ public final class LocalMessageQueue implements MessageQueue {
             return queueName;
         }
 
+        @Override
+        public boolean isPriority() {
+            return MessagePriorities.isPriority(message);
+        }
+
         @Override
         public void run() {
             try {